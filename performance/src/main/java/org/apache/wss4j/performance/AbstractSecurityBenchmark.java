@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.wss4j.performance;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import javax.xml.transform.TransformerException;
+
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.stax.ext.WSSSecurityProperties;
+import org.apache.wss4j.stax.setup.ConfigurationConverter;
+import org.apache.wss4j.stax.setup.OutboundWSSec;
+import org.apache.wss4j.stax.setup.WSSec;
+import org.apache.wss4j.stax.test.utils.XmlReaderToWriter;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.w3c.dom.Document;
+
+/**
+ * The common state of the DOM and StAX benchmarks. Each benchmark converts a message between
+ * bytes and bytes, so that the DOM benchmarks include the cost of parsing and serializing the
+ * Document, which the StAX code avoids.
+ *
+ * The benchmarks are parameterized by the security scenario, the approximate size of the SOAP
+ * Body in kilobytes, and the number of signed parts (for the scenarios that include a signature).
+ * Run with the GC profiler to report the allocation rate, and restrict the parameters with "-p", e.g.:
+ *
+ * java -jar target/benchmarks.jar InboundBenchmark -prof gc -p scenario=SIGNATURE -p bodySize=64
+ */
+@State(Scope.Thread)
+public abstract class AbstractSecurityBenchmark {
+
+    @Param({"TIMESTAMP", "USERNAME_TOKEN", "SIGNATURE", "ENCRYPT", "SIGN_ENCRYPT", "SAML", "SIGNED_SAML"})
+    protected Scenario scenario;
+
+    @Param({"1", "64"})
+    protected int bodySize;
+
+    @Param({"1", "4"})
+    protected int signedParts;
+
+    private final BenchmarkHandler handler = new BenchmarkHandler();
+    private DocumentBuilder documentBuilder;
+    private XMLInputFactory xmlInputFactory;
+
+    protected void setUpParsers() throws Exception {
+        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+        documentBuilderFactory.setNamespaceAware(true);
+        documentBuilderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        documentBuilder = documentBuilderFactory.newDocumentBuilder();
+
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Create the unsecured message for the current parameters
+     */
+    protected byte[] createMessage() {
+        // The number of signed parts does not apply to the other scenarios
+        return BenchmarkMessages.createMessage(bodySize, scenario.isSigned() ? signedParts : 1);
+    }
+
+    protected byte[] secureDOM(byte[] message, Map<String, Object> config) throws Exception {
+        Document doc = parse(message);
+        handler.secure(doc, config);
+        return serialize(doc);
+    }
+
+    protected Document verifyDOM(byte[] message, Map<String, Object> config) throws Exception {
+        Document doc = parse(message);
+        handler.verify(doc, config);
+        return doc;
+    }
+
+    protected byte[] secureStAX(byte[] message, OutboundWSSec outboundWSSec) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(message.length * 2);
+        XMLStreamWriter xmlStreamWriter =
+            outboundWSSec.processOutMessage(output, StandardCharsets.UTF_8.name(), new ArrayList<>());
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(message));
+        XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+        return output.toByteArray();
+    }
+
+    protected static OutboundWSSec createOutboundWSSec(Map<String, Object> config) throws Exception {
+        WSSSecurityProperties securityProperties = ConfigurationConverter.convert(config);
+        return WSSec.getOutboundWSSec(securityProperties);
+    }
+
+    protected XMLStreamReader createXMLStreamReader(byte[] message) throws Exception {
+        return xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(message));
+    }
+
+    private Document parse(byte[] message) throws Exception {
+        return documentBuilder.parse(new ByteArrayInputStream(message));
+    }
+
+    private static byte[] serialize(Document doc) throws IOException, TransformerException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        XMLUtils.elementToStream(doc.getDocumentElement(), output);
+        return output.toByteArray();
+    }
+
+}
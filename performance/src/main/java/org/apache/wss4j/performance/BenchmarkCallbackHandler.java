@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.wss4j.performance;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.callback.UnsupportedCallbackException;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.ext.WSPasswordCallback;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SAMLCallback;
+import org.apache.wss4j.common.saml.bean.AuthenticationStatementBean;
+import org.apache.wss4j.common.saml.bean.SubjectBean;
+import org.apache.wss4j.common.saml.bean.Version;
+import org.apache.wss4j.common.saml.builder.SAML2Constants;
+
+/**
+ * A CallbackHandler for the benchmarks. It supplies the (common) password of the UsernameToken
+ * user and of the keys in the benchmark keystores, and creates a SAML 2.0 authentication assertion
+ * using Sender Vouches, which is optionally signed with the key of the transmitter.
+ */
+public class BenchmarkCallbackHandler implements CallbackHandler {
+
+    private final boolean signAssertion;
+    private Crypto issuerCrypto;
+
+    public BenchmarkCallbackHandler() {
+        this(false);
+    }
+
+    public BenchmarkCallbackHandler(boolean signAssertion) {
+        this.signAssertion = signAssertion;
+    }
+
+    public void handle(Callback[] callbacks) throws IOException, UnsupportedCallbackException {
+        for (Callback callback : callbacks) {
+            if (callback instanceof WSPasswordCallback) {
+                ((WSPasswordCallback) callback).setPassword("default");
+            } else if (callback instanceof SAMLCallback) {
+                SAMLCallback samlCallback = (SAMLCallback) callback;
+                samlCallback.setSamlVersion(Version.SAML_20);
+                samlCallback.setIssuer("www.example.com");
+
+                SubjectBean subjectBean =
+                    new SubjectBean(
+                        "uid=joe,ou=people,ou=saml-demo,o=example.com", "www.example.com",
+                        SAML2Constants.CONF_SENDER_VOUCHES
+                    );
+                samlCallback.setSubject(subjectBean);
+
+                AuthenticationStatementBean authBean = new AuthenticationStatementBean();
+                authBean.setAuthenticationMethod("Password");
+                samlCallback.setAuthenticationStatementData(Collections.singletonList(authBean));
+
+                if (signAssertion) {
+                    samlCallback.setSignAssertion(true);
+                    samlCallback.setIssuerCrypto(getIssuerCrypto());
+                    samlCallback.setIssuerKeyName("transmitter");
+                    samlCallback.setIssuerKeyPassword("default");
+                }
+            } else {
+                throw new UnsupportedCallbackException(callback, "Unrecognized Callback");
+            }
+        }
+    }
+
+    private synchronized Crypto getIssuerCrypto() throws IOException {
+        if (issuerCrypto == null) {
+            try {
+                issuerCrypto = CryptoFactory.getInstance("transmitter-crypto.properties");
+            } catch (WSSecurityException ex) {
+                throw new IOException(ex);
+            }
+        }
+        return issuerCrypto;
+    }
+
+}
@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.wss4j.performance;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.wss4j.common.ConfigurationConstants;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.handler.HandlerAction;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandler;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.dom.util.WSSecurityUtil;
+import org.w3c.dom.Document;
+
+/**
+ * A minimal WSHandler for the DOM benchmarks, which uses the configuration Map of a Scenario as
+ * the message context. The Crypto instances are cached by the WSHandler, so a single instance
+ * should be used for all of the invocations of a benchmark.
+ */
+public class BenchmarkHandler extends WSHandler {
+
+    private final WSSecurityEngine secEngine = new WSSecurityEngine();
+
+    /**
+     * Secure the given document according to the configured action(s)
+     */
+    public void secure(Document doc, Map<String, Object> config) throws WSSecurityException {
+        String action = (String) config.get(ConfigurationConstants.ACTION);
+        List<HandlerAction> actions = WSSecurityUtil.decodeHandlerAction(action, null);
+
+        RequestData reqData = new RequestData();
+        reqData.setMsgContext(config);
+        reqData.setUsername((String) config.get(ConfigurationConstants.USER));
+        doSenderAction(doc, reqData, actions, true);
+    }
+
+    /**
+     * Process the security header of the given document, and check that the results match the
+     * configured action(s)
+     */
+    public WSHandlerResult verify(Document doc, Map<String, Object> config) throws WSSecurityException {
+        String action = (String) config.get(ConfigurationConstants.ACTION);
+        List<Integer> actions = WSSecurityUtil.decodeAction(action);
+
+        RequestData reqData = new RequestData();
+        reqData.setMsgContext(config);
+        reqData.setCallbackHandler(getPasswordCallbackHandler(reqData));
+        doReceiverAction(actions, reqData);
+
+        WSHandlerResult results = secEngine.processSecurityHeader(doc, reqData);
+        if (!checkReceiverResultsAnyOrder(results.getResults(), actions)) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "empty",
+                                          new Object[] {"Security processing failed (actions mismatch)"});
+        }
+        return results;
+    }
+
+    @Override
+    public Object getOption(String key) {
+        return null;
+    }
+
+    @Override
+    public Object getProperty(Object msgContext, String key) {
+        return ((Map<?, ?>) msgContext).get(key);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void setProperty(Object msgContext, String key, Object value) {
+        ((Map<String, Object>) msgContext).put(key, value);
+    }
+
+    @Override
+    public String getPassword(Object msgContext) {
+        return null;
+    }
+
+    @Override
+    public void setPassword(Object msgContext, String password) {
+        // complete
+    }
+
+}
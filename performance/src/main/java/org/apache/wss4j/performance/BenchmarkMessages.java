@@ -0,0 +1,85 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.wss4j.performance;
+
+import java.nio.charset.StandardCharsets;
+
+import org.apache.wss4j.common.WSS4JConstants;
+
+/**
+ * Creates the (unsecured) SOAP messages that are used by the benchmarks. The SOAP Body contains
+ * a number of Item elements to make up the requested size, and the SOAP Header contains a Part
+ * element for every signed part other than the SOAP Body.
+ */
+public final class BenchmarkMessages {
+
+    public static final String NAMESPACE = "urn:wss4j:performance";
+
+    private static final String ITEM_TEXT =
+        "The quick brown fox jumps over the lazy dog, again and again and again";
+
+    private BenchmarkMessages() {
+        // complete
+    }
+
+    /**
+     * Create a SOAP 1.1 message
+     * @param bodySize the approximate size of the SOAP Body in kilobytes
+     * @param signedParts the number of signed parts, i.e. the SOAP Body and (signedParts - 1)
+     * header elements
+     * @return the UTF-8 encoded message
+     */
+    public static byte[] createMessage(int bodySize, int signedParts) {
+        StringBuilder message = new StringBuilder(bodySize * 1024 + 1024);
+        message.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+            .append("<soap:Envelope xmlns:soap=\"").append(WSS4JConstants.URI_SOAP11_ENV).append("\">")
+            .append("<soap:Header>");
+        for (int i = 1; i < signedParts; i++) {
+            message.append("<perf:Part").append(i).append(" xmlns:perf=\"").append(NAMESPACE).append("\">")
+                .append(ITEM_TEXT)
+                .append("</perf:Part").append(i).append('>');
+        }
+        message.append("</soap:Header>")
+            .append("<soap:Body>")
+            .append("<perf:Request xmlns:perf=\"").append(NAMESPACE).append("\">");
+        int bodyStart = message.length();
+        for (int i = 0; message.length() - bodyStart < bodySize * 1024; i++) {
+            message.append("<perf:Item id=\"").append(i).append("\">").append(ITEM_TEXT).append("</perf:Item>");
+        }
+        message.append("</perf:Request>")
+            .append("</soap:Body>")
+            .append("</soap:Envelope>");
+        return message.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the signature parts configuration for the message created by createMessage
+     */
+    public static String getSignatureParts(int signedParts) {
+        StringBuilder parts = new StringBuilder();
+        for (int i = 1; i < signedParts; i++) {
+            parts.append("{Element}{").append(NAMESPACE).append("}Part").append(i).append(';');
+        }
+        parts.append("{Element}{").append(WSS4JConstants.URI_SOAP11_ENV).append("}Body");
+        return parts.toString();
+    }
+
+}
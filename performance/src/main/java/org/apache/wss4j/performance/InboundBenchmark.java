@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.wss4j.performance;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.wss4j.stax.setup.ConfigurationConverter;
+import org.apache.wss4j.stax.setup.InboundWSSec;
+import org.apache.wss4j.stax.setup.WSSec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * Benchmarks processing a secured message with the WSHandler and WSSecurityEngine (DOM) and with
+ * the InboundWSSec (StAX). The message is secured once per trial by the same stack that processes it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InboundBenchmark extends AbstractSecurityBenchmark {
+
+    private byte[] domMessage;
+    private byte[] staxMessage;
+    private Map<String, Object> config;
+    private InboundWSSec inboundWSSec;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        setUpParsers();
+        byte[] message = createMessage();
+        Map<String, Object> outboundConfig = scenario.getOutboundConfig(signedParts);
+        domMessage = secureDOM(message, outboundConfig);
+        staxMessage = secureStAX(message, createOutboundWSSec(outboundConfig));
+
+        config = scenario.getInboundConfig();
+        inboundWSSec = WSSec.getInboundWSSec(ConfigurationConverter.convert(config));
+    }
+
+    @Benchmark
+    public Document dom() throws Exception {
+        return verifyDOM(domMessage, config);
+    }
+
+    @Benchmark
+    public int stax() throws Exception {
+        XMLStreamReader xmlStreamReader = inboundWSSec.processInMessage(createXMLStreamReader(staxMessage));
+        int events = 0;
+        while (xmlStreamReader.hasNext()) {
+            xmlStreamReader.next();
+            events++;
+        }
+        xmlStreamReader.close();
+        return events;
+    }
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.performance;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.wss4j.common.util.JCAEnginePool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares getting a JCA engine via getInstance with borrowing it from the JCAEnginePool (and
+ * releasing it again), for a single use of the engine on a small input, i.e. where the cost of
+ * getting the engine matters most. A Mac or Cipher is initialized with a key for every use, and a
+ * pooled one is initialized again with an all-zero key when it is released.
+ *
+ * java -jar target/benchmarks.jar JCAEnginePoolBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JCAEnginePoolBenchmark {
+
+    @Param({"SHA-256", "HmacSHA256", "AES/CBC/ISO10126Padding", "AES/GCM/NoPadding"})
+    private String algorithm;
+
+    private final byte[] data = new byte[256];
+    private final SecretKeySpec hmacKey = new SecretKeySpec(new byte[32], "HmacSHA256");
+    private final SecretKeySpec aesKey = new SecretKeySpec(new byte[16], "AES");
+    private final byte[] iv = new byte[16];
+
+    @Benchmark
+    public byte[] getInstance() throws GeneralSecurityException {
+        if ("SHA-256".equals(algorithm)) {
+            return MessageDigest.getInstance(algorithm).digest(data);
+        } else if ("HmacSHA256".equals(algorithm)) {
+            Mac mac = Mac.getInstance(algorithm);
+            mac.init(hmacKey);
+            return mac.doFinal(data);
+        }
+        Cipher cipher = Cipher.getInstance(algorithm);
+        initCipher(cipher);
+        return cipher.doFinal(data);
+    }
+
+    @Benchmark
+    public byte[] pooled() throws GeneralSecurityException {
+        if ("SHA-256".equals(algorithm)) {
+            MessageDigest digest = JCAEnginePool.getMessageDigest(algorithm);
+            try {
+                return digest.digest(data);
+            } finally {
+                JCAEnginePool.release(digest);
+            }
+        } else if ("HmacSHA256".equals(algorithm)) {
+            Mac mac = JCAEnginePool.getMac(algorithm);
+            try {
+                mac.init(hmacKey);
+                return mac.doFinal(data);
+            } finally {
+                JCAEnginePool.release(mac);
+            }
+        }
+        Cipher cipher = JCAEnginePool.getCipher(algorithm, null);
+        try {
+            initCipher(cipher);
+            return cipher.doFinal(data);
+        } finally {
+            JCAEnginePool.release(cipher);
+        }
+    }
+
+    private void initCipher(Cipher cipher) throws GeneralSecurityException {
+        // A GCM Cipher must not encrypt with the same key and IV twice
+        for (int i = 0; i < iv.length && ++iv[i] == 0; i++) { //NOPMD
+            // carry
+        }
+        if (algorithm.contains("GCM")) {
+            cipher.init(Cipher.ENCRYPT_MODE, aesKey, new GCMParameterSpec(128, iv, 0, 12));
+        } else {
+            cipher.init(Cipher.ENCRYPT_MODE, aesKey, new IvParameterSpec(iv));
+        }
+    }
+
+}
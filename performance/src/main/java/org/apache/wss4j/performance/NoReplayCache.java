@@ -0,0 +1,58 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.wss4j.performance;
+
+import java.time.Instant;
+
+import org.apache.wss4j.common.cache.ReplayCache;
+
+/**
+ * A ReplayCache that never detects a replay, so that the same secured message can be processed
+ * by each invocation of an inbound benchmark.
+ */
+class NoReplayCache implements ReplayCache {
+
+    @Override
+    public void add(String identifier) {
+        // complete
+    }
+
+    @Override
+    public void add(String identifier, Instant expiry) {
+        // complete
+    }
+
+    @Override
+    public boolean contains(String identifier) {
+        return false;
+    }
+
+    @Override
+    public boolean putIfAbsent(String identifier, Instant expiry) {
+        return true;
+    }
+
+    @Override
+    public void close() {
+        // complete
+    }
+
+}
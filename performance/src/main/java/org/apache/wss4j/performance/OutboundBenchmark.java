@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.wss4j.performance;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.wss4j.stax.setup.OutboundWSSec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks securing a message with the WSHandler (DOM) and with the OutboundWSSec (StAX).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutboundBenchmark extends AbstractSecurityBenchmark {
+
+    private byte[] message;
+    private Map<String, Object> config;
+    private OutboundWSSec outboundWSSec;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        setUpParsers();
+        message = createMessage();
+        config = scenario.getOutboundConfig(signedParts);
+        outboundWSSec = createOutboundWSSec(config);
+    }
+
+    @Benchmark
+    public byte[] dom() throws Exception {
+        return secureDOM(message, config);
+    }
+
+    @Benchmark
+    public byte[] stax() throws Exception {
+        return secureStAX(message, outboundWSSec);
+    }
+
+}
@@ -0,0 +1,175 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.performance;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.wss4j.common.ConfigurationConstants;
+import org.apache.wss4j.common.WSSPolicyException;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.policy.stax.enforcer.PolicyEnforcer;
+import org.apache.wss4j.policy.stax.enforcer.PolicyEnforcerFactory;
+import org.apache.wss4j.policy.stax.enforcer.PolicyInputProcessor;
+import org.apache.wss4j.stax.ext.WSSSecurityProperties;
+import org.apache.wss4j.stax.setup.ConfigurationConverter;
+import org.apache.wss4j.stax.setup.InboundWSSec;
+import org.apache.wss4j.stax.setup.OutboundWSSec;
+import org.apache.wss4j.stax.setup.WSSec;
+import org.apache.wss4j.stax.test.utils.XmlReaderToWriter;
+import org.apache.xml.security.stax.securityEvent.SecurityEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the enforcement of a WS-SecurityPolicy on the StAX inbound path. The policy of the
+ * asymmetric-binding.wsdl (an asymmetric binding with a timestamp, signed and encrypted parts and a
+ * supporting UsernameToken) is compiled once by a PolicyEnforcerFactory. A message that complies
+ * with it is secured once per trial.
+ *
+ * The "enforce" benchmark replays the SecurityEvents of the message into a new PolicyEnforcer, which
+ * isolates the cost of the policy enforcement, whereas the "stax" benchmark processes the message
+ * with a PolicyInputProcessor, and so with an InboundWSSec per message.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PolicyEnforcerBenchmark {
+
+    private static final String ACTIONS = ConfigurationConstants.TIMESTAMP + " "
+        + ConfigurationConstants.USERNAME_TOKEN + " " + ConfigurationConstants.SIGNATURE + " "
+        + ConfigurationConstants.ENCRYPT;
+
+    private XMLInputFactory xmlInputFactory;
+    private PolicyEnforcerFactory policyEnforcerFactory;
+    private WSSSecurityProperties inboundSecurityProperties;
+    private byte[] message;
+    private List<SecurityEvent> securityEvents;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        policyEnforcerFactory = PolicyEnforcerFactory.newInstance(
+            PolicyEnforcerBenchmark.class.getClassLoader().getResource("asymmetric-binding.wsdl"));
+
+        Map<String, Object> outboundConfig = Scenario.SIGN_ENCRYPT.getOutboundConfig(1);
+        outboundConfig.put(ConfigurationConstants.ACTION, ACTIONS);
+        // The asymmetric signature algorithm of the Basic128Sha256 algorithm suite
+        outboundConfig.put(ConfigurationConstants.SIG_ALGO, "http://www.w3.org/2000/09/xmldsig#rsa-sha1");
+        outboundConfig.put(ConfigurationConstants.SIGNATURE_PARTS,
+            "{Element}{http://docs.oasis-open.org/wss/2004/01/oasis-200401-wss-wssecurity-utility-1.0.xsd}Timestamp;"
+            + BenchmarkMessages.getSignatureParts(1));
+        message = secure(BenchmarkMessages.createMessage(1, 1), outboundConfig);
+
+        Map<String, Object> inboundConfig = Scenario.SIGN_ENCRYPT.getInboundConfig();
+        inboundConfig.put(ConfigurationConstants.ACTION, ACTIONS);
+        inboundSecurityProperties = ConfigurationConverter.convert(inboundConfig);
+
+        // Record the SecurityEvents of the message, including the ones of the PolicyInputProcessor
+        RecordingPolicyEnforcer recordingPolicyEnforcer = new RecordingPolicyEnforcer(policyEnforcerFactory);
+        process(recordingPolicyEnforcer);
+        securityEvents = recordingPolicyEnforcer.securityEvents;
+    }
+
+    @Benchmark
+    public PolicyEnforcer enforce() throws Exception {
+        PolicyEnforcer policyEnforcer = policyEnforcerFactory.newPolicyEnforcer("", false, null, 0, false);
+        for (int i = 0; i < securityEvents.size(); i++) {
+            policyEnforcer.registerSecurityEvent(securityEvents.get(i));
+        }
+        policyEnforcer.doFinal();
+        return policyEnforcer;
+    }
+
+    @Benchmark
+    public int stax() throws Exception {
+        return process(policyEnforcerFactory.newPolicyEnforcer("", false, null, 0, false));
+    }
+
+    private int process(PolicyEnforcer policyEnforcer) throws Exception {
+        WSSSecurityProperties securityProperties = new WSSSecurityProperties(inboundSecurityProperties);
+        securityProperties.addInputProcessor(new PolicyInputProcessor(policyEnforcer, securityProperties));
+        InboundWSSec inboundWSSec = WSSec.getInboundWSSec(securityProperties);
+
+        XMLStreamReader xmlStreamReader = inboundWSSec.processInMessage(
+            xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(message)), null, policyEnforcer);
+        int events = 0;
+        while (xmlStreamReader.hasNext()) {
+            xmlStreamReader.next();
+            events++;
+        }
+        xmlStreamReader.close();
+        return events;
+    }
+
+    private byte[] secure(byte[] plainMessage, Map<String, Object> config) throws Exception {
+        OutboundWSSec outboundWSSec = WSSec.getOutboundWSSec(ConfigurationConverter.convert(config));
+        ByteArrayOutputStream output = new ByteArrayOutputStream(plainMessage.length * 2);
+        XMLStreamWriter xmlStreamWriter =
+            outboundWSSec.processOutMessage(output, StandardCharsets.UTF_8.name(), new ArrayList<>());
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(plainMessage));
+        XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+        return output.toByteArray();
+    }
+
+    /**
+     * A PolicyEnforcer that records all the SecurityEvents it enforces
+     */
+    private static final class RecordingPolicyEnforcer extends PolicyEnforcer {
+
+        private final List<SecurityEvent> securityEvents = new ArrayList<>();
+
+        RecordingPolicyEnforcer(PolicyEnforcerFactory policyEnforcerFactory) throws WSSPolicyException {
+            super(policyEnforcerFactory.getPolicyEnforcerPlan(), "", false, null, 0, null, false);
+        }
+
+        @Override
+        public synchronized void registerSecurityEvent(SecurityEvent securityEvent) throws WSSecurityException {
+            securityEvents.add(securityEvent);
+            super.registerSecurityEvent(securityEvent);
+        }
+    }
+
+}
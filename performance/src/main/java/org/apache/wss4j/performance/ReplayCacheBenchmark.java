@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.performance;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.wss4j.common.cache.ConcurrentReplayCache;
+import org.apache.wss4j.common.cache.ConcurrentReplayCacheFactory;
+import org.apache.wss4j.common.cache.MemoryReplayCache;
+import org.apache.wss4j.common.cache.ReplayCache;
+import org.apache.wss4j.common.cache.ReplayCacheFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the ReplayCache implementations for a typical replay check, i.e. a check for an
+ * identifier that has not been seen before followed by adding it to the cache, with 1, 8 and 32
+ * threads. The cache types are:
+ * - default: the cache returned by ReplayCacheFactory.newInstance()
+ * - memory: the MemoryReplayCache
+ * - concurrent: the ConcurrentReplayCache as returned by the ConcurrentReplayCacheFactory. Once it
+ *   holds its maximum number of live entries, it rejects new identifiers, so most operations of an
+ *   iteration then measure the rejection
+ * - concurrentUnbounded: a ConcurrentReplayCache which is large enough to accept every identifier
+ *
+ * java -jar target/benchmarks.jar ReplayCacheBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReplayCacheBenchmark {
+
+    @Param({"default", "memory", "concurrent", "concurrentUnbounded"})
+    private String cacheType;
+
+    private ReplayCache replayCache;
+    private final AtomicLong counter = new AtomicLong();
+    private final String prefix = UUID.randomUUID().toString();
+
+    @Setup(Level.Iteration)
+    public void createCache() {
+        String key = "benchmark-" + UUID.randomUUID();
+        if ("default".equals(cacheType)) {
+            replayCache = ReplayCacheFactory.newInstance().newReplayCache(key, null);
+        } else if ("memory".equals(cacheType)) {
+            replayCache = new MemoryReplayCache();
+        } else if ("concurrent".equals(cacheType)) {
+            replayCache = new ConcurrentReplayCacheFactory().newReplayCache(key, null);
+        } else {
+            replayCache = new ConcurrentReplayCache(ConcurrentReplayCache.DEFAULT_TTL, Integer.MAX_VALUE);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeCache() throws IOException {
+        replayCache.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean containsThenAdd1() {
+        return containsThenAdd();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean containsThenAdd8() {
+        return containsThenAdd();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean containsThenAdd32() {
+        return containsThenAdd();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean putIfAbsent1() {
+        return putIfAbsent();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean putIfAbsent8() {
+        return putIfAbsent();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean putIfAbsent32() {
+        return putIfAbsent();
+    }
+
+    private boolean containsThenAdd() {
+        String identifier = prefix + counter.incrementAndGet();
+        if (replayCache.contains(identifier)) {
+            return false;
+        }
+        replayCache.add(identifier, Instant.now().plusSeconds(60L));
+        return true;
+    }
+
+    private boolean putIfAbsent() {
+        String identifier = prefix + counter.incrementAndGet();
+        return replayCache.putIfAbsent(identifier, Instant.now().plusSeconds(60L));
+    }
+
+}
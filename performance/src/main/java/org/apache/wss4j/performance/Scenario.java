@@ -0,0 +1,117 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.performance;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.wss4j.common.ConfigurationConstants;
+import org.apache.wss4j.common.cache.ReplayCache;
+
+/**
+ * The security scenarios that are benchmarked. Each scenario is described by a configuration Map
+ * using the ConfigurationConstants, which is used as the message context of the (DOM) WSHandler, and
+ * which is converted into the WSSSecurityProperties of the StAX code via the ConfigurationConverter,
+ * so that both stacks are configured identically.
+ */
+public enum Scenario {
+
+    TIMESTAMP(ConfigurationConstants.TIMESTAMP),
+    USERNAME_TOKEN(ConfigurationConstants.USERNAME_TOKEN),
+    SIGNATURE(ConfigurationConstants.SIGNATURE),
+    ENCRYPT(ConfigurationConstants.ENCRYPT),
+    SIGN_ENCRYPT(ConfigurationConstants.SIGNATURE + " " + ConfigurationConstants.ENCRYPT),
+    SAML(ConfigurationConstants.SAML_TOKEN_UNSIGNED),
+    SIGNED_SAML(ConfigurationConstants.SAML_TOKEN_UNSIGNED, true);
+
+    private final String action;
+    private final boolean signAssertion;
+
+    Scenario(String action) {
+        this(action, false);
+    }
+
+    Scenario(String action, boolean signAssertion) {
+        this.action = action;
+        this.signAssertion = signAssertion;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public boolean isSigned() {
+        return this == SIGNATURE || this == SIGN_ENCRYPT;
+    }
+
+    /**
+     * Get the configuration to secure a message
+     * @param signedParts the number of parts to sign, for the scenarios that include a signature
+     */
+    public Map<String, Object> getOutboundConfig(int signedParts) {
+        Map<String, Object> config = getCommonConfig();
+        config.put(ConfigurationConstants.USER, "transmitter");
+        config.put(ConfigurationConstants.ENCRYPTION_USER, "receiver");
+        config.put(ConfigurationConstants.SIG_PROP_FILE, "transmitter-crypto.properties");
+        config.put(ConfigurationConstants.ENC_PROP_FILE, "transmitter-crypto.properties");
+        config.put(ConfigurationConstants.SIG_KEY_ID, "DirectReference");
+        config.put(ConfigurationConstants.SIG_ALGO, "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256");
+        config.put(ConfigurationConstants.SIG_DIGEST_ALGO, "http://www.w3.org/2001/04/xmlenc#sha256");
+        config.put(ConfigurationConstants.ENC_KEY_ID, "IssuerSerial");
+        config.put(ConfigurationConstants.ENC_SYM_ALGO, "http://www.w3.org/2001/04/xmlenc#aes128-cbc");
+        config.put(ConfigurationConstants.ADD_USERNAMETOKEN_NONCE, "true");
+        config.put(ConfigurationConstants.ADD_USERNAMETOKEN_CREATED, "true");
+        config.put(ConfigurationConstants.SAML_CALLBACK_REF, new BenchmarkCallbackHandler(signAssertion));
+        if (isSigned()) {
+            config.put(ConfigurationConstants.SIGNATURE_PARTS, BenchmarkMessages.getSignatureParts(signedParts));
+        }
+        return config;
+    }
+
+    /**
+     * Get the configuration to process a message that was secured with the outbound configuration
+     */
+    public Map<String, Object> getInboundConfig() {
+        Map<String, Object> config = getCommonConfig();
+        if (signAssertion) {
+            // A signed assertion is processed as a signed SAML token
+            config.put(ConfigurationConstants.ACTION, ConfigurationConstants.SAML_TOKEN_SIGNED);
+        }
+        config.put(ConfigurationConstants.SIG_VER_PROP_FILE, "receiver-crypto.properties");
+        config.put(ConfigurationConstants.DEC_PROP_FILE, "receiver-crypto.properties");
+        // The message is not signed, so the subject confirmation of the SAML token can't be validated
+        config.put(ConfigurationConstants.VALIDATE_SAML_SUBJECT_CONFIRMATION, "false");
+        // The same message is processed again and again, so replay detection must be switched off
+        ReplayCache noReplayCache = new NoReplayCache();
+        config.put(ConfigurationConstants.TIMESTAMP_CACHE_INSTANCE, noReplayCache);
+        config.put(ConfigurationConstants.NONCE_CACHE_INSTANCE, noReplayCache);
+        config.put(ConfigurationConstants.SAML_ONE_TIME_USE_CACHE_INSTANCE, noReplayCache);
+        return config;
+    }
+
+    private Map<String, Object> getCommonConfig() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ConfigurationConstants.ACTION, action);
+        config.put(ConfigurationConstants.PASSWORD_TYPE, "PasswordDigest");
+        config.put(ConfigurationConstants.PW_CALLBACK_REF, new BenchmarkCallbackHandler());
+        return config;
+    }
+
+}
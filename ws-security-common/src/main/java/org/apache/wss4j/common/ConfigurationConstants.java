@@ -888,6 +888,30 @@ public class ConfigurationConstants {
      */
     public static final String SAML_ONE_TIME_USE_CACHE_INSTANCE = "samlOneTimeUseCacheInstance";
 
+    /**
+     * This holds a reference to a SamlAssertionVerificationCache instance, which is used to cache
+     * signed SAML Assertions whose signature was verified and whose signing key was validated for
+     * trust. If an Assertion is received again, only its signature verification and trust
+     * validation are skipped. There is no default instance, i.e. the cache is disabled by default.
+     */
+    public static final String SAML_VERIFICATION_CACHE_INSTANCE = "samlVerificationCacheInstance";
+
+    /**
+     * This holds a reference to a SecretKeyCache instance, which is used to cache the secrets of
+     * SecurityContextTokens and the keys derived for DerivedKeyTokens across the messages of a
+     * WS-SecureConversation session. There is no default instance, i.e. the cache is disabled by default.
+     */
+    public static final String SECRET_KEY_CACHE_INSTANCE = "secretKeyCacheInstance";
+
+    /**
+     * This holds a reference to a PreparedSigner instance, which holds the certificate chain and
+     * the (unlocked) private key of the signature user. If it is set, and its user is the
+     * signature user, then the Signature action uses it instead of retrieving the certificates
+     * and the private key from the signature Crypto (and the password via the CallbackHandler)
+     * for every message.
+     */
+    public static final String PREPARED_SIGNER_INSTANCE = "preparedSignerInstance";
+
     /**
      * This holds a reference to a PasswordEncryptor instance, which is used to encrypt or
      * decrypt passwords in the Merlin Crypto implementation (or any custom Crypto implementations).
@@ -927,6 +951,22 @@ public class ConfigurationConstants {
      */
     public static final String DERIVED_ENCRYPTION_KEY_LENGTH = "derivedEncryptionKeyLength";
 
+    /**
+     * The number of bytes of an attachment that are held in memory when it is signed, or when its
+     * signature is verified. Larger attachments are cached in a temporary file instead. Of a
+     * decrypted xop:Include attachment, only a prefix of this size is buffered while it is parsed,
+     * to be able to parse it again with the namespace prefixes of the parent. The default is
+     * 131072 (128 KB).
+     */
+    public static final String ATTACHMENT_CACHE_THRESHOLD = "attachmentCacheThreshold";
+
+    /**
+     * The size (in bytes) of the buffer between the canonicalization of a signed element and the
+     * digest(s) of its References, when a signature is verified on the (StAX) inbound path. A value
+     * of 0 writes the canonical form unbuffered to the digests. The default is 8192.
+     */
+    public static final String SIGNATURE_DIGEST_BUFFER_SIZE = "signatureDigestBufferSize";
+
 
 }
 
@@ -18,6 +18,7 @@
  */
 package org.apache.wss4j.common;
 
+import org.apache.wss4j.common.crypto.PreparedSigner;
 
 /**
  * This class encapsulates configuration for Signature Actions.
@@ -27,6 +28,7 @@ public class SignatureActionToken extends SignatureEncryptionActionToken {
     private String c14nAlgorithm;
     private boolean useSingleCert = true;
     private String signatureAlgorithm;
+    private PreparedSigner preparedSigner;
 
     public String getC14nAlgorithm() {
         return c14nAlgorithm;
@@ -46,6 +48,11 @@ public class SignatureActionToken extends SignatureEncryptionActionToken {
     public void setSignatureAlgorithm(String signatureAlgorithm) {
         this.signatureAlgorithm = signatureAlgorithm;
     }
+    public PreparedSigner getPreparedSigner() {
+        return preparedSigner;
+    }
+    public void setPreparedSigner(PreparedSigner preparedSigner) {
+        this.preparedSigner = preparedSigner;
+    }
 
 }
-
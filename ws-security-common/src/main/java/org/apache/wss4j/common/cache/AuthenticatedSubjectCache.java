@@ -0,0 +1,230 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.security.auth.Subject;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.JCAEnginePool;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+
+/**
+ * A bounded cache of the Subjects of successful JAAS logins with a username and a (plaintext)
+ * password, so that a client which sends the same credentials in many requests is not
+ * authenticated against the JAAS LoginModules (e.g. an LDAP directory) for every request.
+ *
+ * An entry is keyed by the JAAS context name, the username, and a salted hash (HMAC-SHA256 with a
+ * random key of this cache instance) of the password, so the password itself is not kept in memory.
+ * An entry expires after a (short) configured TTL. Failed logins are never cached. As a changed or
+ * revoked password only takes effect once the entry has expired, the entries of a user can be
+ * removed explicitly via {@link #invalidate(String)}.
+ */
+public class AuthenticatedSubjectCache {
+
+    /**
+     * The default maximum number of entries of the cache
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /**
+     * The default time in seconds that an entry is cached for
+     */
+    public static final long DEFAULT_TTL = 60L;
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final Map<Key, Entry> subjects = new ConcurrentHashMap<>();
+    private final SecretKeySpec salt;
+    private final int maxEntries;
+    private final long ttl;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public AuthenticatedSubjectCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    }
+
+    /**
+     * @param maxEntries the maximum number of entries of the cache
+     * @param ttl the time in seconds that an entry is cached for
+     */
+    public AuthenticatedSubjectCache(int maxEntries, long ttl) {
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        try {
+            salt = new SecretKeySpec(XMLSecurityConstants.generateBytes(32), HMAC_ALGORITHM);
+        } catch (XMLSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Get the Subject of a previous successful login with the given credentials
+     * @param contextName the JAAS Login context name
+     * @param username the username
+     * @param password the (plaintext) password
+     * @return a copy of the cached Subject, or null if the credentials are not cached
+     * @throws WSSecurityException
+     */
+    public Subject get(String contextName, String username, String password) throws WSSecurityException {
+        Key key = new Key(contextName, username, hash(password));
+        Entry entry = subjects.get(key);
+        if (entry != null && entry.expiry < System.currentTimeMillis()) {
+            subjects.remove(key, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        // Don't hand out the cached Subject, which might be modified by the caller
+        Subject subject = entry.subject;
+        return new Subject(false, subject.getPrincipals(), subject.getPublicCredentials(),
+                           subject.getPrivateCredentials());
+    }
+
+    /**
+     * Cache the Subject of a successful login with the given credentials
+     * @param contextName the JAAS Login context name
+     * @param username the username
+     * @param password the (plaintext) password
+     * @param subject the authenticated Subject
+     * @throws WSSecurityException
+     */
+    public void put(
+        String contextName, String username, String password, Subject subject
+    ) throws WSSecurityException {
+        long now = System.currentTimeMillis();
+        if (subjects.size() >= maxEntries) {
+            evict(now);
+        }
+        Subject cachedSubject =
+            new Subject(false, subject.getPrincipals(), subject.getPublicCredentials(),
+                        subject.getPrivateCredentials());
+        subjects.put(new Key(contextName, username, hash(password)), new Entry(cachedSubject, now + ttl * 1000L));
+    }
+
+    /**
+     * Remove all the entries of the given user, e.g. after the password of the user was changed
+     * @param username the username
+     */
+    public void invalidate(String username) {
+        subjects.keySet().removeIf(key -> key.username.equals(username));
+    }
+
+    /**
+     * Remove all entries of the cache
+     */
+    public void invalidateAll() {
+        subjects.clear();
+    }
+
+    /**
+     * @return the number of calls to {@link #get} which returned a cached Subject
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of calls to {@link #get} which did not return a cached Subject
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return subjects.size();
+    }
+
+    private void evict(long now) {
+        // Remove expired entries first, and then arbitrary entries until there is room again
+        subjects.values().removeIf(entry -> entry.expiry < now);
+        Iterator<Key> iterator = subjects.keySet().iterator();
+        while (subjects.size() >= maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private ByteBuffer hash(String password) throws WSSecurityException {
+        Mac mac = null;
+        try {
+            mac = JCAEnginePool.getMac(HMAC_ALGORITHM);
+            mac.init(salt);
+            return ByteBuffer.wrap(mac.doFinal(password.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        } finally {
+            JCAEnginePool.release(mac);
+        }
+    }
+
+    private static final class Key {
+        private final String contextName;
+        private final String username;
+        private final ByteBuffer passwordHash;
+
+        Key(String contextName, String username, ByteBuffer passwordHash) {
+            this.contextName = contextName;
+            this.username = username;
+            this.passwordHash = passwordHash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) object;
+            return Objects.equals(contextName, key.contextName) && username.equals(key.username)
+                && passwordHash.equals(key.passwordHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(contextName, username, passwordHash);
+        }
+    }
+
+    private static final class Entry {
+        private final Subject subject;
+        private final long expiry;
+
+        Entry(Subject subject, long expiry) {
+            this.subject = subject;
+            this.expiry = expiry;
+        }
+    }
+}
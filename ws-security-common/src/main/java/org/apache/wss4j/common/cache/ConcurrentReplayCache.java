@@ -0,0 +1,255 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory cache to prevent against replay attacks, which is designed to be used concurrently
+ * by many threads. Unlike the MemoryReplayCache, there is no global lock: identifiers are stored in
+ * a ConcurrentHashMap, and are bucketed by the second in which they expire. Expired buckets are
+ * removed at most once per second by whichever thread gets there first, so the cost of expiry is
+ * amortized over all of the calls to the cache, rather than being paid by every call to contains.
+ *
+ * The number of entries that are added with putIfAbsent is bounded. Only expired entries are ever
+ * removed, as evicting an entry that has not expired yet would allow the message it identifies to be
+ * replayed. So the cache fails closed: once it is full, putIfAbsent returns false for every new
+ * identifier until entries expire, and the messages are rejected like replays. The maximum number of
+ * entries must therefore be sized for the expected message rate times the TTL, e.g. the default of
+ * 100000 entries with the default TTL of 5 minutes covers about 330 messages per second. The legacy
+ * add method cannot report a full cache, so it always caches the identifier, and may exceed the bound.
+ *
+ * The default TTL is 5 minutes and the max TTL is 60 minutes, as for the MemoryReplayCache.
+ */
+public class ConcurrentReplayCache implements ReplayCache {
+
+    public static final long DEFAULT_TTL = MemoryReplayCache.DEFAULT_TTL;
+    public static final long MAX_TTL = MemoryReplayCache.MAX_TTL;
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(ConcurrentReplayCache.class);
+    private static final long BUCKET_SIZE = 1000L;
+
+    private final Map<String, Long> ids = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Queue<String>> buckets = new ConcurrentSkipListMap<>();
+    private final AtomicInteger entries = new AtomicInteger();
+    private final AtomicLong nextExpiryCheck = new AtomicLong();
+    private final long ttl;
+    private final int maxEntries;
+
+    public ConcurrentReplayCache() {
+        this(DEFAULT_TTL, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param ttl the default TTL in seconds
+     * @param maxEntries the maximum number of identifiers that are cached
+     */
+    public ConcurrentReplayCache(long ttl, int maxEntries) {
+        if (ttl <= 0 || ttl > MAX_TTL) {
+            throw new IllegalArgumentException("The TTL must be between 1 and " + MAX_TTL + " seconds");
+        }
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("The maximum number of entries must be positive");
+        }
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Add the given identifier to the cache. It will be cached for a default amount of time.
+     * @param identifier The identifier to be added
+     */
+    @Override
+    public void add(String identifier) {
+        add(identifier, null);
+    }
+
+    /**
+     * Add the given identifier to the cache to be cached for the given time
+     * @param identifier The identifier to be added
+     * @param expiry A custom expiry time for the identifier
+     */
+    @Override
+    public void add(String identifier, Instant expiry) {
+        if (identifier == null || "".equals(identifier)) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long expiryTime = getExpiryTime(expiry, now);
+        processTokenExpiry(now);
+
+        if (ids.put(identifier, expiryTime) == null && entries.incrementAndGet() > maxEntries) {
+            LOG.warn("The replay cache is full, the identifier is cached beyond its maximum size");
+        }
+        addToBucket(identifier, expiryTime);
+    }
+
+    /**
+     * Add the given identifier to the cache, unless it is already contained in the cache.
+     * The check and the insertion are performed atomically.
+     * @param identifier The identifier to be added
+     * @param expiry A custom expiry time for the identifier, or null to use the default TTL
+     * @return true if the identifier was added, false if it was already contained in the cache, or
+     * if the cache is full
+     */
+    @Override
+    public boolean putIfAbsent(String identifier, Instant expiry) {
+        if (identifier == null || "".equals(identifier)) {
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        long expiryTime = getExpiryTime(expiry, now);
+        processTokenExpiry(now);
+
+        while (true) {
+            Long existing = ids.get(identifier);
+            if (existing == null) {
+                if (!reserveEntry()) {
+                    LOG.warn("The replay cache is full, the identifier is rejected");
+                    return false;
+                }
+                existing = ids.putIfAbsent(identifier, expiryTime);
+                if (existing == null) {
+                    addToBucket(identifier, expiryTime);
+                    return true;
+                }
+                // Another thread added the identifier in the meantime
+                entries.decrementAndGet();
+            }
+            if (existing > now) {
+                return false;
+            }
+            // The existing entry has expired, but has not been removed yet
+            if (ids.replace(identifier, existing, expiryTime)) {
+                addToBucket(identifier, expiryTime);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Return true if the given identifier is contained in the cache
+     * @param identifier The identifier to check
+     */
+    @Override
+    public boolean contains(String identifier) {
+        long now = System.currentTimeMillis();
+        processTokenExpiry(now);
+
+        if (identifier != null && !"".equals(identifier)) {
+            Long expiry = ids.get(identifier);
+            return expiry != null && expiry > now;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of identifiers in the cache, which may include expired identifiers that
+     * have not been removed yet
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    private long getExpiryTime(Instant expiry, long now) {
+        if (expiry != null) {
+            long expiryTime = expiry.toEpochMilli();
+            if (expiryTime >= now && expiryTime <= now + MAX_TTL * 1000L) {
+                return expiryTime;
+            }
+        }
+        return now + ttl * 1000L;
+    }
+
+    private void addToBucket(String identifier, long expiryTime) {
+        // All of the entries of a bucket have expired once the current time reaches the bucket key
+        Long bucket = (expiryTime + BUCKET_SIZE - 1) / BUCKET_SIZE;
+        Queue<String> queue = buckets.get(bucket);
+        if (queue == null) {
+            queue = new ConcurrentLinkedQueue<>();
+            Queue<String> existingQueue = buckets.putIfAbsent(bucket, queue);
+            if (existingQueue != null) {
+                queue = existingQueue;
+            }
+        }
+        queue.add(identifier);
+    }
+
+    protected void processTokenExpiry(long now) {
+        long nextCheck = nextExpiryCheck.get();
+        if (now < nextCheck || !nextExpiryCheck.compareAndSet(nextCheck, now + BUCKET_SIZE)) {
+            return;
+        }
+
+        long currentBucket = now / BUCKET_SIZE;
+        Map.Entry<Long, Queue<String>> entry = buckets.firstEntry();
+        while (entry != null && entry.getKey() <= currentBucket) {
+            if (buckets.remove(entry.getKey(), entry.getValue())) {
+                removeExpired(entry.getValue(), now);
+            }
+            entry = buckets.firstEntry();
+        }
+    }
+
+    private void removeExpired(Queue<String> queue, long now) {
+        for (String identifier : queue) {
+            // Only remove the identifier if it has not been added again with a later expiry
+            Long expiry = ids.get(identifier);
+            if (expiry != null && expiry <= now && ids.remove(identifier, expiry)) {
+                entries.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Reserve an entry for a new identifier, unless the cache is full. Expired identifiers have
+     * already been removed by processTokenExpiry (at the granularity of a bucket), and live
+     * identifiers are never evicted.
+     */
+    private boolean reserveEntry() {
+        while (true) {
+            int count = entries.get();
+            if (count >= maxEntries) {
+                return false;
+            }
+            if (entries.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        buckets.clear();
+        ids.clear();
+        entries.set(0);
+    }
+}
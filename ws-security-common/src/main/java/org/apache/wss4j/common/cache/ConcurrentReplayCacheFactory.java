@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+
+/**
+ * A factory to return a ConcurrentReplayCache instance. The ConcurrentReplayCache is bounded and
+ * rejects new identifiers once it is full (see ConcurrentReplayCache), so the maximum number of
+ * entries must be sized for the expected message rate times the TTL. The configuration Object
+ * passed to newReplayCache is not used.
+ */
+public class ConcurrentReplayCacheFactory extends ReplayCacheFactory {
+
+    private final long ttl;
+    private final int maxEntries;
+
+    public ConcurrentReplayCacheFactory() {
+        this(ConcurrentReplayCache.DEFAULT_TTL, ConcurrentReplayCache.DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param ttl the default TTL in seconds of the caches
+     * @param maxEntries the maximum number of identifiers of each cache
+     */
+    public ConcurrentReplayCacheFactory(long ttl, int maxEntries) {
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    public ReplayCache newReplayCache(String key, Object configuration) {
+        return new ConcurrentReplayCache(ttl, maxEntries);
+    }
+
+}
@@ -114,7 +114,36 @@ public class EHCacheReplayCache implements ReplayCache {
             return;
         }
 
-        int parsedTTL = (int)(expiry.getEpochSecond() - Instant.now().getEpochSecond());
+        cache.put(createElement(identifier, expiry));
+    }
+
+    /**
+     * Add the given identifier to the cache, unless it is already contained in the cache.
+     * The check and the insertion are performed atomically by EHCache.
+     * @param identifier The identifier to be added
+     * @param expiry A custom expiry time for the identifier, or null to use the default TTL
+     * @return true if the identifier was added, false if it was already contained in the cache
+     */
+    @Override
+    public boolean putIfAbsent(String identifier, Instant expiry) {
+        if (identifier == null || "".equals(identifier)) {
+            return true;
+        }
+
+        Element cacheElement = createElement(identifier, expiry);
+        Element existingElement = cache.putIfAbsent(cacheElement);
+        if (existingElement == null) {
+            return true;
+        }
+        // Replace an existing element that has expired but has not been evicted yet
+        return cache.isExpired(existingElement) && cache.replace(existingElement, cacheElement);
+    }
+
+    private Element createElement(String identifier, Instant expiry) {
+        int parsedTTL = -1;
+        if (expiry != null) {
+            parsedTTL = (int)(expiry.getEpochSecond() - Instant.now().getEpochSecond());
+        }
         if (parsedTTL < 0 || parsedTTL > MAX_TTL) {
             // Default to configured value
             parsedTTL = (int)ttl;
@@ -126,7 +155,7 @@ public class EHCacheReplayCache implements ReplayCache {
 
         Element cacheElement = new Element(identifier, identifier, parsedTTL, parsedTTL);
         cacheElement.resetAccessStatistics();
-        cache.put(cacheElement);
+        return cacheElement;
     }
 
     /**
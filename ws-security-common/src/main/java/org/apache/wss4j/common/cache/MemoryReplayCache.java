@@ -60,21 +60,54 @@ public class MemoryReplayCache implements ReplayCache {
             return;
         }
 
+        Instant cacheExpiry = getExpiry(expiry);
+        synchronized (cache) {
+            addToCache(identifier, cacheExpiry);
+        }
+        ids.add(identifier);
+    }
+
+    /**
+     * Add the given identifier to the cache, unless it is already contained in the cache.
+     * The check and the insertion are performed atomically.
+     * @param identifier The identifier to be added
+     * @param expiry A custom expiry time for the identifier, or null to use the default expiry
+     * @return true if the identifier was added, false if it was already contained in the cache
+     */
+    @Override
+    public boolean putIfAbsent(String identifier, Instant expiry) {
+        if (identifier == null || "".equals(identifier)) {
+            return true;
+        }
+
+        processTokenExpiry();
+
+        Instant cacheExpiry = getExpiry(expiry);
+        synchronized (cache) {
+            if (!ids.add(identifier)) {
+                return false;
+            }
+            addToCache(identifier, cacheExpiry);
+        }
+        return true;
+    }
+
+    private static Instant getExpiry(Instant expiry) {
         Instant now = Instant.now();
         Instant maxTTL = now.plusSeconds(MAX_TTL);
         if (expiry == null || expiry.isBefore(now) || expiry.isAfter(maxTTL)) {
-            expiry = now.plusSeconds(DEFAULT_TTL);
+            return now.plusSeconds(DEFAULT_TTL);
         }
+        return expiry;
+    }
 
-        synchronized (cache) {
-            List<String> list = cache.get(expiry);
-            if (list == null) {
-                list = new ArrayList<>(1);
-                cache.put(expiry, list);
-            }
-            list.add(identifier);
+    private void addToCache(String identifier, Instant expiry) {
+        List<String> list = cache.get(expiry);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            cache.put(expiry, list);
         }
-        ids.add(identifier);
+        list.add(identifier);
     }
 
     /**
@@ -47,4 +47,24 @@ public interface ReplayCache extends Closeable {
      */
     boolean contains(String identifier);
 
+    /**
+     * Add the given identifier to the cache, unless it is already contained in the cache. The default
+     * implementation just calls contains and then add, implementations should override it to perform
+     * the check and the insertion atomically, and in a single round trip to the underlying cache.
+     * @param identifier The identifier to be added
+     * @param expiry A custom expiry time for the identifier, or null to use the default expiry
+     * @return true if the identifier was added, false if it was already contained in the cache
+     */
+    default boolean putIfAbsent(String identifier, Instant expiry) {
+        if (contains(identifier)) {
+            return false;
+        }
+        if (expiry == null) {
+            add(identifier);
+        } else {
+            add(identifier, expiry);
+        }
+        return true;
+    }
+
 }
@@ -0,0 +1,318 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.wss4j.common.derivedKey.DerivedKeyUtils;
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * A bounded cache of the secrets of SecurityContextTokens (keyed by the identifier of the
+ * SecurityContextToken), and of the keys derived from a secret for a DerivedKeyToken (keyed by the
+ * secret, the algorithm, label, nonce, offset and length of the derivation). It avoids to call the
+ * CallbackHandler for the secret, and to derive the keys again, for every message of a long-lived
+ * WS-SecureConversation session.
+ *
+ * Entries expire after a configured TTL, and the secret of a SecurityContextToken also expires when
+ * the token itself expires (as reported by the CallbackHandler via WSPasswordCallback#setKeyExpires).
+ * The key material of an entry which expires, is evicted or removed is overwritten with zeros. The
+ * cache hands out copies of the cached keys only. When a SecurityContextToken is cancelled, the code
+ * which cancels it must call {@link #removeSecret(String)}, otherwise the secret is still accepted
+ * until the entry expires.
+ */
+public class SecretKeyCache {
+
+    /**
+     * The default maximum number of entries of the cache
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /**
+     * The default time in seconds that an entry is cached for
+     */
+    public static final long DEFAULT_TTL = 60L * 60L;
+
+    private final Map<Object, Entry> keys = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long ttl;
+
+    public SecretKeyCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    }
+
+    /**
+     * @param maxEntries the maximum number of entries of the cache
+     * @param ttl the time in seconds that an entry is cached for
+     */
+    public SecretKeyCache(int maxEntries, long ttl) {
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Get the cached secret of a SecurityContextToken
+     * @param identifier the identifier of the SecurityContextToken
+     * @return a copy of the secret, or null if it is not cached
+     */
+    public byte[] getSecret(String identifier) {
+        if (identifier == null) {
+            return null;
+        }
+        return get(identifier);
+    }
+
+    /**
+     * Cache the secret of a SecurityContextToken
+     * @param identifier the identifier of the SecurityContextToken
+     * @param secret the secret, which is copied
+     */
+    public void putSecret(String identifier, byte[] secret) {
+        putSecret(identifier, secret, null);
+    }
+
+    /**
+     * Cache the secret of a SecurityContextToken
+     * @param identifier the identifier of the SecurityContextToken
+     * @param secret the secret, which is copied
+     * @param expires the time at which the SecurityContextToken expires, or null if it is not known
+     */
+    public void putSecret(String identifier, byte[] secret, Instant expires) {
+        if (identifier != null && secret != null && secret.length > 0) {
+            removeSecret(identifier);
+            long now = System.currentTimeMillis();
+            long expiry = now + ttl * 1000L;
+            if (expires != null) {
+                expiry = Math.min(expiry, expires.toEpochMilli());
+            }
+            if (expiry > now) {
+                put(identifier, secret, now, expiry);
+            }
+        }
+    }
+
+    /**
+     * Remove the secret of a SecurityContextToken, and all the keys derived from it. This must be
+     * called when the SecurityContextToken is cancelled.
+     * @param identifier the identifier of the SecurityContextToken
+     */
+    public void removeSecret(String identifier) {
+        if (identifier == null) {
+            return;
+        }
+        Entry entry = keys.remove(identifier);
+        if (entry == null) {
+            return;
+        }
+        byte[] secret = entry.copy();
+        entry.destroy();
+        if (secret == null) {
+            return;
+        }
+        Iterator<Map.Entry<Object, Entry>> iterator = keys.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Object, Entry> derivedEntry = iterator.next();
+            if (derivedEntry.getKey() instanceof DerivationKey
+                && ((DerivationKey) derivedEntry.getKey()).isDerivedFrom(secret)) {
+                iterator.remove();
+                destroy(derivedEntry.getKey(), derivedEntry.getValue());
+            }
+        }
+        Arrays.fill(secret, (byte) 0);
+    }
+
+    /**
+     * Get a derived key from the cache, or derive it and cache it if it is not cached yet
+     * @see DerivedKeyUtils#deriveKey(String, String, int, byte[], byte[], int)
+     * @return a copy of the derived key
+     */
+    public byte[] getDerivedKey(
+        String algorithm, String label, int length, byte[] secret, byte[] nonce, int offset
+    ) throws WSSecurityException {
+        DerivationKey derivationKey = new DerivationKey(algorithm, label, length, secret, nonce, offset);
+        byte[] derivedKey = get(derivationKey);
+        if (derivedKey == null) {
+            derivedKey = DerivedKeyUtils.deriveKey(algorithm, label, length, secret, nonce, offset);
+            long now = System.currentTimeMillis();
+            if (put(derivationKey, derivedKey, now, now + ttl * 1000L)) {
+                return derivedKey;
+            }
+        }
+        derivationKey.destroy();
+        return derivedKey;
+    }
+
+    /**
+     * Derive a key via the given cache, or directly if no cache is configured
+     * @param secretKeyCache the cache, may be null
+     * @see #getDerivedKey(String, String, int, byte[], byte[], int)
+     */
+    public static byte[] deriveKey(
+        SecretKeyCache secretKeyCache,
+        String algorithm, String label, int length, byte[] secret, byte[] nonce, int offset
+    ) throws WSSecurityException {
+        if (secretKeyCache == null) {
+            return DerivedKeyUtils.deriveKey(algorithm, label, length, secret, nonce, offset);
+        }
+        return secretKeyCache.getDerivedKey(algorithm, label, length, secret, nonce, offset);
+    }
+
+    /**
+     * Remove all entries of the cache
+     */
+    public void clear() {
+        Iterator<Map.Entry<Object, Entry>> iterator = keys.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Object, Entry> entry = iterator.next();
+            iterator.remove();
+            destroy(entry.getKey(), entry.getValue());
+        }
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    private byte[] get(Object key) {
+        Entry entry = keys.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiry < System.currentTimeMillis()) {
+            if (keys.remove(key, entry)) {
+                destroy(key, entry);
+            }
+            return null;
+        }
+        return entry.copy();
+    }
+
+    /**
+     * @return true if the entry was added, false if there is an entry for the key already
+     */
+    private boolean put(Object key, byte[] value, long now, long expiry) {
+        if (keys.size() >= maxEntries) {
+            evict(now);
+        }
+        Entry entry = new Entry(value.clone(), expiry);
+        if (keys.putIfAbsent(key, entry) != null) {
+            entry.destroy();
+            return false;
+        }
+        return true;
+    }
+
+    private void evict(long now) {
+        // Remove expired entries first, and then arbitrary entries until there is room again
+        Iterator<Map.Entry<Object, Entry>> iterator = keys.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Object, Entry> entry = iterator.next();
+            if (entry.getValue().expiry < now) {
+                iterator.remove();
+                destroy(entry.getKey(), entry.getValue());
+            }
+        }
+        iterator = keys.entrySet().iterator();
+        while (keys.size() >= maxEntries && iterator.hasNext()) {
+            Map.Entry<Object, Entry> entry = iterator.next();
+            iterator.remove();
+            destroy(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static void destroy(Object key, Entry entry) {
+        entry.destroy();
+        if (key instanceof DerivationKey) {
+            ((DerivationKey) key).destroy();
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] key;
+        private final long expiry;
+        private boolean destroyed;
+
+        Entry(byte[] key, long expiry) {
+            this.key = key;
+            this.expiry = expiry;
+        }
+
+        synchronized byte[] copy() {
+            // A concurrent eviction might have overwritten the key already
+            return destroyed ? null : key.clone();
+        }
+
+        synchronized void destroy() {
+            destroyed = true;
+            Arrays.fill(key, (byte) 0);
+        }
+    }
+
+    private static final class DerivationKey {
+        private final String algorithm;
+        private final String label;
+        private final int length;
+        private final byte[] secret;
+        private final byte[] nonce;
+        private final int offset;
+        private final int hashCode;
+
+        DerivationKey(String algorithm, String label, int length, byte[] secret, byte[] nonce, int offset) {
+            this.algorithm = algorithm;
+            this.label = label;
+            this.length = length;
+            this.secret = secret.clone();
+            this.nonce = nonce.clone();
+            this.offset = offset;
+            // The hash code does not depend on the secret, so it is not leaked
+            this.hashCode = Objects.hash(algorithm, label, length, Arrays.hashCode(nonce), offset);
+        }
+
+        boolean isDerivedFrom(byte[] secret) {
+            return MessageDigest.isEqual(this.secret, secret);
+        }
+
+        void destroy() {
+            Arrays.fill(secret, (byte) 0);
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof DerivationKey)) {
+                return false;
+            }
+            DerivationKey other = (DerivationKey) object;
+            return length == other.length && offset == other.offset
+                && Objects.equals(algorithm, other.algorithm) && Objects.equals(label, other.label)
+                && Arrays.equals(nonce, other.nonce) && MessageDigest.isEqual(secret, other.secret);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * A bounded cache of certificate chains that have been successfully validated by Merlin. Entries
+ * are keyed by a SHA-256 fingerprint of the (encoded) certificate chain, and expire after a
+ * configured TTL, or earlier if one of the certificates of the validated path expires, or if
+ * a CRL used for revocation checking is due to be updated.
+ *
+ * A new cache is created by Merlin whenever the keystore, truststore or CRLs change, so that
+ * entries never outlive the trust configuration they were validated against.
+ */
+final class CertPathCache {
+
+    private final Map<ByteBuffer, Long> validatedPaths = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long ttl;
+
+    /**
+     * @param maxEntries the maximum number of entries of the cache
+     * @param ttl the maximum time in milliseconds that an entry is cached for
+     */
+    CertPathCache(int maxEntries, long ttl) {
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Compute the key of a certificate chain in this cache
+     */
+    static ByteBuffer getFingerprint(
+        X509Certificate[] certs, boolean enableRevocation
+    ) throws WSSecurityException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (X509Certificate cert : certs) {
+                digest.update(cert.getEncoded());
+            }
+            digest.update(enableRevocation ? (byte)1 : (byte)0);
+            return ByteBuffer.wrap(digest.digest());
+        } catch (NoSuchAlgorithmException | CertificateEncodingException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE, e, "certpath"
+            );
+        }
+    }
+
+    /**
+     * @return true if the certificate chain with the given fingerprint was validated, and the
+     * cached result has not expired
+     */
+    boolean isValidated(ByteBuffer fingerprint) {
+        Long expiry = validatedPaths.get(fingerprint);
+        if (expiry == null) {
+            return false;
+        }
+        if (expiry < System.currentTimeMillis()) {
+            validatedPaths.remove(fingerprint, expiry);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Cache a successfully validated certificate chain.
+     * @param fingerprint the fingerprint of the certificate chain
+     * @param validatedPath the certificates of the validated path, including the trust anchor
+     * @param maxExpiry an upper bound on the expiry in milliseconds (e.g. the next CRL update),
+     * or a negative value if there is no such bound
+     */
+    void put(ByteBuffer fingerprint, Iterable<X509Certificate> validatedPath, long maxExpiry) {
+        long now = System.currentTimeMillis();
+        long expiry = now + ttl;
+        if (maxExpiry >= 0 && maxExpiry < expiry) {
+            expiry = maxExpiry;
+        }
+        for (X509Certificate cert : validatedPath) {
+            if (cert != null && cert.getNotAfter().getTime() < expiry) {
+                expiry = cert.getNotAfter().getTime();
+            }
+        }
+        if (expiry <= now) {
+            return;
+        }
+
+        if (validatedPaths.size() >= maxEntries) {
+            evict(now);
+        }
+        validatedPaths.put(fingerprint, expiry);
+    }
+
+    private void evict(long now) {
+        // Remove expired entries first, and then arbitrary entries until there is room again
+        validatedPaths.values().removeIf(expiry -> expiry < now);
+        Iterator<ByteBuffer> iterator = validatedPaths.keySet().iterator();
+        while (validatedPaths.size() >= maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    int size() {
+        return validatedPaths.size();
+    }
+}
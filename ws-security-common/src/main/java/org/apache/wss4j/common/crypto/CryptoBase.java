@@ -40,6 +40,7 @@ import java.util.regex.Pattern;
 import javax.security.auth.x500.X500Principal;
 
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.JCAEnginePool;
 
 /**
  * This Abstract Base Class implements the accessor and keystore-independent methods and
@@ -221,14 +222,17 @@ public abstract class CryptoBase implements Crypto {
         if (cert.getVersion() < 3 || derEncodedValue == null) {
             X509SubjectPublicKeyInfo spki = new X509SubjectPublicKeyInfo(cert.getPublicKey());
             byte[] value = spki.getSubjectPublicKey();
+            MessageDigest digest = null;
             try {
-                MessageDigest digest = MessageDigest.getInstance("SHA-1");
+                digest = JCAEnginePool.getMessageDigest("SHA-1");
                 return digest.digest(value);
             } catch (Exception ex) {
                 throw new WSSecurityException(
                     WSSecurityException.ErrorCode.UNSUPPORTED_SECURITY_TOKEN, ex, "noSKIHandling",
                     new Object[] {"No SKI certificate extension and no SHA1 message digest available"}
                 );
+            } finally {
+                JCAEnginePool.release(digest);
             }
         }
 
@@ -0,0 +1,253 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * An immutable index over the entries of a KeyStore, used by Merlin to avoid a linear scan
+ * of all of the aliases of the KeyStore for every certificate lookup. The index is built in a
+ * single pass over the KeyStore, and records the first alias (in enumeration order) that matches
+ * a given key, which is the same alias that a linear scan of the KeyStore would have returned.
+ *
+ * An index is bound to the KeyStore instance it was built from. As the KeyStore API offers no
+ * way of detecting modifications, the index also records the size of the KeyStore, and is
+ * considered stale if either the KeyStore instance or its size changes. Callers that modify
+ * the entries of a KeyStore in place should set it again on the Crypto instance to force a
+ * rebuild of the index.
+ */
+final class KeyStoreIndex {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(KeyStoreIndex.class);
+
+    private final KeyStore store;
+    private final int size;
+
+    private final Map<BigInteger, List<IssuerEntry>> issuerSerialIndex = new HashMap<>();
+    private final Map<ByteBuffer, Certificate[]> thumbprintIndex = new HashMap<>();
+    private final Map<ByteBuffer, Certificate[]> skiIndex = new HashMap<>();
+    private final Map<Object, List<Certificate[]>> subjectIndex = new HashMap<>();
+    private final Map<Certificate, String> certificateIndex = new HashMap<>();
+    private final Map<PublicKey, String> publicKeyIndex = new HashMap<>();
+
+    // Only built on demand by MerlinAKI, as it requires BouncyCastle
+    private volatile Map<ByteBuffer, Certificate[]> skiExtensionIndex;
+
+    private KeyStoreIndex(KeyStore store, int size) {
+        this.store = store;
+        this.size = size;
+    }
+
+    /**
+     * Build a new index from the given KeyStore.
+     * @param store the KeyStore to index
+     * @param crypto the Merlin instance, used to normalize DNs and to compute SKI bytes
+     * @return a new index for the KeyStore
+     * @throws WSSecurityException if the KeyStore can't be read
+     */
+    static KeyStoreIndex build(KeyStore store, Merlin crypto) throws WSSecurityException {
+        MessageDigest sha = null;
+        try {
+            sha = MessageDigest.getInstance("SHA1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE, e, "decoding.general"
+            );
+        }
+
+        try {
+            KeyStoreIndex index = new KeyStoreIndex(store, store.size());
+            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
+                String alias = e.nextElement();
+                Certificate[] certs = store.getCertificateChain(alias);
+                if (certs == null || certs.length == 0) {
+                    // no cert chain, so lets check if getCertificate gives us a result.
+                    Certificate cert = store.getCertificate(alias);
+                    if (cert != null) {
+                        certs = new Certificate[]{cert};
+                    }
+                }
+                if (certs == null || certs.length == 0) {
+                    continue;
+                }
+
+                index.certificateIndex.putIfAbsent(certs[0], alias);
+                index.publicKeyIndex.putIfAbsent(certs[0].getPublicKey(), alias);
+
+                if (certs[0] instanceof X509Certificate) {
+                    index.addX509Entry(alias, certs, crypto, sha);
+                }
+            }
+            LOG.debug("Indexed {} KeyStore entries", index.size);
+            return index;
+        } catch (KeyStoreException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
+            );
+        }
+    }
+
+    private void addX509Entry(
+        String alias, Certificate[] certs, Merlin crypto, MessageDigest sha
+    ) throws WSSecurityException {
+        X509Certificate x509cert = (X509Certificate) certs[0];
+
+        Object issuerName = crypto.createBCX509Name(x509cert.getIssuerX500Principal().getName());
+        issuerSerialIndex.computeIfAbsent(x509cert.getSerialNumber(), k -> new ArrayList<>(1))
+            .add(new IssuerEntry(issuerName, certs));
+
+        Object subjectName = crypto.createBCX509Name(x509cert.getSubjectX500Principal().getName());
+        subjectIndex.computeIfAbsent(subjectName, k -> new ArrayList<>(1)).add(certs);
+
+        try {
+            byte[] thumbprint = sha.digest(x509cert.getEncoded());
+            thumbprintIndex.putIfAbsent(ByteBuffer.wrap(thumbprint), certs);
+        } catch (CertificateEncodingException ex) {
+            LOG.debug("Cannot compute the thumbprint of the certificate with alias {}", alias, ex);
+        }
+
+        try {
+            byte[] skiBytes = crypto.getSKIBytesFromCert(x509cert);
+            skiIndex.putIfAbsent(ByteBuffer.wrap(skiBytes), certs);
+        } catch (WSSecurityException ex) {
+            LOG.debug("Cannot compute the SKI of the certificate with alias {}", alias, ex);
+        }
+    }
+
+    /**
+     * @return true if this index was built from the given KeyStore, and the size of the KeyStore
+     * has not changed since
+     */
+    boolean isIndexOf(KeyStore keyStore) {
+        if (keyStore != store) {
+            return false;
+        }
+        try {
+            return keyStore.size() == size;
+        } catch (KeyStoreException ex) {
+            return false;
+        }
+    }
+
+    KeyStore getKeyStore() {
+        return store;
+    }
+
+    Certificate[] getByIssuerSerial(Object issuerName, BigInteger serialNumber) {
+        List<IssuerEntry> entries = issuerSerialIndex.get(serialNumber);
+        if (entries != null) {
+            for (IssuerEntry entry : entries) {
+                if (entry.issuerName.equals(issuerName)) {
+                    return entry.certs;
+                }
+            }
+        }
+        return null;
+    }
+
+    Certificate[] getByThumbprint(byte[] thumbprint) {
+        return thumbprintIndex.get(ByteBuffer.wrap(thumbprint));
+    }
+
+    Certificate[] getBySKI(byte[] skiBytes) {
+        return skiIndex.get(ByteBuffer.wrap(skiBytes));
+    }
+
+    List<Certificate[]> getBySubject(Object subjectName) {
+        List<Certificate[]> certs = subjectIndex.get(subjectName);
+        if (certs == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(certs);
+    }
+
+    String getAlias(Certificate cert) {
+        return certificateIndex.get(cert);
+    }
+
+    String getAlias(PublicKey publicKey) {
+        return publicKeyIndex.get(publicKey);
+    }
+
+    /**
+     * Get a certificate (chain) by the bytes of the SubjectKeyIdentifier extension of the
+     * certificate. Unlike {@link #getBySKI(byte[])}, no SKI is computed for certificates that
+     * do not have the extension.
+     */
+    Certificate[] getBySKIExtension(byte[] keyIdentifier) throws WSSecurityException {
+        Map<ByteBuffer, Certificate[]> index = skiExtensionIndex;
+        if (index == null) {
+            index = new HashMap<>();
+            try {
+                for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
+                    String alias = e.nextElement();
+                    Certificate[] certs = store.getCertificateChain(alias);
+                    if (certs == null || certs.length == 0) {
+                        Certificate cert = store.getCertificate(alias);
+                        if (cert != null) {
+                            certs = new Certificate[]{cert};
+                        }
+                    }
+                    if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
+                        byte[] subjectKeyIdentifier =
+                            BouncyCastleUtils.getSubjectKeyIdentifierBytes((X509Certificate)certs[0]);
+                        if (subjectKeyIdentifier != null) {
+                            index.putIfAbsent(ByteBuffer.wrap(subjectKeyIdentifier), certs);
+                        }
+                    }
+                }
+            } catch (KeyStoreException e) {
+                throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.FAILURE, e, "keystore"
+                );
+            }
+            skiExtensionIndex = index;
+        }
+        return index.get(ByteBuffer.wrap(keyIdentifier));
+    }
+
+    private static final class IssuerEntry {
+        private final Object issuerName;
+        private final Certificate[] certs;
+
+        IssuerEntry(Object issuerName, Certificate[] certs) {
+            this.issuerName = issuerName;
+            this.certs = certs;
+        }
+    }
+}
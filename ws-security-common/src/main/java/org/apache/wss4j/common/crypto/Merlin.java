@@ -22,6 +22,7 @@ package org.apache.wss4j.common.crypto;
 import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.security.GeneralSecurityException;
@@ -29,22 +30,24 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.Key;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.UnrecoverableKeyException;
+import java.security.cert.CRL;
 import java.security.cert.CertPath;
 import java.security.cert.CertPathValidator;
+import java.security.cert.CertPathValidatorResult;
 import java.security.cert.CertStore;
+import java.security.cert.CertStoreException;
 import java.security.cert.Certificate;
-import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.CollectionCertStoreParameters;
+import java.security.cert.PKIXCertPathValidatorResult;
 import java.security.cert.PKIXParameters;
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509CRL;
@@ -52,6 +55,7 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
@@ -116,9 +120,21 @@ public class Merlin extends CryptoBase {
      */
     public static final String X509_CRL_FILE = "x509crl.file";
 
+    /*
+     * Validated certificate path cache configuration
+     */
+    public static final String CERTPATH_CACHE_SIZE = "certpath.cache.size";
+    public static final String CERTPATH_CACHE_TTL = "certpath.cache.ttl";
+
+    /*
+     * Unlocked private key cache configuration
+     */
+    public static final String PRIVATE_KEY_CACHE = "privatekey.cache";
+
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(Merlin.class);
     private static final String COMMA_SEPARATOR = ",";
+    private static final long DEFAULT_CERTPATH_CACHE_TTL = 3600L;
 
     protected Properties properties;
     protected KeyStore keystore;
@@ -130,6 +146,14 @@ public class Merlin extends CryptoBase {
 
     private boolean certProviderHandlesNameConstraints = false;
 
+    private volatile KeyStoreIndex keystoreIndex;
+    private volatile KeyStoreIndex truststoreIndex;
+    private volatile PKIXState pkixState;
+    private int certPathCacheSize;
+    private long certPathCacheTTL = DEFAULT_CERTPATH_CACHE_TTL;
+    private boolean privateKeyCacheEnabled;
+    private volatile PrivateKeyCache privateKeyCache;
+
     public Merlin() {
         // default constructor
     }
@@ -200,6 +224,18 @@ public class Merlin extends CryptoBase {
         if (cpNameConstraintsProp != null) {
             certProviderHandlesNameConstraints = Boolean.parseBoolean(cpNameConstraintsProp);
         }
+        String certPathCacheSizeProp = properties.getProperty(prefix + CERTPATH_CACHE_SIZE);
+        if (certPathCacheSizeProp != null) {
+            setCertPathCacheSize(Integer.parseInt(certPathCacheSizeProp.trim()));
+        }
+        String certPathCacheTTLProp = properties.getProperty(prefix + CERTPATH_CACHE_TTL);
+        if (certPathCacheTTLProp != null) {
+            setCertPathCacheTTL(Long.parseLong(certPathCacheTTLProp.trim()));
+        }
+        String privateKeyCacheProp = properties.getProperty(prefix + PRIVATE_KEY_CACHE);
+        if (privateKeyCacheProp != null) {
+            setPrivateKeyCacheEnabled(Boolean.parseBoolean(privateKeyCacheProp.trim()));
+        }
         //
         // Load the KeyStore
         //
@@ -396,6 +432,7 @@ public class Merlin extends CryptoBase {
      */
     public void setKeyStore(KeyStore keyStore) {
         keystore = keyStore;
+        keystoreIndex = null;
     }
 
     /**
@@ -414,6 +451,7 @@ public class Merlin extends CryptoBase {
      */
     public void setTrustStore(KeyStore trustStore) {
         truststore = trustStore;
+        truststoreIndex = null;
     }
 
     /**
@@ -424,6 +462,7 @@ public class Merlin extends CryptoBase {
      */
     public void setCRLCertStore(CertStore crlCertStore) {
         this.crlCertStore = crlCertStore;
+        pkixState = null;
     }
 
     /**
@@ -436,6 +475,79 @@ public class Merlin extends CryptoBase {
         return crlCertStore;
     }
 
+    /**
+     * Set the maximum number of successfully validated certificate chains that are cached by
+     * this Crypto instance. A cached chain is trusted without validating the certificate path
+     * again, until either the cache TTL expires, one of the certificates of the path expires, or
+     * the next update of a CRL is due. The default is 0, which disables the cache.
+     * @param certPathCacheSize the maximum number of cached certificate chains
+     */
+    public void setCertPathCacheSize(int certPathCacheSize) {
+        this.certPathCacheSize = certPathCacheSize;
+        pkixState = null;
+    }
+
+    public int getCertPathCacheSize() {
+        return certPathCacheSize;
+    }
+
+    /**
+     * Set the maximum time in seconds that a validated certificate chain is cached for.
+     * The default is 3600 seconds.
+     * @param certPathCacheTTL the maximum time in seconds that a validated chain is cached for
+     */
+    public void setCertPathCacheTTL(long certPathCacheTTL) {
+        this.certPathCacheTTL = certPathCacheTTL;
+        pkixState = null;
+    }
+
+    public long getCertPathCacheTTL() {
+        return certPathCacheTTL;
+    }
+
+    /**
+     * Set whether the private keys and certificate chains of the keystore are cached per alias,
+     * once they were unlocked (for a given password). The cache is reset whenever the keystore
+     * is set or its size changes. If a key entry is replaced in place, then the cache must be
+     * reset via clearPrivateKeyCache or invalidatePrivateKey. The default is false.
+     * @param privateKeyCacheEnabled whether to cache unlocked private keys
+     */
+    public void setPrivateKeyCacheEnabled(boolean privateKeyCacheEnabled) {
+        this.privateKeyCacheEnabled = privateKeyCacheEnabled;
+        privateKeyCache = null;
+    }
+
+    public boolean isPrivateKeyCacheEnabled() {
+        return privateKeyCacheEnabled;
+    }
+
+    /**
+     * Remove the cached private key and certificate chain of the given alias
+     * @param identifier the keystore alias
+     */
+    public void invalidatePrivateKey(String identifier) {
+        PrivateKeyCache cache = privateKeyCache;
+        if (cache != null && identifier != null) {
+            cache.remove(identifier);
+        }
+    }
+
+    /**
+     * Remove all cached private keys and certificate chains
+     */
+    public void clearPrivateKeyCache() {
+        privateKeyCache = null;
+    }
+
+    /**
+     * @param privateKey a private key
+     * @return whether the private key is cached by a Merlin instance, and so is shared with
+     * other callers and must not be destroyed
+     */
+    public static boolean isCachedPrivateKey(PrivateKey privateKey) {
+        return privateKey != null && PrivateKeyCache.isShared(privateKey);
+    }
+
     /**
      * Singleton certificate factory for this Crypto instance.
      * <p/>
@@ -584,12 +696,14 @@ public class Merlin extends CryptoBase {
     public String getX509Identifier(X509Certificate cert) throws WSSecurityException {
         String identifier = null;
 
-        if (keystore != null) {
-            identifier = getIdentifier(cert, keystore);
+        KeyStoreIndex index = getKeyStoreIndex();
+        if (index != null) {
+            identifier = getIdentifier(cert, index);
         }
 
-        if (identifier == null && truststore != null) {
-            identifier = getIdentifier(cert, truststore);
+        index = getTrustStoreIndex();
+        if (identifier == null && index != null) {
+            identifier = getIdentifier(cert, index);
         }
 
         return identifier;
@@ -615,7 +729,7 @@ public class Merlin extends CryptoBase {
                                           new Object[] {"The CallbackHandler is null"});
         }
 
-        String identifier = getIdentifier(certificate, keystore);
+        String identifier = getIdentifier(certificate, getKeyStoreIndex());
         if (identifier == null) {
             try {
                 String msg = "Cannot find key for certificate";
@@ -654,7 +768,7 @@ public class Merlin extends CryptoBase {
                                           new Object[] {"The CallbackHandler is null"});
         }
 
-        String identifier = getIdentifier(publicKey, keystore);
+        String identifier = getIdentifier(publicKey, getKeyStoreIndex());
         if (identifier == null) {
             try {
                 String msg = "Cannot find key for corresponding public key";
@@ -707,6 +821,13 @@ public class Merlin extends CryptoBase {
                     pwd = decryptPassword(pwd, passwordEncryptor);
                 }
             }
+            PrivateKeyCache cache = getPrivateKeyCache();
+            if (cache != null) {
+                PrivateKey cachedKey = cache.getPrivateKey(identifier, pwd);
+                if (cachedKey != null) {
+                    return cachedKey;
+                }
+            }
             Key keyTmp = keystore.getKey(identifier, pwd == null
                                          ? new char[]{} : pwd.toCharArray());
             if (!(keyTmp instanceof PrivateKey)) {
@@ -716,6 +837,9 @@ public class Merlin extends CryptoBase {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "empty",
                                               new Object[] {msg});
             }
+            if (cache != null) {
+                cache.putPrivateKey(identifier, pwd, (PrivateKey) keyTmp);
+            }
             return (PrivateKey) keyTmp;
         } catch (KeyStoreException | UnrecoverableKeyException | NoSuchAlgorithmException ex) {
             throw new WSSecurityException(
@@ -768,6 +892,24 @@ public class Merlin extends CryptoBase {
             }
         }
 
+        //
+        // Check whether the certificate chain has been validated before
+        //
+        PKIXState state = getPKIXState();
+        ByteBuffer fingerprint = null;
+        if (state.certPathCache != null) {
+            fingerprint = CertPathCache.getFingerprint(certs, enableRevocation);
+            if (state.certPathCache.isValidated(fingerprint)) {
+                LOG.debug(
+                    "Cached trust path for certificate with {}", certs[0].getSubjectX500Principal().getName()
+                );
+                if (!matchesSubjectDnPattern(certs[0], subjectCertConstraints)) {
+                    throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
+                }
+                return;
+            }
+        }
+
         //
         // SECOND step - Search for the issuer cert (chain) of the transmitted certificate in the
         // keystore or the truststore
@@ -778,13 +920,15 @@ public class Merlin extends CryptoBase {
 
             Object subject = convertSubjectToPrincipal(issuerString);
 
-            if (keystore != null) {
-                foundIssuingCertChains = getCertificates(subject, keystore, false);
+            KeyStoreIndex index = getKeyStoreIndex();
+            if (index != null) {
+                foundIssuingCertChains = getCertificates(subject, index, false);
             }
 
             //If we can't find the issuer in the keystore then look at the truststore
-            if ((foundIssuingCertChains == null || foundIssuingCertChains.isEmpty()) && truststore != null) {
-                foundIssuingCertChains = getCertificates(subject, truststore, true);
+            index = getTrustStoreIndex();
+            if ((foundIssuingCertChains == null || foundIssuingCertChains.isEmpty()) && index != null) {
+                foundIssuingCertChains = getCertificates(subject, index, true);
             }
 
             if (foundIssuingCertChains == null || foundIssuingCertChains.isEmpty()
@@ -809,20 +953,6 @@ public class Merlin extends CryptoBase {
         );
 
         try {
-            Set<TrustAnchor> set = new HashSet<>();
-            if (truststore != null) {
-                addTrustAnchors(set, truststore);
-            }
-
-            //
-            // Add certificates from the keystore - only if there is no TrustStore, apart from
-            // the case that the truststore is the JDK CA certs. This behaviour is preserved
-            // for backwards compatibility reasons
-            //
-            if (keystore != null && (truststore == null || loadCACerts)) {
-                addTrustAnchors(set, keystore);
-            }
-
             // Verify the trust path using the above settings
             String provider = getCryptoProvider();
             CertPathValidator validator = null;
@@ -832,7 +962,7 @@ public class Merlin extends CryptoBase {
                 validator = CertPathValidator.getInstance("PKIX", provider);
             }
 
-            PKIXParameters param = createPKIXParameters(set, enableRevocation);
+            PKIXParameters param = getPKIXParameters(state, enableRevocation);
 
             // Generate cert path
             if (foundIssuingCertChains != null && !foundIssuingCertChains.isEmpty()) {
@@ -847,7 +977,8 @@ public class Merlin extends CryptoBase {
                     CertPath path = getCertificateFactory().generateCertPath(certList);
 
                     try {
-                        validator.validate(path, param);
+                        CertPathValidatorResult result = validator.validate(path, param);
+                        cacheValidatedCertPath(state, fingerprint, certList, result, enableRevocation);
                         // We have a valid cert path at this point so break
                         validatorException = null;
                         break;
@@ -863,12 +994,12 @@ public class Merlin extends CryptoBase {
                 List<X509Certificate> certList = Arrays.asList(certs);
                 CertPath path = getCertificateFactory().generateCertPath(certList);
 
-                validator.validate(path, param);
+                CertPathValidatorResult result = validator.validate(path, param);
+                cacheValidatedCertPath(state, fingerprint, certList, result, enableRevocation);
             }
         } catch (NoSuchProviderException | NoSuchAlgorithmException
             | CertificateException | InvalidAlgorithmParameterException
-            | java.security.cert.CertPathValidatorException
-            | KeyStoreException e) {
+            | java.security.cert.CertPathValidatorException e) {
                 throw new WSSecurityException(
                     WSSecurityException.ErrorCode.FAILURE, e, "certpath"
                 );
@@ -921,8 +1052,8 @@ public class Merlin extends CryptoBase {
         // Search the keystore for the transmitted public key (direct trust). If not found
         // then search the truststore for the transmitted public key (direct trust)
         //
-        if (!findPublicKeyInKeyStore(publicKey, keystore, false)
-            && !findPublicKeyInKeyStore(publicKey, truststore, true)) {
+        if (!findPublicKeyInKeyStore(publicKey, false)
+            && !findPublicKeyInKeyStore(publicKey, true)) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
         }
     }
@@ -955,13 +1086,15 @@ public class Merlin extends CryptoBase {
             issuerName = createBCX509Name(issuer);
         }
         Certificate[] certs = null;
-        if (keystore != null) {
-            certs = getCertificates(issuerName, serialNumber, keystore, false);
+        KeyStoreIndex index = getKeyStoreIndex();
+        if (index != null) {
+            certs = getCertificates(issuerName, serialNumber, index, false);
         }
 
         //If we can't find the issuer in the keystore then look at the truststore
-        if ((certs == null || certs.length == 0) && truststore != null) {
-            certs = getCertificates(issuerName, serialNumber, truststore, true);
+        index = getTrustStoreIndex();
+        if ((certs == null || certs.length == 0) && index != null) {
+            certs = getCertificates(issuerName, serialNumber, index, true);
         }
 
         if (certs == null || certs.length == 0) {
@@ -974,51 +1107,24 @@ public class Merlin extends CryptoBase {
     /**
      * Get an X509 Certificate (chain) of the X500Principal argument in the supplied KeyStore
      * @param issuerRDN either an X500Principal or a BouncyCastle X509Name instance.
-     * @param store The KeyStore
+     * @param index The index of the KeyStore
      * @return an X509 Certificate (chain)
-     * @throws WSSecurityException
      */
     private Certificate[] getCertificates(
         Object issuerRDN,
         BigInteger serialNumber,
-        KeyStore store,
+        KeyStoreIndex index,
         boolean truststore
-    ) throws WSSecurityException {
+    ) {
         String keystore = "keystore";
         if (truststore) {
             keystore = "truststore";
         }
         LOG.debug("Searching {} for cert with issuer {} and serial {}", keystore, issuerRDN, serialNumber);
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = store.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
-                    X509Certificate x509cert = (X509Certificate) certs[0];
-                    LOG.debug("Keystore alias {} has issuer {} and serial {}", alias,
-                              x509cert.getIssuerX500Principal().getName(), x509cert.getSerialNumber());
-                    if (x509cert.getSerialNumber().compareTo(serialNumber) == 0) {
-                        Object certName =
-                            createBCX509Name(x509cert.getIssuerX500Principal().getName());
-                        if (certName.equals(issuerRDN)) {
-                            LOG.debug("Issuer Serial match found using keystore alias {}", alias);
-                            return certs;
-                        }
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
-            );
+        Certificate[] certs = index.getByIssuerSerial(issuerRDN, serialNumber);
+        if (certs != null) {
+            LOG.debug("Issuer Serial match found in {}", keystore);
+            return certs;
         }
 
         LOG.debug("No issuer serial match found in {}", keystore);
@@ -1033,23 +1139,16 @@ public class Merlin extends CryptoBase {
      * @throws WSSecurityException if problems during keystore handling or wrong certificate
      */
     private X509Certificate[] getX509Certificates(byte[] thumbprint) throws WSSecurityException {
-        MessageDigest sha = null;
-
-        try {
-            sha = MessageDigest.getInstance("SHA1");
-        } catch (NoSuchAlgorithmException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "decoding.general"
-            );
-        }
         Certificate[] certs = null;
-        if (keystore != null) {
-            certs = getCertificates(thumbprint, keystore, sha, false);
+        KeyStoreIndex index = getKeyStoreIndex();
+        if (index != null) {
+            certs = getCertificates(thumbprint, index, false);
         }
 
         //If we can't find the issuer in the keystore then look at the truststore
-        if ((certs == null || certs.length == 0) && truststore != null) {
-            certs = getCertificates(thumbprint, truststore, sha, true);
+        index = getTrustStoreIndex();
+        if ((certs == null || certs.length == 0) && index != null) {
+            certs = getCertificates(thumbprint, index, true);
         }
 
         if (certs == null || certs.length == 0) {
@@ -1062,54 +1161,23 @@ public class Merlin extends CryptoBase {
     /**
      * Get an X509 Certificate (chain) of the X500Principal argument in the supplied KeyStore
      * @param thumbprint
-     * @param store The KeyStore
+     * @param index The index of the KeyStore
      * @return an X509 Certificate (chain)
-     * @throws WSSecurityException
      */
     private Certificate[] getCertificates(
         byte[] thumbprint,
-        KeyStore store,
-        MessageDigest sha,
+        KeyStoreIndex index,
         boolean truststore
-    ) throws WSSecurityException {
+    ) {
         String keystore = "keystore";
         if (truststore) {
             keystore = "truststore";
         }
         LOG.debug("Searching {} for cert using a SHA-1 thumbprint", keystore);
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = store.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
-                    X509Certificate x509cert = (X509Certificate) certs[0];
-                    try {
-                        sha.update(x509cert.getEncoded());
-                    } catch (CertificateEncodingException ex) {
-                        throw new WSSecurityException(
-                            WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, ex, "encodeError"
-                        );
-                    }
-                    byte[] data = sha.digest();
-
-                    if (Arrays.equals(data, thumbprint)) {
-                        LOG.debug("Thumbprint match found using keystore alias {}", alias);
-                        return certs;
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
-            );
+        Certificate[] certs = index.getByThumbprint(thumbprint);
+        if (certs != null) {
+            LOG.debug("Thumbprint match found in {}", keystore);
+            return certs;
         }
 
         LOG.debug("No thumbprint match found in {}", keystore);
@@ -1124,13 +1192,15 @@ public class Merlin extends CryptoBase {
      */
     private X509Certificate[] getX509CertificatesSKI(byte[] skiBytes) throws WSSecurityException {
         Certificate[] certs = null;
-        if (keystore != null) {
-            certs = getCertificates(skiBytes, keystore, false);
+        KeyStoreIndex index = getKeyStoreIndex();
+        if (index != null) {
+            certs = getCertificatesSKI(skiBytes, index, false);
         }
 
         //If we can't find the issuer in the keystore then look at the truststore
-        if ((certs == null || certs.length == 0) && truststore != null) {
-            certs = getCertificates(skiBytes, truststore, true);
+        index = getTrustStoreIndex();
+        if ((certs == null || certs.length == 0) && index != null) {
+            certs = getCertificatesSKI(skiBytes, index, true);
         }
 
         if (certs == null || certs.length == 0) {
@@ -1143,45 +1213,23 @@ public class Merlin extends CryptoBase {
     /**
      * Get an X509 Certificate (chain) of the X500Principal argument in the supplied KeyStore
      * @param skiBytes
-     * @param store The KeyStore
+     * @param index The index of the KeyStore
      * @return an X509 Certificate (chain)
-     * @throws WSSecurityException
      */
-    private Certificate[] getCertificates(
+    private Certificate[] getCertificatesSKI(
         byte[] skiBytes,
-        KeyStore store,
+        KeyStoreIndex index,
         boolean truststore
-    ) throws WSSecurityException {
+    ) {
         String keystore = "keystore";
         if (truststore) {
             keystore = "truststore";
         }
         LOG.debug("Searching {} for cert using Subject Key Identifier bytes", keystore);
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = store.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
-                    X509Certificate x509cert = (X509Certificate) certs[0];
-                    byte[] data = getSKIBytesFromCert(x509cert);
-                    if (data.length == skiBytes.length && Arrays.equals(data, skiBytes)) {
-                        LOG.debug("SKI match found using keystore alias {}", alias);
-                        return certs;
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
-            );
+        Certificate[] certs = index.getBySKI(skiBytes);
+        if (certs != null) {
+            LOG.debug("SKI match found in {}", keystore);
+            return certs;
         }
 
         LOG.debug("No SKI match found in {}", keystore);
@@ -1199,13 +1247,15 @@ public class Merlin extends CryptoBase {
         Object subject = convertSubjectToPrincipal(subjectDN);
 
         List<Certificate[]> certs = null;
-        if (keystore != null) {
-            certs = getCertificates(subject, keystore, false);
+        KeyStoreIndex index = getKeyStoreIndex();
+        if (index != null) {
+            certs = getCertificates(subject, index, false);
         }
 
         //If we can't find the issuer in the keystore then look at the truststore
-        if ((certs == null || certs.isEmpty()) && truststore != null) {
-            certs = getCertificates(subject, truststore, true);
+        index = getTrustStoreIndex();
+        if ((certs == null || certs.isEmpty()) && index != null) {
+            certs = getCertificates(subject, index, true);
         }
 
         if (certs == null || certs.isEmpty()) {
@@ -1247,6 +1297,13 @@ public class Merlin extends CryptoBase {
         if (identifier == null) {
             return null;
         }
+        PrivateKeyCache cache = getPrivateKeyCache();
+        if (cache != null) {
+            X509Certificate[] cachedCerts = cache.getCertificates(identifier);
+            if (cachedCerts != null) {
+                return cachedCerts;
+            }
+        }
         Certificate[] certs = null;
         try {
             if (keystore != null) {
@@ -1259,6 +1316,13 @@ public class Merlin extends CryptoBase {
                         certs = new Certificate[]{cert};
                     }
                 }
+                if (cache != null && certs != null && keystore.isKeyEntry(identifier)) {
+                    // Only the chains of the key entries of the keystore are cached
+                    X509Certificate[] x509certs =
+                        Arrays.copyOf(certs, certs.length, X509Certificate[].class);
+                    cache.putCertificates(identifier, x509certs);
+                    return x509certs;
+                }
             }
 
             if (certs == null && truststore != null) {
@@ -1285,36 +1349,26 @@ public class Merlin extends CryptoBase {
     /**
      * Find the Public Key in a keystore.
      */
-    private boolean findPublicKeyInKeyStore(PublicKey publicKey, KeyStore keyStoreToSearch, boolean truststore) {
-        if (keyStoreToSearch == null) {
-            return false;
-        }
+    private boolean findPublicKeyInKeyStore(PublicKey publicKey, boolean truststore) {
         String keystore = "keystore";
         if (truststore) {
             keystore = "truststore";
         }
-        LOG.debug("Searching {} for public key {}", keystore, publicKey);
+        KeyStoreIndex index = null;
         try {
-            for (Enumeration<String> e = keyStoreToSearch.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = keyStoreToSearch.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = keyStoreToSearch.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate
-                    && publicKey.equals(((X509Certificate)certs[0]).getPublicKey())) {
-                    LOG.debug("PublicKey match found using keystore alias {}", alias);
-                    return true;
-                }
-            }
-        } catch (KeyStoreException e) {
+            index = truststore ? getTrustStoreIndex() : getKeyStoreIndex();
+        } catch (WSSecurityException e) {
+            return false;
+        }
+        if (index == null) {
             return false;
         }
+        LOG.debug("Searching {} for public key {}", keystore, publicKey);
+        String alias = index.getAlias(publicKey);
+        if (alias != null) {
+            LOG.debug("PublicKey match found using keystore alias {}", alias);
+            return true;
+        }
 
         LOG.debug("No PublicKey match found in {}", keystore);
         return false;
@@ -1324,47 +1378,21 @@ public class Merlin extends CryptoBase {
      * Get an X509 Certificate (chain) of the X500Principal argument in the supplied KeyStore. If multiple
      * certs match the Subject DN, then multiple cert chains are returned.
      * @param subjectRDN either an X500Principal or a BouncyCastle X509Name instance.
-     * @param store The KeyStore
+     * @param index The index of the KeyStore
      * @return an X509 Certificate (chain)
-     * @throws WSSecurityException
      */
-    private List<Certificate[]> getCertificates(Object subjectRDN, KeyStore store, boolean truststore)
-        throws WSSecurityException {
+    private List<Certificate[]> getCertificates(Object subjectRDN, KeyStoreIndex index, boolean truststore) {
         String keystore = "keystore";
         if (truststore) {
             keystore = "truststore";
         }
         LOG.debug("Searching {} for cert with Subject {}", keystore, subjectRDN);
-        List<Certificate[]> foundCerts = new ArrayList<>();
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = store.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
-                    X500Principal foundRDN = ((X509Certificate)certs[0]).getSubjectX500Principal();
-                    Object certName = createBCX509Name(foundRDN.getName());
-
-                    if (subjectRDN.equals(certName)) {
-                        LOG.debug("Subject certificate match found using keystore alias {}", alias);
-                        foundCerts.add(certs);
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
-            );
-        }
+        List<Certificate[]> foundCerts = index.getBySubject(subjectRDN);
 
         if (foundCerts.isEmpty()) {
             LOG.debug("No Subject match found in {}", keystore);
+        } else {
+            LOG.debug("Subject certificate match found in {}", keystore);
         }
         return foundCerts;
     }
@@ -1387,6 +1415,89 @@ public class Merlin extends CryptoBase {
         return msg;
     }
 
+    /**
+     * Get the trust anchors and PKIX state for the current keystore, truststore and CRLs,
+     * creating them first if required.
+     */
+    PKIXState getPKIXState() throws WSSecurityException {
+        KeyStoreIndex ksIndex = getKeyStoreIndex();
+        KeyStoreIndex tsIndex = getTrustStoreIndex();
+        CertStore crls = crlCertStore;
+        PKIXState state = pkixState;
+        if (state != null && state.keystoreIndex == ksIndex && state.truststoreIndex == tsIndex
+            && state.crlCertStore == crls) {
+            return state;
+        }
+
+        try {
+            Set<TrustAnchor> set = new HashSet<>();
+            if (tsIndex != null) {
+                addTrustAnchors(set, tsIndex.getKeyStore());
+            }
+
+            //
+            // Add certificates from the keystore - only if there is no TrustStore, apart from
+            // the case that the truststore is the JDK CA certs. This behaviour is preserved
+            // for backwards compatibility reasons
+            //
+            if (ksIndex != null && (tsIndex == null || loadCACerts)) {
+                addTrustAnchors(set, ksIndex.getKeyStore());
+            }
+
+            CertPathCache certPathCache = null;
+            if (certPathCacheSize > 0) {
+                certPathCache = new CertPathCache(certPathCacheSize, certPathCacheTTL * 1000L);
+            }
+            state = new PKIXState(ksIndex, tsIndex, crls, set, certPathCache);
+        } catch (KeyStoreException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE, e, "certpath"
+            );
+        }
+        pkixState = state;
+        return state;
+    }
+
+    /**
+     * Get a copy of the PKIXParameters to validate a certificate path with. The parameters are
+     * created once per PKIX state via createPKIXParameters, and cloned for each validation.
+     */
+    PKIXParameters getPKIXParameters(
+        PKIXState state, boolean enableRevocation
+    ) throws InvalidAlgorithmParameterException {
+        PKIXParameters param = enableRevocation ? state.revocationParameters : state.parameters;
+        if (param == null) {
+            param = createPKIXParameters(state.trustAnchors, enableRevocation);
+            if (enableRevocation) {
+                state.revocationParameters = param;
+            } else {
+                state.parameters = param;
+            }
+        }
+        return (PKIXParameters)param.clone();
+    }
+
+    /**
+     * Cache a successfully validated certificate path, if the cache is enabled
+     */
+    void cacheValidatedCertPath(
+        PKIXState state,
+        ByteBuffer fingerprint,
+        List<X509Certificate> certList,
+        CertPathValidatorResult result,
+        boolean enableRevocation
+    ) {
+        if (state.certPathCache == null || fingerprint == null) {
+            return;
+        }
+        List<X509Certificate> validatedPath = new ArrayList<>(certList);
+        if (result instanceof PKIXCertPathValidatorResult) {
+            validatedPath.add(((PKIXCertPathValidatorResult)result).getTrustAnchor().getTrustedCert());
+        }
+        long maxExpiry = enableRevocation ? state.getCRLNextUpdate() : -1L;
+        state.certPathCache.put(fingerprint, validatedPath, maxExpiry);
+    }
+
     /**
      * Adds {@code TrustAnchor}s found in the provided key store to the set.
      * <p>
@@ -1427,57 +1538,73 @@ public class Merlin extends CryptoBase {
      * Get an implementation-specific identifier that corresponds to the X509Certificate. In
      * this case, the identifier is the KeyStore alias.
      * @param cert The X509Certificate corresponding to the returned identifier
-     * @param store The KeyStore to search
+     * @param index The index of the KeyStore to search
      * @return An implementation-specific identifier that corresponds to the X509Certificate
      */
-    private String getIdentifier(X509Certificate cert, KeyStore store)
-        throws WSSecurityException {
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
+    private static String getIdentifier(X509Certificate cert, KeyStoreIndex index) {
+        return index.getAlias(cert);
+    }
 
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a  result.
-                    Certificate retrievedCert = store.getCertificate(alias);
-                    if (retrievedCert != null) {
-                        certs = new Certificate[]{retrievedCert};
-                    }
-                }
+    private static String getIdentifier(PublicKey publicKey, KeyStoreIndex index) {
+        return index.getAlias(publicKey);
+    }
 
-                if (certs != null && certs.length > 0 && certs[0].equals(cert)) {
-                    return alias;
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "keystore");
+    /**
+     * Get the index of the keystore, building it first if required.
+     * @return the index of the keystore, or null if no keystore is set
+     * @throws WSSecurityException if the keystore can't be read
+     */
+    KeyStoreIndex getKeyStoreIndex() throws WSSecurityException {
+        KeyStore store = keystore;
+        if (store == null) {
+            return null;
         }
-        return null;
+        KeyStoreIndex index = keystoreIndex;
+        if (index == null || !index.isIndexOf(store)) {
+            index = KeyStoreIndex.build(store, this);
+            keystoreIndex = index;
+        }
+        return index;
     }
 
-    private String getIdentifier(PublicKey publicKey, KeyStore store)
-        throws WSSecurityException {
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a  result.
-                    Certificate retrievedCert = store.getCertificate(alias);
-                    if (retrievedCert != null) {
-                        certs = new Certificate[]{retrievedCert};
-                    }
-                }
+    /**
+     * Get the cache of unlocked private keys for the current keystore, creating it first if
+     * required.
+     * @return the cache, or null if it is disabled or no keystore is set
+     * @throws WSSecurityException if the keystore can't be read
+     */
+    PrivateKeyCache getPrivateKeyCache() throws WSSecurityException {
+        if (!privateKeyCacheEnabled) {
+            return null;
+        }
+        KeyStoreIndex index = getKeyStoreIndex();
+        if (index == null) {
+            return null;
+        }
+        PrivateKeyCache cache = privateKeyCache;
+        if (cache == null || cache.getKeyStoreIndex() != index) {
+            cache = new PrivateKeyCache(index);
+            privateKeyCache = cache;
+        }
+        return cache;
+    }
 
-                if (certs != null && certs.length > 0 && certs[0].getPublicKey().equals(publicKey)) {
-                    return alias;
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "keystore");
+    /**
+     * Get the index of the truststore, building it first if required.
+     * @return the index of the truststore, or null if no truststore is set
+     * @throws WSSecurityException if the truststore can't be read
+     */
+    KeyStoreIndex getTrustStoreIndex() throws WSSecurityException {
+        KeyStore store = truststore;
+        if (store == null) {
+            return null;
         }
-        return null;
+        KeyStoreIndex index = truststoreIndex;
+        if (index == null || !index.isIndexOf(store)) {
+            index = KeyStoreIndex.build(store, this);
+            truststoreIndex = index;
+        }
+        return index;
     }
 
     /**
@@ -1525,4 +1652,66 @@ public class Merlin extends CryptoBase {
     public void setPasswordEncryptor(PasswordEncryptor passwordEncryptor) {
         this.passwordEncryptor = passwordEncryptor;
     }
+
+    /**
+     * The trust anchors and PKIX parameters derived from a given generation of the keystore,
+     * truststore and CRLs, along with the certificate paths that were validated against them.
+     */
+    static final class PKIXState {
+        private final KeyStoreIndex keystoreIndex;
+        private final KeyStoreIndex truststoreIndex;
+        private final CertStore crlCertStore;
+        private final Set<TrustAnchor> trustAnchors;
+        private final CertPathCache certPathCache;
+        private volatile PKIXParameters parameters;
+        private volatile PKIXParameters revocationParameters;
+        private volatile Long crlNextUpdate;
+
+        PKIXState(
+            KeyStoreIndex keystoreIndex,
+            KeyStoreIndex truststoreIndex,
+            CertStore crlCertStore,
+            Set<TrustAnchor> trustAnchors,
+            CertPathCache certPathCache
+        ) {
+            this.keystoreIndex = keystoreIndex;
+            this.truststoreIndex = truststoreIndex;
+            this.crlCertStore = crlCertStore;
+            this.trustAnchors = trustAnchors;
+            this.certPathCache = certPathCache;
+        }
+
+        CertPathCache getCertPathCache() {
+            return certPathCache;
+        }
+
+        /**
+         * @return the earliest nextUpdate time of the CRLs in milliseconds, or -1 if there are
+         * no CRLs. If the CRLs can't be read, 0 is returned so that nothing is cached.
+         */
+        long getCRLNextUpdate() {
+            Long nextUpdate = crlNextUpdate;
+            if (nextUpdate == null) {
+                nextUpdate = -1L;
+                if (crlCertStore != null) {
+                    try {
+                        for (CRL crl : crlCertStore.getCRLs(null)) {
+                            if (crl instanceof X509CRL) {
+                                Date crlNextUpdateDate = ((X509CRL)crl).getNextUpdate();
+                                if (crlNextUpdateDate != null
+                                    && (nextUpdate < 0 || crlNextUpdateDate.getTime() < nextUpdate)) {
+                                    nextUpdate = crlNextUpdateDate.getTime();
+                                }
+                            }
+                        }
+                    } catch (CertStoreException ex) {
+                        LOG.debug(ex.getMessage(), ex);
+                        nextUpdate = 0L;
+                    }
+                }
+                crlNextUpdate = nextUpdate;
+            }
+            return nextUpdate;
+        }
+    }
 }
@@ -21,28 +21,24 @@ package org.apache.wss4j.common.crypto;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.cert.CertPath;
 import java.security.cert.CertPathValidator;
+import java.security.cert.CertPathValidatorResult;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.PKIXParameters;
-import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Enumeration;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
-import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.apache.wss4j.common.ext.WSSecurityException;
@@ -116,6 +112,24 @@ public class MerlinAKI extends Merlin {
             }
         }
 
+        //
+        // Check whether the certificate chain has been validated before
+        //
+        PKIXState state = getPKIXState();
+        ByteBuffer fingerprint = null;
+        if (state.getCertPathCache() != null) {
+            fingerprint = CertPathCache.getFingerprint(certs, enableRevocation);
+            if (state.getCertPathCache().isValidated(fingerprint)) {
+                LOG.debug(
+                    "Cached trust path for certificate with {}", certs[0].getSubjectX500Principal().getName()
+                );
+                if (!matchesSubjectDnPattern(certs[0], subjectCertConstraints)) {
+                    throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
+                }
+                return;
+            }
+        }
+
         //
         // SECOND step - Search for the issuer cert (chain) of the transmitted certificate in the
         // keystore or the truststore
@@ -166,20 +180,6 @@ public class MerlinAKI extends Merlin {
             List<X509Certificate> certList = Arrays.asList(x509certs);
             CertPath path = getCertificateFactory().generateCertPath(certList);
 
-            Set<TrustAnchor> set = new HashSet<>();
-            if (truststore != null) {
-                addTrustAnchors(set, truststore);
-            }
-
-            //
-            // Add certificates from the keystore - only if there is no TrustStore, apart from
-            // the case that the truststore is the JDK CA certs. This behaviour is preserved
-            // for backwards compatibility reasons
-            //
-            if (keystore != null && (truststore == null || loadCACerts)) {
-                addTrustAnchors(set, keystore);
-            }
-
             // Verify the trust path using the above settings
             String provider = getCryptoProvider();
             CertPathValidator validator = null;
@@ -189,12 +189,12 @@ public class MerlinAKI extends Merlin {
                 validator = CertPathValidator.getInstance("PKIX", provider);
             }
 
-            PKIXParameters param = createPKIXParameters(set, enableRevocation);
-            validator.validate(path, param);
+            PKIXParameters param = getPKIXParameters(state, enableRevocation);
+            CertPathValidatorResult result = validator.validate(path, param);
+            cacheValidatedCertPath(state, fingerprint, certList, result, enableRevocation);
         } catch (NoSuchProviderException | NoSuchAlgorithmException
             | CertificateException | InvalidAlgorithmParameterException
-            | java.security.cert.CertPathValidatorException
-            | KeyStoreException e) {
+            | java.security.cert.CertPathValidatorException e) {
                 throw new WSSecurityException(
                     WSSecurityException.ErrorCode.FAILURE, e, "certpath"
                 );
@@ -214,13 +214,15 @@ public class MerlinAKI extends Merlin {
         }
 
         Certificate[] certs = null;
-        if (keystore != null) {
-            certs = getCertificates(keyIdentifierBytes, keystore);
+        KeyStoreIndex index = getKeyStoreIndex();
+        if (index != null) {
+            certs = index.getBySKIExtension(keyIdentifierBytes);
         }
 
         //If we can't find the issuer in the keystore then look at the truststore
-        if ((certs == null || certs.length == 0) && truststore != null) {
-            certs = getCertificates(keyIdentifierBytes, truststore);
+        index = getTrustStoreIndex();
+        if ((certs == null || certs.length == 0) && index != null) {
+            certs = index.getBySKIExtension(keyIdentifierBytes);
         }
 
         if (certs == null || certs.length == 0) {
@@ -230,37 +232,4 @@ public class MerlinAKI extends Merlin {
         return Arrays.copyOf(certs, certs.length, X509Certificate[].class);
     }
 
-    private Certificate[] getCertificates(
-        byte[] keyIdentifier,
-        KeyStore store
-    ) throws WSSecurityException, NoSuchAlgorithmException, CertificateEncodingException {
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = store.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
-                    byte[] subjectKeyIdentifier =
-                        BouncyCastleUtils.getSubjectKeyIdentifierBytes((X509Certificate)certs[0]);
-                    if (subjectKeyIdentifier != null
-                        && Arrays.equals(subjectKeyIdentifier, keyIdentifier)) {
-                        return certs;
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
-            );
-        }
-        return new Certificate[]{};
-    }
-
 }
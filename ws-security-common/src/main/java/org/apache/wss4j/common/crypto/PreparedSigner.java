@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.security.PrivateKey;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+
+import org.apache.wss4j.common.WSS4JConstants;
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * The signing credentials of a user of a Crypto instance, which are looked up and unlocked once,
+ * and which can then be used to sign any number of messages (concurrently). This avoids to
+ * retrieve the certificate chain and the private key from the keystore, to detect the signature
+ * algorithm and to encode the certificate(s) for the BinarySecurityToken for every message, e.g.
+ * for a client that signs every request with the same key.
+ *
+ * An instance is immutable. The private key is shared by all the messages signed with it, and so
+ * it must not be destroyed by the caller. A new instance must be created if the key or the
+ * certificate of the user changes in the keystore.
+ */
+public final class PreparedSigner {
+
+    private final Crypto crypto;
+    private final String user;
+    private final X509Certificate[] certs;
+    private final PrivateKey privateKey;
+    private final String signatureAlgorithm;
+    private final byte[] encodedCertificate;
+    private final byte[] encodedCertificates;
+
+    /**
+     * Prepare the signing credentials of a user, where the signature algorithm is detected
+     * according to the public key of the certificate of the user.
+     * @param crypto the Crypto instance to retrieve the certificate chain and the private key from
+     * @param user the alias of the user in the keystore
+     * @param password the password of the private key
+     * @throws WSSecurityException
+     */
+    public PreparedSigner(Crypto crypto, String user, String password) throws WSSecurityException {
+        this(crypto, user, password, null);
+    }
+
+    /**
+     * Prepare the signing credentials of a user
+     * @param crypto the Crypto instance to retrieve the certificate chain and the private key from
+     * @param user the alias of the user in the keystore
+     * @param password the password of the private key
+     * @param signatureAlgorithm the signature algorithm URI to use by default, or null to detect
+     *        it according to the public key of the certificate of the user
+     * @throws WSSecurityException
+     */
+    public PreparedSigner(
+        Crypto crypto, String user, String password, String signatureAlgorithm
+    ) throws WSSecurityException {
+        if (crypto == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noSigCryptoFile");
+        }
+        this.crypto = crypto;
+        this.user = user;
+
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias(user);
+        certs = crypto.getX509Certificates(cryptoType);
+        if (certs == null || certs.length <= 0) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE,
+                "noUserCertsFound",
+                new Object[] {user, "signature"});
+        }
+
+        privateKey = crypto.getPrivateKey(user, password);
+        if (privateKey == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noPrivateKey");
+        }
+
+        if (signatureAlgorithm == null) {
+            String pubKeyAlgo = certs[0].getPublicKey().getAlgorithm();
+            if ("DSA".equalsIgnoreCase(pubKeyAlgo)) {
+                this.signatureAlgorithm = WSS4JConstants.DSA;
+            } else if ("RSA".equalsIgnoreCase(pubKeyAlgo)) {
+                this.signatureAlgorithm = WSS4JConstants.RSA;
+            } else {
+                throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.FAILURE,
+                    "unknownSignatureAlgorithm",
+                    new Object[] {pubKeyAlgo});
+            }
+        } else {
+            this.signatureAlgorithm = signatureAlgorithm;
+        }
+
+        try {
+            encodedCertificate = certs[0].getEncoded();
+        } catch (CertificateEncodingException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, e, "encodeError"
+            );
+        }
+        encodedCertificates = crypto.getBytesFromCertificates(certs);
+    }
+
+    public Crypto getCrypto() {
+        return crypto;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * @return the certificate chain of the user, where the first certificate is the certificate
+     *         of the user
+     */
+    public X509Certificate[] getX509Certificates() {
+        return certs.clone();
+    }
+
+    /**
+     * @return the private key of the user. It is shared, and must not be destroyed.
+     */
+    public PrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    /**
+     * @return the encoding of the certificate of the user, as used in a X509v3 BinarySecurityToken
+     */
+    public byte[] getEncodedCertificate() {
+        return encodedCertificate.clone();
+    }
+
+    /**
+     * @return the encoding of the certificate chain of the user, as used in a PKIPath
+     *         BinarySecurityToken
+     */
+    public byte[] getEncodedCertificates() {
+        return encodedCertificates.clone();
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.JCAEnginePool;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+
+/**
+ * A cache of the private keys (and certificate chains) of the key entries of a given generation
+ * of the keystore of Merlin, keyed by alias. Unlocking a key entry (e.g. the PBE decryption of a
+ * PKCS#12 key) is then only done once, instead of for every message that is signed or decrypted.
+ *
+ * A cached private key is only returned for the same password it was unlocked with. The
+ * password is not kept, but a hash of it (HMAC-SHA256 with a random key of this cache). A new
+ * cache is created by Merlin whenever the keystore changes.
+ *
+ * A cached private key is shared by all the callers it is handed to, so it must not be destroyed
+ * by them (see KeyUtils#destroyKey).
+ */
+final class PrivateKeyCache {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    /**
+     * The private keys which are (or were) cached by any PrivateKeyCache, and so are shared by callers
+     */
+    private static final SharedKeys SHARED_KEYS = new SharedKeys();
+
+    private final KeyStoreIndex keystoreIndex;
+    private final Map<String, Entry> privateKeys = new ConcurrentHashMap<>();
+    private final Map<String, X509Certificate[]> certificates = new ConcurrentHashMap<>();
+    private final SecretKeySpec salt;
+
+    /**
+     * @param keystoreIndex the index of the keystore generation that is cached
+     */
+    PrivateKeyCache(KeyStoreIndex keystoreIndex) throws WSSecurityException {
+        this.keystoreIndex = keystoreIndex;
+        try {
+            salt = new SecretKeySpec(XMLSecurityConstants.generateBytes(32), HMAC_ALGORITHM);
+        } catch (XMLSecurityException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        }
+    }
+
+    KeyStoreIndex getKeyStoreIndex() {
+        return keystoreIndex;
+    }
+
+    /**
+     * @return the cached private key of the alias, if it was unlocked with the given password,
+     * and if it was not destroyed (by the caller it was handed to), otherwise null
+     */
+    PrivateKey getPrivateKey(String alias, String password) throws WSSecurityException {
+        Entry entry = privateKeys.get(alias);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.privateKey.isDestroyed()) {
+            privateKeys.remove(alias, entry);
+            return null;
+        }
+        if (!MessageDigest.isEqual(entry.passwordHash, hash(password))) {
+            return null;
+        }
+        return entry.privateKey;
+    }
+
+    void putPrivateKey(String alias, String password, PrivateKey privateKey) throws WSSecurityException {
+        SHARED_KEYS.add(privateKey);
+        privateKeys.put(alias, new Entry(hash(password), privateKey));
+    }
+
+    /**
+     * @return whether the private key was handed out by a PrivateKeyCache, and so is shared
+     */
+    static boolean isShared(PrivateKey privateKey) {
+        return SHARED_KEYS.contains(privateKey);
+    }
+
+    /**
+     * @return a copy of the cached certificate chain of the alias, or null if it is not cached
+     */
+    X509Certificate[] getCertificates(String alias) {
+        X509Certificate[] certs = certificates.get(alias);
+        return certs == null ? null : certs.clone();
+    }
+
+    void putCertificates(String alias, X509Certificate[] certs) {
+        certificates.put(alias, certs.clone());
+    }
+
+    /**
+     * Remove the private key and the certificate chain of the alias
+     */
+    void remove(String alias) {
+        privateKeys.remove(alias);
+        certificates.remove(alias);
+    }
+
+    int size() {
+        return privateKeys.size();
+    }
+
+    private byte[] hash(String password) throws WSSecurityException {
+        Mac mac = null;
+        try {
+            mac = JCAEnginePool.getMac(HMAC_ALGORITHM);
+            mac.init(salt);
+            return mac.doFinal(password == null ? new byte[0] : password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        } finally {
+            JCAEnginePool.release(mac);
+        }
+    }
+
+    /**
+     * A set of weakly referenced private keys, which are compared by identity. The equals and
+     * hashCode methods of a key are not used, as they compare (and encode) the key material, and
+     * so a key which is equal to a shared key is not shared.
+     */
+    private static final class SharedKeys {
+        private final Map<Integer, List<KeyReference>> keys = new HashMap<>();
+        private final ReferenceQueue<PrivateKey> queue = new ReferenceQueue<>();
+
+        synchronized void add(PrivateKey privateKey) {
+            expungeStaleKeys();
+            List<KeyReference> references =
+                keys.computeIfAbsent(System.identityHashCode(privateKey), hash -> new ArrayList<>(1));
+            if (!contains(references, privateKey)) {
+                references.add(new KeyReference(privateKey, queue));
+            }
+        }
+
+        synchronized boolean contains(PrivateKey privateKey) {
+            List<KeyReference> references = keys.get(System.identityHashCode(privateKey));
+            return references != null && contains(references, privateKey);
+        }
+
+        private static boolean contains(List<KeyReference> references, PrivateKey privateKey) {
+            for (KeyReference reference : references) {
+                if (reference.get() == privateKey) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void expungeStaleKeys() {
+            Reference<? extends PrivateKey> reference = queue.poll();
+            while (reference != null) {
+                KeyReference keyReference = (KeyReference) reference;
+                List<KeyReference> references = keys.get(keyReference.hash);
+                if (references != null) {
+                    references.remove(keyReference);
+                    if (references.isEmpty()) {
+                        keys.remove(keyReference.hash);
+                    }
+                }
+                reference = queue.poll();
+            }
+        }
+    }
+
+    private static final class KeyReference extends WeakReference<PrivateKey> {
+        private final int hash;
+
+        KeyReference(PrivateKey privateKey, ReferenceQueue<PrivateKey> queue) {
+            super(privateKey, queue);
+            hash = System.identityHashCode(privateKey);
+        }
+    }
+
+    private static final class Entry {
+        private final byte[] passwordHash;
+        private final PrivateKey privateKey;
+
+        Entry(byte[] passwordHash, PrivateKey privateKey) {
+            this.passwordHash = passwordHash;
+            this.privateKey = privateKey;
+        }
+    }
+}
@@ -20,6 +20,7 @@
 package org.apache.wss4j.common.ext;
 
 import java.security.Key;
+import java.time.Instant;
 
 import org.w3c.dom.Element;
 
@@ -126,6 +127,7 @@ public class WSPasswordCallback implements Callback {
     private Element customToken;
     private String algorithm;
     private Element keyInfoReference;
+    private Instant keyExpires;
 
     /**
      * Constructor.
@@ -278,5 +280,19 @@ public class WSPasswordCallback implements Callback {
         this.keyInfoReference = keyInfoReference;
     }
 
+    public Instant getKeyExpires() {
+        return keyExpires;
+    }
+
+    /**
+     * This allows the CallbackHandler to specify when the key expires (if for example
+     * SECURITY_CONTEXT_TOKEN is the usage of the callback). A SecretKeyCache does not hold
+     * the key beyond this time.
+     * @param keyExpires
+     */
+    public void setKeyExpires(Instant keyExpires) {
+        this.keyExpires = keyExpires;
+    }
+
 
 }
\ No newline at end of file
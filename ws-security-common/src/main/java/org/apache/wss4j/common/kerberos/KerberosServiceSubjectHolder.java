@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.kerberos;
+
+import javax.security.auth.Subject;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.kerberos.KerberosTicket;
+import javax.security.auth.login.LoginContext;
+import javax.security.auth.login.LoginException;
+
+/**
+ * Holds the Subject of a JAAS login of a Kerberos service, so that the (expensive) login, which
+ * reads the keytab and possibly gets a TGT from the KDC, is done once and the Subject is shared
+ * by all the validations of received Kerberos tokens. The login is done again when a Kerberos
+ * ticket of the Subject is about to expire, when the Subject has reached a maximum lifetime
+ * (so that e.g. a rotated keytab is picked up), or after {@link #invalidate()} was called.
+ *
+ * The Subject of a previous login is not logged out when it is replaced, as it might still be in
+ * use by a concurrent validation.
+ */
+public class KerberosServiceSubjectHolder {
+
+    /**
+     * The default time in seconds before the expiry of a ticket, at which the login is renewed
+     */
+    public static final long DEFAULT_REFRESH_MARGIN = 5L * 60L;
+
+    /**
+     * The default maximum time in seconds that the Subject of a login is used for
+     */
+    public static final long DEFAULT_MAX_LIFETIME = 60L * 60L;
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(KerberosServiceSubjectHolder.class);
+
+    private final String contextName;
+    private final CallbackHandler callbackHandler;
+    private long refreshMargin = DEFAULT_REFRESH_MARGIN;
+    private long maxLifetime = DEFAULT_MAX_LIFETIME;
+
+    private volatile Login login;
+
+    /**
+     * @param contextName the JAAS Login context name to use
+     * @param callbackHandler the CallbackHandler to use with the LoginContext, may be null
+     */
+    public KerberosServiceSubjectHolder(String contextName, CallbackHandler callbackHandler) {
+        this.contextName = contextName;
+        this.callbackHandler = callbackHandler;
+    }
+
+    /**
+     * Get the Subject of the service, logging in first if there is no current login
+     * @return the Subject of the service
+     * @throws LoginException if the login fails
+     */
+    public Subject getSubject() throws LoginException {
+        Login currentLogin = login;
+        if (currentLogin != null && System.currentTimeMillis() < currentLogin.refreshTime) {
+            return currentLogin.subject;
+        }
+        synchronized (this) {
+            currentLogin = login;
+            if (currentLogin == null || System.currentTimeMillis() >= currentLogin.refreshTime) {
+                currentLogin = login();
+                login = currentLogin;
+            }
+            return currentLogin.subject;
+        }
+    }
+
+    /**
+     * Discard the current login, so that the next call to {@link #getSubject()} logs in again
+     */
+    public void invalidate() {
+        login = null;
+    }
+
+    public String getContextName() {
+        return contextName;
+    }
+
+    public CallbackHandler getCallbackHandler() {
+        return callbackHandler;
+    }
+
+    public long getRefreshMargin() {
+        return refreshMargin;
+    }
+
+    /**
+     * Set the time in seconds before the expiry of a ticket of the Subject, at which the login is
+     * renewed. The default is 5 minutes.
+     * @param refreshMargin the time in seconds before the expiry of a ticket
+     */
+    public void setRefreshMargin(long refreshMargin) {
+        this.refreshMargin = refreshMargin;
+    }
+
+    public long getMaxLifetime() {
+        return maxLifetime;
+    }
+
+    /**
+     * Set the maximum time in seconds that the Subject of a login is used for, even if it does not
+     * contain any ticket which expires. The default is 1 hour.
+     * @param maxLifetime the maximum time in seconds that the Subject of a login is used for
+     */
+    public void setMaxLifetime(long maxLifetime) {
+        this.maxLifetime = maxLifetime;
+    }
+
+    private Login login() throws LoginException {
+        LoginContext loginContext = null;
+        if (callbackHandler != null) {
+            loginContext = new LoginContext(contextName, callbackHandler);
+        } else {
+            loginContext = new LoginContext(contextName);
+        }
+        loginContext.login();
+
+        Subject subject = loginContext.getSubject();
+        long now = System.currentTimeMillis();
+        long refreshTime = now + maxLifetime * 1000L;
+        for (KerberosTicket ticket : subject.getPrivateCredentials(KerberosTicket.class)) {
+            if (ticket.getEndTime() != null) {
+                refreshTime = Math.min(refreshTime, ticket.getEndTime().getTime() - refreshMargin * 1000L);
+            }
+        }
+        LOG.debug("Logged in to the JAAS context {}, the login is renewed in {} ms", contextName, refreshTime - now);
+        return new Login(subject, refreshTime);
+    }
+
+    private static final class Login {
+        private final Subject subject;
+        private final long refreshTime;
+
+        Login(Subject subject, long refreshTime) {
+            this.subject = subject;
+            this.refreshTime = refreshTime;
+        }
+    }
+}
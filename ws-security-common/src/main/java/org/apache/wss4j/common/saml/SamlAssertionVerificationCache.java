@@ -0,0 +1,257 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.saml;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.X509Certificate;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.JCAEnginePool;
+import org.joda.time.DateTime;
+import org.opensaml.saml.common.SAMLVersion;
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * A bounded cache of signed SAML Assertions, whose signature was successfully verified and
+ * whose signing key was successfully validated for trust. If an Assertion is found in the
+ * cache, the (expensive) signature verification and trust validation can be skipped, whereas
+ * all the other checks (Conditions, Subject Confirmation, OneTimeUse etc.) must still be done.
+ *
+ * An entry is keyed by a SHA-256 digest of the issuer, the ID and the SignatureValue of the
+ * Assertion, and of the complete Assertion element, so that an Assertion which is modified
+ * after it was signed never matches the entry of the original Assertion. An entry expires after
+ * a configured TTL, or earlier if the NotOnOrAfter Condition of the Assertion or the validity
+ * of the signing certificate ends.
+ *
+ * The cache stores the outcome of the trust validation, so an instance must only be shared
+ * between endpoints that verify Assertions against the same trust configuration.
+ */
+public class SamlAssertionVerificationCache {
+
+    /**
+     * The default maximum number of entries of the cache
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /**
+     * The default time in seconds that an entry is cached for (unless it expires earlier)
+     */
+    public static final long DEFAULT_TTL = 60L * 60L;
+
+    private final Map<ByteBuffer, Entry> verifiedAssertions = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long ttl;
+
+    public SamlAssertionVerificationCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL);
+    }
+
+    /**
+     * @param maxEntries the maximum number of entries of the cache
+     * @param ttl the maximum time in seconds that an entry is cached for
+     */
+    public SamlAssertionVerificationCache(int maxEntries, long ttl) {
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Check whether the given signed Assertion was verified before. If so, the SAMLKeyInfo of
+     * the signature is restored on the Assertion, as if the signature was verified again.
+     * @param samlAssertion the (signed) Assertion
+     * @return true if the signature and the trust in the signing key of the Assertion need not
+     * be verified again
+     * @throws WSSecurityException
+     */
+    public boolean isVerified(SamlAssertionWrapper samlAssertion) throws WSSecurityException {
+        if (!samlAssertion.isSigned()) {
+            return false;
+        }
+        ByteBuffer key = getKey(samlAssertion);
+        Entry entry = verifiedAssertions.get(key);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.expiry < System.currentTimeMillis()) {
+            verifiedAssertions.remove(key, entry);
+            return false;
+        }
+        if (samlAssertion.getSignatureKeyInfo() == null) {
+            samlAssertion.setSignatureKeyInfo(entry.signatureKeyInfo);
+        }
+        return true;
+    }
+
+    /**
+     * Cache a signed Assertion, after its signature was verified and the signing key was
+     * validated for trust.
+     * @param samlAssertion the (signed) Assertion
+     * @param signatureKeyInfo the SAMLKeyInfo of the key which verified the signature
+     * @throws WSSecurityException
+     */
+    public void putVerified(
+        SamlAssertionWrapper samlAssertion, SAMLKeyInfo signatureKeyInfo
+    ) throws WSSecurityException {
+        if (!samlAssertion.isSigned() || signatureKeyInfo == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long expiry = now + ttl * 1000L;
+        DateTime notOnOrAfter = getNotOnOrAfter(samlAssertion);
+        if (notOnOrAfter != null && notOnOrAfter.getMillis() < expiry) {
+            expiry = notOnOrAfter.getMillis();
+        }
+        if (signatureKeyInfo.getCerts() != null) {
+            for (X509Certificate cert : signatureKeyInfo.getCerts()) {
+                if (cert != null && cert.getNotAfter().getTime() < expiry) {
+                    expiry = cert.getNotAfter().getTime();
+                }
+            }
+        }
+        if (expiry <= now) {
+            return;
+        }
+
+        if (verifiedAssertions.size() >= maxEntries) {
+            evict(now);
+        }
+        verifiedAssertions.put(getKey(samlAssertion), new Entry(signatureKeyInfo, expiry));
+    }
+
+    /**
+     * Remove all entries of the cache
+     */
+    public void clear() {
+        verifiedAssertions.clear();
+    }
+
+    public int size() {
+        return verifiedAssertions.size();
+    }
+
+    private void evict(long now) {
+        // Remove expired entries first, and then arbitrary entries until there is room again
+        verifiedAssertions.values().removeIf(entry -> entry.expiry < now);
+        Iterator<ByteBuffer> iterator = verifiedAssertions.keySet().iterator();
+        while (verifiedAssertions.size() >= maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private static DateTime getNotOnOrAfter(SamlAssertionWrapper samlAssertion) {
+        if (samlAssertion.getSamlVersion().equals(SAMLVersion.VERSION_20)) {
+            if (samlAssertion.getSaml2().getConditions() != null) {
+                return samlAssertion.getSaml2().getConditions().getNotOnOrAfter();
+            }
+        } else if (samlAssertion.getSaml1().getConditions() != null) {
+            return samlAssertion.getSaml1().getConditions().getNotOnOrAfter();
+        }
+        return null;
+    }
+
+    /**
+     * Get the key of the Assertion in the cache, which is computed only once per Assertion.
+     */
+    private static ByteBuffer getKey(SamlAssertionWrapper samlAssertion) throws WSSecurityException {
+        ByteBuffer key = samlAssertion.getVerificationCacheKey();
+        if (key != null) {
+            return key;
+        }
+        if (samlAssertion.getElement() == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "invalidSAMLsecurity");
+        }
+
+        MessageDigest digest = null;
+        try {
+            digest = JCAEnginePool.getMessageDigest("SHA-256");
+            update(digest, samlAssertion.getIssuerString());
+            update(digest, samlAssertion.getId());
+            byte[] signatureValue = samlAssertion.getSignatureValue();
+            if (signatureValue != null) {
+                digest.update(signatureValue);
+            }
+            digest.update((byte) 0);
+            update(digest, samlAssertion.getElement());
+            key = ByteBuffer.wrap(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        } finally {
+            JCAEnginePool.release(digest);
+        }
+        samlAssertion.setVerificationCacheKey(key);
+        return key;
+    }
+
+    private static void update(MessageDigest digest, Node node) {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+                digest.update((byte) 1);
+                update(digest, node.getNamespaceURI());
+                update(digest, node.getLocalName());
+                NamedNodeMap attributes = node.getAttributes();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    Attr attribute = (Attr) attributes.item(i);
+                    digest.update((byte) 2);
+                    update(digest, attribute.getNamespaceURI());
+                    update(digest, attribute.getName());
+                    update(digest, attribute.getValue());
+                }
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    update(digest, child);
+                }
+                digest.update((byte) 3);
+                break;
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+                digest.update((byte) 4);
+                update(digest, node.getNodeValue());
+                break;
+            default:
+                // Comments and processing instructions are not signed
+                break;
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+
+    private static final class Entry {
+        private final SAMLKeyInfo signatureKeyInfo;
+        private final long expiry;
+
+        Entry(SAMLKeyInfo signatureKeyInfo, long expiry) {
+            this.signatureKeyInfo = signatureKeyInfo;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -19,6 +19,7 @@
 
 package org.apache.wss4j.common.saml;
 
+import java.nio.ByteBuffer;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.time.Instant;
@@ -34,6 +35,7 @@ import org.apache.wss4j.common.saml.builder.SAML1ComponentBuilder;
 import org.apache.wss4j.common.saml.builder.SAML2ComponentBuilder;
 import org.apache.wss4j.common.util.DOM2Writer;
 import org.apache.wss4j.common.util.InetAddressUtils;
+import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.utils.XMLUtils;
 import org.joda.time.DateTime;
@@ -102,6 +104,11 @@ public class SamlAssertionWrapper {
      */
     private SAMLKeyInfo signatureKeyInfo;
 
+    /**
+     * The key of the Assertion in a SamlAssertionVerificationCache
+     */
+    private ByteBuffer verificationCacheKey;
+
     /**
      * Default Canonicalization algorithm used for signing.
      */
@@ -595,11 +602,7 @@ public class SamlAssertionWrapper {
         setSignature(signature, signatureDigestAlgorithm);
 
         // Clean the private key from memory
-        try {
-            privateKey.destroy();
-        } catch (javax.security.auth.DestroyFailedException ex) {
-            LOG.debug("Error destroying private key: {}", ex.getMessage());
-        }
+        KeyUtils.destroyKey(privateKey);
     }
 
     /**
@@ -755,6 +758,21 @@ public class SamlAssertionWrapper {
         return signatureKeyInfo;
     }
 
+    /**
+     * Set the SAMLKeyInfo of a signature that was verified before
+     */
+    void setSignatureKeyInfo(SAMLKeyInfo signatureKeyInfo) {
+        this.signatureKeyInfo = signatureKeyInfo;
+    }
+
+    ByteBuffer getVerificationCacheKey() {
+        return verificationCacheKey;
+    }
+
+    void setVerificationCacheKey(ByteBuffer verificationCacheKey) {
+        this.verificationCacheKey = verificationCacheKey;
+    }
+
     /**
      * Get the SAMLKeyInfo associated with the Subject KeyInfo
      * @return the SAMLKeyInfo associated with the Subject KeyInfo
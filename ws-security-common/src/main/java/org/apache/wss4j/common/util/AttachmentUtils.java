@@ -491,9 +491,13 @@ public final class AttachmentUtils {
                 int ivLen = JCEMapper.getIVLengthFromURI(encAlgo) / 8;
                 byte[] ivBytes = new byte[ivLen];
 
-                int read = super.in.read(ivBytes, 0, ivLen);
-                while (read != ivLen) {
-                    read += super.in.read(ivBytes, read, ivLen - read);
+                int read = 0;
+                while (read < ivLen) {
+                    int numBytes = super.in.read(ivBytes, read, ivLen - read);
+                    if (numBytes == -1) {
+                        throw new IOException("Unexpected end of the encrypted attachment");
+                    }
+                    read += numBytes;
                 }
 
                 AlgorithmParameterSpec paramSpec =
@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * An OutputStream which keeps the data written to it in memory up to a given threshold, and
+ * which moves the data to a temporary file once the threshold is exceeded. So the heap used for
+ * e.g. a large attachment is bounded by the threshold. The data can be read back via
+ * {@link #getInputStream()}, which deletes the temporary file when the returned stream is closed.
+ */
+public class CachedOutputStream extends OutputStream {
+
+    private static final org.slf4j.Logger LOG =
+            org.slf4j.LoggerFactory.getLogger(CachedOutputStream.class);
+
+    /**
+     * The default number of bytes that are kept in memory
+     */
+    public static final int DEFAULT_THRESHOLD = 128 * 1024;
+
+    private final int threshold;
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private Path tempFile;
+    private OutputStream fileOutputStream;
+    private boolean closed;
+    private boolean handedOut;
+
+    public CachedOutputStream() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold the number of bytes that are kept in memory
+     */
+    public CachedOutputStream(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        getOutputStream(1).write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        getOutputStream(len).write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (fileOutputStream != null) {
+            fileOutputStream.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            if (fileOutputStream != null) {
+                fileOutputStream.close();
+            }
+        }
+    }
+
+    /**
+     * @return true if the data was moved to a temporary file
+     */
+    public boolean isSpilled() {
+        return tempFile != null;
+    }
+
+    /**
+     * Close this stream, and get an InputStream to read the data written to it. If the data was
+     * moved to a temporary file, then the file is deleted when the returned InputStream is closed,
+     * or when it was read to the end.
+     * @return an InputStream to read the data written to this stream
+     * @throws IOException
+     */
+    public InputStream getInputStream() throws IOException {
+        close();
+        handedOut = true;
+        if (tempFile == null) {
+            return new ByteArrayInputStream(buffer.toByteArray());
+        }
+        return new TempFileInputStream(tempFile);
+    }
+
+    /**
+     * Close this stream, and delete the temporary file (if any) when the data is not needed. This
+     * has no effect on the InputStream returned by getInputStream, if it was called already.
+     */
+    public void discard() {
+        try {
+            close();
+            if (tempFile != null && !handedOut) {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            LOG.debug("Error deleting the temporary file {}: {}", tempFile, e.getMessage());
+        }
+    }
+
+    private OutputStream getOutputStream(int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream is closed");
+        }
+        if (tempFile == null && buffer.size() + len > threshold) {
+            // The temporary file is created with owner-only permissions on POSIX file systems
+            tempFile = Files.createTempFile("wss4j-", ".tmp");
+            try {
+                fileOutputStream = new BufferedOutputStream(Files.newOutputStream(tempFile));
+                buffer.writeTo(fileOutputStream);
+            } catch (IOException e) {
+                Files.deleteIfExists(tempFile);
+                throw e;
+            }
+            buffer = null;
+        }
+        return tempFile == null ? buffer : fileOutputStream;
+    }
+
+    /**
+     * Reads the temporary file, and deletes it when it is closed or when it was read to the end
+     */
+    private static final class TempFileInputStream extends FilterInputStream {
+
+        private final Path file;
+        private boolean closed;
+
+        TempFileInputStream(Path file) throws IOException {
+            super(new BufferedInputStream(Files.newInputStream(file)));
+            this.file = file;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (closed) {
+                return -1;
+            }
+            int b = super.read();
+            if (b == -1) {
+                close();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                return -1;
+            }
+            int numBytes = super.read(b, off, len);
+            if (numBytes == -1) {
+                close();
+            }
+            return numBytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
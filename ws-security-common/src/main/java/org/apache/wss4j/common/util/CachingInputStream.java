@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An InputStream which keeps a copy of the data read from the underlying stream in a
+ * {@link CachedOutputStream}, so that the data can be read again afterwards via
+ * {@link #getCachedInputStream()}. This is used to process a (large) attachment while reading it
+ * once, and to hand it on to the application afterwards, without buffering all of it in memory.
+ *
+ * The underlying stream is not closed by this stream. If the underlying stream supports mark/reset,
+ * then no copy is made, and the underlying stream is reset instead (except for a BufferedInputStream,
+ * which would keep all the data in memory for this). The copy must be released via
+ * {@link #discard()} in a finally block, which deletes it unless it was handed out via
+ * {@link #getCachedInputStream()}. Closing this stream has no effect, as e.g. a parser closes it.
+ */
+public class CachingInputStream extends FilterInputStream {
+
+    private final CachedOutputStream cache;
+    private boolean handedOut;
+
+    public CachingInputStream(InputStream in) {
+        this(in, CachedOutputStream.DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param in the underlying stream
+     * @param threshold the number of bytes of the copy which are kept in memory, before the copy
+     *        is moved to a temporary file
+     */
+    public CachingInputStream(InputStream in, int threshold) {
+        super(in);
+        if (in.markSupported() && !(in instanceof BufferedInputStream)) {
+            in.mark(Integer.MAX_VALUE);
+            cache = null;
+        } else {
+            cache = new CachedOutputStream(threshold);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1 && cache != null) {
+            cache.write(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int numBytes = super.read(b, off, len);
+        if (numBytes > 0 && cache != null) {
+            cache.write(b, off, numBytes);
+        }
+        return numBytes;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (cache == null) {
+            return super.skip(n);
+        }
+        // Skipped bytes must be cached as well
+        byte[] buf = new byte[(int) Math.min(n, 8192L)];
+        long skipped = 0;
+        while (skipped < n) {
+            int numBytes = read(buf, 0, (int) Math.min(buf.length, n - skipped));
+            if (numBytes == -1) {
+                break;
+            }
+            skipped += numBytes;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the underlying stream is owned by the caller
+    }
+
+    /**
+     * Delete the copy of the data (and so the temporary file, if any), unless it was handed out
+     * via getCachedInputStream().
+     */
+    public void discard() {
+        if (cache != null && !handedOut) {
+            cache.discard();
+        }
+    }
+
+    /**
+     * Read the rest of the underlying stream, and get an InputStream to read all the data of the
+     * underlying stream again.
+     * @return an InputStream to read all the data of the underlying stream
+     * @throws IOException
+     */
+    public InputStream getCachedInputStream() throws IOException {
+        handedOut = true;
+        if (cache == null) {
+            in.reset();
+            return in;
+        }
+        byte[] buf = new byte[8192];
+        while (read(buf, 0, buf.length) != -1) { //NOPMD
+            // read the remaining data into the cache
+        }
+        return cache.getInputStream();
+    }
+}
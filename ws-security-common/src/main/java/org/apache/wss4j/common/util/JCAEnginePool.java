@@ -0,0 +1,214 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A per-thread pool of JCA engine instances (MessageDigest, Mac and Cipher), keyed by the algorithm
+ * and the (optional) provider name. The getInstance methods of the JCA search the installed
+ * providers and instantiate the engine via reflection on every call, which is avoided for the
+ * engines that are returned to the pool via {@link #release(Object)}.
+ *
+ * An engine must only be released by the thread that got it, and once released it must not be used
+ * any more. An engine that is not released (e.g. a Cipher which is handed over to a stream that is
+ * read later) is simply not reused, and is only weakly referenced by the pool. A released
+ * MessageDigest is reset. A released Cipher is initialized again with an all-zero key, so that the
+ * pool does not hold on to the key of the last user. A Cipher is only pooled for AES and DESede, any
+ * other Cipher that can't be cleared like this is dropped on release. A Mac is not pooled, as
+ * initializing it again on release costs about as much as getting a new instance (see the
+ * JCAEnginePoolBenchmark of the performance module).
+ *
+ * The pools only hold JDK classes, so they don't keep the class loader of WSS4J alive. A thread
+ * which is returned to a container's thread pool can still drop its pool with {@link #clear()},
+ * e.g. when the application is stopped.
+ */
+public final class JCAEnginePool {
+
+    private static final int MAX_POOLED_ENGINES = 4;
+
+    private static final ThreadLocal<Map<String, ArrayDeque<Object>>> POOLED_ENGINES = new ThreadLocal<>();
+    // The engines that are currently in use, with the key of the pool they belong to. The engines
+    // are weakly referenced, so that an engine which is never released (and its key) can be
+    // garbage collected. The JCA engine classes don't override equals and hashCode, so the engines
+    // are compared by identity
+    private static final ThreadLocal<Map<Object, String>> BORROWED_ENGINES = new ThreadLocal<>();
+
+    private JCAEnginePool() {
+        // complete
+    }
+
+    /**
+     * Get a MessageDigest instance for the given algorithm
+     * @param algorithm the JCA name of the digest algorithm
+     * @return a MessageDigest
+     */
+    public static MessageDigest getMessageDigest(String algorithm) throws NoSuchAlgorithmException {
+        String key = key("MessageDigest", algorithm, null);
+        MessageDigest digest = (MessageDigest) borrow(key);
+        if (digest == null) {
+            digest = MessageDigest.getInstance(algorithm);
+            borrowed(digest, key);
+        }
+        return digest;
+    }
+
+    /**
+     * Get a Mac instance for the given algorithm. A Mac is not pooled, so this is the same as
+     * Mac.getInstance, but it may still be passed to {@link #release(Object)}.
+     * @param algorithm the JCA name of the MAC algorithm
+     * @return a Mac, which must be initialized before it is used
+     */
+    public static Mac getMac(String algorithm) throws NoSuchAlgorithmException {
+        return Mac.getInstance(algorithm);
+    }
+
+    /**
+     * Get a Cipher instance for the given transformation
+     * @param transformation the JCA name of the transformation
+     * @param provider the name of the provider, or null to use the preferred provider
+     * @return a Cipher, which must be initialized before it is used
+     */
+    public static Cipher getCipher(String transformation, String provider)
+        throws NoSuchAlgorithmException, NoSuchPaddingException, NoSuchProviderException {
+        String key = key("Cipher", transformation, provider);
+        Cipher cipher = (Cipher) borrow(key);
+        if (cipher == null) {
+            if (provider == null) {
+                cipher = Cipher.getInstance(transformation);
+            } else {
+                cipher = Cipher.getInstance(transformation, provider);
+            }
+            borrowed(cipher, key);
+        }
+        return cipher;
+    }
+
+    /**
+     * Return an engine, which was got from this class by the current thread, to the pool
+     * @param engine the engine, may be null
+     */
+    public static void release(Object engine) {
+        if (engine == null) {
+            return;
+        }
+        Map<Object, String> borrowedEngines = BORROWED_ENGINES.get();
+        String key = borrowedEngines == null ? null : borrowedEngines.remove(engine);
+        if (key == null) {
+            // Not got from the pool of this thread, or released already
+            return;
+        }
+        if (!clearState(engine)) {
+            return;
+        }
+        Map<String, ArrayDeque<Object>> pooledEngines = POOLED_ENGINES.get();
+        if (pooledEngines == null) {
+            pooledEngines = new HashMap<>();
+            POOLED_ENGINES.set(pooledEngines);
+        }
+        ArrayDeque<Object> engines = pooledEngines.computeIfAbsent(key, k -> new ArrayDeque<>(MAX_POOLED_ENGINES));
+        if (engines.size() < MAX_POOLED_ENGINES) {
+            engines.push(engine);
+        }
+    }
+
+    /**
+     * Drop the pool of the current thread, including the engines that are in use
+     */
+    public static void clear() {
+        POOLED_ENGINES.remove();
+        BORROWED_ENGINES.remove();
+    }
+
+    /**
+     * Reset the given engine, and replace the key of a Cipher with an all-zero key
+     * @return whether the engine can be pooled
+     */
+    private static boolean clearState(Object engine) {
+        try {
+            if (engine instanceof MessageDigest) {
+                ((MessageDigest) engine).reset();
+                return true;
+            } else if (engine instanceof Cipher) {
+                Cipher cipher = (Cipher) engine;
+                String keyAlgorithm = cipher.getAlgorithm();
+                int slash = keyAlgorithm.indexOf('/');
+                if (slash != -1) {
+                    keyAlgorithm = keyAlgorithm.substring(0, slash);
+                }
+                int keyLength;
+                if ("AES".equalsIgnoreCase(keyAlgorithm)) {
+                    keyLength = 16;
+                } else if ("DESede".equalsIgnoreCase(keyAlgorithm)) {
+                    keyLength = 24;
+                } else {
+                    return false;
+                }
+                // The decrypt mode accepts the IV of the last user again, as opposed to GCM encryption
+                cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(new byte[keyLength], keyAlgorithm),
+                            cipher.getParameters());
+                return true;
+            }
+        } catch (GeneralSecurityException | RuntimeException ex) {
+            // The engine can't be cleared, so it is not reused
+            return false;
+        }
+        return false;
+    }
+
+    private static String key(String type, String algorithm, String provider) {
+        if (provider == null) {
+            return type + ':' + algorithm;
+        }
+        return type + ':' + algorithm + ':' + provider;
+    }
+
+    private static Object borrow(String key) {
+        Map<String, ArrayDeque<Object>> pooledEngines = POOLED_ENGINES.get();
+        ArrayDeque<Object> engines = pooledEngines == null ? null : pooledEngines.get(key);
+        Object engine = engines == null ? null : engines.poll();
+        if (engine != null) {
+            borrowed(engine, key);
+        }
+        return engine;
+    }
+
+    private static void borrowed(Object engine, String key) {
+        Map<Object, String> borrowedEngines = BORROWED_ENGINES.get();
+        if (borrowedEngines == null) {
+            borrowedEngines = new WeakHashMap<>();
+            BORROWED_ENGINES.set(borrowedEngines);
+        }
+        borrowedEngines.put(engine, key);
+    }
+
+}
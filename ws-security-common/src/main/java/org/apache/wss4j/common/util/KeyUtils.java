@@ -19,6 +19,7 @@
 
 package org.apache.wss4j.common.util;
 
+import org.apache.wss4j.common.crypto.Merlin;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.encryption.XMLCipher;
@@ -30,9 +31,13 @@ import javax.crypto.KeyGenerator;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import javax.security.auth.DestroyFailedException;
+import javax.security.auth.Destroyable;
+import java.security.Key;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
+import java.security.PrivateKey;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -44,11 +49,6 @@ public final class KeyUtils {
 
     public static final String RSA_ECB_OAEPWITH_SHA1_AND_MGF1_PADDING = "RSA/ECB/OAEPWithSHA1AndMGF1Padding";
 
-    /**
-     * A cached MessageDigest object
-     */
-    private static MessageDigest digest;
-
     static {
         DEFAULT_DERIVED_KEY_LENGTHS.put(XMLSignature.ALGO_ID_MAC_HMAC_NOT_RECOMMENDED_MD5, 128);
         DEFAULT_DERIVED_KEY_LENGTHS.put(XMLSignature.ALGO_ID_MAC_HMAC_RIPEMD160, 160);
@@ -63,6 +63,24 @@ public final class KeyUtils {
         // complete
     }
 
+    /**
+     * Clean a key from memory, unless it is a private key which is cached by Merlin, and so is
+     * shared with other callers.
+     *
+     * @param key the key to destroy
+     */
+    public static void destroyKey(Key key) {
+        if (!(key instanceof Destroyable)
+            || key instanceof PrivateKey && Merlin.isCachedPrivateKey((PrivateKey)key)) {
+            return;
+        }
+        try {
+            ((Destroyable)key).destroy();
+        } catch (DestroyFailedException ex) {
+            LOG.debug("Error destroying key: {}", ex.getMessage());
+        }
+    }
+
     /**
      * Returns the length of the key in # of bytes. For the HMAC algorithms it guesses a default value that can be used
      * based on the algorithm.
@@ -228,21 +246,22 @@ public final class KeyUtils {
 
     /**
      * Generate a (SHA1) digest of the input bytes. The MessageDigest instance that backs this
-     * method is cached for efficiency.
+     * method is pooled per thread for efficiency.
      * @param inputBytes the bytes to digest
      * @return the digest of the input bytes
      * @throws WSSecurityException
      */
-    public static synchronized byte[] generateDigest(byte[] inputBytes) throws WSSecurityException {
+    public static byte[] generateDigest(byte[] inputBytes) throws WSSecurityException {
+        MessageDigest digest = null;
         try {
-            if (digest == null) {
-                digest = MessageDigest.getInstance("SHA-1");
-            }
+            digest = JCAEnginePool.getMessageDigest("SHA-1");
             return digest.digest(inputBytes);
         } catch (Exception e) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "empty",
                                           new Object[] {"Error in generating digest"}
             );
+        } finally {
+            JCAEnginePool.release(digest);
         }
     }
 }
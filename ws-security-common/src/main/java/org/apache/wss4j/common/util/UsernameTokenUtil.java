@@ -64,28 +64,32 @@ public final class UsernameTokenUtil {
 
         MessageDigest sha = null;
         try {
-            sha = MessageDigest.getInstance("SHA1");
+            sha = JCAEnginePool.getMessageDigest("SHA1");
         } catch (NoSuchAlgorithmException e) {
             LOG.debug(e.getMessage(), e);
             throw new WSSecurityException(
                 WSSecurityException.ErrorCode.FAILURE, e, "decoding.general"
             );
         }
-        //
-        // Make the first hash round with start value
-        //
-        byte[] k = sha.digest(pwSalt);
-        //
-        // Perform the 1st up to iteration-1 hash rounds
-        //
-        int iter = iteration;
-        if (iter <= 0) {
-            iter = DEFAULT_ITERATION;
-        }
-        for (int i = 1; i < iter; i++) {
-            k = sha.digest(k);
+        try {
+            //
+            // Make the first hash round with start value
+            //
+            byte[] k = sha.digest(pwSalt);
+            //
+            // Perform the 1st up to iteration-1 hash rounds
+            //
+            int iter = iteration;
+            if (iter <= 0) {
+                iter = DEFAULT_ITERATION;
+            }
+            for (int i = 1; i < iter; i++) {
+                k = sha.digest(k);
+            }
+            return k;
+        } finally {
+            JCAEnginePool.release(sha);
         }
-        return k;
     }
 
     /**
@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import javax.security.auth.Subject;
+import javax.security.auth.x500.X500Principal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some unit tests for the AuthenticatedSubjectCache
+ */
+public class AuthenticatedSubjectCacheTest {
+
+    @Test
+    public void testCachedSubject() throws Exception {
+        AuthenticatedSubjectCache cache = new AuthenticatedSubjectCache();
+        assertNull(cache.get("context", "alice", "password"));
+
+        Subject subject = new Subject();
+        subject.getPrincipals().add(new X500Principal("CN=alice"));
+        cache.put("context", "alice", "password", subject);
+
+        Subject cachedSubject = cache.get("context", "alice", "password");
+        assertNotNull(cachedSubject);
+        assertNotSame(subject, cachedSubject);
+        assertTrue(cachedSubject.getPrincipals().contains(new X500Principal("CN=alice")));
+
+        // A different password, user or context must not match
+        assertNull(cache.get("context", "alice", "other-password"));
+        assertNull(cache.get("context", "bob", "password"));
+        assertNull(cache.get("other-context", "alice", "password"));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        AuthenticatedSubjectCache cache = new AuthenticatedSubjectCache();
+        cache.put("context", "alice", "password", new Subject());
+        cache.put("context", "alice", "new-password", new Subject());
+        cache.put("context", "bob", "password", new Subject());
+        assertEquals(3, cache.size());
+
+        cache.invalidate("alice");
+        assertNull(cache.get("context", "alice", "password"));
+        assertNull(cache.get("context", "alice", "new-password"));
+        assertNotNull(cache.get("context", "bob", "password"));
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testExpiryAndEviction() throws Exception {
+        AuthenticatedSubjectCache cache = new AuthenticatedSubjectCache(2, 0L);
+        cache.put("context", "alice", "password", new Subject());
+        Thread.sleep(10L);
+        assertNull(cache.get("context", "alice", "password"));
+
+        cache = new AuthenticatedSubjectCache(2, 60L);
+        cache.put("context", "alice", "password", new Subject());
+        cache.put("context", "bob", "password", new Subject());
+        cache.put("context", "carol", "password", new Subject());
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("context", "carol", "password"));
+    }
+
+}
@@ -22,10 +22,17 @@ package org.apache.wss4j.common.cache;
 import java.io.IOException;
 import java.net.URL;
 import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -52,6 +59,141 @@ public class ReplayCacheTest {
         replayCache.close();
     }
 
+    @Test
+    public void testConcurrentReplayCache() throws InterruptedException, IOException {
+        ReplayCache replayCache = new ConcurrentReplayCache();
+
+        testReplayCacheInstance(replayCache);
+
+        replayCache.close();
+    }
+
+    @Test
+    public void testPutIfAbsent() throws IOException {
+        ReplayCache[] replayCaches = new ReplayCache[] {
+            new MemoryReplayCache(), new EHCacheReplayCache("xyz", (URL)null), new ConcurrentReplayCache()
+        };
+        for (ReplayCache replayCache : replayCaches) {
+            String id = UUID.randomUUID().toString();
+            assertTrue(replayCache.putIfAbsent(id, Instant.now().plusSeconds(100L)));
+            assertFalse(replayCache.putIfAbsent(id, Instant.now().plusSeconds(100L)));
+            assertTrue(replayCache.contains(id));
+
+            id = UUID.randomUUID().toString();
+            assertTrue(replayCache.putIfAbsent(id, null));
+            assertFalse(replayCache.putIfAbsent(id, null));
+
+            replayCache.close();
+        }
+    }
+
+    @Test
+    public void testPutIfAbsentConcurrentDuplicates() throws Exception {
+        ReplayCache[] replayCaches = new ReplayCache[] {
+            new MemoryReplayCache(), new EHCacheReplayCache("xyz", (URL)null), new ConcurrentReplayCache()
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (ReplayCache replayCache : replayCaches) {
+                for (int i = 0; i < 20; i++) {
+                    String id = UUID.randomUUID().toString();
+                    Callable<Boolean> task = () -> replayCache.putIfAbsent(id, Instant.now().plusSeconds(100L));
+                    List<Future<Boolean>> results = executor.invokeAll(Collections.nCopies(8, task));
+
+                    int added = 0;
+                    for (Future<Boolean> result : results) {
+                        if (result.get()) {
+                            added++;
+                        }
+                    }
+                    // Only one of the concurrent duplicates must be accepted
+                    assertEquals(1, added);
+                }
+                replayCache.close();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentReplayCacheMaxEntries() throws InterruptedException, IOException {
+        ConcurrentReplayCache replayCache = new ConcurrentReplayCache(60L, 100);
+
+        String firstId = UUID.randomUUID().toString();
+        assertTrue(replayCache.putIfAbsent(firstId, Instant.now().plusSeconds(1L)));
+        for (int i = 0; i < 150; i++) {
+            replayCache.putIfAbsent(UUID.randomUUID().toString(), Instant.now().plusSeconds(1L));
+        }
+        assertEquals(100, replayCache.size());
+
+        // Live identifiers are never evicted, new identifiers are rejected instead
+        assertTrue(replayCache.contains(firstId));
+        assertFalse(replayCache.putIfAbsent(firstId, null));
+        String id = UUID.randomUUID().toString();
+        assertFalse(replayCache.putIfAbsent(id, null));
+        // add cannot report that the cache is full, so it caches the identifier beyond the bound
+        String addedId = UUID.randomUUID().toString();
+        replayCache.add(addedId);
+        assertTrue(replayCache.contains(addedId));
+        assertEquals(101, replayCache.size());
+
+        // Once the identifiers have expired, there is room again
+        Thread.sleep(2100L);
+        assertTrue(replayCache.putIfAbsent(id, null));
+        assertTrue(replayCache.contains(id));
+        assertTrue(replayCache.contains(addedId));
+        assertFalse(replayCache.contains(firstId));
+
+        replayCache.close();
+    }
+
+    @Test
+    public void testConcurrentReplayCacheMaxEntriesConcurrently() throws Exception {
+        ConcurrentReplayCache replayCache = new ConcurrentReplayCache(60L, 250);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Callable<Integer> task = () -> {
+                int added = 0;
+                for (int i = 0; i < 100; i++) {
+                    if (replayCache.putIfAbsent(UUID.randomUUID().toString(), null)) {
+                        added++;
+                    }
+                }
+                return added;
+            };
+            int added = 0;
+            for (Future<Integer> result : executor.invokeAll(Collections.nCopies(8, task))) {
+                added += result.get();
+            }
+            // The bound is not exceeded by concurrent callers
+            assertEquals(250, added);
+            assertEquals(250, replayCache.size());
+        } finally {
+            executor.shutdownNow();
+            replayCache.close();
+        }
+    }
+
+    @Test
+    public void testReplayCacheFactory() throws IOException {
+        ReplayCache replayCache = ReplayCacheFactory.newInstance().newReplayCache("xyz", null);
+        if (ReplayCacheFactory.isEhCacheInstalled()) {
+            assertTrue(replayCache instanceof EHCacheReplayCache);
+        } else {
+            assertTrue(replayCache instanceof MemoryReplayCache);
+        }
+        replayCache.close();
+
+        ConcurrentReplayCache concurrentReplayCache =
+            (ConcurrentReplayCache)new ConcurrentReplayCacheFactory(60L, 10).newReplayCache("xyz", null);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(concurrentReplayCache.putIfAbsent(UUID.randomUUID().toString(), null));
+        }
+        assertFalse(concurrentReplayCache.putIfAbsent(UUID.randomUUID().toString(), null));
+        concurrentReplayCache.close();
+    }
+
     private void testReplayCacheInstance(ReplayCache replayCache) throws InterruptedException, IOException {
 
         // Test default TTL caches OK
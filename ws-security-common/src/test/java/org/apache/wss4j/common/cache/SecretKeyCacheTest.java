@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.apache.wss4j.common.derivedKey.ConversationConstants;
+import org.apache.wss4j.common.derivedKey.DerivedKeyUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Some unit tests for the SecretKeyCache
+ */
+public class SecretKeyCacheTest {
+
+    private static final String P_SHA1 = ConversationConstants.DerivationAlgorithm.P_SHA_1;
+
+    @Test
+    public void testSecret() throws Exception {
+        SecretKeyCache cache = new SecretKeyCache();
+        assertNull(cache.getSecret("urn:uuid:sct"));
+
+        byte[] secret = {1, 2, 3, 4};
+        cache.putSecret("urn:uuid:sct", secret);
+        // modifying the secret, or the returned copy, must not affect the cache
+        secret[0] = 0;
+        byte[] cachedSecret = cache.getSecret("urn:uuid:sct");
+        assertArrayEquals(new byte[] {1, 2, 3, 4}, cachedSecret);
+        cachedSecret[1] = 0;
+        assertArrayEquals(new byte[] {1, 2, 3, 4}, cache.getSecret("urn:uuid:sct"));
+
+        cache.removeSecret("urn:uuid:sct");
+        assertNull(cache.getSecret("urn:uuid:sct"));
+    }
+
+    @Test
+    public void testDerivedKey() throws Exception {
+        SecretKeyCache cache = new SecretKeyCache();
+        byte[] secret = {1, 2, 3, 4, 5, 6, 7, 8};
+        byte[] nonce = {8, 7, 6, 5, 4, 3, 2, 1};
+
+        byte[] expectedKey = DerivedKeyUtils.deriveKey(P_SHA1, null, 24, secret, nonce, 0);
+        byte[] derivedKey = cache.getDerivedKey(P_SHA1, null, 24, secret, nonce, 0);
+        assertArrayEquals(expectedKey, derivedKey);
+        byte[] cachedKey = cache.getDerivedKey(P_SHA1, null, 24, secret, nonce, 0);
+        assertArrayEquals(expectedKey, cachedKey);
+        assertNotSame(derivedKey, cachedKey);
+        assertEquals(1, cache.size());
+
+        // A different offset or secret is a different derived key
+        byte[] otherKey = cache.getDerivedKey(P_SHA1, null, 24, secret, nonce, 24);
+        assertArrayEquals(DerivedKeyUtils.deriveKey(P_SHA1, null, 24, secret, nonce, 24), otherKey);
+        byte[] otherSecret = {1, 2, 3, 4, 5, 6, 7, 9};
+        otherKey = cache.getDerivedKey(P_SHA1, null, 24, otherSecret, nonce, 0);
+        assertFalse(Arrays.equals(expectedKey, otherKey));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void testExpiryAndEviction() throws Exception {
+        SecretKeyCache cache = new SecretKeyCache(2, 0L);
+        cache.putSecret("sct-1", new byte[] {1});
+        Thread.sleep(10L);
+        assertNull(cache.getSecret("sct-1"));
+
+        cache = new SecretKeyCache(2, 60L);
+        cache.putSecret("sct-1", new byte[] {1});
+        cache.putSecret("sct-2", new byte[] {2});
+        cache.putSecret("sct-3", new byte[] {3});
+        assertEquals(2, cache.size());
+        assertArrayEquals(new byte[] {3}, cache.getSecret("sct-3"));
+    }
+
+    @Test
+    public void testTokenExpiry() throws Exception {
+        SecretKeyCache cache = new SecretKeyCache();
+        cache.putSecret("sct-1", new byte[] {1}, Instant.now().minusSeconds(1L));
+        assertNull(cache.getSecret("sct-1"));
+        assertEquals(0, cache.size());
+
+        cache.putSecret("sct-2", new byte[] {2}, Instant.now().plusMillis(50L));
+        assertArrayEquals(new byte[] {2}, cache.getSecret("sct-2"));
+        Thread.sleep(100L);
+        assertNull(cache.getSecret("sct-2"));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        SecretKeyCache cache = new SecretKeyCache();
+        byte[] secret = {1, 2, 3, 4, 5, 6, 7, 8};
+        byte[] otherSecret = {1, 2, 3, 4, 5, 6, 7, 9};
+        byte[] nonce = {8, 7, 6, 5, 4, 3, 2, 1};
+        cache.putSecret("sct-1", secret);
+        cache.putSecret("sct-2", otherSecret);
+        cache.getDerivedKey(P_SHA1, null, 24, secret, nonce, 0);
+        cache.getDerivedKey(P_SHA1, null, 24, secret, nonce, 24);
+        cache.getDerivedKey(P_SHA1, null, 24, otherSecret, nonce, 0);
+        assertEquals(5, cache.size());
+
+        // Cancelling the token removes its secret and the keys derived from it
+        cache.removeSecret("sct-1");
+        assertNull(cache.getSecret("sct-1"));
+        assertEquals(2, cache.size());
+        assertArrayEquals(otherSecret, cache.getSecret("sct-2"));
+    }
+
+}
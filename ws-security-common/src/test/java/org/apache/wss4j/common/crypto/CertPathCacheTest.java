@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.Loader;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Some tests for caching validated certificate paths in Merlin.
+ */
+public class CertPathCacheTest {
+
+    @Test
+    public void testCachedCertPath() throws Exception {
+        Merlin crypto = new Merlin();
+        crypto.setCertPathCacheSize(10);
+        crypto.setTrustStore(loadKeyStore("keys/wss40CA.jks"));
+
+        X509Certificate[] certs = new X509Certificate[] {getCertificate("keys/wss40.jks", "wss40")};
+
+        crypto.verifyTrust(certs, false, null, null);
+        assertEquals(1, crypto.getPKIXState().getCertPathCache().size());
+
+        // Now validate again using the cache
+        crypto.verifyTrust(certs, false, null, null);
+        assertEquals(1, crypto.getPKIXState().getCertPathCache().size());
+
+        // Subject constraints are still enforced for a cached path
+        try {
+            crypto.verifyTrust(certs, false, Collections.singletonList(Pattern.compile("CN=Bob.*")), null);
+            fail("Failure expected on a non-matching subject DN constraint");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION, ex.getErrorCode());
+        }
+
+        // Setting the truststore again resets the cache
+        crypto.setTrustStore(loadKeyStore("keys/wss40CA.jks"));
+        assertEquals(0, crypto.getPKIXState().getCertPathCache().size());
+    }
+
+    @Test
+    public void testUntrustedCertPathNotCached() throws Exception {
+        Merlin crypto = new Merlin();
+        crypto.setCertPathCacheSize(10);
+        crypto.setTrustStore(loadKeyStore("keys/wss40CA.jks"));
+
+        X509Certificate[] certs = new X509Certificate[] {getCertificate("keys/wss40badca.jks", "wss40expca")};
+        try {
+            crypto.verifyTrust(certs, false, null, null);
+            fail("Failure expected on an untrusted certificate");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILURE, ex.getErrorCode());
+        }
+        assertEquals(0, crypto.getPKIXState().getCertPathCache().size());
+    }
+
+    @Test
+    public void testCacheDisabledByDefault() throws Exception {
+        Merlin crypto = new Merlin();
+        crypto.setTrustStore(loadKeyStore("keys/wss40CA.jks"));
+
+        X509Certificate[] certs = new X509Certificate[] {getCertificate("keys/wss40.jks", "wss40")};
+        crypto.verifyTrust(certs, false, null, null);
+        assertNull(crypto.getPKIXState().getCertPathCache());
+    }
+
+    private static X509Certificate getCertificate(String location, String alias) throws Exception {
+        return (X509Certificate)loadKeyStore(location).getCertificate(alias);
+    }
+
+    private static KeyStore loadKeyStore(String location) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        ClassLoader loader = Loader.getClassLoader(CertPathCacheTest.class);
+        try (InputStream input = Merlin.loadInputStream(loader, location)) {
+            keyStore.load(input, "security".toCharArray());
+        }
+        return keyStore;
+    }
+}
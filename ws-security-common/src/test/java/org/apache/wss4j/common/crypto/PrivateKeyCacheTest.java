@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.wss4j.common.util.Loader;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Some tests for caching unlocked private keys in Merlin.
+ */
+public class PrivateKeyCacheTest {
+
+    @Test
+    public void testCachedPrivateKey() throws Exception {
+        Merlin crypto = new Merlin();
+        crypto.setPrivateKeyCacheEnabled(true);
+        crypto.setKeyStore(loadKeyStore("keys/wss40.jks"));
+
+        PrivateKey privateKey = crypto.getPrivateKey("wss40", "security");
+        assertSame(privateKey, crypto.getPrivateKey("wss40", "security"));
+        assertEquals(1, crypto.getPrivateKeyCache().size());
+
+        // The cached key is not returned for a wrong password
+        try {
+            crypto.getPrivateKey("wss40", "wrong-password");
+            fail("Failure expected on a wrong password");
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILURE, ex.getErrorCode());
+        }
+
+        // The certificate chain is cached too
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("wss40");
+        X509Certificate[] certs = crypto.getX509Certificates(cryptoType);
+        X509Certificate[] cachedCerts = crypto.getX509Certificates(cryptoType);
+        assertArrayEquals(certs, cachedCerts);
+        assertNotSame(certs, cachedCerts);
+
+        crypto.invalidatePrivateKey("wss40");
+        assertNotSame(privateKey, crypto.getPrivateKey("wss40", "security"));
+
+        // Setting the keystore again resets the cache
+        crypto.setKeyStore(loadKeyStore("keys/wss40.jks"));
+        assertEquals(0, crypto.getPrivateKeyCache().size());
+    }
+
+    @Test
+    public void testCacheDisabledByDefault() throws Exception {
+        Merlin crypto = new Merlin();
+        crypto.setKeyStore(loadKeyStore("keys/wss40.jks"));
+
+        assertNotSame(crypto.getPrivateKey("wss40", "security"), crypto.getPrivateKey("wss40", "security"));
+        assertNull(crypto.getPrivateKeyCache());
+    }
+
+    @Test
+    public void testEqualKeyIsNotShared() throws Exception {
+        Merlin cachingCrypto = new Merlin();
+        cachingCrypto.setPrivateKeyCacheEnabled(true);
+        cachingCrypto.setKeyStore(loadKeyStore("keys/wss40.jks"));
+        PrivateKey cachedKey = cachingCrypto.getPrivateKey("wss40", "security");
+
+        Merlin crypto = new Merlin();
+        crypto.setKeyStore(loadKeyStore("keys/wss40.jks"));
+        PrivateKey privateKey = crypto.getPrivateKey("wss40", "security");
+
+        // A key is shared if it is the cached key itself, not if it is equal to it
+        assertEquals(cachedKey, privateKey);
+        assertNotSame(cachedKey, privateKey);
+        assertEquals(Boolean.TRUE, Merlin.isCachedPrivateKey(cachedKey));
+        assertEquals(Boolean.FALSE, Merlin.isCachedPrivateKey(privateKey));
+    }
+
+    @Test
+    public void testConcurrentSignAndDestroy() throws Exception {
+        final Merlin crypto = new Merlin();
+        crypto.setPrivateKeyCacheEnabled(true);
+        crypto.setKeyStore(loadKeyStore("keys/wss40.jks"));
+        final PrivateKey cachedKey = crypto.getPrivateKey("wss40", "security");
+
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("wss40");
+        final PublicKey publicKey = crypto.getX509Certificates(cryptoType)[0].getPublicKey();
+        final byte[] data = "Some data to sign".getBytes(StandardCharsets.UTF_8);
+
+        // Every caller signs with the cached key and then destroys it, as the signature code does
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<PrivateKey>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(executor.submit(() -> {
+                    PrivateKey privateKey = crypto.getPrivateKey("wss40", "security");
+                    Signature signature = Signature.getInstance("SHA256withRSA");
+                    signature.initSign(privateKey);
+                    signature.update(data);
+                    byte[] signatureValue = signature.sign();
+                    KeyUtils.destroyKey(privateKey);
+
+                    Signature verifier = Signature.getInstance("SHA256withRSA");
+                    verifier.initVerify(publicKey);
+                    verifier.update(data);
+                    if (!verifier.verify(signatureValue)) {
+                        throw new SignatureException("Signature verification failed");
+                    }
+                    return privateKey;
+                }));
+            }
+            for (Future<PrivateKey> future : futures) {
+                assertSame(cachedKey, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // The key was neither destroyed nor unlocked again
+        assertSame(cachedKey, crypto.getPrivateKey("wss40", "security"));
+        assertEquals(1, crypto.getPrivateKeyCache().size());
+    }
+
+    private static KeyStore loadKeyStore(String location) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        ClassLoader loader = Loader.getClassLoader(PrivateKeyCacheTest.class);
+        try (InputStream input = Merlin.loadInputStream(loader, location)) {
+            keyStore.load(input, "security".toCharArray());
+        }
+        return keyStore;
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.kerberos;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.Subject;
+import javax.security.auth.callback.CallbackHandler;
+import javax.security.auth.kerberos.KerberosPrincipal;
+import javax.security.auth.kerberos.KerberosTicket;
+import javax.security.auth.login.AppConfigurationEntry;
+import javax.security.auth.login.Configuration;
+import javax.security.auth.spi.LoginModule;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Some tests for the KerberosServiceSubjectHolder, using a LoginModule which adds a (dummy) TGT to
+ * the Subject instead of contacting a KDC.
+ */
+public class KerberosServiceSubjectHolderTest {
+
+    private static final AtomicInteger LOGINS = new AtomicInteger();
+
+    private Configuration originalConfiguration;
+
+    @BeforeEach
+    public void setUp() {
+        originalConfiguration = Configuration.getConfiguration();
+        Configuration.setConfiguration(new TestConfiguration());
+        LOGINS.set(0);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        Configuration.setConfiguration(originalConfiguration);
+    }
+
+    @Test
+    public void testSubjectIsReused() throws Exception {
+        KerberosServiceSubjectHolder holder = new KerberosServiceSubjectHolder("ticket-valid-2h", null);
+        Subject subject = holder.getSubject();
+        assertSame(subject, holder.getSubject());
+        assertEquals(1, LOGINS.get());
+
+        holder.invalidate();
+        assertNotSame(subject, holder.getSubject());
+        assertEquals(2, LOGINS.get());
+    }
+
+    @Test
+    public void testLoginIsRenewedBeforeTicketExpires() throws Exception {
+        // The ticket expires within the refresh margin, so every call logs in again
+        KerberosServiceSubjectHolder holder = new KerberosServiceSubjectHolder("ticket-valid-1m", null);
+        Subject subject = holder.getSubject();
+        assertNotSame(subject, holder.getSubject());
+        assertEquals(2, LOGINS.get());
+
+        holder = new KerberosServiceSubjectHolder("ticket-valid-1m", null);
+        holder.setRefreshMargin(0L);
+        subject = holder.getSubject();
+        assertSame(subject, holder.getSubject());
+        assertEquals(3, LOGINS.get());
+    }
+
+    @Test
+    public void testMaxLifetime() throws Exception {
+        KerberosServiceSubjectHolder holder = new KerberosServiceSubjectHolder("ticket-valid-2h", null);
+        holder.setMaxLifetime(0L);
+        Subject subject = holder.getSubject();
+        assertNotSame(subject, holder.getSubject());
+        assertEquals(2, LOGINS.get());
+    }
+
+    private static final class TestConfiguration extends Configuration {
+        @Override
+        public AppConfigurationEntry[] getAppConfigurationEntry(String name) {
+            long lifetime = "ticket-valid-1m".equals(name) ? 60L * 1000L : 2L * 60L * 60L * 1000L;
+            return new AppConfigurationEntry[] {
+                new AppConfigurationEntry(TicketLoginModule.class.getName(),
+                                          AppConfigurationEntry.LoginModuleControlFlag.REQUIRED,
+                                          Collections.singletonMap("lifetime", Long.toString(lifetime)))
+            };
+        }
+    }
+
+    public static final class TicketLoginModule implements LoginModule {
+        private Subject subject;
+        private long lifetime;
+
+        @Override
+        public void initialize(Subject subject, CallbackHandler callbackHandler,
+                               Map<String, ?> sharedState, Map<String, ?> options) {
+            this.subject = subject;
+            this.lifetime = Long.parseLong((String) options.get("lifetime"));
+        }
+
+        @Override
+        public boolean login() {
+            LOGINS.incrementAndGet();
+            return true;
+        }
+
+        @Override
+        public boolean commit() {
+            long now = System.currentTimeMillis();
+            KerberosPrincipal client = new KerberosPrincipal("service@EXAMPLE.COM");
+            KerberosPrincipal server = new KerberosPrincipal("krbtgt/EXAMPLE.COM@EXAMPLE.COM");
+            KerberosTicket ticket =
+                new KerberosTicket(new byte[] {1}, client, server, new byte[16], 17, null,
+                                   new Date(now), new Date(now), new Date(now + lifetime), null, null);
+            subject.getPrincipals().add(client);
+            subject.getPrivateCredentials().add(ticket);
+            return true;
+        }
+
+        @Override
+        public boolean abort() {
+            return true;
+        }
+
+        @Override
+        public boolean logout() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some unit tests for the CachingInputStream and the CachedOutputStream
+ */
+public class CachingInputStreamTest {
+
+    @Test
+    public void testInMemory() throws Exception {
+        byte[] data = randomBytes(1000);
+        CachingInputStream cachingInputStream =
+            new CachingInputStream(new NonMarkableInputStream(data), 4096);
+        assertEquals(100, cachingInputStream.read(new byte[100], 0, 100));
+        assertArrayEquals(data, readAll(cachingInputStream.getCachedInputStream()));
+    }
+
+    @Test
+    public void testSpillToTemporaryFile() throws Exception {
+        byte[] data = randomBytes(100000);
+        long tempFiles = countTempFiles();
+
+        CachingInputStream cachingInputStream =
+            new CachingInputStream(new NonMarkableInputStream(data), 1024);
+        byte[] read = readAll(cachingInputStream);
+        assertArrayEquals(data, read);
+        assertEquals(tempFiles + 1, countTempFiles());
+
+        InputStream cachedInputStream = cachingInputStream.getCachedInputStream();
+        assertArrayEquals(data, readAll(cachedInputStream));
+        cachedInputStream.close();
+        assertEquals(tempFiles, countTempFiles());
+    }
+
+    @Test
+    public void testCachedOutputStream() throws Exception {
+        byte[] data = randomBytes(5000);
+        CachedOutputStream cachedOutputStream = new CachedOutputStream(1000);
+        cachedOutputStream.write(data, 0, 999);
+        assertFalse(cachedOutputStream.isSpilled());
+        cachedOutputStream.write(data, 999, data.length - 999);
+        assertTrue(cachedOutputStream.isSpilled());
+        try (InputStream inputStream = cachedOutputStream.getInputStream()) {
+            assertArrayEquals(data, readAll(inputStream));
+        }
+    }
+
+    @Test
+    public void testByteArrayInputStream() throws Exception {
+        byte[] data = randomBytes(5000);
+        ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(data);
+        CachingInputStream cachingInputStream = new CachingInputStream(byteArrayInputStream, 1000);
+        assertArrayEquals(data, readAll(cachingInputStream));
+        InputStream cachedInputStream = cachingInputStream.getCachedInputStream();
+        assertSame(byteArrayInputStream, cachedInputStream);
+        assertArrayEquals(data, readAll(cachedInputStream));
+    }
+
+    @Test
+    public void testMarkableInputStream() throws Exception {
+        byte[] data = randomBytes(5000);
+        InputStream markableInputStream = new FilterInputStream(new ByteArrayInputStream(data)) { };
+        CachingInputStream cachingInputStream = new CachingInputStream(markableInputStream, 1000);
+        assertArrayEquals(data, readAll(cachingInputStream));
+        assertSame(markableInputStream, cachingInputStream.getCachedInputStream());
+        assertArrayEquals(data, readAll(markableInputStream));
+
+        // A BufferedInputStream would keep all the data in memory to be able to reset it
+        InputStream bufferedInputStream = new BufferedInputStream(new ByteArrayInputStream(data));
+        cachingInputStream = new CachingInputStream(bufferedInputStream, 1000);
+        assertArrayEquals(data, readAll(cachingInputStream));
+        InputStream cachedInputStream = cachingInputStream.getCachedInputStream();
+        assertNotSame(bufferedInputStream, cachedInputStream);
+        assertArrayEquals(data, readAll(cachedInputStream));
+    }
+
+    @Test
+    public void testDiscard() throws Exception {
+        byte[] data = randomBytes(100000);
+        long tempFiles = countTempFiles();
+
+        CachingInputStream cachingInputStream =
+            new CachingInputStream(new NonMarkableInputStream(data), 1024);
+        assertEquals(50000, cachingInputStream.read(new byte[50000], 0, 50000));
+        assertEquals(tempFiles + 1, countTempFiles());
+
+        // Closing the stream, e.g. by a parser, doesn't delete the cached data
+        cachingInputStream.close();
+        assertEquals(tempFiles + 1, countTempFiles());
+
+        // The cached data was not handed on, so it is deleted
+        cachingInputStream.discard();
+        assertEquals(tempFiles, countTempFiles());
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws Exception {
+        byte[] result = new byte[0];
+        byte[] buf = new byte[777];
+        int numBytes;
+        while ((numBytes = inputStream.read(buf, 0, buf.length)) != -1) {
+            result = Arrays.copyOf(result, result.length + numBytes);
+            System.arraycopy(buf, 0, result, result.length - numBytes, numBytes);
+        }
+        return result;
+    }
+
+    private static long countTempFiles() throws Exception {
+        Path tmpDir = Paths.get(System.getProperty("java.io.tmpdir"));
+        try (Stream<Path> files = Files.list(tmpDir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith("wss4j-")).count();
+        }
+    }
+
+    private static final class NonMarkableInputStream extends FilterInputStream {
+        NonMarkableInputStream(byte[] data) {
+            super(new ByteArrayInputStream(data));
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+}
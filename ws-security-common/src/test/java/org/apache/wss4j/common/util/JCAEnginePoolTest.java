@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Some unit tests for the JCAEnginePool
+ */
+public class JCAEnginePoolTest {
+
+    @Test
+    public void testReleasedEngineIsReused() throws Exception {
+        MessageDigest digest = JCAEnginePool.getMessageDigest("SHA-256");
+        MessageDigest otherDigest = JCAEnginePool.getMessageDigest("SHA-256");
+        assertNotSame(digest, otherDigest);
+
+        JCAEnginePool.release(digest);
+        JCAEnginePool.release(otherDigest);
+        // releasing twice must not put the engine into the pool twice
+        JCAEnginePool.release(digest);
+
+        MessageDigest reusedDigest = JCAEnginePool.getMessageDigest("SHA-256");
+        MessageDigest secondReusedDigest = JCAEnginePool.getMessageDigest("SHA-256");
+        assertNotSame(reusedDigest, secondReusedDigest);
+        JCAEnginePool.release(reusedDigest);
+        JCAEnginePool.release(secondReusedDigest);
+
+        Cipher cipher = JCAEnginePool.getCipher("AES/CBC/PKCS5Padding", null);
+        JCAEnginePool.release(cipher);
+        assertSame(cipher, JCAEnginePool.getCipher("AES/CBC/PKCS5Padding", null));
+        assertNotSame(cipher, JCAEnginePool.getCipher("AES/GCM/NoPadding", null));
+    }
+
+    @Test
+    public void testReleasedEngineIsReset() throws Exception {
+        byte[] data = "some data".getBytes(StandardCharsets.UTF_8);
+        byte[] expectedDigest = MessageDigest.getInstance("SHA-1").digest(data);
+
+        MessageDigest digest = JCAEnginePool.getMessageDigest("SHA-1");
+        digest.update("garbage".getBytes(StandardCharsets.UTF_8));
+        JCAEnginePool.release(digest);
+
+        digest = JCAEnginePool.getMessageDigest("SHA-1");
+        assertArrayEquals(expectedDigest, digest.digest(data));
+        JCAEnginePool.release(digest);
+
+        SecretKeySpec key = new SecretKeySpec(new byte[20], "HmacSHA1");
+        Mac expectedMac = Mac.getInstance("HmacSHA1");
+        expectedMac.init(key);
+
+        Mac mac = JCAEnginePool.getMac("HmacSHA1");
+        mac.init(key);
+        mac.update("garbage".getBytes(StandardCharsets.UTF_8));
+        JCAEnginePool.release(mac);
+
+        mac = JCAEnginePool.getMac("HmacSHA1");
+        mac.init(key);
+        assertArrayEquals(expectedMac.doFinal(data), mac.doFinal(data));
+        JCAEnginePool.release(mac);
+    }
+
+    @Test
+    public void testReleasedEngineDropsKey() throws Exception {
+        byte[] data = "some data".getBytes(StandardCharsets.UTF_8);
+        SecretKeySpec key = new SecretKeySpec(new byte[] {1, 2, 3, 4}, "HmacSHA256");
+
+        Mac mac = JCAEnginePool.getMac("HmacSHA256");
+        mac.init(key);
+        mac.doFinal(data);
+        JCAEnginePool.release(mac);
+
+        // A Mac is not pooled
+        assertNotSame(mac, JCAEnginePool.getMac("HmacSHA256"));
+
+        Cipher cipher = JCAEnginePool.getCipher("AES/ECB/NoPadding", null);
+        SecretKeySpec aesKey = new SecretKeySpec(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16}, "AES");
+        cipher.init(Cipher.ENCRYPT_MODE, aesKey);
+        byte[] block = new byte[16];
+        byte[] encryptedBlock = cipher.doFinal(block);
+        JCAEnginePool.release(cipher);
+
+        assertSame(cipher, JCAEnginePool.getCipher("AES/ECB/NoPadding", null));
+        assertFalse(Arrays.equals(block, cipher.doFinal(encryptedBlock)));
+        JCAEnginePool.release(cipher);
+
+        // A Cipher that can't be cleared is not pooled
+        Cipher rsaCipher = JCAEnginePool.getCipher("RSA/ECB/PKCS1Padding", null);
+        JCAEnginePool.release(rsaCipher);
+        assertNotSame(rsaCipher, JCAEnginePool.getCipher("RSA/ECB/PKCS1Padding", null));
+    }
+
+    @Test
+    public void testUnreleasedEngineIsNotRetained() throws Exception {
+        Cipher cipher = JCAEnginePool.getCipher("AES/CBC/PKCS5Padding", null);
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(new byte[16], "AES"));
+        WeakReference<Cipher> reference = new WeakReference<>(cipher);
+        cipher = null; //NOPMD
+
+        for (int i = 0; i < 20 && reference.get() != null; i++) {
+            System.gc(); //NOPMD
+            Thread.sleep(10L);
+        }
+        assertNull(reference.get());
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        MessageDigest digest = JCAEnginePool.getMessageDigest("SHA-512");
+        JCAEnginePool.release(digest);
+        JCAEnginePool.clear();
+        assertNotSame(digest, JCAEnginePool.getMessageDigest("SHA-512"));
+    }
+
+    @Test
+    public void testEnginesAreNotSharedBetweenThreads() throws Exception {
+        MessageDigest digest = JCAEnginePool.getMessageDigest("SHA-384");
+        JCAEnginePool.release(digest);
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            MessageDigest otherThreadDigest =
+                executorService.submit(() -> JCAEnginePool.getMessageDigest("SHA-384")).get();
+            assertNotSame(digest, otherThreadDigest);
+            // a release by another thread is ignored
+            JCAEnginePool.release(otherThreadDigest);
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertSame(digest, JCAEnginePool.getMessageDigest("SHA-384"));
+    }
+
+}
@@ -0,0 +1,212 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * An index of the elements of a Document by their wsu:Id/Id attribute values, and by their SAML
+ * ID/AssertionID attribute values. It is built in a single pass over the Document, and gives the
+ * same results as XMLUtils.findElementById and XMLUtils.findSAMLAssertionElementById, including
+ * the detection of multiple elements with the same Id.
+ *
+ * The index must be updated via {@link #update(Node)} whenever a subtree of the Document is
+ * replaced (e.g. when decrypting an EncryptedData element). Elements which were removed from the
+ * Document or lost their Id are dropped from the index when they are looked up. Elements which
+ * were added to the Document without an update are not found, so the index must be built again
+ * after any such modification.
+ */
+final class ElementIdIndex {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(ElementIdIndex.class);
+
+    private final Document doc;
+    private final Map<String, List<Element>> ids = new HashMap<>();
+    private final Map<String, List<Element>> samlIds = new HashMap<>();
+
+    ElementIdIndex(Document doc) {
+        this.doc = doc;
+        if (doc.getDocumentElement() != null) {
+            addSubtree(doc.getDocumentElement());
+        }
+    }
+
+    /**
+     * Get the element with the given wsu:Id or Id value.
+     * @param id the Id value
+     * @param checkMultipleElements if true, then return null if there are multiple elements
+     * with the same Id
+     * @return the element, or null if there is no (unique) element
+     */
+    Element getElementById(String id, boolean checkMultipleElements) {
+        List<Element> elements = getElements(ids, id, false);
+        if (elements == null) {
+            return null;
+        }
+        if (elements.size() == 1) {
+            return elements.get(0);
+        }
+        if (checkMultipleElements) {
+            LOG.warn("Multiple elements with the same 'Id' attribute value!");
+            return null;
+        }
+        // The order of the elements is not maintained on update, so find the first one in
+        // document order
+        Element first = null;
+        for (Element element : elements) {
+            if (first == null
+                || (first.compareDocumentPosition(element) & Node.DOCUMENT_POSITION_PRECEDING) != 0) {
+                first = element;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Get the (unique) element with the given SAML ID or AssertionID value.
+     * @param id the ID value
+     * @return the element, or null if there is no (unique) element
+     */
+    Element getSAMLElementById(String id) {
+        List<Element> elements = getElements(samlIds, id, true);
+        if (elements == null) {
+            return null;
+        }
+        if (elements.size() == 1) {
+            return elements.get(0);
+        }
+        LOG.warn("Multiple elements with the same 'ID' attribute value!");
+        return null;
+    }
+
+    /**
+     * Update the index after the given subtree (and only this subtree) was modified. The elements
+     * of the subtree which are not indexed yet are added to the index. The replaced elements are
+     * dropped from the index when they are looked up, so this is linear in the size of the subtree.
+     * @param root the root of the modified subtree
+     */
+    void update(Node root) {
+        if (root.getNodeType() == Node.ELEMENT_NODE) {
+            addSubtree((Element)root);
+        } else {
+            for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getNodeType() == Node.ELEMENT_NODE) {
+                    addSubtree((Element)child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the indexed elements with the given Id, after dropping the elements which are no longer
+     * part of the Document or no longer have this Id.
+     */
+    private List<Element> getElements(Map<String, List<Element>> index, String id, boolean samlId) {
+        List<Element> elements = index.get(id);
+        if (elements == null) {
+            return null;
+        }
+        elements.removeIf(element -> !isAttached(element) || !hasId(element, id, samlId));
+        if (elements.isEmpty()) {
+            index.remove(id);
+            return null;
+        }
+        return elements;
+    }
+
+    private static boolean hasId(Element element, String id, boolean samlId) {
+        if (samlId) {
+            return id.equals(element.getAttributeNS(null, "ID"))
+                || id.equals(element.getAttributeNS(null, "AssertionID"));
+        }
+        return id.equals(element.getAttributeNS(WSConstants.WSU_NS, "Id"))
+            || id.equals(element.getAttributeNS(null, "Id"));
+    }
+
+    private boolean isAttached(Node node) {
+        Element documentElement = doc.getDocumentElement();
+        Node parent = node;
+        while (parent != null && parent != documentElement) {
+            parent = parent.getParentNode();
+        }
+        return parent != null;
+    }
+
+    private void addSubtree(Element root) {
+        Node node = root;
+        while (node != null) {
+            if (node.getNodeType() == Node.ELEMENT_NODE && node.hasAttributes()) {
+                addElement((Element)node);
+            }
+
+            Node next = node.getFirstChild();
+            while (next == null && node != root) {
+                next = node.getNextSibling();
+                if (next == null) {
+                    node = node.getParentNode();
+                }
+            }
+            node = next;
+        }
+    }
+
+    private void addElement(Element element) {
+        String wsuId = element.getAttributeNS(WSConstants.WSU_NS, "Id");
+        if (!"".equals(wsuId)) {
+            add(ids, wsuId, element);
+        }
+        String id = element.getAttributeNS(null, "Id");
+        if (!"".equals(id) && !id.equals(wsuId)) {
+            add(ids, id, element);
+        }
+
+        String samlId = null;
+        if (element.hasAttributeNS(null, "ID")) {
+            samlId = element.getAttributeNS(null, "ID");
+            add(samlIds, samlId, element);
+        }
+        if (element.hasAttributeNS(null, "AssertionID")) {
+            String assertionId = element.getAttributeNS(null, "AssertionID");
+            if (!assertionId.equals(samlId)) {
+                add(samlIds, assertionId, element);
+            }
+        }
+    }
+
+    private static void add(Map<String, List<Element>> index, String id, Element element) {
+        List<Element> elements = index.computeIfAbsent(id, k -> new ArrayList<>(1));
+        for (Element indexedElement : elements) {
+            if (indexedElement == element) {
+                // Already indexed before an update
+                return;
+            }
+        }
+        elements.add(element);
+    }
+
+}
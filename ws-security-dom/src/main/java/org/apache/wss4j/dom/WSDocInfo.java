@@ -33,6 +33,7 @@ package org.apache.wss4j.dom;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -44,8 +45,10 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.callback.CallbackLookup;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.validate.CredentialValidation;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 public class WSDocInfo {
     private Document doc;
@@ -62,6 +65,12 @@ public class WSDocInfo {
     private CallbackLookup callbackLookup;
     private Element securityHeader;
 
+    // An index of the elements of the document by Id, which is built on first use
+    private ElementIdIndex idIndex;
+
+    // The validations of tokens which are carried out ahead of processing the tokens
+    private final Map<Element, CredentialValidation> credentialValidations = new IdentityHashMap<>();
+
     public WSDocInfo(Document doc) {
         //
         // This is a bit of a hack. When the Document is a SAAJ SOAPPart instance, it may
@@ -83,6 +92,8 @@ public class WSDocInfo {
         doc = null;
         callbackLookup = null;
         securityHeader = null;
+        idIndex = null;
+        credentialValidations.clear();
         tokens.clear();
         results.clear();
         actionResults.clear();
@@ -206,6 +217,85 @@ public class WSDocInfo {
     }
 
 
+    /**
+     * Get the element of the document with the given wsu:Id or Id value. This gives the same
+     * results as XMLUtils.findElementById, but uses an index of the document that is built on the
+     * first call, instead of walking the document for every call.
+     * @param id the Id value
+     * @param checkMultipleElements if true, then return null if there are multiple elements with
+     *        the same Id
+     * @return the element, or null if there is no (unique) element
+     */
+    public Element findElementById(String id, boolean checkMultipleElements) {
+        if (doc == null || id == null) {
+            return null;
+        }
+        return getIdIndex().getElementById(id, checkMultipleElements);
+    }
+
+    /**
+     * Get the (unique) element of the document with the given SAML ID or AssertionID value. This
+     * gives the same results as XMLUtils.findSAMLAssertionElementById, but uses an index of the
+     * document that is built on first use.
+     * @param id the ID value
+     * @return the element, or null if there is no (unique) element
+     */
+    public Element findSAMLAssertionElementById(String id) {
+        if (doc == null || id == null) {
+            return null;
+        }
+        return getIdIndex().getSAMLElementById(id);
+    }
+
+    /**
+     * Update the index of the document by Id, after a subtree of the document was replaced.
+     * This must be called by any code that modifies the document during security header
+     * processing, e.g. when an EncryptedData element is replaced with the decrypted data.
+     * @param modifiedNode the root of the subtree that was modified
+     */
+    public void updateIdIndex(Node modifiedNode) {
+        if (idIndex != null && modifiedNode != null) {
+            idIndex.update(modifiedNode);
+        }
+    }
+
+    /**
+     * Discard the index of the document by Id, so that the document is indexed again on the
+     * next lookup. This must be called after the document may have been modified without a
+     * call to {@link #updateIdIndex(Node)}, as the index would not contain any element that
+     * was added (e.g. an element with a duplicate Id).
+     */
+    public void resetIdIndex() {
+        idIndex = null;
+    }
+
+    private ElementIdIndex getIdIndex() {
+        if (idIndex == null) {
+            idIndex = new ElementIdIndex(doc);
+        }
+        return idIndex;
+    }
+
+    /**
+     * Store the validation of the given token element, which is carried out ahead of processing
+     * the token (see WSSecurityEngine#processSecurityHeaderAsync).
+     * @param element the token element
+     * @param credentialValidation the validation of the token
+     */
+    public void addCredentialValidation(Element element, CredentialValidation credentialValidation) {
+        credentialValidations.put(element, credentialValidation);
+    }
+
+    /**
+     * Get the validation of the given token element which was carried out ahead of processing
+     * the token, if any.
+     * @param element the token element
+     * @return the validation of the token, or null if the token was not validated ahead
+     */
+    public CredentialValidation getCredentialValidation(Element element) {
+        return credentialValidations.get(element);
+    }
+
     /**
      * Store a WSSecurityEngineResult for later retrieval.
      * @param result is the WSSecurityEngineResult to store
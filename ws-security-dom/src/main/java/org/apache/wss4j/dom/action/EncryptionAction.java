@@ -129,6 +129,7 @@ public class EncryptionAction implements Action {
 
         wsEncrypt.setAttachmentCallbackHandler(reqData.getAttachmentCallbackHandler());
         wsEncrypt.setStoreBytesInAttachment(reqData.isStoreBytesInAttachment());
+        wsEncrypt.setEncryptionExecutor(reqData.getEncryptionExecutor());
 
         try {
             wsEncrypt.build(encryptionToken.getCrypto(), symmetricKey);
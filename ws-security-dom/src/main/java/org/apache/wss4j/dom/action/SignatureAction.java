@@ -27,6 +27,7 @@ import javax.security.auth.callback.CallbackHandler;
 import org.apache.wss4j.common.SecurityActionToken;
 import org.apache.wss4j.common.SignatureActionToken;
 import org.apache.wss4j.common.WSEncryptionPart;
+import org.apache.wss4j.common.crypto.PreparedSigner;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.dom.WSConstants;
@@ -55,8 +56,20 @@ public class SignatureAction implements Action {
             signatureToken = reqData.getSignatureToken();
         }
 
-        WSPasswordCallback passwordCallback =
-            handler.getPasswordCB(signatureToken.getUser(), WSConstants.SIGN, callbackHandler, reqData);
+        // A PreparedSigner of the signature user holds the private key already, so there is
+        // no need to get the password
+        PreparedSigner preparedSigner = null;
+        if (signatureToken.getPreparedSigner() != null && signatureToken.getKey() == null
+            && (signatureToken.getUser() == null
+                || signatureToken.getUser().equals(signatureToken.getPreparedSigner().getUser()))) {
+            preparedSigner = signatureToken.getPreparedSigner();
+        }
+
+        WSPasswordCallback passwordCallback = null;
+        if (preparedSigner == null) {
+            passwordCallback =
+                handler.getPasswordCB(signatureToken.getUser(), WSConstants.SIGN, callbackHandler, reqData);
+        }
         WSSecSignature wsSign = new WSSecSignature(reqData.getSecHeader());
         wsSign.setIdAllocator(reqData.getWssConfig().getIdAllocator());
         wsSign.setAddInclusivePrefixes(reqData.isAddInclusivePrefixes());
@@ -78,15 +91,20 @@ public class SignatureAction implements Action {
 
         wsSign.setIncludeSignatureToken(signatureToken.isIncludeToken());
 
-        wsSign.setUserInfo(signatureToken.getUser(), passwordCallback.getPassword());
         wsSign.setUseSingleCertificate(signatureToken.isUseSingleCert());
 
-        if (passwordCallback.getKey() != null) {
-            wsSign.setSecretKey(passwordCallback.getKey());
-        } else if (signatureToken.getKey() != null) {
-            wsSign.setSecretKey(signatureToken.getKey());
-        } else if (signatureToken.getUser() == null) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noSignatureUser");
+        if (preparedSigner != null) {
+            wsSign.setPreparedSigner(preparedSigner);
+        } else {
+            wsSign.setUserInfo(signatureToken.getUser(), passwordCallback.getPassword());
+
+            if (passwordCallback.getKey() != null) {
+                wsSign.setSecretKey(passwordCallback.getKey());
+            } else if (signatureToken.getKey() != null) {
+                wsSign.setSecretKey(signatureToken.getKey());
+            } else if (signatureToken.getUser() == null) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "noSignatureUser");
+            }
         }
 
         if (signatureToken.getTokenId() != null) {
@@ -103,10 +121,15 @@ public class SignatureAction implements Action {
         }
 
         wsSign.setAttachmentCallbackHandler(reqData.getAttachmentCallbackHandler());
+        wsSign.setAttachmentCacheThreshold(reqData.getAttachmentCacheThreshold());
         wsSign.setStoreBytesInAttachment(reqData.isStoreBytesInAttachment());
 
         try {
-            wsSign.prepare(signatureToken.getCrypto());
+            if (preparedSigner != null) {
+                wsSign.prepare(preparedSigner.getCrypto());
+            } else {
+                wsSign.prepare(signatureToken.getCrypto());
+            }
 
             Element siblingElementToPrepend = null;
             boolean signBST = false;
@@ -117,6 +117,7 @@ public class SignatureDerivedAction extends AbstractDerivedAction implements Act
         }
 
         wsSign.setAttachmentCallbackHandler(reqData.getAttachmentCallbackHandler());
+        wsSign.setAttachmentCacheThreshold(reqData.getAttachmentCacheThreshold());
         wsSign.setStoreBytesInAttachment(reqData.isStoreBytesInAttachment());
 
         try {
@@ -19,10 +19,17 @@
 
 package org.apache.wss4j.dom.engine;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.security.auth.callback.CallbackHandler;
 import javax.xml.namespace.QName;
@@ -30,15 +37,20 @@ import javax.xml.namespace.QName;
 import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.dom.callback.CallbackLookup;
 import org.apache.wss4j.dom.callback.DOMCallbackLookup;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.dom.processor.BinarySecurityTokenProcessor;
 import org.apache.wss4j.dom.processor.Processor;
+import org.apache.wss4j.dom.processor.UsernameTokenProcessor;
 import org.apache.wss4j.dom.saml.DOMSAMLUtil;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
+import org.apache.wss4j.dom.validate.Credential;
+import org.apache.wss4j.dom.validate.CredentialValidation;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -50,6 +62,8 @@ public class WSSecurityEngine {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(WSSecurityEngine.class);
 
+    private static final String PROCESSOR_PACKAGE = "org.apache.wss4j.dom.processor.";
+
     /**
      * The WSSConfig instance used by this SecurityEngine to
      * find Processors for processing security headers
@@ -295,6 +309,88 @@ public class WSSecurityEngine {
             return new WSHandlerResult(null, results, actionResults);
         }
 
+        HeaderState state = startProcessing(securityHeader, requestData);
+        Node node = securityHeader.getFirstChild();
+        while (node != null) {
+            Node nextSibling = node.getNextSibling();
+            if (Node.ELEMENT_NODE == node.getNodeType()) {
+                processElement((Element) node, state);
+            }
+            node = getNextNode(node, nextSibling);
+        }
+        return completeProcessing(state);
+    }
+
+    /**
+     * Process the security header given the soap envelope as W3C document, where independent
+     * tokens are processed concurrently. See
+     * {@link #processSecurityHeaderAsync(Element, RequestData, Executor)}.
+     *
+     * @param doc            the SOAP envelope as {@link Document}
+     * @param requestData    the RequestData associated with the request
+     * @param executor       the Executor to process the security header with
+     * @return a future of the WSHandlerResult of processing the security header, which is
+     *         null if there is no security header for the actor
+     */
+    public CompletableFuture<WSHandlerResult> processSecurityHeaderAsync(
+        Document doc, RequestData requestData, Executor executor
+    ) {
+        if (requestData.getActor() == null) {
+            requestData.setActor("");
+        }
+        Element elem;
+        try {
+            elem = WSSecurityUtil.getSecurityHeader(doc, requestData.getActor());
+        } catch (WSSecurityException ex) {
+            return failedFuture(ex);
+        }
+        if (elem == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return processSecurityHeaderAsync(elem, requestData, executor);
+    }
+
+    /**
+     * Process the security header given the <code>wsse:Security</code> DOM Element, as
+     * {@link #processSecurityHeader(Element, RequestData)} does, but without blocking the
+     * calling thread.
+     *
+     * The elements of the security header are processed one at a time, in the order of the
+     * security header, with the given Executor (which may e.g. run each task in a virtual
+     * thread). Only the Validators of consecutive tokens which are independent of each other,
+     * i.e. BinarySecurityTokens and UsernameTokens, are called concurrently, before these tokens
+     * are processed. The Validators are given Credentials which are extracted from copies of the
+     * token elements, so that the document is only accessed by one thread at a time. The results
+     * and the security checks are the same as when the security header is processed
+     * synchronously, but these Validators (and the CallbackHandler, as used by the
+     * UsernameTokenValidator) must be thread-safe, and must not modify the RequestData. A
+     * Validator may also be called for a token which is rejected afterwards, e.g. if a
+     * previous token is invalid or if the nonce of a UsernameToken is replayed. If the Executor
+     * rejects a task, then the task is run by the calling thread.
+     *
+     * @param securityHeader the <code>wsse:Security</code> header element
+     * @param requestData    the RequestData associated with the request. It should
+     *                       be able to provide the callback handler, cryptos, etc...
+     *                       as needed by the processing
+     * @param executor       the Executor to process the security header with
+     * @return a future of the WSHandlerResult of processing the security header. It completes
+     *         exceptionally with the WSSecurityException if processing the security header fails
+     */
+    public CompletableFuture<WSHandlerResult> processSecurityHeaderAsync(
+        Element securityHeader, RequestData requestData, Executor executor
+    ) {
+        if (securityHeader == null) {
+            List<WSSecurityEngineResult> results = Collections.emptyList();
+            Map<Integer, List<WSSecurityEngineResult>> actionResults = Collections.emptyMap();
+            return CompletableFuture.completedFuture(new WSHandlerResult(null, results, actionResults));
+        }
+        return submit(() -> startProcessing(securityHeader, requestData), executor)
+            .thenCompose(state -> processAsync(state, securityHeader.getFirstChild(), executor));
+    }
+
+    private HeaderState startProcessing(
+        Element securityHeader, RequestData requestData
+    ) throws WSSecurityException {
         if (requestData.getWssConfig() == null) {
             requestData.setWssConfig(getWssConfig());
         }
@@ -307,73 +403,240 @@ public class WSSecurityEngine {
         WSDocInfo wsDocInfo = new WSDocInfo(securityHeader.getOwnerDocument());
         CallbackLookup callbackLookupToUse = callbackLookup;
         if (callbackLookupToUse == null) {
-            callbackLookupToUse = new DOMCallbackLookup(securityHeader.getOwnerDocument());
+            callbackLookupToUse = new DOMCallbackLookup(securityHeader.getOwnerDocument(), wsDocInfo);
         }
         wsDocInfo.setCallbackLookup(callbackLookupToUse);
         wsDocInfo.setCrypto(requestData.getSigVerCrypto());
         wsDocInfo.setSecurityHeader(securityHeader);
         requestData.setWsDocInfo(wsDocInfo);
 
-        final WSSConfig cfg = getWssConfig();
-        Node node = securityHeader.getFirstChild();
+        return new HeaderState(requestData, wsDocInfo, callbackLookupToUse, getWssConfig());
+    }
 
-        List<WSSecurityEngineResult> returnResults = new LinkedList<>();
-        boolean foundTimestamp = false;
-        while (node != null) {
-            Node nextSibling = node.getNextSibling();
-            if (Node.ELEMENT_NODE == node.getNodeType()) {
-                QName el = new QName(node.getNamespaceURI(), node.getLocalName());
+    private void processElement(Element elem, HeaderState state) throws WSSecurityException {
+        QName el = new QName(elem.getNamespaceURI(), elem.getLocalName());
 
-                // Check for multiple timestamps
-                if (foundTimestamp && el.equals(WSConstants.TIMESTAMP)) {
-                    requestData.getBSPEnforcer().handleBSPRule(BSPRule.R3227);
-                } else if (el.equals(WSConstants.TIMESTAMP)) {
-                    foundTimestamp = true;
-                }
-                //
-                // Call the processor for this token. After the processor returns,
-                // store it for later retrieval. The token processor may store some
-                // information about the processed token
-                //
-                Processor p = cfg.getProcessor(el);
-                if (p != null) {
-                    List<WSSecurityEngineResult> results = p.handleToken((Element) node, requestData);
-                    if (!results.isEmpty()) {
-                        returnResults.addAll(0, results);
-                    }
-                } else {
-                    if (doDebug) {
-                        LOG.debug(
-                            "Unknown Element: " + node.getLocalName() + " " + node.getNamespaceURI()
-                        );
-                    }
-                }
+        // Check for multiple timestamps
+        if (state.foundTimestamp && el.equals(WSConstants.TIMESTAMP)) {
+            state.requestData.getBSPEnforcer().handleBSPRule(BSPRule.R3227);
+        } else if (el.equals(WSConstants.TIMESTAMP)) {
+            state.foundTimestamp = true;
+        }
+        //
+        // Call the processor for this token. After the processor returns,
+        // store it for later retrieval. The token processor may store some
+        // information about the processed token
+        //
+        Processor p = state.config.getProcessor(el);
+        if (p != null) {
+            List<WSSecurityEngineResult> results = p.handleToken(elem, state.requestData);
+            if (!results.isEmpty()) {
+                state.returnResults.addAll(0, results);
+            }
+            if (!keepsIdIndex(p)) {
+                // The processor may have modified the document without updating the Id index
+                state.wsDocInfo.resetIdIndex();
             }
-            //
-            // If the next sibling is null and the stored next sibling is not null, then we have
-            // encountered an EncryptedData element which was decrypted, and so the next sibling
-            // of the current node is null. In that case, go on to the previously stored next
-            // sibling
-            //
-            if (node.getNextSibling() == null && nextSibling != null
-                && nextSibling.getParentNode() != null) {
-                node = nextSibling;
-            } else {
-                node = node.getNextSibling();
+        } else {
+            if (doDebug) {
+                LOG.debug(
+                    "Unknown Element: " + elem.getLocalName() + " " + elem.getNamespaceURI()
+                );
             }
         }
+    }
+
+    /**
+     * The processors of WSS4J update the Id index of the WSDocInfo when they modify the document
+     * (see EncryptionUtils#decryptEncryptedData), unlike custom processors
+     */
+    private static boolean keepsIdIndex(Processor p) {
+        return p.getClass().getName().startsWith(PROCESSOR_PACKAGE);
+    }
+
+    private static Node getNextNode(Node node, Node nextSibling) {
+        //
+        // If the next sibling is null and the stored next sibling is not null, then we have
+        // encountered an EncryptedData element which was decrypted, and so the next sibling
+        // of the current node is null. In that case, go on to the previously stored next
+        // sibling
+        //
+        if (node.getNextSibling() == null && nextSibling != null
+            && nextSibling.getParentNode() != null) {
+            return nextSibling;
+        }
+        return node.getNextSibling();
+    }
 
+    private WSHandlerResult completeProcessing(HeaderState state) throws WSSecurityException {
+        RequestData requestData = state.requestData;
         WSHandlerResult handlerResult =
-            new WSHandlerResult(requestData.getActor(), returnResults, wsDocInfo.getActionResults());
+            new WSHandlerResult(requestData.getActor(), state.returnResults,
+                                state.wsDocInfo.getActionResults());
 
         // Validate SAML Subject Confirmation requirements
         if (requestData.isValidateSamlSubjectConfirmation()) {
-            Element bodyElement = callbackLookupToUse.getSOAPBody();
+            Element bodyElement = state.callbackLookup.getSOAPBody();
             DOMSAMLUtil.validateSAMLResults(handlerResult, requestData.getTlsCerts(), bodyElement);
         }
 
-        wsDocInfo.clear();
+        state.wsDocInfo.clear();
 
         return handlerResult;
     }
+
+    private CompletableFuture<WSHandlerResult> processAsync(
+        HeaderState state, Node firstNode, Executor executor
+    ) {
+        try {
+            Node node = firstNode;
+            while (node != null) {
+                List<Element> tokens = getIndependentTokens(node, state.config);
+                if (tokens.size() > 1) {
+                    return validateConcurrently(tokens, state, executor)
+                        .thenCompose(v -> processTokens(tokens, state, executor));
+                }
+                Node nextSibling = node.getNextSibling();
+                if (Node.ELEMENT_NODE == node.getNodeType()) {
+                    processElement((Element) node, state);
+                }
+                node = getNextNode(node, nextSibling);
+            }
+            return CompletableFuture.completedFuture(completeProcessing(state));
+        } catch (WSSecurityException ex) {
+            return failedFuture(ex);
+        }
+    }
+
+    private CompletableFuture<WSHandlerResult> processTokens(
+        List<Element> tokens, HeaderState state, Executor executor
+    ) {
+        try {
+            // These tokens do not modify the document
+            for (Element token : tokens) {
+                processElement(token, state);
+            }
+        } catch (WSSecurityException ex) {
+            return failedFuture(ex);
+        }
+        return processAsync(state, tokens.get(tokens.size() - 1).getNextSibling(), executor);
+    }
+
+    /**
+     * Get the consecutive independent tokens of the security header, starting at the given node
+     */
+    private static List<Element> getIndependentTokens(
+        Node node, WSSConfig cfg
+    ) throws WSSecurityException {
+        List<Element> tokens = new ArrayList<>();
+        Set<String> ids = new HashSet<>();
+        for (Node sibling = node; sibling != null; sibling = sibling.getNextSibling()) {
+            if (Node.ELEMENT_NODE != sibling.getNodeType()) {
+                continue;
+            }
+            Element token = (Element) sibling;
+            if (!isIndependentToken(token, cfg)) {
+                break;
+            }
+            // Leave a duplicate Id to the sequential processing, which rejects it
+            String id = token.getAttributeNS(WSConstants.WSU_NS, "Id");
+            if (!"".equals(id) && !ids.add(id)) {
+                break;
+            }
+            tokens.add(token);
+        }
+        return tokens;
+    }
+
+    private static boolean isIndependentToken(Element elem, WSSConfig cfg) throws WSSecurityException {
+        QName el = new QName(elem.getNamespaceURI(), elem.getLocalName());
+        if (WSConstants.BINARY_TOKEN.equals(el)) {
+            // The content of the token may be an attachment
+            return cfg.getProcessor(el) instanceof BinarySecurityTokenProcessor
+                && XMLUtils.getDirectChildElement(elem, "Include", WSConstants.XOP_NS) == null;
+        }
+        return WSConstants.USERNAME_TOKEN.equals(el)
+            && cfg.getProcessor(el) instanceof UsernameTokenProcessor;
+    }
+
+    /**
+     * Validate the given tokens concurrently. The outcome of each validation is reported when
+     * the token is processed.
+     */
+    private CompletableFuture<Void> validateConcurrently(
+        List<Element> tokens, HeaderState state, Executor executor
+    ) {
+        List<CompletableFuture<Credential>> futures = new ArrayList<>(tokens.size());
+        for (Element token : tokens) {
+            CredentialValidation validation;
+            try {
+                validation = prepareValidation(token, state);
+            } catch (WSSecurityException ex) {
+                // The token is rejected when it is processed
+                LOG.debug("The token is not validated ahead: {}", ex.getMessage());
+                continue;
+            }
+            if (validation != null) {
+                state.wsDocInfo.addCredentialValidation(token, validation);
+                futures.add(submit(validation::validate, executor));
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+            .handle((v, t) -> null);
+    }
+
+    private static CredentialValidation prepareValidation(
+        Element token, HeaderState state
+    ) throws WSSecurityException {
+        Processor p = state.config.getProcessor(new QName(token.getNamespaceURI(), token.getLocalName()));
+        if (p instanceof BinarySecurityTokenProcessor) {
+            return ((BinarySecurityTokenProcessor) p).prepareValidation(token, state.requestData);
+        }
+        return ((UsernameTokenProcessor) p).prepareValidation(token, state.requestData);
+    }
+
+    private static <T> CompletableFuture<T> submit(Callable<T> task, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable runnable = () -> {
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        };
+        try {
+            executor.execute(runnable);
+        } catch (RejectedExecutionException ex) {
+            LOG.debug("Processing the security header in the calling thread: {}", ex.getMessage());
+            runnable.run();
+        }
+        return future;
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable t) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    /**
+     * The state of processing a security header
+     */
+    private static final class HeaderState {
+        private final RequestData requestData;
+        private final WSDocInfo wsDocInfo;
+        private final CallbackLookup callbackLookup;
+        private final WSSConfig config;
+        private final List<WSSecurityEngineResult> returnResults = new LinkedList<>();
+        private boolean foundTimestamp;
+
+        HeaderState(
+            RequestData requestData, WSDocInfo wsDocInfo, CallbackLookup callbackLookup, WSSConfig config
+        ) {
+            this.requestData = requestData;
+            this.wsDocInfo = wsDocInfo;
+            this.callbackLookup = callbackLookup;
+            this.config = config;
+        }
+    }
 }
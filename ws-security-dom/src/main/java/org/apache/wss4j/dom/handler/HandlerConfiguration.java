@@ -0,0 +1,584 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.wss4j.common.WSEncryptionPart;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.Loader;
+import org.apache.wss4j.dom.WSConstants;
+
+/**
+ * A compiled configuration of a WSHandler, which is built once (e.g. per endpoint) from the
+ * options of the handler, and which is then used for every message that the handler processes.
+ * The String options that the handler would otherwise parse for every message (boolean and
+ * integer values, key identifiers, signature and encryption parts, certificate constraints and
+ * CallbackHandler classes) are parsed and validated when the configuration is built.
+ *
+ * An instance is immutable. It must be built from the same options that the getOption method of
+ * the WSHandler returns. The resolve methods fall back to a lookup of the value (e.g. in the
+ * message context of the message) for a value that is not a compiled option, and parse and
+ * validate it in the same way as it would have been compiled.
+ */
+public final class HandlerConfiguration {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(HandlerConfiguration.class);
+
+    private static final List<String> BOOLEAN_OPTIONS = Arrays.asList(
+        WSHandlerConstants.USE_ENCODED_PASSWORDS,
+        WSHandlerConstants.TIMESTAMP_PRECISION,
+        WSHandlerConstants.ADD_INCLUSIVE_PREFIXES,
+        WSHandlerConstants.ENABLE_SIGNATURE_CONFIRMATION,
+        WSHandlerConstants.MUST_UNDERSTAND,
+        WSHandlerConstants.STORE_BYTES_IN_ATTACHMENT,
+        WSHandlerConstants.TIMESTAMP_STRICT,
+        WSHandlerConstants.HANDLE_CUSTOM_PASSWORD_TYPES,
+        WSHandlerConstants.ALLOW_NAMESPACE_QUALIFIED_PASSWORD_TYPES,
+        WSHandlerConstants.ALLOW_USERNAMETOKEN_NOPASSWORD,
+        WSHandlerConstants.VALIDATE_SAML_SUBJECT_CONFIRMATION,
+        WSHandlerConstants.IS_BSP_COMPLIANT,
+        WSHandlerConstants.REQUIRE_SIGNED_ENCRYPTED_DATA_ELEMENTS,
+        WSHandlerConstants.REQUIRE_TIMESTAMP_EXPIRES,
+        WSHandlerConstants.ADD_USERNAMETOKEN_NONCE,
+        WSHandlerConstants.ADD_USERNAMETOKEN_CREATED,
+        WSHandlerConstants.USE_2005_12_NAMESPACE,
+        WSHandlerConstants.USE_SINGLE_CERTIFICATE,
+        WSHandlerConstants.INCLUDE_SIGNATURE_TOKEN,
+        WSHandlerConstants.INCLUDE_ENCRYPTION_TOKEN,
+        WSHandlerConstants.EXPAND_XOP_INCLUDE,
+        WSHandlerConstants.EXPAND_XOP_INCLUDE_FOR_SIGNATURE,
+        WSHandlerConstants.GET_SECRET_KEY_FROM_CALLBACK_HANDLER,
+        WSHandlerConstants.ENABLE_REVOCATION,
+        WSHandlerConstants.ALLOW_RSA15_KEY_TRANSPORT_ALGORITHM
+    );
+
+    private static final List<String> INTEGER_OPTIONS = Arrays.asList(
+        WSHandlerConstants.TTL_TIMESTAMP,
+        WSHandlerConstants.TTL_FUTURE_TIMESTAMP,
+        WSHandlerConstants.TTL_USERNAMETOKEN,
+        WSHandlerConstants.TTL_FUTURE_USERNAMETOKEN,
+        WSHandlerConstants.ATTACHMENT_CACHE_THRESHOLD,
+        WSHandlerConstants.DERIVED_SIGNATURE_KEY_LENGTH,
+        WSHandlerConstants.DERIVED_ENCRYPTION_KEY_LENGTH,
+        WSHandlerConstants.DERIVED_KEY_ITERATIONS
+    );
+
+    private static final List<String> PARTS_OPTIONS = Arrays.asList(
+        WSHandlerConstants.SIGNATURE_PARTS,
+        WSHandlerConstants.OPTIONAL_SIGNATURE_PARTS,
+        WSHandlerConstants.ENCRYPTION_PARTS,
+        WSHandlerConstants.OPTIONAL_ENCRYPTION_PARTS
+    );
+
+    private static final List<String> CERT_CONSTRAINTS_OPTIONS = Arrays.asList(
+        WSHandlerConstants.SIG_SUBJECT_CERT_CONSTRAINTS,
+        WSHandlerConstants.SIG_ISSUER_CERT_CONSTRAINTS
+    );
+
+    private static final List<String> CALLBACK_CLASS_OPTIONS = Arrays.asList(
+        WSHandlerConstants.PW_CALLBACK_CLASS,
+        WSHandlerConstants.SAML_CALLBACK_CLASS
+    );
+
+    private final Map<String, Boolean> booleans = new HashMap<>();
+    private final Map<String, Integer> integers = new HashMap<>();
+    private final Map<String, Integer> keyIdentifiers = new HashMap<>();
+    private final Map<String, List<WSEncryptionPart>> soap11Parts = new HashMap<>();
+    private final Map<String, List<WSEncryptionPart>> soap12Parts = new HashMap<>();
+    private final Map<String, Collection<Pattern>> certConstraints = new HashMap<>();
+    private final String certConstraintsSeparator;
+    private final Map<String, Class<? extends CallbackHandler>> callbackHandlerClasses = new HashMap<>();
+
+    /**
+     * A configuration without compiled options, which looks up every value
+     */
+    HandlerConfiguration() {
+        certConstraintsSeparator = ",";
+    }
+
+    /**
+     * Compile the given options, where CallbackHandler classes are loaded with the context
+     * class loader
+     * @param options the options of the WSHandler
+     * @throws WSSecurityException if an option has an illegal value
+     */
+    public HandlerConfiguration(Map<String, ?> options) throws WSSecurityException {
+        this(options, getContextClassLoader());
+    }
+
+    /**
+     * Compile the given options
+     * @param options the options of the WSHandler
+     * @param classLoader the class loader to load CallbackHandler classes with
+     * @throws WSSecurityException if an option has an illegal value
+     */
+    public HandlerConfiguration(
+        Map<String, ?> options, ClassLoader classLoader
+    ) throws WSSecurityException {
+        for (String key : BOOLEAN_OPTIONS) {
+            String value = getString(options, key);
+            if (value != null) {
+                booleans.put(key, parseBoolean(key, value));
+            }
+        }
+
+        for (String key : INTEGER_OPTIONS) {
+            String value = getString(options, key);
+            if (value != null) {
+                integers.put(key, parseInteger(key, value));
+            }
+        }
+
+        String keyId = getString(options, WSHandlerConstants.SIG_KEY_ID);
+        if (keyId != null) {
+            keyIdentifiers.put(
+                WSHandlerConstants.SIG_KEY_ID, getSignatureKeyIdentifier(keyId)
+            );
+        }
+        keyId = getString(options, WSHandlerConstants.ENC_KEY_ID);
+        if (keyId != null) {
+            keyIdentifiers.put(
+                WSHandlerConstants.ENC_KEY_ID, getEncryptionKeyIdentifier(keyId)
+            );
+        }
+
+        for (String key : PARTS_OPTIONS) {
+            String value = getString(options, key);
+            if (value != null) {
+                boolean required = WSHandlerConstants.SIGNATURE_PARTS.equals(key)
+                    || WSHandlerConstants.ENCRYPTION_PARTS.equals(key);
+                List<WSEncryptionPart> parts = new ArrayList<>();
+                splitEncParts(required, value, parts, WSConstants.URI_SOAP11_ENV);
+                soap11Parts.put(key, parts);
+                parts = new ArrayList<>();
+                splitEncParts(required, value, parts, WSConstants.URI_SOAP12_ENV);
+                soap12Parts.put(key, parts);
+            }
+        }
+
+        String separator = getString(options, WSHandlerConstants.SIG_CERT_CONSTRAINTS_SEPARATOR);
+        if (separator == null || separator.isEmpty()) {
+            separator = ",";
+        }
+        certConstraintsSeparator = separator;
+        for (String key : CERT_CONSTRAINTS_OPTIONS) {
+            String value = getString(options, key);
+            if (value != null) {
+                certConstraints.put(
+                    key, Collections.unmodifiableCollection(compileCertConstraints(value, separator))
+                );
+            }
+        }
+
+        for (String key : CALLBACK_CLASS_OPTIONS) {
+            String value = getString(options, key);
+            if (value != null) {
+                callbackHandlerClasses.put(key, loadCallbackHandlerClass(value, classLoader));
+            }
+        }
+    }
+
+    /**
+     * @return the boolean value of the given option, or null if it is not a compiled option
+     */
+    public Boolean getBoolean(String key) {
+        return booleans.get(key);
+    }
+
+    /**
+     * @return the integer value of the given option, or null if it is not a compiled option
+     */
+    public Integer getInteger(String key) {
+        return integers.get(key);
+    }
+
+    /**
+     * @return the (validated) key identifier of the signature or encryption key identifier
+     *         option, or null if it is not a compiled option
+     */
+    public Integer getKeyIdentifier(String key) {
+        return keyIdentifiers.get(key);
+    }
+
+    /**
+     * @param key a (optional) signature or encryption parts option
+     * @param soapEnvelopeURI the namespace of the SOAP envelope of the message
+     * @return new instances of the parts of the given option, or null if it is not a compiled
+     *         option
+     */
+    public List<WSEncryptionPart> getParts(String key, String soapEnvelopeURI) {
+        List<WSEncryptionPart> parts = null;
+        if (WSConstants.URI_SOAP11_ENV.equals(soapEnvelopeURI)) {
+            parts = soap11Parts.get(key);
+        } else if (WSConstants.URI_SOAP12_ENV.equals(soapEnvelopeURI)) {
+            parts = soap12Parts.get(key);
+        }
+        if (parts == null) {
+            return null;
+        }
+        // A part is modified when it is signed or encrypted
+        List<WSEncryptionPart> copies = new ArrayList<>(parts.size());
+        for (WSEncryptionPart part : parts) {
+            WSEncryptionPart copy;
+            if (part.getId() != null) {
+                copy = new WSEncryptionPart(part.getId(), part.getEncModifier());
+            } else {
+                copy = new WSEncryptionPart(part.getName(), part.getNamespace(), part.getEncModifier());
+            }
+            copy.setRequired(part.isRequired());
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    /**
+     * @param key the subject or issuer certificate constraints option
+     * @param separator the separator of the certificate constraints
+     * @return the compiled certificate constraints of the given option, or null if it is not a
+     *         compiled option, or if it was compiled with another separator
+     */
+    public Collection<Pattern> getCertConstraints(String key, String separator) {
+        if (!certConstraintsSeparator.equals(separator)) {
+            return null;
+        }
+        return certConstraints.get(key);
+    }
+
+    /**
+     * @return the CallbackHandler class of the given option, or null if it is not a compiled
+     *         option
+     */
+    public Class<? extends CallbackHandler> getCallbackHandlerClass(String key) {
+        return callbackHandlerClasses.get(key);
+    }
+
+    /**
+     * Resolve the boolean value of the given option
+     * @param key the option
+     * @param lookup the lookup of the value, if it is not a compiled option
+     * @return the value, or null if the option is not set
+     * @throws WSSecurityException if the value is illegal
+     */
+    public Boolean resolveBoolean(
+        String key, Function<String, String> lookup
+    ) throws WSSecurityException {
+        Boolean compiledValue = booleans.get(key);
+        if (compiledValue != null) {
+            return compiledValue;
+        }
+        String value = lookup.apply(key);
+        return value == null ? null : parseBoolean(key, value);
+    }
+
+    /**
+     * Resolve the integer value of the given option
+     * @param key the option
+     * @param lookup the lookup of the value, if it is not a compiled option
+     * @return the value, or null if the option is not set
+     * @throws WSSecurityException if the value is illegal
+     */
+    public Integer resolveInteger(
+        String key, Function<String, String> lookup
+    ) throws WSSecurityException {
+        Integer compiledValue = integers.get(key);
+        if (compiledValue != null) {
+            return compiledValue;
+        }
+        String value = lookup.apply(key);
+        return value == null ? null : parseInteger(key, value);
+    }
+
+    /**
+     * Resolve the key identifier of the signature or encryption key identifier option
+     * @param key the option
+     * @param lookup the lookup of the value, if it is not a compiled option
+     * @return the key identifier, or null if the option is not set
+     * @throws WSSecurityException if the value is an unknown or illegal key identifier
+     */
+    public Integer resolveKeyIdentifier(
+        String key, Function<String, String> lookup
+    ) throws WSSecurityException {
+        Integer compiledValue = keyIdentifiers.get(key);
+        if (compiledValue != null) {
+            return compiledValue;
+        }
+        String value = lookup.apply(key);
+        if (value == null) {
+            return null;
+        }
+        if (WSHandlerConstants.ENC_KEY_ID.equals(key)) {
+            return getEncryptionKeyIdentifier(value);
+        }
+        return getSignatureKeyIdentifier(value);
+    }
+
+    /**
+     * Resolve the parts of the (optional) signature or encryption parts option
+     * @param key the option
+     * @param soapEnvelopeURI the namespace of the SOAP envelope of the message
+     * @param lookup the lookup of the value, if it is not a compiled option
+     * @return new instances of the parts, or null if the option is not set
+     * @throws WSSecurityException if the value is illegal
+     */
+    public List<WSEncryptionPart> resolveParts(
+        String key, String soapEnvelopeURI, Function<String, String> lookup
+    ) throws WSSecurityException {
+        List<WSEncryptionPart> compiledParts = getParts(key, soapEnvelopeURI);
+        if (compiledParts != null) {
+            return compiledParts;
+        }
+        String value = lookup.apply(key);
+        if (value == null) {
+            return null;
+        }
+        boolean required = WSHandlerConstants.SIGNATURE_PARTS.equals(key)
+            || WSHandlerConstants.ENCRYPTION_PARTS.equals(key);
+        List<WSEncryptionPart> parts = new ArrayList<>();
+        splitEncParts(required, value, parts, soapEnvelopeURI);
+        return parts;
+    }
+
+    /**
+     * Resolve the certificate constraints of the subject or issuer certificate constraints option
+     * @param key the option
+     * @param separator the separator of the certificate constraints
+     * @param lookup the lookup of the value, if it is not a compiled option
+     * @return the certificate constraints, or null if the option is not set
+     * @throws WSSecurityException if a certificate constraint is illegal
+     */
+    public Collection<Pattern> resolveCertConstraints(
+        String key, String separator, Function<String, String> lookup
+    ) throws WSSecurityException {
+        Collection<Pattern> compiledCertConstraints = getCertConstraints(key, separator);
+        if (compiledCertConstraints != null) {
+            return compiledCertConstraints;
+        }
+        String value = lookup.apply(key);
+        return value == null ? null : compileCertConstraints(value, separator);
+    }
+
+    /**
+     * Resolve the CallbackHandler class of the given option
+     * @param key the option
+     * @param lookup the lookup of the class name, if it is not a compiled option
+     * @param classLoader the class loader to load the class with, if it is not a compiled option
+     * @return the CallbackHandler class, or null if the option is not set
+     * @throws WSSecurityException if the class cannot be loaded
+     */
+    public Class<? extends CallbackHandler> resolveCallbackHandlerClass(
+        String key, Function<String, String> lookup, ClassLoader classLoader
+    ) throws WSSecurityException {
+        Class<? extends CallbackHandler> compiledClass = callbackHandlerClasses.get(key);
+        if (compiledClass != null) {
+            return compiledClass;
+        }
+        String value = lookup.apply(key);
+        return value == null ? null : loadCallbackHandlerClass(value, classLoader);
+    }
+
+    private static Integer getSignatureKeyIdentifier(String keyId) throws WSSecurityException {
+        Integer id = WSHandlerConstants.getKeyIdentifier(keyId);
+        if (id == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
+                    "empty",
+                    new Object[] {"WSHandler: Signature: unknown key identification"}
+            );
+        }
+        int tmp = id;
+        if (!(tmp == WSConstants.ISSUER_SERIAL
+                || tmp == WSConstants.BST_DIRECT_REFERENCE
+                || tmp == WSConstants.X509_KEY_IDENTIFIER
+                || tmp == WSConstants.SKI_KEY_IDENTIFIER
+                || tmp == WSConstants.THUMBPRINT_IDENTIFIER
+                || tmp == WSConstants.ENCRYPTED_KEY_SHA1_IDENTIFIER
+                || tmp == WSConstants.KEY_VALUE)) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
+                    "empty",
+                    new Object[] {"WSHandler: Signature: illegal key identification"}
+            );
+        }
+        return id;
+    }
+
+    private static Integer getEncryptionKeyIdentifier(String keyId) throws WSSecurityException {
+        Integer id = WSHandlerConstants.getKeyIdentifier(keyId);
+        if (id == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
+                    "empty",
+                    new Object[] {"WSHandler: Encryption: unknown key identification"}
+            );
+        }
+        int tmp = id;
+        if (!(tmp == WSConstants.ISSUER_SERIAL
+                || tmp == WSConstants.X509_KEY_IDENTIFIER
+                || tmp == WSConstants.SKI_KEY_IDENTIFIER
+                || tmp == WSConstants.BST_DIRECT_REFERENCE
+                || tmp == WSConstants.THUMBPRINT_IDENTIFIER
+                || tmp == WSConstants.ENCRYPTED_KEY_SHA1_IDENTIFIER)) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
+                    "empty",
+                    new Object[] {"WSHandler: Encryption: illegal key identification"}
+            );
+        }
+        return id;
+    }
+
+    private static void splitEncParts(boolean required, String tmpS,
+                                      List<WSEncryptionPart> parts, String soapEnvelopeURI)
+        throws WSSecurityException {
+        WSEncryptionPart encPart = null;
+        String[] rawParts = tmpS.split(";");
+
+        for (int i = 0; i < rawParts.length; i++) {
+            String[] partDef = rawParts[i].split("}");
+
+            if (partDef.length == 1) {
+                LOG.debug("single partDef: '{}'", partDef[0]);
+                encPart =
+                    new WSEncryptionPart(partDef[0].trim(),
+                            soapEnvelopeURI,
+                            "Content");
+            } else if (partDef.length == 2) {
+                String mode = partDef[0].trim().substring(1);
+                String element = partDef[1].trim();
+                encPart = new WSEncryptionPart(element, mode);
+            } else if (partDef.length == 3) {
+                String mode = partDef[0].trim();
+                if (mode.length() <= 1) {
+                    mode = "Content";
+                } else {
+                    mode = mode.substring(1);
+                }
+                String nmSpace = partDef[1].trim();
+                if (nmSpace.length() <= 1) {
+                    nmSpace = soapEnvelopeURI;
+                } else {
+                    nmSpace = nmSpace.substring(1);
+                    if (nmSpace.equals(WSConstants.NULL_NS)) {
+                        nmSpace = null;
+                    }
+                }
+                String element = partDef[2].trim();
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(
+                        "partDefs: '" + mode + "' ,'" + nmSpace + "' ,'" + element + "'"
+                    );
+                }
+                encPart = new WSEncryptionPart(element, nmSpace, mode);
+            } else {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
+                        "empty",
+                        new Object[] {"WSHandler: wrong part definition: " + tmpS});
+            }
+            encPart.setRequired(required);
+            parts.add(encPart);
+        }
+    }
+
+    private static Collection<Pattern> compileCertConstraints(
+        String certConstraints, String separator
+    ) throws WSSecurityException {
+        String[] certConstraintsList = certConstraints.split(separator);
+        if (certConstraintsList != null && certConstraintsList.length > 0) {
+            Collection<Pattern> certConstraintsCollection =
+                new ArrayList<>(certConstraintsList.length);
+            for (String certConstraint : certConstraintsList) {
+                try {
+                    certConstraintsCollection.add(Pattern.compile(certConstraint.trim()));
+                } catch (PatternSyntaxException ex) {
+                    LOG.debug(ex.getMessage(), ex);
+                    throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex);
+                }
+            }
+
+            return certConstraintsCollection;
+        }
+        return Collections.emptyList();
+    }
+
+    private static Class<? extends CallbackHandler> loadCallbackHandlerClass(
+        String callbackHandlerClass, ClassLoader classLoader
+    ) throws WSSecurityException {
+        try {
+            return Loader.loadClass(classLoader, callbackHandlerClass, CallbackHandler.class);
+        } catch (ClassNotFoundException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e,
+                    "empty",
+                    new Object[] {"WSHandler: cannot load callback handler class: "
+                    + callbackHandlerClass}
+            );
+        }
+    }
+
+    private static boolean parseBoolean(String key, String value) throws WSSecurityException {
+        if ("0".equals(value) || "false".equals(value)) {
+            return false;
+        }
+        if ("1".equals(value) || "true".equals(value)) {
+            return true;
+        }
+
+        throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
+                "empty",
+                new Object[] {"WSHandler: illegal " + key + " parameter"}
+        );
+    }
+
+    private static int parseInteger(String key, String value) throws WSSecurityException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e,
+                    "empty",
+                    new Object[] {"WSHandler: illegal " + key + " parameter"}
+            );
+        }
+    }
+
+    // Only String options are used by WSHandler#getString
+    private static String getString(Map<String, ?> options, String key) {
+        Object value = options.get(key);
+        if (value instanceof String) {
+            return (String) value;
+        }
+        return null;
+    }
+
+    private static ClassLoader getContextClassLoader() {
+        try {
+            return Loader.getTCL();
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 
 import javax.security.auth.callback.CallbackHandler;
@@ -36,10 +37,13 @@ import org.apache.wss4j.common.SignatureActionToken;
 import org.apache.wss4j.common.bsp.BSPEnforcer;
 import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.cache.ReplayCache;
+import org.apache.wss4j.common.cache.SecretKeyCache;
 import org.apache.wss4j.common.crypto.AlgorithmSuite;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionVerificationCache;
+import org.apache.wss4j.common.util.CachedOutputStream;
 import org.apache.wss4j.dom.SOAPConstants;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
@@ -69,11 +73,14 @@ public class RequestData {
     private boolean useDerivedKeyForMAC = true;
     private CallbackHandler callback;
     private CallbackHandler attachmentCallbackHandler;
+    private int attachmentCacheThreshold = CachedOutputStream.DEFAULT_THRESHOLD;
     private boolean enableRevocation;
     private boolean requireSignedEncryptedDataElements;
     private ReplayCache timestampReplayCache;
     private ReplayCache nonceReplayCache;
     private ReplayCache samlOneTimeUseReplayCache;
+    private SamlAssertionVerificationCache samlAssertionVerificationCache;
+    private SecretKeyCache secretKeyCache;
     private Collection<Pattern> subjectDNPatterns = new ArrayList<>();
     private Collection<Pattern> issuerDNPatterns = new ArrayList<>();
     private final List<BSPRule> ignoredBSPRules = new LinkedList<>();
@@ -94,6 +101,7 @@ public class RequestData {
     private boolean storeBytesInAttachment;
     private Serializer encryptionSerializer;
     private WSDocInfo wsDocInfo;
+    private Executor encryptionExecutor;
 
     /**
      * Whether to add an InclusiveNamespaces PrefixList as a CanonicalizationMethod
@@ -377,6 +385,19 @@ public class RequestData {
         this.attachmentCallbackHandler = attachmentCallbackHandler;
     }
 
+    /**
+     * @return the number of bytes of an attachment that are held in memory when it is signed or
+     *         when its signature is verified. Larger attachments are cached in a temporary file. Of
+     *         a decrypted xop:Include attachment, only a prefix of this size is buffered.
+     */
+    public int getAttachmentCacheThreshold() {
+        return attachmentCacheThreshold;
+    }
+
+    public void setAttachmentCacheThreshold(int attachmentCacheThreshold) {
+        this.attachmentCacheThreshold = attachmentCacheThreshold;
+    }
+
     /**
      * Get the Validator instance corresponding to the QName
      * @param qName the QName with which to find a Validator instance
@@ -444,6 +465,34 @@ public class RequestData {
         return samlOneTimeUseReplayCache;
     }
 
+    /**
+     * Set the cache of signed SAML Assertions that were verified before
+     */
+    public void setSamlAssertionVerificationCache(SamlAssertionVerificationCache newCache) {
+        samlAssertionVerificationCache = newCache;
+    }
+
+    /**
+     * Get the cache of signed SAML Assertions that were verified before
+     */
+    public SamlAssertionVerificationCache getSamlAssertionVerificationCache() {
+        return samlAssertionVerificationCache;
+    }
+
+    /**
+     * Set the cache of SecurityContextToken secrets and derived keys
+     */
+    public void setSecretKeyCache(SecretKeyCache newCache) {
+        secretKeyCache = newCache;
+    }
+
+    /**
+     * Get the cache of SecurityContextToken secrets and derived keys
+     */
+    public SecretKeyCache getSecretKeyCache() {
+        return secretKeyCache;
+    }
+
     /**
      * Set the Signature Subject Cert Constraints
      */
@@ -766,4 +815,18 @@ public class RequestData {
     public void setWsDocInfo(WSDocInfo wsDocInfo) {
         this.wsDocInfo = wsDocInfo;
     }
+
+    public Executor getEncryptionExecutor() {
+        return encryptionExecutor;
+    }
+
+    /**
+     * Set an Executor used to encrypt the parts of an outbound message concurrently. The parts are
+     * serialized on the calling thread, and only their encryption is run by the Executor. The
+     * default is null, meaning that the parts are encrypted sequentially on the calling thread.
+     * @param encryptionExecutor the Executor used to encrypt the parts
+     */
+    public void setEncryptionExecutor(Executor encryptionExecutor) {
+        this.encryptionExecutor = encryptionExecutor;
+    }
 }
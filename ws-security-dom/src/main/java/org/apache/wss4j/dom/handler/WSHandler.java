@@ -30,8 +30,9 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
@@ -44,13 +45,17 @@ import org.apache.wss4j.common.EncryptionActionToken;
 import org.apache.wss4j.common.SignatureActionToken;
 import org.apache.wss4j.common.SignatureEncryptionActionToken;
 import org.apache.wss4j.common.WSEncryptionPart;
+import org.apache.wss4j.common.cache.SecretKeyCache;
 import org.apache.wss4j.common.crypto.AlgorithmSuite;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.crypto.JasyptPasswordEncryptor;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
+import org.apache.wss4j.common.crypto.PreparedSigner;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionVerificationCache;
+import org.apache.wss4j.common.util.CachedOutputStream;
 import org.apache.wss4j.common.util.Loader;
 import org.apache.wss4j.dom.message.WSSecHeader;
 import org.apache.wss4j.dom.message.token.SignatureConfirmation;
@@ -64,7 +69,27 @@ import org.w3c.dom.Document;
 public abstract class WSHandler {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(WSHandler.class);
+    private static final HandlerConfiguration NO_COMPILED_OPTIONS = new HandlerConfiguration();
     protected Map<String, Crypto> cryptos = new ConcurrentHashMap<>();
+    private HandlerConfiguration handlerConfiguration;
+
+    /**
+     * Set a compiled configuration of the options of this handler, which is then used instead
+     * of parsing the options for every message. It must be built from the same options that
+     * {@link #getOption(String)} returns, and it should be set before any message is processed.
+     * @param handlerConfiguration the compiled configuration of the options of this handler
+     */
+    public void setHandlerConfiguration(HandlerConfiguration handlerConfiguration) {
+        this.handlerConfiguration = handlerConfiguration;
+    }
+
+    /**
+     * @return the compiled configuration of the options of this handler, or null if the options
+     *         are parsed for every message
+     */
+    public HandlerConfiguration getHandlerConfiguration() {
+        return handlerConfiguration;
+    }
 
     /**
      * Performs all defined security actions to set-up the SOAP request.
@@ -129,6 +154,17 @@ public abstract class WSHandler {
                 decodeBooleanConfigValue(mc, WSHandlerConstants.STORE_BYTES_IN_ATTACHMENT, false);
             reqData.setStoreBytesInAttachment(storeBytesInAttachment);
         }
+        reqData.setAttachmentCacheThreshold(decodeAttachmentCacheThreshold(reqData));
+
+        if (reqData.getEncryptionExecutor() == null) {
+            Object executor = getOption(WSHandlerConstants.ENCRYPTION_EXECUTOR);
+            if (executor == null) {
+                executor = getProperty(mc, WSHandlerConstants.ENCRYPTION_EXECUTOR);
+            }
+            if (executor instanceof Executor) {
+                reqData.setEncryptionExecutor((Executor)executor);
+            }
+        }
 
         // Perform configuration
         boolean encryptionFound = false;
@@ -345,9 +381,31 @@ public abstract class WSHandler {
             reqData.setCallbackHandler(passwordCallbackHandler);
         }
 
+        reqData.setAttachmentCacheThreshold(decodeAttachmentCacheThreshold(reqData));
+
+        if (reqData.getSecretKeyCache() == null) {
+            Object cache = getOption(WSHandlerConstants.SECRET_KEY_CACHE_INSTANCE);
+            if (cache == null) {
+                cache = getProperty(mc, WSHandlerConstants.SECRET_KEY_CACHE_INSTANCE);
+            }
+            if (cache instanceof SecretKeyCache) {
+                reqData.setSecretKeyCache((SecretKeyCache)cache);
+            }
+        }
+
         if (actions.contains(WSConstants.SIGN) || actions.contains(WSConstants.ST_SIGNED)
             || actions.contains(WSConstants.ST_UNSIGNED)) {
             decodeSignatureParameter2(reqData);
+
+            if (reqData.getSamlAssertionVerificationCache() == null) {
+                Object cache = getOption(WSHandlerConstants.SAML_VERIFICATION_CACHE_INSTANCE);
+                if (cache == null) {
+                    cache = getProperty(mc, WSHandlerConstants.SAML_VERIFICATION_CACHE_INSTANCE);
+                }
+                if (cache instanceof SamlAssertionVerificationCache) {
+                    reqData.setSamlAssertionVerificationCache((SamlAssertionVerificationCache)cache);
+                }
+            }
         }
 
         if (actions.contains(WSConstants.ENCR)) {
@@ -525,10 +583,10 @@ public abstract class WSHandler {
             reqData.setUseDerivedKeyForMAC(useDerivedKeyForMAC);
         }
 
-        String iterations = getString(WSHandlerConstants.DERIVED_KEY_ITERATIONS, mc);
+        Integer iterations =
+            getConfiguration().resolveInteger(WSHandlerConstants.DERIVED_KEY_ITERATIONS, lookup(mc));
         if (iterations != null) {
-            int iIterations = Integer.parseInt(iterations);
-            reqData.setDerivedKeyIterations(iIterations);
+            reqData.setDerivedKeyIterations(iterations);
         }
     }
 
@@ -551,29 +609,10 @@ public abstract class WSHandler {
             actionToken.setUser(reqData.getUsername());
         }
 
-        String keyId = getString(WSHandlerConstants.SIG_KEY_ID, mc);
-        if (keyId != null) {
-            Integer id = WSHandlerConstants.getKeyIdentifier(keyId);
-            if (id == null) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
-                        "empty",
-                        new Object[] {"WSHandler: Signature: unknown key identification"}
-                );
-            }
-            int tmp = id;
-            if (!(tmp == WSConstants.ISSUER_SERIAL
-                    || tmp == WSConstants.BST_DIRECT_REFERENCE
-                    || tmp == WSConstants.X509_KEY_IDENTIFIER
-                    || tmp == WSConstants.SKI_KEY_IDENTIFIER
-                    || tmp == WSConstants.THUMBPRINT_IDENTIFIER
-                    || tmp == WSConstants.ENCRYPTED_KEY_SHA1_IDENTIFIER
-                    || tmp == WSConstants.KEY_VALUE)) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
-                        "empty",
-                        new Object[] {"WSHandler: Signature: illegal key identification"}
-                );
-            }
-            actionToken.setKeyIdentifierId(tmp);
+        Integer keyIdentifier =
+            getConfiguration().resolveKeyIdentifier(WSHandlerConstants.SIG_KEY_ID, lookup(mc));
+        if (keyIdentifier != null) {
+            actionToken.setKeyIdentifierId(keyIdentifier);
         }
         String algo = getString(WSHandlerConstants.SIG_ALGO, mc);
         actionToken.setSignatureAlgorithm(algo);
@@ -587,16 +626,10 @@ public abstract class WSHandler {
             actionToken.setDerivedKeyIdentifier(id);
         }
 
-        String derivedKeyLength = getString(WSHandlerConstants.DERIVED_SIGNATURE_KEY_LENGTH, mc);
-        if (derivedKeyLength != null) {
-            try {
-                int dKL = Integer.parseInt(derivedKeyLength);
-                if (dKL > 0) {
-                    actionToken.setDerivedKeyLength(dKL);
-                }
-            } catch (NumberFormatException e) {
-                LOG.warn("Error in configuring a derived key length: " + e.getMessage());
-            }
+        Integer derivedKeyLength =
+            getConfiguration().resolveInteger(WSHandlerConstants.DERIVED_SIGNATURE_KEY_LENGTH, lookup(mc));
+        if (derivedKeyLength != null && derivedKeyLength > 0) {
+            actionToken.setDerivedKeyLength(derivedKeyLength);
         }
 
         String digestAlgo = getString(WSHandlerConstants.SIG_DIGEST_ALGO, mc);
@@ -609,14 +642,8 @@ public abstract class WSHandler {
             decodeBooleanConfigValue(mc, WSHandlerConstants.USE_2005_12_NAMESPACE, true);
         reqData.setUse200512Namespace(use200512Namespace);
 
-        String parts = getString(WSHandlerConstants.SIGNATURE_PARTS, mc);
-        if (parts != null) {
-            splitEncParts(true, parts, actionToken.getParts(), reqData);
-        }
-        parts = getString(WSHandlerConstants.OPTIONAL_SIGNATURE_PARTS, mc);
-        if (parts != null) {
-            splitEncParts(false, parts, actionToken.getParts(), reqData);
-        }
+        addParts(WSHandlerConstants.SIGNATURE_PARTS, actionToken.getParts(), reqData);
+        addParts(WSHandlerConstants.OPTIONAL_SIGNATURE_PARTS, actionToken.getParts(), reqData);
 
         boolean useSingleCert =
             decodeBooleanConfigValue(mc, WSHandlerConstants.USE_SINGLE_CERTIFICATE, true);
@@ -626,6 +653,14 @@ public abstract class WSHandler {
             decodeBooleanConfigValue(mc, WSHandlerConstants.INCLUDE_SIGNATURE_TOKEN, false);
         actionToken.setIncludeToken(includeToken);
 
+        Object preparedSigner = getOption(WSHandlerConstants.PREPARED_SIGNER_INSTANCE);
+        if (preparedSigner == null) {
+            preparedSigner = getProperty(mc, WSHandlerConstants.PREPARED_SIGNER_INSTANCE);
+        }
+        if (preparedSigner instanceof PreparedSigner) {
+            actionToken.setPreparedSigner((PreparedSigner)preparedSigner);
+        }
+
         if (!reqData.isExpandXopInclude()) {
             boolean expandXOP =
                 decodeBooleanConfigValue(
@@ -679,28 +714,10 @@ public abstract class WSHandler {
         // If the following parameters are no used (they return null) then the
         // default values of WSS4J are used.
         //
-        String encKeyId = getString(WSHandlerConstants.ENC_KEY_ID, mc);
-        if (encKeyId != null) {
-            Integer id = WSHandlerConstants.getKeyIdentifier(encKeyId);
-            if (id == null) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
-                        "empty",
-                        new Object[] {"WSHandler: Encryption: unknown key identification"}
-                );
-            }
-            int tmp = id;
-            actionToken.setKeyIdentifierId(tmp);
-            if (!(tmp == WSConstants.ISSUER_SERIAL
-                    || tmp == WSConstants.X509_KEY_IDENTIFIER
-                    || tmp == WSConstants.SKI_KEY_IDENTIFIER
-                    || tmp == WSConstants.BST_DIRECT_REFERENCE
-                    || tmp == WSConstants.THUMBPRINT_IDENTIFIER
-                    || tmp == WSConstants.ENCRYPTED_KEY_SHA1_IDENTIFIER)) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
-                        "empty",
-                        new Object[] {"WSHandler: Encryption: illegal key identification"}
-                );
-            }
+        Integer keyIdentifier =
+            getConfiguration().resolveKeyIdentifier(WSHandlerConstants.ENC_KEY_ID, lookup(mc));
+        if (keyIdentifier != null) {
+            actionToken.setKeyIdentifierId(keyIdentifier);
         }
         String encSymAlgo = getString(WSHandlerConstants.ENC_SYM_ALGO, mc);
         actionToken.setSymmetricAlgorithm(encSymAlgo);
@@ -718,16 +735,10 @@ public abstract class WSHandler {
             actionToken.setDerivedKeyIdentifier(id);
         }
 
-        String derivedKeyLength = getString(WSHandlerConstants.DERIVED_ENCRYPTION_KEY_LENGTH, mc);
-        if (derivedKeyLength != null) {
-            try {
-                int dKL = Integer.parseInt(derivedKeyLength);
-                if (dKL > 0) {
-                    actionToken.setDerivedKeyLength(dKL);
-                }
-            } catch (NumberFormatException e) {
-                LOG.warn("Error in configuring a derived key length: " + e.getMessage());
-            }
+        Integer derivedKeyLength =
+            getConfiguration().resolveInteger(WSHandlerConstants.DERIVED_ENCRYPTION_KEY_LENGTH, lookup(mc));
+        if (derivedKeyLength != null && derivedKeyLength > 0) {
+            actionToken.setDerivedKeyLength(derivedKeyLength);
         }
 
         boolean use200512Namespace =
@@ -764,14 +775,8 @@ public abstract class WSHandler {
 
         handleSpecialUser(reqData);
 
-        String encParts = getString(WSHandlerConstants.ENCRYPTION_PARTS, mc);
-        if (encParts != null) {
-            splitEncParts(true, encParts, actionToken.getParts(), reqData);
-        }
-        encParts = getString(WSHandlerConstants.OPTIONAL_ENCRYPTION_PARTS, mc);
-        if (encParts != null) {
-            splitEncParts(false, encParts, actionToken.getParts(), reqData);
-        }
+        addParts(WSHandlerConstants.ENCRYPTION_PARTS, actionToken.getParts(), reqData);
+        addParts(WSHandlerConstants.OPTIONAL_ENCRYPTION_PARTS, actionToken.getParts(), reqData);
 
         boolean includeToken =
             decodeBooleanConfigValue(mc, WSHandlerConstants.INCLUDE_ENCRYPTION_TOKEN, false);
@@ -782,50 +787,44 @@ public abstract class WSHandler {
      * Decode the TimeToLive parameter for either a Timestamp or a UsernameToken Created element,
      * depending on the boolean argument
      */
-    public int decodeTimeToLive(RequestData reqData, boolean timestamp) {
+    public int decodeTimeToLive(RequestData reqData, boolean timestamp) throws WSSecurityException {
         String tag = WSHandlerConstants.TTL_TIMESTAMP;
         if (!timestamp) {
             tag = WSHandlerConstants.TTL_USERNAMETOKEN;
         }
-        String ttl = getString(tag, reqData.getMsgContext());
-        int defaultTimeToLive = 300;
-        if (ttl != null) {
-            try {
-                int ttlI = Integer.parseInt(ttl);
-                if (ttlI < 0) {
-                    return defaultTimeToLive;
-                }
-                return ttlI;
-            } catch (NumberFormatException e) {
-                return defaultTimeToLive;
-            }
-        }
-        return defaultTimeToLive;
+        return decodeNonNegativeInteger(reqData, tag, 300);
     }
 
     /**
      * Decode the FutureTimeToLive parameter for either a Timestamp or a UsernameToken Created
      * element, depending on the boolean argument
      */
-    protected int decodeFutureTimeToLive(RequestData reqData, boolean timestamp) {
+    protected int decodeFutureTimeToLive(RequestData reqData, boolean timestamp) throws WSSecurityException {
         String tag = WSHandlerConstants.TTL_FUTURE_TIMESTAMP;
         if (!timestamp) {
             tag = WSHandlerConstants.TTL_FUTURE_USERNAMETOKEN;
         }
-        String ttl = getString(tag, reqData.getMsgContext());
-        int defaultFutureTimeToLive = 60;
-        if (ttl != null) {
-            try {
-                int ttlI = Integer.parseInt(ttl);
-                if (ttlI < 0) {
-                    return defaultFutureTimeToLive;
-                }
-                return ttlI;
-            } catch (NumberFormatException e) {
-                return defaultFutureTimeToLive;
-            }
+        return decodeNonNegativeInteger(reqData, tag, 60);
+    }
+
+    /**
+     * Decode the number of bytes of an attachment that are held in memory when it is signed or
+     * when its signature is verified
+     */
+    protected int decodeAttachmentCacheThreshold(RequestData reqData) throws WSSecurityException {
+        return decodeNonNegativeInteger(
+            reqData, WSHandlerConstants.ATTACHMENT_CACHE_THRESHOLD, CachedOutputStream.DEFAULT_THRESHOLD
+        );
+    }
+
+    private int decodeNonNegativeInteger(
+        RequestData reqData, String configTag, int defaultValue
+    ) throws WSSecurityException {
+        Integer value = getConfiguration().resolveInteger(configTag, lookup(reqData.getMsgContext()));
+        if (value == null || value < 0) {
+            return defaultValue;
         }
-        return defaultFutureTimeToLive;
+        return value;
     }
 
     protected String decodePasswordType(RequestData reqData) throws WSSecurityException {
@@ -843,23 +842,8 @@ public abstract class WSHandler {
     protected boolean decodeBooleanConfigValue(
         Object messageContext, String configTag, boolean defaultToTrue
     ) throws WSSecurityException {
-
-        String value = getString(configTag, messageContext);
-
-        if (value == null) {
-            return defaultToTrue;
-        }
-        if ("0".equals(value) || "false".equals(value)) {
-            return false;
-        }
-        if ("1".equals(value) || "true".equals(value)) {
-            return true;
-        }
-
-        throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
-                "empty",
-                new Object[] {"WSHandler: illegal " + configTag + " parameter"}
-        );
+        Boolean value = getConfiguration().resolveBoolean(configTag, lookup(messageContext));
+        return value == null ? defaultToTrue : value;
     }
 
     /**
@@ -1032,9 +1016,12 @@ public abstract class WSHandler {
             cbHandler = (CallbackHandler) getProperty(mc, callbackHandlerRef);
         }
         if (cbHandler == null) {
-            String callback = getString(callbackHandlerClass, mc);
-            if (callback != null) {
-                cbHandler = loadCallbackHandler(callback, requestData);
+            Class<? extends CallbackHandler> cbClass =
+                getConfiguration().resolveCallbackHandlerClass(
+                    callbackHandlerClass, lookup(mc), getClassLoader(mc)
+                );
+            if (cbClass != null) {
+                cbHandler = newCallbackHandler(cbClass);
             }
         }
         return cbHandler;
@@ -1056,43 +1043,19 @@ public abstract class WSHandler {
             );
     }
 
-    /**
-     * Load a CallbackHandler instance.
-     * @param callbackHandlerClass The class name of the CallbackHandler instance
-     * @param requestData The RequestData which supplies the message context
-     * @return a CallbackHandler instance
-     * @throws WSSecurityException
-     */
-    private CallbackHandler loadCallbackHandler(
-        String callbackHandlerClass,
-        RequestData requestData
+    private CallbackHandler newCallbackHandler(
+        Class<? extends CallbackHandler> cbClass
     ) throws WSSecurityException {
-
-        Class<? extends CallbackHandler> cbClass = null;
-        CallbackHandler cbHandler = null;
-        try {
-            cbClass =
-                Loader.loadClass(getClassLoader(requestData.getMsgContext()),
-                                 callbackHandlerClass,
-                                 CallbackHandler.class);
-        } catch (ClassNotFoundException e) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e,
-                    "empty",
-                    new Object[] {"WSHandler: cannot load callback handler class: "
-                    + callbackHandlerClass}
-            );
-        }
         try {
-            cbHandler = cbClass.newInstance();
+            return cbClass.newInstance();
         } catch (Exception e) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e,
                     "empty",
                     new Object[] {"WSHandler: cannot create instance of callback handler: "
-                    + callbackHandlerClass
+                    + cbClass.getName()
                     }
             );
         }
-        return cbHandler;
     }
 
     protected PasswordEncryptor getPasswordEncryptor(RequestData requestData) {
@@ -1222,55 +1185,16 @@ public abstract class WSHandler {
         return new WSPasswordCallback(username, reason);
     }
 
-    private void splitEncParts(boolean required, String tmpS,
-                               List<WSEncryptionPart> parts, RequestData reqData)
+    /**
+     * Add the (compiled) signature or encryption parts of the given configuration tag
+     */
+    private void addParts(String tag, List<WSEncryptionPart> parts, RequestData reqData)
         throws WSSecurityException {
-        WSEncryptionPart encPart = null;
-        String[] rawParts = tmpS.split(";");
-
-        for (int i = 0; i < rawParts.length; i++) {
-            String[] partDef = rawParts[i].split("}");
-
-            if (partDef.length == 1) {
-                LOG.debug("single partDef: '{}'", partDef[0]);
-                encPart =
-                    new WSEncryptionPart(partDef[0].trim(),
-                            reqData.getSoapConstants().getEnvelopeURI(),
-                            "Content");
-            } else if (partDef.length == 2) {
-                String mode = partDef[0].trim().substring(1);
-                String element = partDef[1].trim();
-                encPart = new WSEncryptionPart(element, mode);
-            } else if (partDef.length == 3) {
-                String mode = partDef[0].trim();
-                if (mode.length() <= 1) {
-                    mode = "Content";
-                } else {
-                    mode = mode.substring(1);
-                }
-                String nmSpace = partDef[1].trim();
-                if (nmSpace.length() <= 1) {
-                    nmSpace = reqData.getSoapConstants().getEnvelopeURI();
-                } else {
-                    nmSpace = nmSpace.substring(1);
-                    if (nmSpace.equals(WSConstants.NULL_NS)) {
-                        nmSpace = null;
-                    }
-                }
-                String element = partDef[2].trim();
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug(
-                        "partDefs: '" + mode + "' ,'" + nmSpace + "' ,'" + element + "'"
-                    );
-                }
-                encPart = new WSEncryptionPart(element, nmSpace, mode);
-            } else {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
-                        "empty",
-                        new Object[] {"WSHandler: wrong part definition: " + tmpS});
-            }
-            encPart.setRequired(required);
-            parts.add(encPart);
+        String soapEnvelopeURI = reqData.getSoapConstants().getEnvelopeURI();
+        List<WSEncryptionPart> resolvedParts =
+            getConfiguration().resolveParts(tag, soapEnvelopeURI, lookup(reqData.getMsgContext()));
+        if (resolvedParts != null) {
+            parts.addAll(resolvedParts);
         }
     }
 
@@ -1330,27 +1254,23 @@ public abstract class WSHandler {
             );
         reqData.setEnableRevocation(enableRevocation);
 
-        String certConstraints =
-            getString(WSHandlerConstants.SIG_SUBJECT_CERT_CONSTRAINTS, reqData.getMsgContext());
-        if (certConstraints != null) {
-            String certConstraintsSeparator =
-                getString(WSHandlerConstants.SIG_CERT_CONSTRAINTS_SEPARATOR, reqData.getMsgContext());
-            if (certConstraintsSeparator == null || certConstraintsSeparator.isEmpty()) {
-                certConstraintsSeparator = ",";
-            }
-            Collection<Pattern> subjectCertConstraints = getCertConstraints(certConstraints, certConstraintsSeparator);
+        String certConstraintsSeparator =
+            getString(WSHandlerConstants.SIG_CERT_CONSTRAINTS_SEPARATOR, reqData.getMsgContext());
+        if (certConstraintsSeparator == null || certConstraintsSeparator.isEmpty()) {
+            certConstraintsSeparator = ",";
+        }
+        Collection<Pattern> subjectCertConstraints =
+            getConfiguration().resolveCertConstraints(WSHandlerConstants.SIG_SUBJECT_CERT_CONSTRAINTS,
+                                                      certConstraintsSeparator,
+                                                      lookup(reqData.getMsgContext()));
+        if (subjectCertConstraints != null) {
             reqData.setSubjectCertConstraints(subjectCertConstraints);
         }
-        String issuerCertConstraintsStringValue =
-            getString(WSHandlerConstants.SIG_ISSUER_CERT_CONSTRAINTS, reqData.getMsgContext());
-        if (issuerCertConstraintsStringValue != null) {
-            String certConstraintsSeparator =
-                getString(WSHandlerConstants.SIG_CERT_CONSTRAINTS_SEPARATOR, reqData.getMsgContext());
-            if (certConstraintsSeparator == null || certConstraintsSeparator.isEmpty()) {
-                certConstraintsSeparator = ",";
-            }
-            Collection<Pattern> issuerCertConstraints =
-                getCertConstraints(issuerCertConstraintsStringValue, certConstraintsSeparator);
+        Collection<Pattern> issuerCertConstraints =
+            getConfiguration().resolveCertConstraints(WSHandlerConstants.SIG_ISSUER_CERT_CONSTRAINTS,
+                                                      certConstraintsSeparator,
+                                                      lookup(reqData.getMsgContext()));
+        if (issuerCertConstraints != null) {
             reqData.setIssuerDNPatterns(issuerCertConstraints);
         }
 
@@ -1370,25 +1290,6 @@ public abstract class WSHandler {
         reqData.setExpandXopInclude(expandXOP);
     }
 
-    private Collection<Pattern> getCertConstraints(String certConstraints, String separator) throws WSSecurityException {
-        String[] certConstraintsList = certConstraints.split(separator);
-        if (certConstraintsList != null && certConstraintsList.length > 0) {
-            Collection<Pattern> certConstraintsCollection =
-                new ArrayList<>(certConstraintsList.length);
-            for (String certConstraint : certConstraintsList) {
-                try {
-                    certConstraintsCollection.add(Pattern.compile(certConstraint.trim()));
-                } catch (PatternSyntaxException ex) {
-                    LOG.debug(ex.getMessage(), ex);
-                    throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex);
-                }
-            }
-
-            return certConstraintsCollection;
-        }
-        return Collections.emptyList();
-    }
-
     /*
      * Set and check the decryption specific parameters, if necessary
      * take over signature crypto instance.
@@ -1407,6 +1308,21 @@ public abstract class WSHandler {
         reqData.setAllowRSA15KeyTransportAlgorithm(allowRsa15);
     }
 
+    /**
+     * @return the compiled configuration of the options of this handler, or a configuration
+     *         without compiled options, which looks up every option
+     */
+    private HandlerConfiguration getConfiguration() {
+        return handlerConfiguration == null ? NO_COMPILED_OPTIONS : handlerConfiguration;
+    }
+
+    /**
+     * @return the lookup of an option (or message context property) of the given message context
+     */
+    private Function<String, String> lookup(Object mc) {
+        return key -> getString(key, mc);
+    }
+
     /**
      * Looks up key first via {@link #getOption(String)} and if not found
      * there, via {@link #getProperty(Object, String)}
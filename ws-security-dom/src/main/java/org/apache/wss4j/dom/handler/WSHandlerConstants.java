@@ -60,6 +60,16 @@ public final class WSHandlerConstants extends ConfigurationConstants {
      */
     public static final String USE_ENCODED_PASSWORDS = "useEncodedPasswords";
 
+    /**
+     * This holds a reference to a java.util.concurrent.Executor instance, which is used to
+     * encrypt the parts of an outbound message concurrently. The parts are serialized, and the
+     * EncryptedData elements are inserted into the message, on the calling thread, in the same
+     * order as when the parts are encrypted sequentially. Only the encryption of the serialized
+     * parts is run by the Executor. By default, the parts are encrypted sequentially on the
+     * calling thread.
+     */
+    public static final String ENCRYPTION_EXECUTOR = "encryptionExecutor";
+
     //
     // Internal storage constants
     //
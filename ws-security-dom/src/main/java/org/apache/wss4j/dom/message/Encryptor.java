@@ -19,12 +19,19 @@
 
 package org.apache.wss4j.dom.message;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -40,6 +47,7 @@ import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.JCAEnginePool;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
@@ -71,6 +79,9 @@ import org.w3c.dom.NodeList;
  */
 public class Encryptor {
 
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(Encryptor.class);
+
     private Document doc;
     private WSSecHeader securityHeader;
     private WsuIdAllocator idAllocator;
@@ -80,6 +91,7 @@ public class Encryptor {
     private Serializer encryptionSerializer;
     private boolean expandXopInclude;
     private WSDocInfo wsDocInfo;
+    private Executor encryptionExecutor;
 
     public List<String> doEncryption(
         KeyInfo keyInfo,
@@ -101,6 +113,23 @@ public class Encryptor {
             xmlCipher.setSerializer(encryptionSerializer);
         }
 
+        if (encryptionExecutor != null && !storeBytesInAttachment && !expandXopInclude) {
+            List<String> encDataRef = encryptConcurrently(keyInfo, secretKey, encryptionAlgorithm, references);
+            if (encDataRef != null) {
+                WSEncryptionPart attachmentEncryptionPart = null;
+                for (WSEncryptionPart encPart : references) {
+                    if (encPart.getId() != null && encPart.getId().startsWith("cid:")) {
+                        attachmentEncryptionPart = encPart;
+                    }
+                }
+                if (attachmentEncryptionPart != null) {
+                    encryptAttachment(keyInfo, secretKey, encryptionAlgorithm, attachmentEncryptionPart,
+                                      encDataRef, attachmentEncryptedDataElements);
+                }
+                return encDataRef;
+            }
+        }
+
         List<String> encDataRef = new ArrayList<>();
         WSEncryptionPart attachmentEncryptionPart = null;
         for (int part = 0; part < references.size(); part++) {
@@ -213,6 +242,183 @@ public class Encryptor {
         return encDataRef;
     }
 
+    /**
+     * Encrypt the elements of the (non-attachment) parts concurrently on the encryption Executor.
+     * The document is only accessed by the calling thread: the Ids are allocated, the
+     * EncryptedHeader elements are created, the elements are serialized, and the elements are
+     * replaced with their EncryptedData elements on the calling thread, in the same order as when
+     * the parts are encrypted sequentially. Only the encryption of the serialized elements is run
+     * by the Executor. So the result only differs in the IVs.
+     *
+     * @return the references to the EncryptedData elements, or null if the parts can't be
+     *         encrypted independently, i.e. if an element to encrypt contains another one. The
+     *         document is not modified in this case.
+     */
+    private List<String> encryptConcurrently(
+        KeyInfo keyInfo,
+        SecretKey secretKey,
+        String encryptionAlgorithm,
+        List<WSEncryptionPart> references
+    ) throws WSSecurityException {
+        List<WSEncryptionPart> encParts = new ArrayList<>();
+        List<Element> elementsToEncrypt = new ArrayList<>();
+        for (WSEncryptionPart encPart : references) {
+            if (encPart.getId() != null && encPart.getId().startsWith("cid:")) {
+                continue;
+            }
+            if (callbackLookup == null) {
+                callbackLookup = new DOMCallbackLookup(doc);
+            }
+            List<Element> elements = WSSecurityUtil.findElements(encPart, callbackLookup, doc);
+            if (elements == null || elements.isEmpty()) {
+                if (!encPart.isRequired()) {
+                    continue;
+                }
+                throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.FAILURE,
+                    "noEncElement",
+                    new Object[] {"{" + encPart.getNamespace() + "}" + encPart.getName()});
+            }
+            for (Element element : elements) {
+                encParts.add(encPart);
+                elementsToEncrypt.add(element);
+            }
+        }
+        if (!areIndependent(elementsToEncrypt)) {
+            LOG.debug("The elements to encrypt overlap, so they are encrypted sequentially");
+            return null;
+        }
+
+        List<String> ids = new ArrayList<>(elementsToEncrypt.size());
+        List<XMLCipher> xmlCiphers = new ArrayList<>(elementsToEncrypt.size());
+        for (int i = 0; i < elementsToEncrypt.size(); i++) {
+            Element elementToEncrypt = elementsToEncrypt.get(i);
+            ids.add(idAllocator.createId("ED-", elementToEncrypt));
+            if ("Header".equals(encParts.get(i).getEncModifier())) {
+                String soapNamespace = WSSecurityUtil.getSOAPNamespace(doc.getDocumentElement());
+                if (elementToEncrypt.getParentNode().getNamespaceURI().equals(soapNamespace)
+                    && WSConstants.ELEM_HEADER.equals(elementToEncrypt.getParentNode().getLocalName())) {
+                    createEncryptedHeaderElement(securityHeader, elementToEncrypt, idAllocator);
+                }
+            }
+            try {
+                XMLCipher xmlCipher = XMLCipher.getInstance(encryptionAlgorithm);
+                if (encryptionSerializer != null) {
+                    xmlCipher.setSerializer(encryptionSerializer);
+                }
+                xmlCipher.init(XMLCipher.ENCRYPT_MODE, secretKey);
+                EncryptedData encData = xmlCipher.getEncryptedData();
+                encData.setId(ids.get(i));
+                encData.setKeyInfo(keyInfo);
+                xmlCiphers.add(xmlCipher);
+            } catch (XMLEncryptionException ex) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_ENCRYPTION, ex);
+            }
+        }
+
+        // Each element is serialized here, and then encrypted by the Executor
+        List<CompletableFuture<EncryptedData>> futures = new ArrayList<>(elementsToEncrypt.size());
+        for (int i = 0; i < elementsToEncrypt.size(); i++) {
+            XMLCipher xmlCipher = xmlCiphers.get(i);
+            Element elementToEncrypt = elementsToEncrypt.get(i);
+            String type = EncryptionConstants.TYPE_ELEMENT;
+            byte[] serializedOctets;
+            try {
+                if ("Content".equals(encParts.get(i).getEncModifier())) {
+                    type = EncryptionConstants.TYPE_CONTENT;
+                    serializedOctets = xmlCipher.getSerializer().serializeToByteArray(elementToEncrypt.getChildNodes());
+                } else {
+                    serializedOctets = xmlCipher.getSerializer().serializeToByteArray(elementToEncrypt);
+                }
+            } catch (Exception ex) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_ENCRYPTION, ex);
+            }
+            String encryptedDataType = type;
+            CompletableFuture<EncryptedData> future;
+            try {
+                future = CompletableFuture.supplyAsync(
+                    () -> encryptData(xmlCipher, encryptedDataType, serializedOctets), encryptionExecutor);
+            } catch (RejectedExecutionException ex) {
+                LOG.debug("Element {} will be encrypted on the calling thread", ids.get(i), ex);
+                future = new CompletableFuture<>();
+                try {
+                    future.complete(encryptData(xmlCipher, encryptedDataType, serializedOctets));
+                } catch (CompletionException ce) {
+                    future.completeExceptionally(ce.getCause());
+                }
+            }
+            futures.add(future);
+        }
+
+        List<EncryptedData> encryptedData = new ArrayList<>(elementsToEncrypt.size());
+        Throwable failure = null;
+        for (CompletableFuture<EncryptedData> future : futures) {
+            try {
+                encryptedData.add(future.join());
+            } catch (CompletionException ex) {
+                if (failure == null) {
+                    failure = ex.getCause();
+                }
+            }
+        }
+        if (failure instanceof WSSecurityException) {
+            throw (WSSecurityException)failure;
+        } else if (failure instanceof Exception) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_ENCRYPTION, (Exception)failure);
+        } else if (failure != null) {
+            throw (Error)failure;
+        }
+
+        List<String> encDataRef = new ArrayList<>();
+        for (int i = 0; i < elementsToEncrypt.size(); i++) {
+            Element elementToEncrypt = elementsToEncrypt.get(i);
+            Element encryptedDataElement = xmlCiphers.get(i).martial(doc, encryptedData.get(i));
+            if ("Content".equals(encParts.get(i).getEncModifier())) {
+                Node child = elementToEncrypt.getFirstChild();
+                while (child != null) {
+                    Node sibling = child.getNextSibling();
+                    elementToEncrypt.removeChild(child);
+                    child = sibling;
+                }
+                elementToEncrypt.appendChild(encryptedDataElement);
+            } else {
+                elementToEncrypt.getParentNode().replaceChild(encryptedDataElement, elementToEncrypt);
+            }
+            encParts.get(i).setEncId(ids.get(i));
+            encDataRef.add("#" + ids.get(i));
+        }
+        return encDataRef;
+    }
+
+    private EncryptedData encryptData(XMLCipher xmlCipher, String type, byte[] serializedOctets) {
+        try {
+            // The document is only passed as the context of the EncryptedData, it is not accessed
+            return xmlCipher.encryptData(doc, type, new ByteArrayInputStream(serializedOctets));
+        } catch (Exception ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    /**
+     * @return true if no element of the list is (or contains) another element of the list
+     */
+    private static boolean areIndependent(List<Element> elements) {
+        Set<Node> nodes = new HashSet<>(elements);
+        if (nodes.size() != elements.size()) {
+            return false;
+        }
+        for (Element element : elements) {
+            Node parent = element.getParentNode();
+            while (parent != null) {
+                if (nodes.contains(parent)) {
+                    return false;
+                }
+                parent = parent.getParentNode();
+            }
+        }
+        return true;
+    }
+
     private Element findMatchingExpandedElement(Element element) {
         Element matchingElement = null;
 
@@ -306,6 +512,7 @@ public class Encryptor {
 
         // Now build up to a properly XML Encryption encoded octet stream
         byte[] iv = cipher.getIV();
+        JCAEnginePool.release(cipher);
         byte[] finalEncryptedBytes = new byte[iv.length + encryptedBytes.length];
         System.arraycopy(iv, 0, finalEncryptedBytes, 0, iv.length);
         System.arraycopy(encryptedBytes, 0, finalEncryptedBytes, iv.length, encryptedBytes.length);
@@ -424,7 +631,7 @@ public class Encryptor {
         throws WSSecurityException {
         String jceAlgorithm = JCEMapper.translateURItoJCEID(encryptionAlgorithm);
         try {
-            Cipher cipher = Cipher.getInstance(jceAlgorithm);
+            Cipher cipher = JCAEnginePool.getCipher(jceAlgorithm, null);
 
             int ivLen = JCEMapper.getIVLengthFromURI(encryptionAlgorithm) / 8;
             byte[] iv = XMLSecurityConstants.generateBytes(ivLen);
@@ -595,4 +802,20 @@ public class Encryptor {
         this.wsDocInfo = wsDocInfo;
     }
 
+    public Executor getEncryptionExecutor() {
+        return encryptionExecutor;
+    }
+
+    /**
+     * Set an Executor used to encrypt the parts concurrently. The parts are serialized on the
+     * calling thread, and only their encryption is run by the Executor, so the document is not
+     * accessed concurrently. The default is null, meaning that the parts are encrypted
+     * sequentially on the calling thread. The Executor is not used if the bytes are stored in
+     * attachments, or if xop:Include elements are expanded.
+     * @param encryptionExecutor the Executor used to encrypt the parts
+     */
+    public void setEncryptionExecutor(Executor encryptionExecutor) {
+        this.encryptionExecutor = encryptionExecutor;
+    }
+
 }
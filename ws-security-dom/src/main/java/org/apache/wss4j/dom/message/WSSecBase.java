@@ -20,6 +20,7 @@
 package org.apache.wss4j.dom.message;
 
 import org.apache.wss4j.common.WSEncryptionPart;
+import org.apache.wss4j.common.util.CachedOutputStream;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
@@ -46,6 +47,7 @@ public class WSSecBase {
     protected int keyIdentifierType = WSConstants.ISSUER_SERIAL;
     protected CallbackLookup callbackLookup;
     protected CallbackHandler attachmentCallbackHandler;
+    protected int attachmentCacheThreshold = CachedOutputStream.DEFAULT_THRESHOLD;
     protected boolean storeBytesInAttachment;
     protected boolean expandXopInclude;
     protected boolean addWSUNamespace;
@@ -134,6 +136,14 @@ public class WSSecBase {
         this.attachmentCallbackHandler = attachmentCallbackHandler;
     }
 
+    /**
+     * Set the number of bytes of an attachment that are held in memory when it is signed. Larger
+     * attachments are cached in a temporary file.
+     */
+    public void setAttachmentCacheThreshold(int attachmentCacheThreshold) {
+        this.attachmentCacheThreshold = attachmentCacheThreshold;
+    }
+
     public void setStoreBytesInAttachment(boolean storeBytesInAttachment) {
         this.storeBytesInAttachment = storeBytesInAttachment;
     }
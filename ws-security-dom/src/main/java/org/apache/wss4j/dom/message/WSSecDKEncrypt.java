@@ -21,6 +21,7 @@ package org.apache.wss4j.dom.message;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import javax.crypto.SecretKey;
 
@@ -50,6 +51,7 @@ public class WSSecDKEncrypt extends WSSecDerivedKeyBase {
     private List<Element> attachmentEncryptedDataElements;
 
     private Serializer encryptionSerializer;
+    private Executor encryptionExecutor;
 
     public WSSecDKEncrypt(WSSecHeader securityHeader) {
         super(securityHeader);
@@ -140,6 +142,7 @@ public class WSSecDKEncrypt extends WSSecDerivedKeyBase {
         encryptor.setAttachmentCallbackHandler(attachmentCallbackHandler);
         encryptor.setStoreBytesInAttachment(storeBytesInAttachment);
         encryptor.setEncryptionSerializer(encryptionSerializer);
+        encryptor.setEncryptionExecutor(encryptionExecutor);
         encryptor.setWsDocInfo(getWsDocInfo());
         List<String> encDataRefs =
             encryptor.doEncryption(keyInfo, key, symEncAlgo, references, attachmentEncryptedDataElements);
@@ -232,4 +235,18 @@ public class WSSecDKEncrypt extends WSSecDerivedKeyBase {
     public void setEncryptionSerializer(Serializer encryptionSerializer) {
         this.encryptionSerializer = encryptionSerializer;
     }
+
+    public Executor getEncryptionExecutor() {
+        return encryptionExecutor;
+    }
+
+    /**
+     * Set an Executor used to encrypt the parts concurrently. The parts are serialized on the
+     * calling thread, and only their encryption is run by the Executor. The default is null,
+     * meaning that the parts are encrypted sequentially on the calling thread.
+     * @param encryptionExecutor the Executor used to encrypt the parts
+     */
+    public void setEncryptionExecutor(Executor encryptionExecutor) {
+        this.encryptionExecutor = encryptionExecutor;
+    }
 }
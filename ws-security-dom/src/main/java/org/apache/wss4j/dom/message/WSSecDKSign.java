@@ -49,6 +49,7 @@ import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
+import org.apache.wss4j.dom.transform.AttachmentContentSignatureTransform;
 import org.apache.wss4j.dom.transform.STRTransform;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
 
@@ -280,6 +281,8 @@ public class WSSecDKSign extends WSSecDerivedKeyBase {
                 );
             }
             signContext.setProperty(STRTransform.TRANSFORM_WS_DOC_INFO, wsDocInfo);
+            signContext.setProperty(AttachmentContentSignatureTransform.ATTACHMENT_CACHE_THRESHOLD,
+                                    attachmentCacheThreshold);
             wsDocInfo.setCallbackLookup(callbackLookup);
 
             // Add the elements to sign to the Signature Context
@@ -27,7 +27,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-import javax.security.auth.Destroyable;
 import javax.xml.crypto.MarshalException;
 import javax.xml.crypto.XMLStructure;
 import javax.xml.crypto.dom.DOMCryptoContext;
@@ -49,6 +48,7 @@ import org.apache.wss4j.common.WSEncryptionPart;
 import org.apache.wss4j.common.WSS4JConstants;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoType;
+import org.apache.wss4j.common.crypto.PreparedSigner;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.token.BinarySecurity;
 import org.apache.wss4j.common.token.DOMX509Data;
@@ -62,6 +62,7 @@ import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.dom.message.token.KerberosSecurity;
+import org.apache.wss4j.dom.transform.AttachmentContentSignatureTransform;
 import org.apache.wss4j.dom.transform.STRTransform;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
 import org.w3c.dom.Document;
@@ -110,6 +111,7 @@ public class WSSecSignature extends WSSecSignatureBase {
     private boolean includeSignatureToken;
     private boolean addInclusivePrefixes = true;
     private Element customKeyInfoElement;
+    private PreparedSigner preparedSigner;
 
     public WSSecSignature(WSSecHeader securityHeader) {
         super(securityHeader);
@@ -149,7 +151,8 @@ public class WSSecSignature extends WSSecSignatureBase {
      * This method does not add the Signature element to the security header.
      * See <code>prependSignatureElementToHeader()</code> method.
      *
-     * @param cr An instance of the Crypto API to handle keystore and certificates
+     * @param cr An instance of the Crypto API to handle keystore and certificates. If it is
+     *        null, then the Crypto instance of the PreparedSigner is used (if set)
      * @throws WSSecurityException
      */
     public void prepare(Crypto cr)
@@ -159,12 +162,15 @@ public class WSSecSignature extends WSSecSignatureBase {
         // retrieval
         //
         crypto = cr;
+        if (crypto == null && preparedSigner != null) {
+            crypto = preparedSigner.getCrypto();
+        }
         WSDocInfo wsDocInfo = getWsDocInfo();
         if (wsDocInfo == null) {
             wsDocInfo = new WSDocInfo(getDocument());
             super.setWsDocInfo(wsDocInfo);
         }
-        wsDocInfo.setCrypto(cr);
+        wsDocInfo.setCrypto(crypto);
 
         //
         // At first get the security token (certificate) according to the parameters.
@@ -462,15 +468,23 @@ public class WSSecSignature extends WSSecSignatureBase {
             byte[] certBytes = null;
             if (!useSingleCert) {
                 bstToken.setAttributeNS(null, "ValueType", PKIPathSecurity.PKI_TYPE);
-                certBytes = crypto.getBytesFromCertificates(certs);
+                if (isUsePreparedSigner()) {
+                    certBytes = preparedSigner.getEncodedCertificates();
+                } else {
+                    certBytes = crypto.getBytesFromCertificates(certs);
+                }
             } else {
                 bstToken.setAttributeNS(null, "ValueType", X509Security.X509_V3_TYPE);
-                try {
-                    certBytes = certs[0].getEncoded();
-                } catch (CertificateEncodingException e) {
-                    throw new WSSecurityException(
-                        WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, e, "encodeError"
-                    );
+                if (isUsePreparedSigner()) {
+                    certBytes = preparedSigner.getEncodedCertificate();
+                } else {
+                    try {
+                        certBytes = certs[0].getEncoded();
+                    } catch (CertificateEncodingException e) {
+                        throw new WSSecurityException(
+                            WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, e, "encodeError"
+                        );
+                    }
                 }
             }
 
@@ -482,10 +496,18 @@ public class WSSecSignature extends WSSecSignatureBase {
             BinarySecurity binarySecurity = null;
             if (!useSingleCert) {
                 binarySecurity = new PKIPathSecurity(getDocument());
-                ((PKIPathSecurity) binarySecurity).setX509Certificates(certs, crypto);
+                if (isUsePreparedSigner()) {
+                    binarySecurity.setToken(preparedSigner.getEncodedCertificates());
+                } else {
+                    ((PKIPathSecurity) binarySecurity).setX509Certificates(certs, crypto);
+                }
             } else {
                 binarySecurity = new X509Security(getDocument());
-                ((X509Security) binarySecurity).setX509Certificate(certs[0]);
+                if (isUsePreparedSigner()) {
+                    binarySecurity.setToken(preparedSigner.getEncodedCertificate());
+                } else {
+                    ((X509Security) binarySecurity).setX509Certificate(certs[0]);
+                }
             }
             binarySecurity.setID(certUri);
             if (addWSUNamespace) {
@@ -561,7 +583,9 @@ public class WSSecSignature extends WSSecSignatureBase {
     ) throws WSSecurityException {
         try {
             java.security.Key key;
-            if (secretKey == null) {
+            if (secretKey == null && isUsePreparedSigner()) {
+                key = preparedSigner.getPrivateKey();
+            } else if (secretKey == null) {
                 key = crypto.getPrivateKey(user, password);
             } else {
                 key = KeyUtils.prepareSecretKey(sigAlgo, secretKey);
@@ -608,6 +632,8 @@ public class WSSecSignature extends WSSecSignatureBase {
                 );
             }
             signContext.setProperty(STRTransform.TRANSFORM_WS_DOC_INFO, getWsDocInfo());
+            signContext.setProperty(AttachmentContentSignatureTransform.ATTACHMENT_CACHE_THRESHOLD,
+                                    attachmentCacheThreshold);
             getWsDocInfo().setCallbackLookup(callbackLookup);
 
             // Add the elements to sign to the Signature Context
@@ -616,13 +642,9 @@ public class WSSecSignature extends WSSecSignatureBase {
 
             signatureValue = sig.getSignatureValue().getValue();
 
-            // Clean the private key from memory
-            if (key instanceof Destroyable) {
-                try {
-                    ((Destroyable)key).destroy();
-                } catch (javax.security.auth.DestroyFailedException ex) {
-                    LOG.debug("Error destroying private key: {}", ex.getMessage());
-                }
+            // Clean the private key from memory, unless it is shared by the prepared signer
+            if (!isUsePreparedSigner()) {
+                KeyUtils.destroyKey(key);
             }
 
             cleanup();
@@ -831,6 +853,33 @@ public class WSSecSignature extends WSSecSignatureBase {
         this.useThisCert = cer;
     }
 
+    /**
+     * Set a PreparedSigner to sign with. Its certificate chain and private key are used instead of
+     * retrieving them from the Crypto instance, and its signature algorithm is used unless a
+     * signature algorithm is set explicitly. This also sets the user to the user of the
+     * PreparedSigner. A PreparedSigner can be shared by the WSSecSignature instances of
+     * different messages.
+     * @param preparedSigner the PreparedSigner to sign with
+     */
+    public void setPreparedSigner(PreparedSigner preparedSigner) {
+        this.preparedSigner = preparedSigner;
+        if (preparedSigner != null) {
+            this.user = preparedSigner.getUser();
+        }
+    }
+
+    public PreparedSigner getPreparedSigner() {
+        return preparedSigner;
+    }
+
+    /**
+     * The certificate and private key of the PreparedSigner are used, unless a certificate was
+     * set explicitly.
+     */
+    private boolean isUsePreparedSigner() {
+        return preparedSigner != null && useThisCert == null;
+    }
+
     /**
      * Returns the BST Token element.
      * The method can be called any time after <code>prepare()</code>.
@@ -873,7 +922,12 @@ public class WSSecSignature extends WSSecSignatureBase {
             || keyIdentifierType == WSConstants.CUSTOM_SYMM_SIGNING_DIRECT
             || keyIdentifierType == WSConstants.ENCRYPTED_KEY_SHA1_IDENTIFIER
             || keyIdentifierType == WSConstants.CUSTOM_KEY_IDENTIFIER)) {
-            if (useThisCert == null) {
+            if (useThisCert == null && preparedSigner != null) {
+                certs = preparedSigner.getX509Certificates();
+                if (sigAlgo == null) {
+                    sigAlgo = preparedSigner.getSignatureAlgorithm();
+                }
+            } else if (useThisCert == null) {
                 CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
                 cryptoType.setAlias(user);
                 if (crypto == null) {
@@ -37,6 +37,7 @@ import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.message.token.KerberosSecurity;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
 import org.apache.wss4j.dom.validate.Credential;
+import org.apache.wss4j.dom.validate.CredentialValidation;
 import org.apache.wss4j.dom.validate.Validator;
 import org.w3c.dom.Element;
 
@@ -71,11 +72,7 @@ public class BinarySecurityTokenProcessor implements Processor {
         Validator validator = data.getValidator(new QName(elem.getNamespaceURI(),
                                                           elem.getLocalName()));
 
-        if (data.getSigVerCrypto() == null) {
-            certs = getCertificatesTokenReference(token, data.getDecCrypto());
-        } else {
-            certs = getCertificatesTokenReference(token, data.getSigVerCrypto());
-        }
+        certs = getCertificatesTokenReference(token, data);
 
         WSSecurityEngineResult result =
             new WSSecurityEngineResult(WSConstants.BST, token, certs);
@@ -90,7 +87,15 @@ public class BinarySecurityTokenProcessor implements Processor {
             credential.setBinarySecurityToken(token);
             credential.setCertificates(certs);
 
-            Credential returnedCredential = validator.validate(credential, data);
+            Credential returnedCredential;
+            CredentialValidation validation = data.getWsDocInfo().getCredentialValidation(elem);
+            if (validation != null) {
+                // The token was validated ahead, using a copy of the element
+                credential = validation.getCredential();
+                returnedCredential = validation.validate();
+            } else {
+                returnedCredential = validator.validate(credential, data);
+            }
             result.put(WSSecurityEngineResult.TAG_VALIDATED_TOKEN, Boolean.TRUE);
             result.put(WSSecurityEngineResult.TAG_SECRET, returnedCredential.getSecretKey());
 
@@ -123,6 +128,43 @@ public class BinarySecurityTokenProcessor implements Processor {
         return java.util.Collections.singletonList(result);
     }
 
+    /**
+     * Get the validation of the given BinarySecurityToken, so that the token can be validated
+     * (e.g. in another thread) ahead of processing it with {@link #handleToken(Element, RequestData)}.
+     * The Credential to validate is extracted from a copy of the element.
+     *
+     * @param elem the BinarySecurityToken element
+     * @param data the RequestData associated with the request
+     * @return the validation of the token, or null if there is no Validator for the token or
+     *         if the token was processed already
+     * @throws WSSecurityException if the token is invalid
+     */
+    public CredentialValidation prepareValidation(
+        Element elem,
+        RequestData data
+    ) throws WSSecurityException {
+        String id = elem.getAttributeNS(WSConstants.WSU_NS, "Id");
+        Validator validator = data.getValidator(new QName(elem.getNamespaceURI(),
+                                                          elem.getLocalName()));
+        if (validator == null || !"".equals(id) && data.getWsDocInfo().getTokenElement(id) != null) {
+            return null;
+        }
+
+        BinarySecurity token = createSecurityToken(WSSecurityUtil.copyToNewDocument(elem), data);
+        Credential credential = new Credential();
+        credential.setBinarySecurityToken(token);
+        credential.setCertificates(getCertificatesTokenReference(token, data));
+        return new CredentialValidation(validator, credential, data);
+    }
+
+    private X509Certificate[] getCertificatesTokenReference(BinarySecurity token, RequestData data)
+        throws WSSecurityException {
+        if (data.getSigVerCrypto() == null) {
+            return getCertificatesTokenReference(token, data.getDecCrypto());
+        }
+        return getCertificatesTokenReference(token, data.getSigVerCrypto());
+    }
+
     /**
      * Extracts the certificate(s) from the Binary Security token reference.
      *
@@ -25,6 +25,7 @@ import java.util.List;
 import org.w3c.dom.Element;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.common.cache.SecretKeyCache;
 import org.apache.wss4j.common.crypto.AlgorithmSuite;
 import org.apache.wss4j.common.crypto.AlgorithmSuiteValidator;
 import org.apache.wss4j.common.ext.WSSecurityException;
@@ -77,7 +78,22 @@ public class DerivedKeyTokenProcessor implements Processor {
                                           new Object[] {"Missing wsc:Nonce value"});
         }
         int length = dkt.getLength();
-        byte[] keyBytes = dkt.deriveKey(length, secret);
+        SecretKeyCache secretKeyCache = data.getSecretKeyCache();
+        byte[] keyBytes = null;
+        if (secretKeyCache != null) {
+            // Reuse the key derived for an earlier message of the same session
+            byte[] nonce = null;
+            try {
+                nonce = org.apache.xml.security.utils.XMLUtils.decode(tempNonce);
+            } catch (IllegalArgumentException e) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+            }
+            keyBytes = secretKeyCache.getDerivedKey(
+                dkt.getAlgorithm(), dkt.getLabel(), length, secret, nonce, dkt.getOffset()
+            );
+        } else {
+            keyBytes = dkt.deriveKey(length, secret);
+        }
         WSSecurityEngineResult result =
             new WSSecurityEngineResult(WSConstants.DKT, null, keyBytes, null);
         data.getWsDocInfo().addTokenElement(elem);
@@ -159,8 +159,7 @@ public class EncryptedDataProcessor implements Processor {
         }
 
         WSDataRef dataRef = EncryptionUtils.decryptEncryptedData(
-                elem.getOwnerDocument(), encryptedDataId, elem, key, symEncAlgo,
-                data.getAttachmentCallbackHandler(), data.getEncryptionSerializer());
+                elem.getOwnerDocument(), encryptedDataId, elem, key, symEncAlgo, data);
 
         WSSecurityEngineResult result =
                 new WSSecurityEngineResult(WSConstants.ENCR, Collections.singletonList(dataRef));
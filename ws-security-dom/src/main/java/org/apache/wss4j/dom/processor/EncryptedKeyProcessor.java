@@ -228,11 +228,7 @@ public class EncryptedKeyProcessor implements Processor {
                                                          elem, privateKey);
 
             // Clean the private key from memory
-            try {
-                privateKey.destroy();
-            } catch (javax.security.auth.DestroyFailedException ex) {
-                LOG.debug("Error destroying private key: {}", ex.getMessage());
-            }
+            KeyUtils.destroyKey(privateKey);
         }
 
         List<WSDataRef> dataRefs = decryptDataRefs(refList, data.getWsDocInfo(), decryptedBytes, data);
@@ -604,8 +600,7 @@ public class EncryptedKeyProcessor implements Processor {
         }
 
         return EncryptionUtils.decryptEncryptedData(
-            doc, dataRefURI, encryptedDataElement, symmetricKey, symEncAlgo, data.getAttachmentCallbackHandler(),
-            data.getEncryptionSerializer()
+            doc, dataRefURI, encryptedDataElement, symmetricKey, symEncAlgo, data
         );
     }
 
@@ -191,8 +191,7 @@ public class ReferenceListProcessor implements Processor {
 
         return
             EncryptionUtils.decryptEncryptedData(
-                doc, dataRefURI, encryptedDataElement, symmetricKey, symEncAlgo, data.getAttachmentCallbackHandler(),
-                data.getEncryptionSerializer()
+                doc, dataRefURI, encryptedDataElement, symmetricKey, symEncAlgo, data
             );
     }
 
@@ -40,6 +40,7 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.principal.SAMLTokenPrincipalImpl;
 import org.apache.wss4j.common.saml.SAMLKeyInfo;
 import org.apache.wss4j.common.saml.SAMLUtil;
+import org.apache.wss4j.common.saml.SamlAssertionVerificationCache;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.apache.wss4j.common.util.DOM2Writer;
 import org.apache.wss4j.dom.WSConstants;
@@ -91,10 +92,18 @@ public class SAMLTokenProcessor implements Processor {
             data.getValidator(new QName(elem.getNamespaceURI(), elem.getLocalName()));
 
         SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(elem);
-        XMLSignature xmlSignature = verifySignatureKeysAndAlgorithms(samlAssertion, data);
+        // Don't verify the signature again if the same assertion was verified before
+        SamlAssertionVerificationCache verificationCache = data.getSamlAssertionVerificationCache();
+        boolean verified = verificationCache != null && samlAssertion.isSigned()
+            && verificationCache.isVerified(samlAssertion);
+        XMLSignature xmlSignature = verifySignatureKeysAndAlgorithms(samlAssertion, data, verified);
         List<WSDataRef> dataRefs = createDataRefs(elem, samlAssertion, xmlSignature);
 
         Credential credential = handleSAMLToken(samlAssertion, data, validator);
+        // Only cache the assertion once the Validator has also established trust in the signing key
+        if (verificationCache != null && xmlSignature != null && !verified && validator != null) {
+            verificationCache.putVerified(samlAssertion, samlAssertion.getSignatureKeyInfo());
+        }
         samlAssertion = credential.getSamlAssertion();
         if (LOG.isDebugEnabled()) {
             LOG.debug("SAML Assertion issuer " + samlAssertion.getIssuerString());
@@ -172,7 +181,8 @@ public class SAMLTokenProcessor implements Processor {
 
     private XMLSignature verifySignatureKeysAndAlgorithms(
         SamlAssertionWrapper samlAssertion,
-        RequestData data
+        RequestData data,
+        boolean verified
     ) throws WSSecurityException {
         if (samlAssertion.isSigned()) {
             Signature sig = samlAssertion.getSignature();
@@ -183,10 +193,15 @@ public class SAMLTokenProcessor implements Processor {
                     new Object[] {"cannot get certificate or key"}
                 );
             }
-            SAMLKeyInfo samlKeyInfo =
-                SAMLUtil.getCredentialFromKeyInfo(
-                    keyInfo.getDOM(), new WSSSAMLKeyInfoProcessor(data), data.getSigVerCrypto()
-                );
+            SAMLKeyInfo samlKeyInfo;
+            if (verified) {
+                samlKeyInfo = samlAssertion.getSignatureKeyInfo();
+            } else {
+                samlKeyInfo =
+                    SAMLUtil.getCredentialFromKeyInfo(
+                        keyInfo.getDOM(), new WSSSAMLKeyInfoProcessor(data), data.getSigVerCrypto()
+                    );
+            }
 
             PublicKey key = null;
             if (samlKeyInfo.getCerts() != null && samlKeyInfo.getCerts()[0] != null) {
@@ -230,7 +245,9 @@ public class SAMLTokenProcessor implements Processor {
                 }
             }
 
-            samlAssertion.verifySignature(samlKeyInfo);
+            if (!verified) {
+                samlAssertion.verifySignature(samlKeyInfo);
+            }
 
             return xmlSignature;
         }
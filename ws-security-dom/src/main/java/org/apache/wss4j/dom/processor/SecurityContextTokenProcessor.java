@@ -21,6 +21,7 @@ package org.apache.wss4j.dom.processor;
 
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.common.cache.SecretKeyCache;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.XMLUtils;
@@ -70,14 +71,25 @@ public class SecurityContextTokenProcessor implements Processor {
             String id = sct.getID();
             id = XMLUtils.getIDFromReference(id);
 
+            SecretKeyCache secretKeyCache = data.getSecretKeyCache();
             byte[] secret = null;
-            try {
-                secret = getSecret(data.getCallbackHandler(), sct.getIdentifier());
-            } catch (WSSecurityException ex) {
-                secret = getSecret(data.getCallbackHandler(), id);
+            if (secretKeyCache != null) {
+                secret = secretKeyCache.getSecret(sct.getIdentifier());
             }
-            if (secret == null || secret.length == 0) {
-                secret = getSecret(data.getCallbackHandler(), id);
+            if (secret == null) {
+                WSPasswordCallback callback;
+                try {
+                    callback = getSecret(data.getCallbackHandler(), sct.getIdentifier());
+                } catch (WSSecurityException ex) {
+                    callback = getSecret(data.getCallbackHandler(), id);
+                }
+                if (callback.getKey() == null || callback.getKey().length == 0) {
+                    callback = getSecret(data.getCallbackHandler(), id);
+                }
+                secret = callback.getKey();
+                if (secretKeyCache != null) {
+                    secretKeyCache.putSecret(sct.getIdentifier(), secret, callback.getKeyExpires());
+                }
             }
             result.put(WSSecurityEngineResult.TAG_ID, sct.getID());
             result.put(WSSecurityEngineResult.TAG_SECRET, secret);
@@ -93,9 +105,9 @@ public class SecurityContextTokenProcessor implements Processor {
      *
      * @param cb
      * @param sct
-     * @return The key collected using the callback handler
+     * @return The callback, which holds the key collected using the callback handler
      */
-    private byte[] getSecret(CallbackHandler cb, String identifier)
+    private WSPasswordCallback getSecret(CallbackHandler cb, String identifier)
         throws WSSecurityException {
 
         if (cb == null) {
@@ -114,7 +126,7 @@ public class SecurityContextTokenProcessor implements Processor {
                 new Object[] {identifier});
         }
 
-        return callback.getKey();
+        return callback;
     }
 
 }
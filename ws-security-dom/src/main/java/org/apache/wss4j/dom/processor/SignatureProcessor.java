@@ -350,6 +350,8 @@ public class SignatureProcessor implements Processor {
 
         context.setProperty(AttachmentContentSignatureTransform.ATTACHMENT_CALLBACKHANDLER,
                             data.getAttachmentCallbackHandler());
+        context.setProperty(AttachmentContentSignatureTransform.ATTACHMENT_CACHE_THRESHOLD,
+                            data.getAttachmentCacheThreshold());
 
         try {
             XMLSignature xmlSignature = signatureFactory.unmarshalXMLSignature(context);
@@ -661,19 +663,13 @@ public class SignatureProcessor implements Processor {
         String identifier = timeStamp.getCreatedString() + "" + Arrays.hashCode(signatureValue)
             + "" + Arrays.hashCode(key.getEncoded());
 
-        if (replayCache.contains(identifier)) {
+        // Store the Timestamp/SignatureValue/Key combination in the cache, unless it is there already
+        if (!replayCache.putIfAbsent(identifier, timeStamp.getExpires())) {
             throw new WSSecurityException(
                 WSSecurityException.ErrorCode.INVALID_SECURITY,
                 "invalidTimestamp",
                 new Object[] {"A replay attack has been detected"});
         }
-
-        // Store the Timestamp/SignatureValue/Key combination in the cache
-        if (timeStamp.getExpires() != null) {
-            replayCache.add(identifier, timeStamp.getExpires());
-        } else {
-            replayCache.add(identifier);
-        }
     }
 
     /**
@@ -32,7 +32,9 @@ import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.message.token.UsernameToken;
+import org.apache.wss4j.dom.util.WSSecurityUtil;
 import org.apache.wss4j.dom.validate.Credential;
+import org.apache.wss4j.dom.validate.CredentialValidation;
 import org.apache.wss4j.dom.validate.Validator;
 import org.apache.xml.security.utils.XMLUtils;
 
@@ -147,31 +149,70 @@ public class UsernameTokenProcessor implements Processor {
         // Test for replay attacks
         ReplayCache replayCache = data.getNonceReplayCache();
         if (replayCache != null && ut.getNonce() != null) {
-            if (replayCache.contains(ut.getNonce())) {
+            // If no Created, then just cache for the default time
+            // Otherwise, cache for the configured TTL of the UsernameToken Created time, as any
+            // older token will just get rejected anyway
+            Instant created = ut.getCreatedDate();
+            Instant expiry = null;
+            if (created != null && utTTL > 0) {
+                expiry = Instant.now().plusSeconds(utTTL);
+            }
+
+            if (!replayCache.putIfAbsent(ut.getNonce(), expiry)) {
                 throw new WSSecurityException(
                     WSSecurityException.ErrorCode.INVALID_SECURITY,
                     "badUsernameToken",
                     new Object[] {"A replay attack has been detected"}
                 );
             }
-
-            // If no Created, then just cache for the default time
-            // Otherwise, cache for the configured TTL of the UsernameToken Created time, as any
-            // older token will just get rejected anyway
-            Instant created = ut.getCreatedDate();
-            if (created == null || utTTL <= 0) {
-                replayCache.add(ut.getNonce());
-            } else {
-                replayCache.add(ut.getNonce(), Instant.now().plusSeconds(utTTL));
-            }
         }
 
         Credential credential = new Credential();
         credential.setUsernametoken(ut);
         if (validator != null) {
+            CredentialValidation validation = data.getWsDocInfo().getCredentialValidation(token);
+            if (validation != null) {
+                // The token was validated ahead, using a copy of the element
+                Credential validatedCredential = validation.validate();
+                validatedCredential.setUsernametoken(ut);
+                return validatedCredential;
+            }
             return validator.validate(credential, data);
         }
         return credential;
     }
 
+    /**
+     * Get the validation of the given UsernameToken, so that the token can be validated (e.g. in
+     * another thread) ahead of processing it with {@link #handleToken(Element, RequestData)}.
+     * The Credential to validate is extracted from a copy of the element. Note that the token
+     * is checked against the nonce replay cache only when it is processed.
+     *
+     * @param elem the UsernameToken element
+     * @param data the RequestData associated with the request
+     * @return the validation of the token, or null if there is no Validator for the token, if
+     *         the token was processed already or if it has expired
+     * @throws WSSecurityException if the token is invalid
+     */
+    public CredentialValidation prepareValidation(
+        Element elem,
+        RequestData data
+    ) throws WSSecurityException {
+        String id = elem.getAttributeNS(WSConstants.WSU_NS, "Id");
+        Validator validator = data.getValidator(WSConstants.USERNAME_TOKEN);
+        if (validator == null || !"".equals(id) && data.getWsDocInfo().getTokenElement(id) != null) {
+            return null;
+        }
+
+        UsernameToken ut =
+            new UsernameToken(WSSecurityUtil.copyToNewDocument(elem),
+                              data.isAllowNamespaceQualifiedPasswordTypes(), data.getBSPEnforcer());
+        if (!ut.verifyCreated(data.getUtTTL(), data.getUtFutureTTL())) {
+            return null;
+        }
+        Credential credential = new Credential();
+        credential.setUsernametoken(ut);
+        return new CredentialValidation(validator, credential, data);
+    }
+
 }
@@ -23,7 +23,6 @@ import java.security.PublicKey;
 import java.security.cert.X509Certificate;
 import java.util.List;
 
-import javax.security.auth.Destroyable;
 import javax.xml.crypto.dsig.SignatureMethod;
 import javax.xml.crypto.dsig.SignedInfo;
 import javax.xml.crypto.dsig.XMLSignContext;
@@ -52,6 +51,7 @@ import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.message.WSSecHeader;
 import org.apache.wss4j.dom.message.WSSecSignature;
+import org.apache.wss4j.dom.transform.AttachmentContentSignatureTransform;
 import org.apache.wss4j.dom.transform.STRTransform;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
 import org.w3c.dom.Document;
@@ -521,6 +521,8 @@ public class WSSecSignatureSAML extends WSSecSignature {
                 );
             }
             signContext.setProperty(STRTransform.TRANSFORM_WS_DOC_INFO, getWsDocInfo());
+            signContext.setProperty(AttachmentContentSignatureTransform.ATTACHMENT_CACHE_THRESHOLD,
+                                    attachmentCacheThreshold);
             getWsDocInfo().setCallbackLookup(callbackLookup);
 
             // Add the elements to sign to the Signature Context
@@ -531,13 +533,7 @@ public class WSSecSignatureSAML extends WSSecSignature {
             signatureValue = sig.getSignatureValue().getValue();
 
             // Clean the private key from memory
-            if (key instanceof Destroyable) {
-                try {
-                    ((Destroyable)key).destroy();
-                } catch (javax.security.auth.DestroyFailedException ex) {
-                    LOG.debug("Error destroying private key: {}", ex.getMessage());
-                }
-            }
+            KeyUtils.destroyKey(key);
         } catch (Exception ex) {
             LOG.error(ex.getMessage(), ex);
             throw new WSSecurityException(
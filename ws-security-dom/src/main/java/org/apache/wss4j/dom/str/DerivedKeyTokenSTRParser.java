@@ -23,6 +23,7 @@ import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.List;
 
+import org.apache.wss4j.common.cache.SecretKeyCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
@@ -134,13 +135,25 @@ public class DerivedKeyTokenSTRParser implements STRParser {
         RequestData data = parameters.getData();
 
         if (secRef.containsReference()) {
-            // Now use the callback and get it
-            byte[] secretKey =
-                STRParserUtil.getSecretKeyFromToken(uri, null, WSPasswordCallback.SECURITY_CONTEXT_TOKEN, data);
+            // Use the cached secret of the SecurityContextToken, or else get it via the callback
+            SecretKeyCache secretKeyCache = data.getSecretKeyCache();
+            String identifier = XMLUtils.getIDFromReference(uri);
+            byte[] secretKey = null;
+            if (secretKeyCache != null) {
+                secretKey = secretKeyCache.getSecret(identifier);
+            }
             if (secretKey == null) {
-                throw new WSSecurityException(
-                    WSSecurityException.ErrorCode.FAILED_CHECK, "unsupportedKeyId",
-                    new Object[] {uri});
+                WSPasswordCallback pwcb =
+                    STRParserUtil.getSecretKeyCallback(uri, null, WSPasswordCallback.SECURITY_CONTEXT_TOKEN, data);
+                if (pwcb == null || pwcb.getKey() == null) {
+                    throw new WSSecurityException(
+                        WSSecurityException.ErrorCode.FAILED_CHECK, "unsupportedKeyId",
+                        new Object[] {uri});
+                }
+                secretKey = pwcb.getKey();
+                if (secretKeyCache != null) {
+                    secretKeyCache.putSecret(identifier, secretKey, pwcb.getKeyExpires());
+                }
             }
             parserResult.setSecretKey(secretKey);
         } else if (secRef.containsKeyIdentifier()) {
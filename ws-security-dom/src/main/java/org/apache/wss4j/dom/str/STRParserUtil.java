@@ -268,6 +268,20 @@ public final class STRParserUtil {
         String type,
         int identifier,
         RequestData data
+    ) throws WSSecurityException {
+        WSPasswordCallback pwcb = getSecretKeyCallback(id, type, identifier, data);
+        return pwcb == null ? null : pwcb.getKey();
+    }
+
+    /**
+     * Get the secret key of a token via the CallbackHandler
+     * @return the callback which holds the secret key, or null if no CallbackHandler is configured
+     */
+    public static WSPasswordCallback getSecretKeyCallback(
+        String id,
+        String type,
+        int identifier,
+        RequestData data
     ) throws WSSecurityException {
         String uri = XMLUtils.getIDFromReference(id);
         WSPasswordCallback pwcb =
@@ -276,7 +290,7 @@ public final class STRParserUtil {
             Callback[] callbacks = new Callback[]{pwcb};
             if (data.getCallbackHandler() != null) {
                 data.getCallbackHandler().handle(callbacks);
-                return pwcb.getKey();
+                return pwcb;
             }
         } catch (Exception e) {
             throw new WSSecurityException(
@@ -18,14 +18,13 @@
  */
 package org.apache.wss4j.dom.transform;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
 import org.apache.jcp.xml.dsig.internal.dom.ApacheOctetStreamData;
 import org.apache.wss4j.common.ext.Attachment;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.CachedOutputStream;
 import org.apache.wss4j.dom.WSConstants;
 
 import javax.xml.crypto.Data;
@@ -70,17 +69,15 @@ public class AttachmentCompleteSignatureTransform extends AttachmentContentSigna
         try {
             OutputStream outputStream = os;
             if (outputStream == null) {
-                outputStream = new ByteArrayOutputStream();
+                outputStream = new CachedOutputStream(getAttachmentCacheThreshold(context));
             }
-            AttachmentUtils.canonizeMimeHeaders(os, attachment.getHeaders());
-            processAttachment(context, os, attachmentUri, attachment);
+            AttachmentUtils.canonizeMimeHeaders(outputStream, attachment.getHeaders());
+            processAttachment(context, outputStream, attachmentUri, attachment);
 
             if (os == null) {
                 String mimeType = attachment.getMimeType();
                 return new OctetStreamData(
-                        new ByteArrayInputStream(
-                                ((ByteArrayOutputStream)outputStream).toByteArray()
-                        ),
+                        ((CachedOutputStream)outputStream).getInputStream(),
                         attachmentUri, mimeType);
             }
             return null;
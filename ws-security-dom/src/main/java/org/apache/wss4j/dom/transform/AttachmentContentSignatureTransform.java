@@ -25,6 +25,8 @@ import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
 import org.apache.wss4j.common.util.CRLFOutputStream;
+import org.apache.wss4j.common.util.CachedOutputStream;
+import org.apache.wss4j.common.util.CachingInputStream;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.xml.security.c14n.CanonicalizationException;
 import org.apache.xml.security.c14n.Canonicalizer;
@@ -44,12 +46,7 @@ import javax.xml.crypto.dsig.TransformService;
 import javax.xml.crypto.dsig.spec.TransformParameterSpec;
 import javax.xml.parsers.ParserConfigurationException;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.spec.AlgorithmParameterSpec;
@@ -59,6 +56,11 @@ public class AttachmentContentSignatureTransform extends TransformService {
 
     public static final String TRANSFORM_URI = WSConstants.SWA_ATTACHMENT_CONTENT_SIG_TRANS;
     public static final String ATTACHMENT_CALLBACKHANDLER = "AttachmentContentTransform.attachmentCallbackHandler";
+    /**
+     * The (Integer) context property for the number of bytes of an attachment that are kept in
+     * memory while it is processed. Larger attachments are cached in a temporary file.
+     */
+    public static final String ATTACHMENT_CACHE_THRESHOLD = "AttachmentContentTransform.attachmentCacheThreshold";
 
     private AttachmentTransformParameterSpec attachmentTransformParameterSpec;
 
@@ -160,26 +162,29 @@ public class AttachmentContentSignatureTransform extends TransformService {
         }
     }
 
+    protected int getAttachmentCacheThreshold(XMLCryptoContext context) {
+        Object threshold = context.getProperty(ATTACHMENT_CACHE_THRESHOLD);
+        if (threshold instanceof Integer) {
+            return (Integer) threshold;
+        }
+        return CachedOutputStream.DEFAULT_THRESHOLD;
+    }
+
     @SuppressWarnings("resource")
     protected Data processAttachment(XMLCryptoContext context, OutputStream os, String attachmentUri,
                                      Attachment attachment) throws TransformException {
+        //the attachment is read only once. What is read is cached (in a temporary file if it is
+        //large) so that it can be handed on in the result callback. The caching stream doesn't
+        //close the source stream.
+        int cacheThreshold = getAttachmentCacheThreshold(context);
+        CachingInputStream inputStream =
+            new CachingInputStream(attachment.getSourceStream(), cacheThreshold);
+        CachedOutputStream cachedOutputStream = null;
         try {
-            //try to reuse the inputStream in the hope that the provided inputStream is backed by a disk storage
-            InputStream inputStream = attachment.getSourceStream();
-            if (!inputStream.markSupported()) {
-                inputStream = new BufferedInputStream(inputStream);
-            }
-            inputStream.mark(Integer.MAX_VALUE); //we can process at maximum 2G with the standard jdk streams
-            inputStream = new FilterInputStream(inputStream) {
-                @Override
-                public void close() throws IOException {
-                    //I hate stuff which are closing _my_ streams!
-                }
-            };
-
             OutputStream outputStream = os;
             if (outputStream == null) {
-                outputStream = new ByteArrayOutputStream();
+                cachedOutputStream = new CachedOutputStream(cacheThreshold);
+                outputStream = cachedOutputStream;
             }
 
             String mimeType = attachment.getMimeType();
@@ -220,28 +225,27 @@ public class AttachmentContentSignatureTransform extends TransformService {
                 }
             }
 
-            //reset the inputStream to be able to reuse it
-            inputStream.reset();
-
             //create a new attachment and do the result callback
             final Attachment resultAttachment = new Attachment();
             resultAttachment.setId(attachment.getId());
             resultAttachment.setMimeType(mimeType);
             resultAttachment.addHeaders(attachment.getHeaders());
-            resultAttachment.setSourceStream(inputStream);
+            resultAttachment.setSourceStream(inputStream.getCachedInputStream());
             attachmentResultCallback(context, resultAttachment);
 
-            if (os == null) {
-                return new OctetStreamData(
-                        new ByteArrayInputStream(
-                                ((ByteArrayOutputStream)outputStream).toByteArray()
-                        ),
-                        attachmentUri, mimeType);
+            if (cachedOutputStream != null) {
+                return new OctetStreamData(cachedOutputStream.getInputStream(), attachmentUri, mimeType);
             }
             return null;
         } catch (IOException | InvalidCanonicalizerException | CanonicalizationException
             | ParserConfigurationException | SAXException e) {
             throw new TransformException(e);
+        } finally {
+            //delete the temporary files, unless the cached data was handed on
+            inputStream.discard();
+            if (cachedOutputStream != null) {
+                cachedOutputStream.discard();
+            }
         }
     }
 
@@ -24,11 +24,14 @@ import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.CachedOutputStream;
+import org.apache.wss4j.common.util.JCAEnginePool;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDataRef;
 import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.dom.callback.CallbackLookup;
+import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.encryption.Serializer;
 import org.apache.xml.security.encryption.XMLCipher;
@@ -49,14 +52,20 @@ import javax.security.auth.callback.CallbackHandler;
 import javax.security.auth.callback.UnsupportedCallbackException;
 import javax.xml.parsers.ParserConfigurationException;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
 import java.util.List;
 
 public final class EncryptionUtils {
 
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(EncryptionUtils.class);
+
     private EncryptionUtils() {
         // complete
     }
@@ -140,6 +149,63 @@ public final class EncryptionUtils {
         CallbackHandler attachmentCallbackHandler,
         Serializer encryptionSerializer
     ) throws WSSecurityException {
+        return decryptData(doc, dataRefURI, encData, symmetricKey, symEncAlgo,
+                           attachmentCallbackHandler, encryptionSerializer,
+                           CachedOutputStream.DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Decrypt the EncryptedData argument using a SecretKey, with the attachment CallbackHandler,
+     * the encryption Serializer and the attachment cache threshold of the RequestData. The Id index
+     * of the WSDocInfo of the RequestData (if any) is updated for the replaced nodes.
+     * @param doc The (document) owner of EncryptedData
+     * @param dataRefURI The URI of EncryptedData
+     * @param encData The EncryptedData element
+     * @param symmetricKey The SecretKey with which to decrypt EncryptedData
+     * @param symEncAlgo The symmetric encryption algorithm to use
+     * @param data The RequestData of the message
+     * @throws WSSecurityException
+     */
+    public static WSDataRef
+    decryptEncryptedData(
+        Document doc,
+        String dataRefURI,
+        Element encData,
+        SecretKey symmetricKey,
+        String symEncAlgo,
+        RequestData data
+    ) throws WSSecurityException {
+        // All of the nodes that are replaced on decryption are below this node
+        Node modifiedNode = encData.getParentNode();
+        if (modifiedNode != null
+            && (WSConstants.ENCRYPTED_HEADER.equals(modifiedNode.getLocalName())
+                && WSConstants.WSSE11_NS.equals(modifiedNode.getNamespaceURI())
+                || WSConstants.ENCRYPED_ASSERTION_LN.equals(modifiedNode.getLocalName())
+                && WSConstants.SAML2_NS.equals(modifiedNode.getNamespaceURI()))) {
+            modifiedNode = modifiedNode.getParentNode();
+        }
+
+        WSDataRef dataRef =
+            decryptData(doc, dataRefURI, encData, symmetricKey, symEncAlgo,
+                        data.getAttachmentCallbackHandler(), data.getEncryptionSerializer(),
+                        data.getAttachmentCacheThreshold());
+        if (data.getWsDocInfo() != null) {
+            data.getWsDocInfo().updateIdIndex(modifiedNode);
+        }
+        return dataRef;
+    }
+
+    private static WSDataRef
+    decryptData(
+        Document doc,
+        String dataRefURI,
+        Element encData,
+        SecretKey symmetricKey,
+        String symEncAlgo,
+        CallbackHandler attachmentCallbackHandler,
+        Serializer encryptionSerializer,
+        int attachmentCacheThreshold
+    ) throws WSSecurityException {
 
         // See if it is an attachment, and handle that differently
         String typeStr = encData.getAttributeNS(null, "Type");
@@ -204,7 +270,7 @@ public final class EncryptionUtils {
                     tempEncData = encData;
                 }
                 decryptedNode = decryptXopAttachment(symmetricKey, symEncAlgo, attachmentCallbackHandler,
-                                                     xopURI, tempEncData);
+                                                     xopURI, tempEncData, attachmentCacheThreshold);
             } else {
                 //in this case, the XMLCipher knows how to handle encData when it's the parent node
                 // (i.e., when content == true)
@@ -357,9 +423,9 @@ public final class EncryptionUtils {
 
     private static Node decryptXopAttachment(
        SecretKey symmetricKey, String symEncAlgo, CallbackHandler attachmentCallbackHandler,
-       String xopURI, Element encData
+       String xopURI, Element encData, int attachmentCacheThreshold
    ) throws WSSecurityException, IOException, UnsupportedCallbackException, NoSuchAlgorithmException,
-        NoSuchPaddingException, ParserConfigurationException, SAXException {
+        NoSuchPaddingException, NoSuchProviderException, ParserConfigurationException, SAXException {
 
         if (attachmentCallbackHandler == null) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK);
@@ -381,24 +447,50 @@ public final class EncryptionUtils {
 
         final String jceAlgorithm =
                 JCEMapper.translateURItoJCEID(symEncAlgo);
-        final Cipher cipher = Cipher.getInstance(jceAlgorithm);
+        final Cipher cipher = JCAEnginePool.getCipher(jceAlgorithm, null);
 
         InputStream attachmentInputStream =
                 AttachmentUtils.setupAttachmentDecryptionStream(
                         symEncAlgo, cipher, symmetricKey, attachment.getSourceStream());
 
         // For the xop:Include case, we need to replace the xop:Include Element with the
-        // decrypted Element
-        byte[] bytes = JavaUtils.getBytesFromStream(attachmentInputStream);
-
-        Document document = null;
+        // decrypted Element. The decrypted data is parsed while it is decrypted. Only a prefix of
+        // it (up to the attachment cache threshold) is buffered, to be able to parse it again below.
+        // The parser closes the stream it reads, which must not invalidate the buffered prefix.
+        BufferedInputStream bufferedInputStream = new BufferedInputStream(attachmentInputStream);
+        bufferedInputStream.mark(attachmentCacheThreshold);
+        InputStream parserInputStream = new FilterInputStream(bufferedInputStream) {
+            @Override
+            public void close() {
+                // the stream is drained below
+            }
+        };
+        Document document;
         try {
-            document = org.apache.xml.security.utils.XMLUtils.read(new ByteArrayInputStream(bytes));
-        } catch (SAXException ex) {
-            // A prefix may not have been bound, try to fix the DOM Element in this case.
-            String fixedElementStr = setParentPrefixes(encData, new String(bytes));
-            document = org.apache.xml.security.utils.XMLUtils.read(
-                new ByteArrayInputStream(fixedElementStr.getBytes()));
+            try {
+                document = org.apache.xml.security.utils.XMLUtils.read(parserInputStream);
+            } catch (SAXException ex) {
+                try {
+                    bufferedInputStream.reset();
+                } catch (IOException e) {
+                    // the parser failed beyond the buffered prefix
+                    throw ex;
+                }
+                // A prefix may not have been bound, try to fix the DOM Element in this case.
+                LOG.debug("Parsing the decrypted attachment failed, trying again with the parent prefixes");
+                byte[] bytes = JavaUtils.getBytesFromStream(bufferedInputStream);
+                String fixedElementStr = setParentPrefixes(encData, new String(bytes));
+                document = org.apache.xml.security.utils.XMLUtils.read(
+                    new ByteArrayInputStream(fixedElementStr.getBytes()));
+            }
+
+            // read the rest of the attachment, so that the cipher can be reused
+            byte[] buf = new byte[8192];
+            while (bufferedInputStream.read(buf) != -1) { //NOPMD
+                // discard the remaining data
+            }
+        } finally {
+            JCAEnginePool.release(cipher);
         }
 
         Node decryptedNode =
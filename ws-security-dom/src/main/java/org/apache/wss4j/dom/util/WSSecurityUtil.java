@@ -687,6 +687,19 @@ public final class WSSecurityUtil {
         return clonedElement;
     }
 
+    /**
+     * Copy the given element to a new document, so that the copy can be accessed in another
+     * thread than the one processing the document of the element.
+     * @param element the element to copy
+     * @return the copy of the element
+     */
+    public static Element copyToNewDocument(Element element) {
+        Document doc = element.getOwnerDocument().getImplementation().createDocument(null, null, null);
+        Element copy = (Element)doc.importNode(element, true);
+        doc.appendChild(copy);
+        return copy;
+    }
+
     /**
      * Try to get the DOM Node from the SAAJ Node with JAVA9
      * @param node The original node we need check
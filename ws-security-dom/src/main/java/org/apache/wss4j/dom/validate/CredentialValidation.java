@@ -0,0 +1,74 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.validate;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.handler.RequestData;
+
+/**
+ * The validation of a Credential by a Validator, which is carried out ahead of processing the
+ * token of the Credential, and possibly in another thread (see
+ * WSSecurityEngine#processSecurityHeaderAsync). The Credential must be extracted from a copy
+ * of the token element, so that the validation does not access the document being processed.
+ * The outcome of the validation is reported when the token is processed.
+ */
+public class CredentialValidation {
+
+    private final Validator validator;
+    private final Credential credential;
+    private final RequestData data;
+    private boolean validated;
+    private Credential validatedCredential;
+    private WSSecurityException validationException;
+
+    public CredentialValidation(Validator validator, Credential credential, RequestData data) {
+        this.validator = validator;
+        this.credential = credential;
+        this.data = data;
+    }
+
+    /**
+     * Get the Credential which is validated
+     * @return the Credential which is validated
+     */
+    public Credential getCredential() {
+        return credential;
+    }
+
+    /**
+     * Validate the Credential, unless it was validated already.
+     * @return the Credential returned by the Validator
+     * @throws WSSecurityException if the Credential is invalid
+     */
+    public Credential validate() throws WSSecurityException {
+        if (!validated) {
+            try {
+                validatedCredential = validator.validate(credential, data);
+            } catch (WSSecurityException ex) {
+                validationException = ex;
+            }
+            validated = true;
+        }
+        if (validationException != null) {
+            throw validationException;
+        }
+        return validatedCredential;
+    }
+}
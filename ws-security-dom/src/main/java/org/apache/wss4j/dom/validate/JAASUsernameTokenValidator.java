@@ -26,6 +26,7 @@ import javax.security.auth.login.LoginException;
 
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.common.NamePasswordCallbackHandler;
+import org.apache.wss4j.common.cache.AuthenticatedSubjectCache;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.message.token.UsernameToken;
@@ -42,6 +43,7 @@ public class JAASUsernameTokenValidator implements Validator {
         org.slf4j.LoggerFactory.getLogger(JAASUsernameTokenValidator.class);
 
     private String contextName;
+    private AuthenticatedSubjectCache subjectCache;
 
     public void setContextName(String name) {
         contextName = name;
@@ -51,6 +53,19 @@ public class JAASUsernameTokenValidator implements Validator {
         return contextName;
     }
 
+    public AuthenticatedSubjectCache getSubjectCache() {
+        return subjectCache;
+    }
+
+    /**
+     * Set a cache of the Subjects of successful logins, so that a user is not authenticated against
+     * JAAS again for every UsernameToken with the same password. It is null (not used) by default.
+     * @param subjectCache the cache of the Subjects of successful logins
+     */
+    public void setSubjectCache(AuthenticatedSubjectCache subjectCache) {
+        this.subjectCache = subjectCache;
+    }
+
     /**
      * Validate the credential argument. It must contain a non-null UsernameToken. A
      * CallbackHandler implementation is also required to be set.
@@ -97,6 +112,15 @@ public class JAASUsernameTokenValidator implements Validator {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
         }
 
+        if (subjectCache != null) {
+            Subject subject = subjectCache.get(getContextName(), user, password);
+            if (subject != null) {
+                LOG.debug("Found an authenticated Subject for user {} in the cache", user);
+                credential.setSubject(subject);
+                return credential;
+            }
+        }
+
         try {
             CallbackHandler handler = getCallbackHandler(user, password);
             LoginContext ctx = new LoginContext(getContextName(), handler);
@@ -104,6 +128,9 @@ public class JAASUsernameTokenValidator implements Validator {
             Subject subject = ctx.getSubject();
             credential.setSubject(subject);
 
+            if (subjectCache != null) {
+                subjectCache.put(getContextName(), user, password, subject);
+            }
         } catch (LoginException ex) {
             LOG.info("Authentication failed", ex);
             throw new WSSecurityException(
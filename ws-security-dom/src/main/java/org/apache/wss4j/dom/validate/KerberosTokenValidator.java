@@ -20,8 +20,11 @@
 package org.apache.wss4j.dom.validate;
 
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
 import java.security.PrivilegedActionException;
+import java.time.Instant;
 import java.util.Set;
 
 import javax.security.auth.Subject;
@@ -29,20 +32,30 @@ import javax.security.auth.callback.CallbackHandler;
 import javax.security.auth.login.LoginContext;
 import javax.security.auth.login.LoginException;
 
+import org.apache.wss4j.common.cache.ReplayCache;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.ext.WSSecurityException.ErrorCode;
 import org.apache.wss4j.common.kerberos.KerberosServiceContext;
 import org.apache.wss4j.common.kerberos.KerberosServiceExceptionAction;
+import org.apache.wss4j.common.kerberos.KerberosServiceSubjectHolder;
 import org.apache.wss4j.common.kerberos.KerberosTokenDecoder;
 import org.apache.wss4j.common.kerberos.KerberosTokenDecoderException;
 import org.apache.wss4j.common.token.BinarySecurity;
+import org.apache.wss4j.common.util.JCAEnginePool;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.message.token.KerberosSecurity;
+import org.apache.xml.security.utils.XMLUtils;
 
 /**
  */
 public class KerberosTokenValidator implements Validator {
 
+    /**
+     * The default time in seconds that an accepted Kerberos token is stored in the replay cache,
+     * which matches the default maximum clock skew of Kerberos
+     */
+    public static final long DEFAULT_REPLAY_CACHE_TTL = 5L * 60L;
+
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(KerberosTokenValidator.class);
 
@@ -52,6 +65,10 @@ public class KerberosTokenValidator implements Validator {
     private KerberosTokenDecoder kerberosTokenDecoder;
     private boolean isUsernameServiceNameForm;
     private boolean spnego;
+    private boolean reuseServiceSubject;
+    private KerberosServiceSubjectHolder serviceSubjectHolder;
+    private ReplayCache replayCache;
+    private long replayCacheTTL = DEFAULT_REPLAY_CACHE_TTL;
 
     /**
      * Get the JAAS Login context name to use.
@@ -150,16 +167,22 @@ public class KerberosTokenValidator implements Validator {
         }
 
         // Get a TGT from the KDC using JAAS
-        LoginContext loginContext = null;
+        Subject subject = null;
         try {
-            if (callbackHandler != null) {
-                loginContext = new LoginContext(getContextName(), callbackHandler);
-            } else if (data.getCallbackHandler() != null) {
-                loginContext = new LoginContext(getContextName(), data.getCallbackHandler());
+            if (reuseServiceSubject) {
+                subject = getServiceSubjectHolder(data).getSubject();
             } else {
-                loginContext = new LoginContext(getContextName());
+                LoginContext loginContext = null;
+                if (callbackHandler != null) {
+                    loginContext = new LoginContext(getContextName(), callbackHandler);
+                } else if (data.getCallbackHandler() != null) {
+                    loginContext = new LoginContext(getContextName(), data.getCallbackHandler());
+                } else {
+                    loginContext = new LoginContext(getContextName());
+                }
+                loginContext.login();
+                subject = loginContext.getSubject();
             }
-            loginContext.login();
         } catch (LoginException ex) {
             LOG.debug(ex.getMessage(), ex);
             throw new WSSecurityException(
@@ -173,7 +196,6 @@ public class KerberosTokenValidator implements Validator {
         byte[] token = binarySecurity.getToken();
 
         // Get the service name to use - fall back on the principal
-        Subject subject = loginContext.getSubject();
         String service = serviceName;
         if (service == null) {
             Set<Principal> principals = subject.getPrincipals();
@@ -204,6 +226,17 @@ public class KerberosTokenValidator implements Validator {
             }
         }
 
+        // Test for replay attacks
+        if (replayCache != null) {
+            Instant expires = Instant.now().plusSeconds(replayCacheTTL);
+            if (!replayCache.putIfAbsent(getReplayIdentifier(token), expires)) {
+                LOG.debug("A replay attack has been detected");
+                throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.FAILED_AUTHENTICATION, "kerberosTicketValidationError"
+                );
+            }
+        }
+
         credential.setPrincipal(krbServiceCtx.getPrincipal());
         credential.setDelegationCredential(krbServiceCtx.getDelegationCredential());
 
@@ -245,6 +278,26 @@ public class KerberosTokenValidator implements Validator {
         return credential;
     }
 
+    private synchronized KerberosServiceSubjectHolder getServiceSubjectHolder(RequestData data) {
+        if (serviceSubjectHolder == null) {
+            CallbackHandler handler = callbackHandler != null ? callbackHandler : data.getCallbackHandler();
+            serviceSubjectHolder = new KerberosServiceSubjectHolder(getContextName(), handler);
+        }
+        return serviceSubjectHolder;
+    }
+
+    private static String getReplayIdentifier(byte[] token) throws WSSecurityException {
+        MessageDigest digest = null;
+        try {
+            digest = JCAEnginePool.getMessageDigest("SHA-256");
+            return "kerberos:" + XMLUtils.encodeToString(digest.digest(token));
+        } catch (NoSuchAlgorithmException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        } finally {
+            JCAEnginePool.release(digest);
+        }
+    }
+
     /**
      * SPN can be configured to be in either <b>"hostbased"</b> or <b>"username"</b> form.<br/>
      *     - <b>"hostbased"</b> - specifies that the service principal name should be interpreted as a "host-based" name as specified in GSS API Rfc, section "4.1: Host-Based Service Name Form" - The service name, as it is specified in LDAP/AD, as it is listed in the KDC.<br/>
@@ -277,4 +330,63 @@ public class KerberosTokenValidator implements Validator {
     public void setSpnego(boolean spnego) {
         this.spnego = spnego;
     }
+
+    public boolean isReuseServiceSubject() {
+        return reuseServiceSubject;
+    }
+
+    /**
+     * Whether to log in to the JAAS context once and to reuse the resulting Subject for the
+     * validation of all the Kerberos tokens, until a ticket of the Subject is about to expire (see
+     * {@link KerberosServiceSubjectHolder}), instead of logging in for every token. The default
+     * is false.
+     * @param reuseServiceSubject whether to reuse the Subject of the JAAS login
+     */
+    public void setReuseServiceSubject(boolean reuseServiceSubject) {
+        this.reuseServiceSubject = reuseServiceSubject;
+    }
+
+    /**
+     * Get the KerberosServiceSubjectHolder used if the Subject of the JAAS login is reused
+     * @return the KerberosServiceSubjectHolder, or null if it is not used (yet)
+     */
+    public synchronized KerberosServiceSubjectHolder getServiceSubjectHolder() {
+        return serviceSubjectHolder;
+    }
+
+    /**
+     * Set the KerberosServiceSubjectHolder to use if the Subject of the JAAS login is reused, e.g.
+     * to share it with other validators. If it is not set, it is created from the context name and
+     * the CallbackHandler of this validator on first use.
+     * @param serviceSubjectHolder the KerberosServiceSubjectHolder to use
+     */
+    public synchronized void setServiceSubjectHolder(KerberosServiceSubjectHolder serviceSubjectHolder) {
+        this.serviceSubjectHolder = serviceSubjectHolder;
+    }
+
+    public ReplayCache getReplayCache() {
+        return replayCache;
+    }
+
+    /**
+     * Set a ReplayCache to reject a Kerberos token (AP-REQ) which was accepted before. It is null
+     * (not used) by default.
+     * @param replayCache the ReplayCache to store the accepted Kerberos tokens in
+     */
+    public void setReplayCache(ReplayCache replayCache) {
+        this.replayCache = replayCache;
+    }
+
+    public long getReplayCacheTTL() {
+        return replayCacheTTL;
+    }
+
+    /**
+     * Set the time in seconds that an accepted Kerberos token is stored in the ReplayCache. It
+     * should not be less than the maximum clock skew allowed by Kerberos. The default is 5 minutes.
+     * @param replayCacheTTL the time in seconds that an accepted Kerberos token is stored
+     */
+    public void setReplayCacheTTL(long replayCacheTTL) {
+        this.replayCacheTTL = replayCacheTTL;
+    }
 }
@@ -26,6 +26,7 @@ import org.apache.wss4j.common.cache.ReplayCache;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.saml.OpenSAMLUtil;
 import org.apache.wss4j.common.saml.SAMLKeyInfo;
+import org.apache.wss4j.common.saml.SamlAssertionVerificationCache;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.apache.wss4j.common.saml.builder.SAML1Constants;
 import org.apache.wss4j.common.saml.builder.SAML2Constants;
@@ -117,9 +118,12 @@ public class SamlAssertionValidator extends SignatureTrustValidator {
         // Validate the assertion against schemas/profiles
         validateAssertion(samlAssertion);
 
-        // Verify trust on the signature
+        // Verify trust on the signature, unless the same assertion was verified before
         if (samlAssertion.isSigned()) {
-            verifySignedAssertion(samlAssertion, data);
+            SamlAssertionVerificationCache verificationCache = data.getSamlAssertionVerificationCache();
+            if (verificationCache == null || !verificationCache.isVerified(samlAssertion)) {
+                verifySignedAssertion(samlAssertion, data);
+            }
         }
         return credential;
     }
@@ -252,22 +256,18 @@ public class SamlAssertionValidator extends SignatureTrustValidator {
             String identifier = samlAssertion.getId();
 
             ReplayCache replayCache = data.getSamlOneTimeUseReplayCache();
-            if (replayCache.contains(identifier)) {
+            DateTime expires = samlAssertion.getSaml2().getConditions().getNotOnOrAfter();
+            Instant zonedExpires = null;
+            if (expires != null) {
+                zonedExpires = Instant.ofEpochMilli(expires.getMillis());
+            }
+
+            if (!replayCache.putIfAbsent(identifier, zonedExpires)) {
                 throw new WSSecurityException(
                     WSSecurityException.ErrorCode.INVALID_SECURITY,
                     "badSamlToken",
                     new Object[] {"A replay attack has been detected"});
             }
-
-            DateTime expires = samlAssertion.getSaml2().getConditions().getNotOnOrAfter();
-            if (expires != null) {
-                Instant zonedExpires = Instant.ofEpochMilli(expires.getMillis());
-                replayCache.add(identifier, zonedExpires);
-            } else {
-                replayCache.add(identifier);
-            }
-
-            replayCache.add(identifier);
         }
     }
 
@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.common;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionVerificationCache;
+import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+
+/**
+ * A SamlAssertionVerificationCache which counts the cache hits.
+ */
+public class CountingSamlAssertionVerificationCache extends SamlAssertionVerificationCache {
+
+    private final AtomicInteger hits = new AtomicInteger();
+
+    @Override
+    public boolean isVerified(SamlAssertionWrapper samlAssertion) throws WSSecurityException {
+        boolean verified = super.isVerified(samlAssertion);
+        if (verified) {
+            hits.incrementAndGet();
+        }
+        return verified;
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+}
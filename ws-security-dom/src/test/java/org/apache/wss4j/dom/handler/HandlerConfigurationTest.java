@@ -0,0 +1,202 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.handler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.wss4j.common.WSEncryptionPart;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.WSDataRef;
+import org.apache.wss4j.dom.common.CustomHandler;
+import org.apache.wss4j.dom.common.KeystoreCallbackHandler;
+import org.apache.wss4j.dom.common.SOAPUtil;
+import org.apache.wss4j.dom.common.SecurityTestUtil;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Some tests for the compiled configuration of a WSHandler.
+ */
+public class HandlerConfigurationTest {
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(HandlerConfigurationTest.class);
+
+    @AfterAll
+    public static void cleanup() throws Exception {
+        SecurityTestUtil.cleanup();
+    }
+
+    @Test
+    public void testCompiledOptions() throws Exception {
+        Map<String, Object> options = new HashMap<>();
+        options.put(WSHandlerConstants.MUST_UNDERSTAND, "false");
+        options.put(WSHandlerConstants.TTL_TIMESTAMP, "600");
+        options.put(WSHandlerConstants.SIG_KEY_ID, "DirectReference");
+        options.put(WSHandlerConstants.SIGNATURE_PARTS, "{}{}Body;{Element}{" + WSConstants.WSU_NS + "}Timestamp");
+        options.put(WSHandlerConstants.SIG_SUBJECT_CERT_CONSTRAINTS, ".*CN=Colm.*,.*O=Apache.*");
+        options.put(WSHandlerConstants.PW_CALLBACK_CLASS, KeystoreCallbackHandler.class.getName());
+
+        HandlerConfiguration configuration = new HandlerConfiguration(options);
+        assertEquals(Boolean.FALSE, configuration.getBoolean(WSHandlerConstants.MUST_UNDERSTAND));
+        assertNull(configuration.getBoolean(WSHandlerConstants.TIMESTAMP_STRICT));
+        assertEquals(Integer.valueOf(600), configuration.getInteger(WSHandlerConstants.TTL_TIMESTAMP));
+        assertEquals(
+            Integer.valueOf(WSConstants.BST_DIRECT_REFERENCE),
+            configuration.getKeyIdentifier(WSHandlerConstants.SIG_KEY_ID)
+        );
+        assertEquals(KeystoreCallbackHandler.class,
+                     configuration.getCallbackHandlerClass(WSHandlerConstants.PW_CALLBACK_CLASS));
+        assertEquals(2, configuration.getCertConstraints(
+            WSHandlerConstants.SIG_SUBJECT_CERT_CONSTRAINTS, ",").size());
+        assertNull(configuration.getCertConstraints(
+            WSHandlerConstants.SIG_SUBJECT_CERT_CONSTRAINTS, ";"));
+
+        // The parts are new instances for every message, in the namespace of its SOAP version
+        List<WSEncryptionPart> parts =
+            configuration.getParts(WSHandlerConstants.SIGNATURE_PARTS, WSConstants.URI_SOAP12_ENV);
+        assertEquals(2, parts.size());
+        assertEquals(WSConstants.URI_SOAP12_ENV, parts.get(0).getNamespace());
+        assertEquals("Body", parts.get(0).getName());
+        assertEquals("Element", parts.get(1).getEncModifier());
+        assertTrue(parts.get(1).isRequired());
+        List<WSEncryptionPart> soap11Parts =
+            configuration.getParts(WSHandlerConstants.SIGNATURE_PARTS, WSConstants.URI_SOAP11_ENV);
+        assertEquals(WSConstants.URI_SOAP11_ENV, soap11Parts.get(0).getNamespace());
+        assertNotSame(soap11Parts.get(1),
+            configuration.getParts(WSHandlerConstants.SIGNATURE_PARTS, WSConstants.URI_SOAP11_ENV).get(1));
+        assertNull(configuration.getParts(WSHandlerConstants.ENCRYPTION_PARTS, WSConstants.URI_SOAP11_ENV));
+    }
+
+    @Test
+    public void testIllegalOptions() throws Exception {
+        assertIllegal(WSHandlerConstants.MUST_UNDERSTAND, "yes");
+        assertIllegal(WSHandlerConstants.TTL_TIMESTAMP, "ten");
+        assertIllegal(WSHandlerConstants.SIG_KEY_ID, "UnknownKeyIdentifier");
+        assertIllegal(WSHandlerConstants.ENC_KEY_ID, "KeyValue");
+        assertIllegal(WSHandlerConstants.ENCRYPTION_PARTS, "{}{}{}Body");
+        assertIllegal(WSHandlerConstants.PW_CALLBACK_CLASS, "org.apache.wss4j.UnknownCallbackHandler");
+    }
+
+    /**
+     * An illegal option fails in the same way, whether it is compiled or looked up for a message
+     */
+    @Test
+    public void testIllegalOptionsWithoutCompiledConfiguration() throws Exception {
+        for (String[] option : new String[][] {
+            {WSHandlerConstants.TTL_TIMESTAMP, "ten"}, {WSHandlerConstants.TIMESTAMP_STRICT, "yes"}}) {
+            WSSecurityException compiledException = null;
+            try {
+                new HandlerConfiguration(Collections.singletonMap(option[0], option[1]));
+            } catch (WSSecurityException ex) {
+                compiledException = ex;
+            }
+
+            CustomHandler handler = new CustomHandler();
+            handler.setOption(option[0], option[1]);
+            RequestData reqData = new RequestData();
+            reqData.setMsgContext(new TreeMap<String, Object>());
+            try {
+                handler.decodeTimeToLive(reqData, true);
+                handler.decodeBooleanConfigValue(reqData.getMsgContext(), option[0], false);
+                fail("Failure expected on an illegal " + option[0]);
+            } catch (WSSecurityException ex) {
+                assertEquals(compiledException.getErrorCode(), ex.getErrorCode());
+                assertEquals(compiledException.getMessage(), ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sign several messages with a WSHandler that uses a compiled configuration of its options
+     */
+    @Test
+    public void testSignatureWithCompiledConfiguration() throws Exception {
+        Map<String, Object> options = new HashMap<>();
+        options.put(WSHandlerConstants.SIG_PROP_FILE, "wss40.properties");
+        options.put(WSHandlerConstants.SIGNATURE_USER, "wss40");
+        options.put(WSHandlerConstants.SIG_KEY_ID, "DirectReference");
+        options.put(WSHandlerConstants.PW_CALLBACK_CLASS, KeystoreCallbackHandler.class.getName());
+        options.put(WSHandlerConstants.SIGNATURE_PARTS, "{}{}Body;{}{" + WSConstants.WSU_NS + "}Timestamp");
+        options.put(WSHandlerConstants.TTL_TIMESTAMP, "600");
+
+        CustomHandler handler = new CustomHandler();
+        for (Map.Entry<String, Object> option : options.entrySet()) {
+            handler.setOption(option.getKey(), option.getValue());
+        }
+        handler.setHandlerConfiguration(new HandlerConfiguration(options));
+
+        Crypto crypto = CryptoFactory.getInstance("wss40.properties");
+        List<HandlerAction> actions = new ArrayList<>();
+        actions.add(new HandlerAction(WSConstants.TS));
+        actions.add(new HandlerAction(WSConstants.SIGN));
+        for (int i = 0; i < 2; i++) {
+            RequestData reqData = new RequestData();
+            reqData.setWssConfig(WSSConfig.getNewInstance());
+            reqData.setMsgContext(new TreeMap<String, Object>());
+
+            Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+            handler.send(doc, reqData, actions, true);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(XMLUtils.prettyDocumentToString(doc));
+            }
+
+            WSSecurityEngine secEngine = new WSSecurityEngine();
+            WSHandlerResult results = secEngine.processSecurityHeader(doc, null, null, crypto);
+            WSSecurityEngineResult signatureResult =
+                results.getActionResults().get(WSConstants.SIGN).get(0);
+            @SuppressWarnings("unchecked")
+            List<WSDataRef> dataRefs =
+                (List<WSDataRef>) signatureResult.get(WSSecurityEngineResult.TAG_DATA_REF_URIS);
+            assertEquals(2, dataRefs.size());
+            assertFalse(results.getActionResults().get(WSConstants.BST).isEmpty());
+            assertEquals(600, reqData.getTimeStampTTL());
+        }
+    }
+
+    private static void assertIllegal(String key, String value) {
+        try {
+            new HandlerConfiguration(Collections.singletonMap(key, value));
+            fail("Failure expected on an illegal " + key);
+        } catch (WSSecurityException ex) {
+            assertEquals(WSSecurityException.ErrorCode.FAILURE, ex.getErrorCode());
+        }
+    }
+
+}
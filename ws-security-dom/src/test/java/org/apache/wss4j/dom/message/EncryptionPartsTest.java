@@ -22,6 +22,7 @@ package org.apache.wss4j.dom.message;
 import org.apache.wss4j.dom.SOAPConstants;
 import org.apache.wss4j.dom.WSDataRef;
 import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.WsuIdAllocator;
 import org.apache.wss4j.dom.common.KeystoreCallbackHandler;
 import org.apache.wss4j.dom.common.SOAPUtil;
 import org.apache.wss4j.dom.common.SecurityTestUtil;
@@ -47,6 +48,10 @@ import javax.security.auth.callback.CallbackHandler;
 import javax.xml.namespace.QName;
 
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -592,6 +597,74 @@ public class EncryptionPartsTest {
     }
 
 
+    /**
+     * Test encrypting a custom SOAP header, another header and the SOAP Body concurrently. The
+     * result must be the same as when they are encrypted sequentially, except for the CipherValues
+     * (as the IVs and the encrypted key are random).
+     */
+    @Test
+    public void testEncryptionExecutor() throws Exception {
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+
+        String sequential = encryptParts(symmetricKey, null);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Document doc = SOAPUtil.toSOAPPart(SOAPMSG);
+            String concurrent = encryptParts(doc, symmetricKey, executor);
+            assertEquals(maskCipherValues(sequential), maskCipherValues(concurrent));
+            assertTrue(concurrent.contains("wsse11:EncryptedHeader"));
+            assertFalse(concurrent.contains("foo:foobar"));
+
+            WSHandlerResult results = verify(doc);
+            WSSecurityEngineResult actionResult =
+                results.getActionResults().get(WSConstants.ENCR).get(0);
+            @SuppressWarnings("unchecked")
+            final List<WSDataRef> refs =
+                (List<WSDataRef>) actionResult.get(WSSecurityEngineResult.TAG_DATA_REF_URIS);
+            assertEquals(3, refs.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private String encryptParts(SecretKey symmetricKey, Executor executor) throws Exception {
+        return encryptParts(SOAPUtil.toSOAPPart(SOAPMSG), symmetricKey, executor);
+    }
+
+    private String encryptParts(Document doc, SecretKey symmetricKey, Executor executor) throws Exception {
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        encrypt.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        encrypt.setEncryptionExecutor(executor);
+        AtomicInteger counter = new AtomicInteger();
+        encrypt.setIdAllocator(new WsuIdAllocator() {
+            public String createId(String prefix, Object o) {
+                return prefix + counter.incrementAndGet();
+            }
+
+            public String createSecureId(String prefix, Object o) {
+                return prefix + counter.incrementAndGet();
+            }
+        });
+
+        encrypt.getParts().add(new WSEncryptionPart("foobar", "urn:foo.bar", "Header"));
+        encrypt.getParts().add(new WSEncryptionPart("bar1", "urn:foo.bar", "Element"));
+        encrypt.getParts().add(new WSEncryptionPart("Body", "http://schemas.xmlsoap.org/soap/envelope/", "Content"));
+
+        Document encryptedDoc = encrypt.build(crypto, symmetricKey);
+        return XMLUtils.prettyDocumentToString(encryptedDoc);
+    }
+
+    private static String maskCipherValues(String document) {
+        // The Id of the EncryptedKey is random as well
+        return document.replaceAll("<xenc:CipherValue>[^<]*</xenc:CipherValue>", "<xenc:CipherValue/>")
+            .replaceAll("EK-[0-9a-f-]+", "EK-");
+    }
+
     /**
      * Verifies the soap envelope
      * <p/>
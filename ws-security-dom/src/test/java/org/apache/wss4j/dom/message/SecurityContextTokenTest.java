@@ -19,6 +19,9 @@
 
 package org.apache.wss4j.dom.message;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.callback.CallbackHandler;
 import javax.xml.crypto.dsig.SignatureMethod;
 
 import org.apache.wss4j.dom.WSConstants;
@@ -27,7 +30,9 @@ import org.apache.wss4j.dom.common.SOAPUtil;
 import org.apache.wss4j.dom.common.SecurityTestUtil;
 import org.apache.wss4j.dom.engine.WSSecurityEngine;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.common.cache.SecretKeyCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.derivedKey.ConversationConstants;
@@ -38,6 +43,7 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Test;
 import org.w3c.dom.Document;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -194,6 +200,56 @@ public class SecurityContextTokenTest {
         }
     }
 
+    /**
+     * Process the same SCT/DKT secured message twice with a SecretKeyCache, where the secret of
+     * the SecurityContextToken is only retrieved via the CallbackHandler once.
+     */
+    @Test
+    public void testSCTKDKTSignSecretKeyCache() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSecurityContextToken sctBuilder = new WSSecSecurityContextToken(secHeader, null);
+        sctBuilder.setWscVersion(ConversationConstants.VERSION_05_12);
+        sctBuilder.prepare(crypto);
+
+        byte[] tempSecret = WSSecurityUtil.generateNonce(16);
+        callbackHandler.addSecretKey(sctBuilder.getIdentifier(), tempSecret);
+
+        WSSecDKSign sigBuilder = new WSSecDKSign(secHeader);
+        sigBuilder.setTokenIdentifier(sctBuilder.getSctId());
+        sigBuilder.setSignatureAlgorithm(WSConstants.HMAC_SHA1);
+        sigBuilder.build(tempSecret);
+
+        sctBuilder.prependSCTElementToHeader();
+        String message = XMLUtils.prettyDocumentToString(doc);
+
+        AtomicInteger callbackCount = new AtomicInteger();
+        CallbackHandler countingCallbackHandler = callbacks -> {
+            callbackCount.incrementAndGet();
+            callbackHandler.handle(callbacks);
+        };
+        SecretKeyCache secretKeyCache = new SecretKeyCache();
+
+        for (int i = 0; i < 2; i++) {
+            RequestData requestData = new RequestData();
+            requestData.setCallbackHandler(countingCallbackHandler);
+            requestData.setSigVerCrypto(crypto);
+            requestData.setSecretKeyCache(secretKeyCache);
+            WSHandlerResult results =
+                secEngine.processSecurityHeader(SOAPUtil.toSOAPPart(message), requestData);
+            assertNotNull(results.getActionResults().get(WSConstants.SIGN));
+        }
+
+        assertEquals(1, callbackCount.get());
+        // the secret of the SCT, and the key derived for the signature
+        assertEquals(2, secretKeyCache.size());
+
+        secretKeyCache.clear();
+        assertEquals(0, secretKeyCache.size());
+    }
+
     /**
      * Test for WSS-217:
      * "Add ability to specify a reference to an absolute URI in the derived key functionality".
@@ -40,6 +40,7 @@ import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.crypto.CryptoType;
+import org.apache.wss4j.common.crypto.PreparedSigner;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.token.Reference;
 import org.apache.wss4j.common.token.SecurityTokenReference;
@@ -64,6 +65,7 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -344,6 +346,51 @@ public class SignatureTest {
         secEngine.processSecurityHeader(doc, null, callbackHandler, pkiCrypto, null);
     }
 
+    /**
+     * Test that signs several messages with the same PreparedSigner, and verifies them
+     */
+    @Test
+    public void testPreparedSigner() throws Exception {
+        PreparedSigner preparedSigner =
+            new PreparedSigner(crypto, "16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        assertEquals(WSConstants.RSA, preparedSigner.getSignatureAlgorithm());
+
+        for (int i = 0; i < 2; i++) {
+            Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+            WSSecHeader secHeader = new WSSecHeader(doc);
+            secHeader.insertSecurityHeader();
+
+            WSSecSignature builder = new WSSecSignature(secHeader);
+            builder.setPreparedSigner(preparedSigner);
+            builder.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
+            Document signedDoc = builder.build(null);
+
+            WSHandlerResult results = verify(signedDoc);
+            WSSecurityEngineResult actionResult =
+                results.getActionResults().get(WSConstants.SIGN).get(0);
+            assertEquals(
+                preparedSigner.getX509Certificates()[0],
+                actionResult.get(WSSecurityEngineResult.TAG_X509_CERTIFICATE)
+            );
+        }
+
+        // Now sign with a PKIPath BinarySecurityToken
+        Crypto pkiCrypto = CryptoFactory.getInstance("wss40.properties");
+        preparedSigner = new PreparedSigner(pkiCrypto, "wss40", "security");
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature builder = new WSSecSignature(secHeader);
+        builder.setPreparedSigner(preparedSigner);
+        builder.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
+        builder.setUseSingleCertificate(false);
+        builder.build(null);
+
+        secEngine.processSecurityHeader(doc, null, callbackHandler, pkiCrypto, null);
+    }
+
     /**
      * Test that signs and verifies a WS-Security envelope
      * <p/>
@@ -603,6 +650,40 @@ public class SignatureTest {
         verify(doc);
     }
 
+    /**
+     * Test the Signature action with a PreparedSigner, where no password (CallbackHandler) is
+     * configured for the signature user
+     */
+    @Test
+    public void testPreparedSignerAction() throws Exception {
+        PreparedSigner preparedSigner =
+            new PreparedSigner(crypto, "16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+
+        final RequestData reqData = new RequestData();
+        reqData.setWssConfig(WSSConfig.getNewInstance());
+        reqData.setUsername("16c73ab6-b892-458f-abf5-2f875f74882e");
+        java.util.Map<String, Object> config = new java.util.TreeMap<>();
+        config.put(WSHandlerConstants.PREPARED_SIGNER_INSTANCE, preparedSigner);
+        config.put(WSHandlerConstants.SIG_KEY_ID, "DirectReference");
+        reqData.setMsgContext(config);
+
+        final Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        CustomHandler handler = new CustomHandler();
+        HandlerAction action = new HandlerAction(WSConstants.SIGN);
+        handler.send(
+            doc,
+            reqData,
+            Collections.singletonList(action),
+            true
+        );
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Signed message:");
+            LOG.debug(XMLUtils.prettyDocumentToString(doc));
+        }
+
+        verify(doc);
+    }
+
     /**
      * This is a test for WSS-234 -
      * "When a document contains a comment as its first child element,
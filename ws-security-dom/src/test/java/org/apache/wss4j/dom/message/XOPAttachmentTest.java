@@ -235,6 +235,42 @@ public class XOPAttachmentTest {
         assertTrue(processedDoc.contains(SOAP_BODY));
     }
 
+    // The decrypted attachment is larger than the attachment cache threshold, so the copy which is
+    // kept while it is parsed is moved to a temporary file
+    @Test
+    public void testEncryptedSOAPBodyAttachmentCacheThreshold() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        encrypt.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+        encrypt.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+
+        AttachmentCallbackHandler outboundAttachmentCallback = new AttachmentCallbackHandler();
+        encrypt.setAttachmentCallbackHandler(outboundAttachmentCallback);
+        encrypt.setStoreBytesInAttachment(true);
+
+        encrypt.getParts().add(new WSEncryptionPart("Body", "http://schemas.xmlsoap.org/soap/envelope/", "Content"));
+
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        Document encryptedDoc = encrypt.build(crypto, symmetricKey);
+
+        List<Attachment> encryptedAttachments = outboundAttachmentCallback.getResponseAttachments();
+
+        RequestData requestData = new RequestData();
+        requestData.setAttachmentCallbackHandler(new AttachmentCallbackHandler(encryptedAttachments));
+        requestData.setAttachmentCacheThreshold(16);
+        requestData.setSigVerCrypto(crypto);
+        requestData.setDecCrypto(crypto);
+        requestData.setCallbackHandler(new KeystoreCallbackHandler());
+        secEngine.processSecurityHeader(encryptedDoc, requestData);
+
+        String processedDoc = XMLUtils.prettyDocumentToString(encryptedDoc);
+        assertTrue(processedDoc.contains(SOAP_BODY));
+    }
+
     // See https://issues.apache.org/jira/browse/CXF-8061
     @Test
     public void testEncryptedSOAPBodyURLEncoding() throws Exception {
@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.misc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.WSDocInfo;
+import org.apache.wss4j.dom.common.SOAPUtil;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Some tests for the Id index of the WSDocInfo, which must return the same elements as a
+ * lookup of the document via XMLUtils.
+ */
+public class ElementIdIndexTest {
+
+    private static final String SOAPMSG =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" "
+        +   "xmlns:wsu=\"" + WSConstants.WSU_NS + "\">"
+        +   "<soapenv:Header>"
+        +       "<foo:foobar xmlns:foo=\"urn:foo.bar\" wsu:Id=\"header-1\">baz</foo:foobar>"
+        +       "<foo:foobar xmlns:foo=\"urn:foo.bar\" Id=\"dup\">baz</foo:foobar>"
+        +       "<saml2:Assertion xmlns:saml2=\"" + WSConstants.SAML2_NS + "\" ID=\"saml-1\"/>"
+        +   "</soapenv:Header>"
+        +   "<soapenv:Body wsu:Id=\"body-1\">"
+        +       "<add xmlns=\"http://ws.apache.org/counter/counter_port_type\" Id=\"add-1\">"
+        +           "<value xmlns=\"\" Id=\"dup\">15</value>"
+        +       "</add>"
+        +   "</soapenv:Body>"
+        + "</soapenv:Envelope>";
+
+    @Test
+    public void testLookups() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPMSG);
+        WSDocInfo wsDocInfo = new WSDocInfo(doc);
+        Element root = doc.getDocumentElement();
+
+        for (String id : new String[] {"header-1", "body-1", "add-1", "dup", "unknown"}) {
+            assertEquals(XMLUtils.findElementById(root, id, false), wsDocInfo.findElementById(id, false));
+            assertEquals(XMLUtils.findElementById(root, id, true), wsDocInfo.findElementById(id, true));
+        }
+        // Multiple elements with the same Id are detected
+        assertNull(wsDocInfo.findElementById("dup", true));
+
+        assertEquals(XMLUtils.findSAMLAssertionElementById(root, "saml-1"),
+                     wsDocInfo.findSAMLAssertionElementById("saml-1"));
+        assertNull(wsDocInfo.findSAMLAssertionElementById("header-1"));
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPMSG);
+        WSDocInfo wsDocInfo = new WSDocInfo(doc);
+
+        Element add = wsDocInfo.findElementById("add-1", true);
+        Element body = (Element)add.getParentNode();
+
+        // Replace the Body content, and update the index accordingly
+        Element newAdd = (Element)add.cloneNode(true);
+        newAdd.setAttributeNS(null, "Id", "add-2");
+        ((Element)newAdd.getFirstChild()).removeAttributeNS(null, "Id");
+        body.replaceChild(newAdd, add);
+        wsDocInfo.updateIdIndex(body);
+
+        assertNull(wsDocInfo.findElementById("add-1", true));
+        assertEquals(newAdd, wsDocInfo.findElementById("add-2", true));
+        // The duplicate Id is now unique
+        assertEquals(XMLUtils.findElementById(doc.getDocumentElement(), "dup", true),
+                     wsDocInfo.findElementById("dup", true));
+    }
+
+    @Test
+    public void testStaleIndex() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPMSG);
+        WSDocInfo wsDocInfo = new WSDocInfo(doc);
+
+        Element header = wsDocInfo.findElementById("header-1", true);
+
+        // Remove the element without updating the index
+        header.getParentNode().removeChild(header);
+        assertNull(wsDocInfo.findElementById("header-1", true));
+    }
+
+    @Test
+    public void testUntrackedDuplicate() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPMSG);
+        WSDocInfo wsDocInfo = new WSDocInfo(doc);
+
+        Element body = wsDocInfo.findElementById("body-1", true);
+        assertEquals(body, wsDocInfo.findElementById("body-1", true));
+
+        // Add an element with the same Id without updating the index
+        Element copy = (Element)body.cloneNode(false);
+        body.getParentNode().insertBefore(copy, body);
+
+        // The document must be indexed again to detect the duplicate
+        wsDocInfo.resetIdIndex();
+        assertNull(wsDocInfo.findElementById("body-1", true));
+        assertEquals(copy, wsDocInfo.findElementById("body-1", false));
+    }
+
+    @Test
+    public void testCustomProcessorModifiesDocument() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPMSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        Element securityHeader = secHeader.insertSecurityHeader();
+        securityHeader.appendChild(doc.createElementNS("urn:test", "test:add"));
+        securityHeader.appendChild(doc.createElementNS("urn:test", "test:lookup"));
+
+        // A custom processor adds an element with the same Id without updating the index...
+        WSSConfig config = WSSConfig.getNewInstance();
+        config.setProcessor(new QName("urn:test", "add"), (elem, data) -> {
+            Element body = data.getWsDocInfo().findElementById("body-1", true);
+            body.getParentNode().insertBefore(body.cloneNode(false), body);
+            return Collections.emptyList();
+        });
+        // ...so the document must be indexed again for the next processor
+        List<Element> lookups = new ArrayList<>();
+        config.setProcessor(new QName("urn:test", "lookup"), (elem, data) -> {
+            lookups.add(data.getWsDocInfo().findElementById("body-1", true));
+            return Collections.emptyList();
+        });
+
+        WSSecurityEngine engine = new WSSecurityEngine();
+        engine.setWssConfig(config);
+        engine.processSecurityHeader(doc, new RequestData());
+        assertEquals(1, lookups.size());
+        assertNull(lookups.get(0));
+    }
+}
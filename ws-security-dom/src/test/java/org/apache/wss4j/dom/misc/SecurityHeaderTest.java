@@ -19,14 +19,42 @@
 
 package org.apache.wss4j.dom.misc;
 
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.crypto.CryptoType;
+import org.apache.wss4j.common.principal.WSUsernameTokenPrincipalImpl;
+import org.apache.wss4j.common.token.BinarySecurity;
+import org.apache.wss4j.common.token.X509Security;
+import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.common.SOAPUtil;
 import org.apache.wss4j.dom.common.SecurityTestUtil;
+import org.apache.wss4j.dom.common.UsernamePasswordCallbackHandler;
+import org.apache.wss4j.dom.engine.WSSConfig;
 import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.dom.message.WSSecHeader;
+import org.apache.wss4j.dom.message.WSSecTimestamp;
+import org.apache.wss4j.dom.message.WSSecUsernameToken;
+import org.apache.wss4j.dom.message.token.UsernameToken;
+import org.apache.wss4j.dom.util.WSSecurityUtil;
+import org.apache.wss4j.dom.validate.SignatureTrustValidator;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Test;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.w3c.dom.Document;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -131,4 +159,119 @@ public class SecurityHeaderTest {
 
         secEngine.processSecurityHeader(doc, "user", null, null);
     }
-}
\ No newline at end of file
+
+    /**
+     * Test processing a security header with several UsernameTokens and a BinarySecurityToken
+     * asynchronously. The results must be the same as when it is processed synchronously.
+     */
+    @Test
+    public void testProcessSecurityHeaderAsync() throws Exception {
+        Crypto crypto = CryptoFactory.getInstance("wss40.properties");
+        Document doc = createMultipleTokenDocument(crypto, "verySecret");
+
+        WSHandlerResult results = secEngine.processSecurityHeader(doc, createRequestData(crypto));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            WSHandlerResult asyncResults =
+                secEngine.processSecurityHeaderAsync(doc, createRequestData(crypto), executor).join();
+
+            assertEquals(5, asyncResults.getResults().size());
+            assertEquals(getIds(results.getResults()), getIds(asyncResults.getResults()));
+            Map<Integer, List<WSSecurityEngineResult>> actionResults = results.getActionResults();
+            Map<Integer, List<WSSecurityEngineResult>> asyncActionResults = asyncResults.getActionResults();
+            assertEquals(actionResults.keySet(), asyncActionResults.keySet());
+            for (Integer action : actionResults.keySet()) {
+                assertEquals(getIds(actionResults.get(action)), getIds(asyncActionResults.get(action)));
+            }
+
+            // The tokens were validated with copies of the elements, but the results refer to the
+            // elements of the document
+            Document headerDoc = WSSecurityUtil.getSecurityHeader(doc, "").getOwnerDocument();
+            for (WSSecurityEngineResult result : asyncResults.getActionResults().get(WSConstants.UT)) {
+                UsernameToken token = (UsernameToken) result.get(WSSecurityEngineResult.TAG_USERNAME_TOKEN);
+                assertSame(headerDoc, token.getElement().getOwnerDocument());
+                assertTrue(result.get(WSSecurityEngineResult.TAG_PRINCIPAL) instanceof WSUsernameTokenPrincipalImpl);
+            }
+            for (WSSecurityEngineResult result : asyncResults.getActionResults().get(WSConstants.BST)) {
+                BinarySecurity token =
+                    (BinarySecurity) result.get(WSSecurityEngineResult.TAG_BINARY_SECURITY_TOKEN);
+                assertSame(headerDoc, token.getElement().getOwnerDocument());
+                assertEquals(Boolean.TRUE, result.get(WSSecurityEngineResult.TAG_VALIDATED_TOKEN));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test that a failure to validate a token is reported when processing a security header
+     * asynchronously
+     */
+    @Test
+    public void testProcessSecurityHeaderAsyncFailure() throws Exception {
+        Crypto crypto = CryptoFactory.getInstance("wss40.properties");
+        Document doc = createMultipleTokenDocument(crypto, "wrongSecret");
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            secEngine.processSecurityHeaderAsync(doc, createRequestData(crypto), executor).join();
+            fail("Failure expected on a wrong password");
+        } catch (CompletionException ex) {
+            assertTrue(ex.getCause() instanceof WSSecurityException);
+            WSSecurityException cause = (WSSecurityException) ex.getCause();
+            assertEquals(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION, cause.getErrorCode());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Document createMultipleTokenDocument(Crypto crypto, String password) throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecTimestamp timestamp = new WSSecTimestamp(secHeader);
+        timestamp.build();
+
+        WSSecUsernameToken builder = new WSSecUsernameToken(secHeader);
+        builder.setUserInfo("wernerd", "verySecret");
+        builder.build();
+
+        builder = new WSSecUsernameToken(secHeader);
+        builder.setUserInfo("wernerd", password);
+        builder.build();
+
+        builder = new WSSecUsernameToken(secHeader);
+        builder.setUserInfo("wernerd", "verySecret");
+        builder.build();
+
+        X509Security bst = new X509Security(doc);
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("wss40");
+        X509Certificate[] certs = crypto.getX509Certificates(cryptoType);
+        bst.setX509Certificate(certs[0]);
+        bst.setID("BST-1");
+        WSSecurityUtil.prependChildElement(secHeader.getSecurityHeaderElement(), bst.getElement());
+        return doc;
+    }
+
+    private static RequestData createRequestData(Crypto crypto) {
+        RequestData data = new RequestData();
+        data.setCallbackHandler(new UsernamePasswordCallbackHandler());
+        data.setSigVerCrypto(crypto);
+        WSSConfig config = WSSConfig.getNewInstance();
+        config.setValidator(WSConstants.BINARY_TOKEN, new SignatureTrustValidator());
+        data.setWssConfig(config);
+        return data;
+    }
+
+    private static List<String> getIds(List<WSSecurityEngineResult> results) {
+        List<String> ids = new ArrayList<>();
+        for (WSSecurityEngineResult result : results) {
+            ids.add(result.get(WSSecurityEngineResult.TAG_ACTION) + ":"
+                + result.get(WSSecurityEngineResult.TAG_ID));
+        }
+        return ids;
+    }
+}
@@ -19,8 +19,10 @@
 
 package org.apache.wss4j.dom.saml;
 
+import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.common.CountingSamlAssertionVerificationCache;
 import org.apache.wss4j.dom.common.KeystoreCallbackHandler;
 import org.apache.wss4j.dom.common.SAML1CallbackHandler;
 import org.apache.wss4j.dom.common.SAML2CallbackHandler;
@@ -44,8 +46,11 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Test;
 import org.w3c.dom.Document;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 
 /**
  * Test-case for sending and processing a signed (holder-of-key) SAML Assertion. These tests
@@ -252,6 +257,62 @@ public class SamlTokenHOKTest {
         assertNotNull(receivedSamlAssertion);
     }
 
+    /**
+     * Test that a signed SAML 2 assertion, which is received again, is found in the verification
+     * cache, and that a modified assertion is not.
+     */
+    @Test
+    public void testSAML2AssertionVerificationCache() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_HOLDER_KEY);
+        callbackHandler.setIssuer("www.example.com");
+
+        SAMLCallback samlCallback = new SAMLCallback();
+        SAMLUtil.doSAMLCallback(callbackHandler, samlCallback);
+        SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
+
+        samlAssertion.signAssertion("16c73ab6-b892-458f-abf5-2f875f74882e", "security", crypto, false);
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSAMLToken wsSign = new WSSecSAMLToken(secHeader);
+        String message = XMLUtils.prettyDocumentToString(wsSign.build(samlAssertion));
+
+        CountingSamlAssertionVerificationCache verificationCache = new CountingSamlAssertionVerificationCache();
+
+        RequestData requestData = new RequestData();
+        requestData.setSigVerCrypto(crypto);
+        requestData.setValidateSamlSubjectConfirmation(false);
+        requestData.setSamlAssertionVerificationCache(verificationCache);
+
+        secEngine.processSecurityHeader(SOAPUtil.toSOAPPart(message), requestData);
+        assertEquals(1, verificationCache.size());
+        assertEquals(0, verificationCache.getHits());
+
+        WSHandlerResult results = secEngine.processSecurityHeader(SOAPUtil.toSOAPPart(message), requestData);
+        assertEquals(1, verificationCache.size());
+        // the signature and the trust verification are skipped
+        assertEquals(2, verificationCache.getHits());
+        WSSecurityEngineResult actionResult =
+            results.getActionResults().get(WSConstants.ST_SIGNED).get(0);
+        SamlAssertionWrapper receivedSamlAssertion =
+            (SamlAssertionWrapper) actionResult.get(WSSecurityEngineResult.TAG_SAML_ASSERTION);
+        assertNotNull(receivedSamlAssertion.getSignatureKeyInfo());
+
+        // A modified assertion must not be found in the cache
+        String modifiedMessage = message.replace("uid=joe", "uid=bob");
+        assertNotEquals(message, modifiedMessage);
+        try {
+            secEngine.processSecurityHeader(SOAPUtil.toSOAPPart(modifiedMessage), requestData);
+            fail("Failure expected on a modified assertion");
+        } catch (WSSecurityException ex) {
+            assertEquals(2, verificationCache.getHits());
+        }
+    }
+
     /**
      * Verifies the soap envelope
      * <p/>
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.policy.stax.enforcer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.neethi.ExactlyOne;
+import org.apache.neethi.PolicyComponent;
+import org.apache.neethi.PolicyContainingAssertion;
+import org.apache.neethi.PolicyOperator;
+import org.apache.neethi.builders.PrimitiveAssertion;
+import org.apache.wss4j.common.WSSPolicyException;
+import org.apache.wss4j.policy.model.AbstractSecurityAssertion;
+import org.apache.wss4j.policy.stax.OperationPolicy;
+
+/**
+ * The compiled form of the (normalized) Policy of an OperationPolicy: the security assertions of
+ * every alternative, in the order the Policy tree is walked. The plan is immutable and is shared
+ * by all the PolicyEnforcer instances of an operation, which only create the (stateful) Assertables
+ * for the assertions of a plan.
+ */
+public final class OperationPolicyPlan {
+
+    private static final AbstractSecurityAssertion[] EMPTY_ASSERTIONS = new AbstractSecurityAssertion[0];
+
+    private final OperationPolicy operationPolicy;
+    private final AbstractSecurityAssertion[][] alternatives;
+    private final WSSPolicyException policyException;
+
+    /**
+     * Compile the Policy of the given OperationPolicy.
+     * Precondition: Policy _must_ be normalized!
+     */
+    public OperationPolicyPlan(OperationPolicy operationPolicy) {
+        this.operationPolicy = operationPolicy;
+
+        List<List<AbstractSecurityAssertion>> alternativeList = new ArrayList<>();
+        WSSPolicyException exception = null;
+        try {
+            compileAlternatives(operationPolicy.getPolicy(), alternativeList);
+        } catch (WSSPolicyException e) {
+            // an invalid Policy is only reported when a message for the operation is enforced
+            exception = e;
+        }
+        this.policyException = exception;
+
+        this.alternatives = new AbstractSecurityAssertion[alternativeList.size()][];
+        for (int i = 0; i < alternatives.length; i++) {
+            alternatives[i] = alternativeList.get(i).toArray(EMPTY_ASSERTIONS);
+        }
+    }
+
+    public OperationPolicy getOperationPolicy() {
+        return operationPolicy;
+    }
+
+    /**
+     * @return the security assertions of every alternative of the Policy. The arrays must not be modified.
+     * @throws WSSPolicyException if the Policy contains an invalid or unsupported PolicyComponent
+     */
+    AbstractSecurityAssertion[][] getAlternatives() throws WSSPolicyException {
+        if (policyException != null) {
+            throw policyException;
+        }
+        return alternatives;
+    }
+
+    private static void compileAlternatives(
+            PolicyComponent policyComponent,
+            List<List<AbstractSecurityAssertion>> alternativeList
+    ) throws WSSPolicyException {
+        if (policyComponent instanceof PolicyOperator) {
+            PolicyOperator policyOperator = (PolicyOperator) policyComponent;
+            List<PolicyComponent> policyComponents = policyOperator.getPolicyComponents();
+            int alternative = 0;
+            Iterator<PolicyComponent> policyComponentIterator = policyComponents.iterator();
+            while (policyComponentIterator.hasNext()) {
+                PolicyComponent curPolicyComponent = policyComponentIterator.next();
+                if (policyOperator instanceof ExactlyOne) {
+                    alternativeList.add(new ArrayList<AbstractSecurityAssertion>());
+                    compileAlternative(curPolicyComponent, alternativeList.get(alternative++));
+                } else {
+                    compileAlternatives(curPolicyComponent, alternativeList);
+                }
+            }
+        } else {
+            throw new WSSPolicyException("Invalid PolicyComponent: " + policyComponent
+                                         + " " + policyComponent.getType());
+        }
+    }
+
+    private static void compileAlternative(
+            PolicyComponent policyComponent,
+            List<AbstractSecurityAssertion> assertions
+    ) throws WSSPolicyException {
+        if (policyComponent instanceof PolicyOperator) {
+            PolicyOperator policyOperator = (PolicyOperator) policyComponent;
+            List<PolicyComponent> policyComponents = policyOperator.getPolicyComponents();
+            Iterator<PolicyComponent> policyComponentIterator = policyComponents.iterator();
+            while (policyComponentIterator.hasNext()) {
+                PolicyComponent curPolicyComponent = policyComponentIterator.next();
+                compileAlternative(curPolicyComponent, assertions);
+            }
+        } else if (policyComponent instanceof AbstractSecurityAssertion) {
+            AbstractSecurityAssertion abstractSecurityAssertion = (AbstractSecurityAssertion) policyComponent;
+            assertions.add(abstractSecurityAssertion);
+            if (abstractSecurityAssertion instanceof PolicyContainingAssertion) {
+                compileAlternative(((PolicyContainingAssertion) abstractSecurityAssertion).getPolicy(), assertions);
+            }
+        } else if (!(policyComponent instanceof PrimitiveAssertion)) {
+            throw new WSSPolicyException("Unsupported PolicyComponent: " + policyComponent
+                                         + " type: " + policyComponent.getType());
+        }
+    }
+}
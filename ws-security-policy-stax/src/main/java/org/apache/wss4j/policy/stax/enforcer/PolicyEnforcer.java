@@ -18,23 +18,15 @@
  */
 package org.apache.wss4j.policy.stax.enforcer;
 
-import java.util.Deque;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 import javax.xml.namespace.QName;
 
 import org.apache.neethi.Assertion;
-import org.apache.neethi.ExactlyOne;
-import org.apache.neethi.Policy;
-import org.apache.neethi.PolicyComponent;
-import org.apache.neethi.PolicyContainingAssertion;
-import org.apache.neethi.PolicyOperator;
-import org.apache.neethi.builders.PrimitiveAssertion;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.policy.SPConstants;
 import org.apache.wss4j.common.WSSPolicyException;
@@ -130,12 +122,16 @@ public class PolicyEnforcer implements SecurityEventListener {
     private static final QName SOAP11_FAULT = new QName(WSSConstants.NS_SOAP11, "Fault");
     private static final QName SOAP12_FAULT = new QName(WSSConstants.NS_SOAP12, "Fault");
 
-    private final List<OperationPolicy> operationPolicies;
-    private OperationPolicy effectivePolicy;
-    private final List<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMap;
-    private final List<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> failedAssertionStateMap;
+    private final PolicyEnforcerPlan policyEnforcerPlan;
+    private OperationPolicyPlan effectivePolicy;
+    private final List<AlternativeState> assertionStates;
+    private final List<AlternativeState> failedAssertionStates;
+    // the alternatives with Assertables for a SecurityEvent type, indexed by PolicyEnforcerPlan#getEventIndex
+    private AlternativeState[][] eventRoutes = new AlternativeState[0][];
 
-    private final Deque<SecurityEvent> securityEventQueue = new LinkedList<>();
+    // the SecurityEvents that occur before the operation (and so the effective Policy) is known
+    private SecurityEvent[] securityEventBuffer = new SecurityEvent[16];
+    private int securityEventCount;
     private boolean operationSecurityEventOccured = false;
     private boolean initiator;
     private String actorOrRole;
@@ -148,13 +144,23 @@ public class PolicyEnforcer implements SecurityEventListener {
     public PolicyEnforcer(List<OperationPolicy> operationPolicies, String soapAction, boolean initiator,
                           String actorOrRole, int attachmentCount, PolicyAsserter policyAsserter, boolean soap12
     ) throws WSSPolicyException {
-        this.operationPolicies = operationPolicies;
+        this(new PolicyEnforcerPlan(operationPolicies), soapAction, initiator, actorOrRole,
+             attachmentCount, policyAsserter, soap12);
+    }
+
+    /**
+     * Creates a PolicyEnforcer for a message, from the compiled and shared policies of all operations
+     */
+    public PolicyEnforcer(PolicyEnforcerPlan policyEnforcerPlan, String soapAction, boolean initiator,
+                          String actorOrRole, int attachmentCount, PolicyAsserter policyAsserter, boolean soap12
+    ) throws WSSPolicyException {
+        this.policyEnforcerPlan = policyEnforcerPlan;
         this.initiator = initiator;
         this.actorOrRole = actorOrRole;
         this.attachmentCount = attachmentCount;
         this.soap12 = soap12;
-        assertionStateMap = new LinkedList<>();
-        failedAssertionStateMap = new LinkedList<>();
+        assertionStates = new ArrayList<>();
+        failedAssertionStates = new ArrayList<>();
 
         if (policyAsserter == null) {
             this.policyAsserter = new DummyPolicyAsserter();
@@ -163,128 +169,66 @@ public class PolicyEnforcer implements SecurityEventListener {
         }
 
         if (soapAction != null && !soapAction.isEmpty()) {
-            effectivePolicy = findPolicyBySOAPAction(operationPolicies, soapAction);
+            effectivePolicy = policyEnforcerPlan.findPlanBySOAPAction(soapAction);
             if (effectivePolicy != null) {
-                buildAssertionStateMap(effectivePolicy.getPolicy(), assertionStateMap);
-            }
-        }
-    }
-
-    private OperationPolicy findPolicyBySOAPAction(List<OperationPolicy> operationPolicies, String soapAction) {
-        Iterator<OperationPolicy> operationPolicyIterator = operationPolicies.iterator();
-        while (operationPolicyIterator.hasNext()) {
-            OperationPolicy operationPolicy = operationPolicyIterator.next();
-            if (soapAction.equals(operationPolicy.getOperationAction())) {
-                return operationPolicy;
+                buildAssertionStates(effectivePolicy);
             }
         }
-        return null;
-    }
-
-    private OperationPolicy findPolicyBySOAPOperationName(List<OperationPolicy> operationPolicies,
-                                                          QName soapOperationName) {
-        Iterator<OperationPolicy> operationPolicyIterator = operationPolicies.iterator();
-        OperationPolicy noNamespaceOperation = null;
-
-        while (operationPolicyIterator.hasNext()) {
-            OperationPolicy operationPolicy = operationPolicyIterator.next();
-            if (operationPolicy.getOperationName() != null) {
-                if (soapOperationName.equals(operationPolicy.getOperationName())) {
-                    return operationPolicy;
-                } else if ("".equals(operationPolicy.getOperationName().getNamespaceURI())
-                    && soapOperationName.getLocalPart().equals(
-                        operationPolicy.getOperationName().getLocalPart())) {
-                    noNamespaceOperation = operationPolicy;
-                }
-            }
-        }
-
-        return noNamespaceOperation;
     }
 
     /**
-     * Precondition: Policy _must_ be normalized!
+     * Creates the Assertables of every alternative of the (compiled) effective Policy
      */
-    private void buildAssertionStateMap(
-            PolicyComponent policyComponent,
-            List<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMap
-    ) throws WSSPolicyException {
-        if (policyComponent instanceof PolicyOperator) {
-            PolicyOperator policyOperator = (PolicyOperator) policyComponent;
-            List<PolicyComponent> policyComponents = policyOperator.getPolicyComponents();
-            int alternative = 0;
-            Iterator<PolicyComponent> policyComponentIterator = policyComponents.iterator();
-            while (policyComponentIterator.hasNext()) {
-                PolicyComponent curPolicyComponent = policyComponentIterator.next();
-                if (policyOperator instanceof ExactlyOne) {
-                    assertionStateMap.add(new HashMap<SecurityEventConstants.Event,
-                                          Map<Assertion, List<Assertable>>>());
-                    buildAssertionStateMap(curPolicyComponent, assertionStateMap, alternative++);
-                } else {
-                    buildAssertionStateMap(curPolicyComponent, assertionStateMap);
+    private void buildAssertionStates(OperationPolicyPlan operationPolicyPlan) throws WSSPolicyException {
+        AbstractSecurityAssertion[][] alternatives = operationPolicyPlan.getAlternatives();
+        for (int i = 0; i < alternatives.length; i++) {
+            AbstractSecurityAssertion[] alternative = alternatives[i];
+            List<Assertable> assertables = new ArrayList<>(alternative.length);
+            List<Assertion> assertions = new ArrayList<>(alternative.length);
+            List<SecurityEventConstants.Event[]> securityEventTypes = new ArrayList<>(alternative.length);
+            for (int j = 0; j < alternative.length; j++) {
+                AbstractSecurityAssertion abstractSecurityAssertion = alternative[j];
+                List<Assertable> assertablesList = getAssertableForAssertion(abstractSecurityAssertion);
+                for (int k = 0; k < assertablesList.size(); k++) {
+                    Assertable assertable = assertablesList.get(k);
+                    SecurityEventConstants.Event[] securityEventType = assertable.getSecurityEventType();
+                    // an Assertable without SecurityEvents is never asserted
+                    if (securityEventType.length > 0) {
+                        assertables.add(assertable);
+                        assertions.add(abstractSecurityAssertion);
+                        securityEventTypes.add(securityEventType);
+                    }
                 }
             }
-        } else {
-            throw new WSSPolicyException("Invalid PolicyComponent: " + policyComponent
-                                         + " " + policyComponent.getType());
+            assertionStates.add(new AlternativeState(assertables, assertions, securityEventTypes));
         }
-    }
 
-    private void buildAssertionStateMap(
-            PolicyComponent policyComponent,
-            List<Map<SecurityEventConstants.Event,
-            Map<Assertion, List<Assertable>>>> assertionStateMap,
-            int alternative
-    ) throws WSSPolicyException {
-        if (policyComponent instanceof PolicyOperator) {
-            PolicyOperator policyOperator = (PolicyOperator) policyComponent;
-            List<PolicyComponent> policyComponents = policyOperator.getPolicyComponents();
-            Iterator<PolicyComponent> policyComponentIterator = policyComponents.iterator();
-            while (policyComponentIterator.hasNext()) {
-                PolicyComponent curPolicyComponent = policyComponentIterator.next();
-                buildAssertionStateMap(curPolicyComponent, assertionStateMap, alternative);
+        // route every SecurityEvent type to exactly the alternatives that are interested in it
+        int eventCount = 0;
+        for (int i = 0; i < assertionStates.size(); i++) {
+            eventCount = Math.max(eventCount, assertionStates.get(i).eventAssertables.length);
+        }
+        eventRoutes = new AlternativeState[eventCount][];
+        for (int eventIndex = 0; eventIndex < eventCount; eventIndex++) {
+            int routeCount = 0;
+            for (int i = 0; i < assertionStates.size(); i++) {
+                if (assertionStates.get(i).getAssertables(eventIndex) != null) {
+                    routeCount++;
+                }
             }
-        } else if (policyComponent instanceof AbstractSecurityAssertion) {
-            AbstractSecurityAssertion abstractSecurityAssertion = (AbstractSecurityAssertion) policyComponent;
-
-            List<Assertable> assertablesList = getAssertableForAssertion(abstractSecurityAssertion);
-            Iterator<Assertable> assertableIterator = assertablesList.iterator();
-            while (assertableIterator.hasNext()) {
-                Assertable assertable = assertableIterator.next();
-                final Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                    assertionStateMap.get(alternative);
-                final SecurityEventConstants.Event[] securityEventType = assertable.getSecurityEventType();
-                for (int j = 0; j < securityEventType.length; j++) {
-                    SecurityEventConstants.Event event = securityEventType[j];
-                    Map<Assertion, List<Assertable>> assertables = map.get(event);
-                    if (assertables == null) {
-                        assertables = new HashMap<>();
-                        map.put(event, assertables);
+            if (routeCount > 0) {
+                AlternativeState[] routes = new AlternativeState[routeCount];
+                routeCount = 0;
+                for (int i = 0; i < assertionStates.size(); i++) {
+                    if (assertionStates.get(i).getAssertables(eventIndex) != null) {
+                        routes[routeCount++] = assertionStates.get(i);
                     }
-                    addAssertionState(assertables, abstractSecurityAssertion, assertable);
                 }
+                eventRoutes[eventIndex] = routes;
             }
-            if (abstractSecurityAssertion instanceof PolicyContainingAssertion) {
-                buildAssertionStateMap(((PolicyContainingAssertion) abstractSecurityAssertion).getPolicy(),
-                                       assertionStateMap, alternative);
-            }
-        } else if (!(policyComponent instanceof PrimitiveAssertion)) {
-            throw new WSSPolicyException("Unsupported PolicyComponent: " + policyComponent
-                                         + " type: " + policyComponent.getType());
         }
     }
 
-    private void addAssertionState(Map<Assertion, List<Assertable>> assertables,
-                                   Assertion keyAssertion,
-                                   Assertable assertable) {
-        List<Assertable> assertableList = assertables.get(keyAssertion);
-        if (assertableList == null) {
-            assertableList = new LinkedList<>();
-            assertables.put(keyAssertion, assertableList);
-        }
-        assertableList.add(assertable);
-    }
-
     // Don't return a Token that is not required
     private boolean isTokenRequired(AbstractToken token) {
         SPConstants.IncludeTokenType includeTokenType = token.getIncludeTokenType();
@@ -509,72 +453,49 @@ public class PolicyEnforcer implements SecurityEventListener {
      * @throws WSSPolicyException
      */
     private void verifyPolicy(SecurityEvent securityEvent) throws WSSPolicyException, XMLSecurityException {
-        // We have to check the failed assertions for logging purposes firstly...
-        if (!this.failedAssertionStateMap.isEmpty()) {
-            Iterator<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMapIterator =
-                this.failedAssertionStateMap.iterator();
-            alternative:
-                while (assertionStateMapIterator.hasNext()) {
-                    Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                        assertionStateMapIterator.next();
-                    // every list entry counts as an alternative...
-                    Map<Assertion, List<Assertable>> assertionListMap = map.get(securityEvent.getSecurityEventType());
-                    if (assertionListMap != null && !assertionListMap.isEmpty()) {
-                        Iterator<Map.Entry<Assertion, List<Assertable>>> assertionStateIterator =
-                            assertionListMap.entrySet().iterator();
-                        while (assertionStateIterator.hasNext()) {
-                            Map.Entry<Assertion, List<Assertable>> assertionStateEntry =
-                                assertionStateIterator.next();
-                            List<Assertable> assertionStates = assertionStateEntry.getValue();
-                            Iterator<Assertable> assertableIterator = assertionStates.iterator();
-                            while (assertableIterator.hasNext()) {
-                                Assertable assertable = assertableIterator.next();
-                                boolean asserted = assertable.assertEvent(securityEvent);
-                                // ...so if one fails, continue with the next map entry and
-                                // increment the notAssertedCount
-                                if (!asserted) {
-                                    continue alternative;
-                                }
-                            }
+        String assertionMessage = null;
+        int eventIndex = PolicyEnforcerPlan.findEventIndex(securityEvent.getSecurityEventType());
+        // events that no Assertable is interested in are not dispatched at all
+        AlternativeState[] routes =
+            eventIndex >= 0 && eventIndex < eventRoutes.length ? eventRoutes[eventIndex] : null;
+        if (routes != null) {
+            // We have to check the failed assertions for logging purposes firstly...
+            for (int i = 0; i < routes.length; i++) {
+                if (routes[i].failed) {
+                    Assertable[] assertables = routes[i].getAssertables(eventIndex);
+                    for (int j = 0; j < assertables.length; j++) {
+                        // ...so if one fails, continue with the next alternative
+                        if (!assertables[j].assertEvent(securityEvent)) {
+                            break;
                         }
                     }
                 }
-        }
+            }
 
-        String assertionMessage = null;
-        //...and then check the remaining alternatives
-        Iterator<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMapIterator =
-            this.assertionStateMap.iterator();
-        //every map entry counts as an alternative...
-        alternative:
-            while (assertionStateMapIterator.hasNext()) {
-                Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                    assertionStateMapIterator.next();
-                Map<Assertion, List<Assertable>> assertionListMap = map.get(securityEvent.getSecurityEventType());
-                if (assertionListMap != null && !assertionListMap.isEmpty()) {
-                    Iterator<Map.Entry<Assertion, List<Assertable>>> assertionStateIterator =
-                        assertionListMap.entrySet().iterator();
-                    while (assertionStateIterator.hasNext()) {
-                        Map.Entry<Assertion, List<Assertable>> assertionStateEntry = assertionStateIterator.next();
-                        List<Assertable> assertionStates = assertionStateEntry.getValue();
-                        Iterator<Assertable> assertableIterator = assertionStates.iterator();
-                        while (assertableIterator.hasNext()) {
-                            Assertable assertable = assertableIterator.next();
-                            boolean asserted = assertable.assertEvent(securityEvent);
-                            //...so if one fails, continue with the next map entry and increment the notAssertedCount
-                            if (!asserted) {
-                                assertionMessage = assertable.getErrorMessage();
-                                failedAssertionStateMap.add(map);
-                                assertionStateMapIterator.remove();
-                                continue alternative;
-                            }
-                        }
+            //...and then check the remaining alternatives
+            alternative:
+            for (int i = 0; i < routes.length; i++) {
+                AlternativeState alternativeState = routes[i];
+                if (alternativeState.failed) {
+                    continue;
+                }
+                Assertable[] assertables = alternativeState.getAssertables(eventIndex);
+                for (int j = 0; j < assertables.length; j++) {
+                    Assertable assertable = assertables[j];
+                    boolean asserted = assertable.assertEvent(securityEvent);
+                    //...so if one fails, continue with the next alternative
+                    if (!asserted) {
+                        assertionMessage = assertable.getErrorMessage();
+                        alternativeState.failed = true;
+                        failedAssertionStates.add(alternativeState);
+                        assertionStates.remove(alternativeState);
+                        continue alternative;
                     }
                 }
             }
-        //if the assertionStateMap is empty (the size of the list is equal to the alternatives)
-        //then we could not satisfy any alternative
-        if (assertionStateMap.isEmpty() && !(faultOccurred && noSecurityHeader && initiator)) {
+        }
+        //if the assertionStates are empty then we could not satisfy any alternative
+        if (assertionStates.isEmpty() && !(faultOccurred && noSecurityHeader && initiator)) {
             logFailedAssertions();
             throw new PolicyViolationException(assertionMessage);
         }
@@ -588,36 +509,23 @@ public class PolicyEnforcer implements SecurityEventListener {
      */
     private void verifyPolicy() throws WSSPolicyException {
         String assertionMessage = null;
-        Iterator<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMapIterator =
-            this.assertionStateMap.iterator();
+        Iterator<AlternativeState> assertionStateIterator = assertionStates.iterator();
         alternative:
-        while (assertionStateMapIterator.hasNext()) {
-            Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                assertionStateMapIterator.next();
-            Iterator<Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> iterator =
-                map.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> mapEntry =
-                    iterator.next();
-                Iterator<Map.Entry<Assertion, List<Assertable>>> assertionStateIterator =
-                    mapEntry.getValue().entrySet().iterator();
-                while (assertionStateIterator.hasNext()) {
-                    Map.Entry<Assertion, List<Assertable>> assertionListEntry = assertionStateIterator.next();
-                    List<Assertable> assertableList = assertionListEntry.getValue();
-                    Iterator<Assertable> assertableIterator = assertableList.iterator();
-                    while (assertableIterator.hasNext()) {
-                        Assertable assertable = assertableIterator.next();
-                        if (!assertable.isAsserted()) {
-                            assertionMessage = assertable.getErrorMessage();
-                            failedAssertionStateMap.add(map);
-                            assertionStateMapIterator.remove();
-                            continue alternative;
-                        }
-                    }
+        while (assertionStateIterator.hasNext()) {
+            AlternativeState alternativeState = assertionStateIterator.next();
+            Assertable[] assertables = alternativeState.assertables;
+            for (int i = 0; i < assertables.length; i++) {
+                Assertable assertable = assertables[i];
+                if (!assertable.isAsserted()) {
+                    assertionMessage = assertable.getErrorMessage();
+                    alternativeState.failed = true;
+                    failedAssertionStates.add(alternativeState);
+                    assertionStateIterator.remove();
+                    continue alternative;
                 }
             }
         }
-        if (assertionStateMap.isEmpty() && !(faultOccurred && noSecurityHeader && initiator)) {
+        if (assertionStates.isEmpty() && !(faultOccurred && noSecurityHeader && initiator)) {
             logFailedAssertions();
             throw new WSSPolicyException(assertionMessage);
         }
@@ -632,94 +540,61 @@ public class PolicyEnforcer implements SecurityEventListener {
      */
     private void verifyPolicyAfterOperationSecurityEvent() throws WSSPolicyException {
         String assertionMessage = null;
-        Iterator<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMapIterator =
-            this.assertionStateMap.iterator();
+        Iterator<AlternativeState> assertionStateIterator = assertionStates.iterator();
         alternative:
-        while (assertionStateMapIterator.hasNext()) {
-            Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                assertionStateMapIterator.next();
-            Iterator<Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> iterator =
-                map.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> mapEntry =
-                    iterator.next();
-                Iterator<Map.Entry<Assertion, List<Assertable>>> assertionStateIterator =
-                    mapEntry.getValue().entrySet().iterator();
-                while (assertionStateIterator.hasNext()) {
-                    Map.Entry<Assertion, List<Assertable>> assertionListEntry = assertionStateIterator.next();
-                    List<Assertable> assertableList = assertionListEntry.getValue();
-                    Iterator<Assertable> assertableIterator = assertableList.iterator();
-                    while (assertableIterator.hasNext()) {
-                        Assertable assertable = assertableIterator.next();
-
-                        boolean doAssert = false;
-                        if (assertable instanceof TokenAssertionState) {
-                            TokenAssertionState tokenAssertionState = (TokenAssertionState) assertable;
-                            AbstractToken abstractToken = (AbstractToken) tokenAssertionState.getAssertion();
-                            AbstractSecurityAssertion assertion = abstractToken.getParentAssertion();
-                            //Other tokens may not be resolved yet fully therefore we skip it here
-                            if (assertion instanceof SupportingTokens
-                                || assertable instanceof HttpsTokenAssertionState
-                                || assertable instanceof RelTokenAssertionState
-                                || assertable instanceof SecurityContextTokenAssertionState
-                                || assertable instanceof SpnegoContextTokenAssertionState
-                                || assertable instanceof UsernameTokenAssertionState) {
-                                doAssert = true;
-                            }
-                        } else if (assertable instanceof TokenProtectionAssertionState
-                            || assertable instanceof SignatureConfirmationAssertionState
-                            || assertable instanceof IncludeTimeStampAssertionState
-                            || assertable instanceof RequiredPartsAssertionState
-                            || assertable instanceof SignatureProtectionAssertionState) {
-                            doAssert = true;
-                        }
-
-                        if ((doAssert || assertable.isHardFailure()) && !assertable.isAsserted()) {
-                            assertionMessage = assertable.getErrorMessage();
-                            failedAssertionStateMap.add(map);
-                            assertionStateMapIterator.remove();
-                            continue alternative;
-                        }
+        while (assertionStateIterator.hasNext()) {
+            AlternativeState alternativeState = assertionStateIterator.next();
+            Assertable[] assertables = alternativeState.assertables;
+            for (int i = 0; i < assertables.length; i++) {
+                Assertable assertable = assertables[i];
+
+                boolean doAssert = false;
+                if (assertable instanceof TokenAssertionState) {
+                    TokenAssertionState tokenAssertionState = (TokenAssertionState) assertable;
+                    AbstractToken abstractToken = (AbstractToken) tokenAssertionState.getAssertion();
+                    AbstractSecurityAssertion assertion = abstractToken.getParentAssertion();
+                    //Other tokens may not be resolved yet fully therefore we skip it here
+                    if (assertion instanceof SupportingTokens
+                        || assertable instanceof HttpsTokenAssertionState
+                        || assertable instanceof RelTokenAssertionState
+                        || assertable instanceof SecurityContextTokenAssertionState
+                        || assertable instanceof SpnegoContextTokenAssertionState
+                        || assertable instanceof UsernameTokenAssertionState) {
+                        doAssert = true;
                     }
+                } else if (assertable instanceof TokenProtectionAssertionState
+                    || assertable instanceof SignatureConfirmationAssertionState
+                    || assertable instanceof IncludeTimeStampAssertionState
+                    || assertable instanceof RequiredPartsAssertionState
+                    || assertable instanceof SignatureProtectionAssertionState) {
+                    doAssert = true;
+                }
+
+                if ((doAssert || assertable.isHardFailure()) && !assertable.isAsserted()) {
+                    assertionMessage = assertable.getErrorMessage();
+                    alternativeState.failed = true;
+                    failedAssertionStates.add(alternativeState);
+                    assertionStateIterator.remove();
+                    continue alternative;
                 }
             }
         }
-        if (assertionStateMap.isEmpty() && !(faultOccurred && noSecurityHeader && initiator)) {
+        if (assertionStates.isEmpty() && !(faultOccurred && noSecurityHeader && initiator)) {
             logFailedAssertions();
             throw new WSSPolicyException(assertionMessage);
         }
     }
 
     private void logFailedAssertions() {
-        if (this.failedAssertionStateMap.isEmpty()) {
-            return;
-        }
-
-        Iterator<Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> assertionStateMapIterator =
-            this.failedAssertionStateMap.iterator();
-        while (assertionStateMapIterator.hasNext()) {
-            Map<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> map =
-                assertionStateMapIterator.next();
-            Set<Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> entrySet = map.entrySet();
-            Iterator<Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>>> entryIterator =
-                entrySet.iterator();
-            while (entryIterator.hasNext()) {
-                Map.Entry<SecurityEventConstants.Event, Map<Assertion, List<Assertable>>> eventCollectionEntry =
-                    entryIterator.next();
-                Map<Assertion, List<Assertable>> assertionListMap = eventCollectionEntry.getValue();
-                Iterator<Map.Entry<Assertion, List<Assertable>>> assertionStateEntryIterator =
-                    assertionListMap.entrySet().iterator();
-                while (assertionStateEntryIterator.hasNext()) {
-                    Map.Entry<Assertion, List<Assertable>> entry = assertionStateEntryIterator.next();
-                    List<Assertable> assertionStates = entry.getValue();
-                    Iterator<Assertable> assertableIterator = assertionStates.iterator();
-                    while (assertableIterator.hasNext()) {
-                        Assertable assertable = assertableIterator.next();
-                        if (!assertable.isAsserted() && !assertable.isLogged()) {
-                            LOG.error(entry.getKey().getName() + " not satisfied: " + assertable.getErrorMessage());
-                            assertable.setLogged(true);
-                        }
-                    }
+        for (int i = 0; i < failedAssertionStates.size(); i++) {
+            AlternativeState alternativeState = failedAssertionStates.get(i);
+            Assertable[] assertables = alternativeState.assertables;
+            for (int j = 0; j < assertables.length; j++) {
+                Assertable assertable = assertables[j];
+                if (!assertable.isAsserted() && !assertable.isLogged()) {
+                    LOG.error(alternativeState.assertions[j].getName() + " not satisfied: "
+                              + assertable.getErrorMessage());
+                    assertable.setLogged(true);
                 }
             }
         }
@@ -750,24 +625,21 @@ public class PolicyEnforcer implements SecurityEventListener {
             }
 
             if (effectivePolicy == null) {
-                effectivePolicy = findPolicyBySOAPOperationName(operationPolicies,
-                                                                operationSecurityEvent.getOperation());
+                effectivePolicy =
+                    policyEnforcerPlan.findPlanBySOAPOperationName(operationSecurityEvent.getOperation());
                 if (effectivePolicy == null) {
                     //no policy to the operation given
-                    effectivePolicy = new OperationPolicy(new QName(null, "NoPolicyFoundForOperation"));
-                    effectivePolicy.setPolicy(new Policy());
+                    effectivePolicy = policyEnforcerPlan.getNoPolicyPlan();
                 }
                 try {
-                    buildAssertionStateMap(effectivePolicy.getPolicy(), assertionStateMap);
+                    buildAssertionStates(effectivePolicy);
                 } catch (WSSPolicyException e) {
                     throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
                 }
             }
             try {
-                Iterator<SecurityEvent> securityEventIterator = securityEventQueue.descendingIterator();
-                while (securityEventIterator.hasNext()) {
-                    SecurityEvent prevSecurityEvent = securityEventIterator.next();
-                    verifyPolicy(prevSecurityEvent);
+                for (int i = 0; i < securityEventCount; i++) {
+                    verifyPolicy(securityEventBuffer[i]);
                 }
 
                 verifyPolicy(securityEvent);
@@ -776,11 +648,15 @@ public class PolicyEnforcer implements SecurityEventListener {
             } catch (WSSPolicyException | XMLSecurityException e) {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
             }
-            securityEventQueue.clear();
+            Arrays.fill(securityEventBuffer, 0, securityEventCount, null);
+            securityEventCount = 0;
 
             return;
-        } else {
-            securityEventQueue.push(securityEvent);
+        } else if (!operationSecurityEventOccured) {
+            if (securityEventCount == securityEventBuffer.length) {
+                securityEventBuffer = Arrays.copyOf(securityEventBuffer, securityEventCount * 2);
+            }
+            securityEventBuffer[securityEventCount++] = securityEvent;
         }
     }
 
@@ -793,4 +669,61 @@ public class PolicyEnforcer implements SecurityEventListener {
         verifyPolicy();
     }
 
+    /**
+     * The state of an alternative of the effective Policy for a message: the Assertables of the
+     * alternative, and the Assertables for every SecurityEvent type, indexed by
+     * PolicyEnforcerPlan#getEventIndex
+     */
+    private static final class AlternativeState {
+
+        private final Assertable[] assertables;
+        private final Assertion[] assertions;
+        private final Assertable[][] eventAssertables;
+        private boolean failed;
+
+        AlternativeState(List<Assertable> assertableList, List<Assertion> assertionList,
+                         List<SecurityEventConstants.Event[]> securityEventTypes) {
+            assertables = assertableList.toArray(new Assertable[0]);
+            assertions = assertionList.toArray(new Assertion[0]);
+
+            int[][] eventIndexes = new int[assertables.length][];
+            int eventCount = 0;
+            for (int i = 0; i < assertables.length; i++) {
+                SecurityEventConstants.Event[] securityEventType = securityEventTypes.get(i);
+                eventIndexes[i] = new int[securityEventType.length];
+                for (int j = 0; j < securityEventType.length; j++) {
+                    eventIndexes[i][j] = PolicyEnforcerPlan.getEventIndex(securityEventType[j]);
+                    eventCount = Math.max(eventCount, eventIndexes[i][j] + 1);
+                }
+            }
+
+            int[] counts = new int[eventCount];
+            for (int i = 0; i < eventIndexes.length; i++) {
+                for (int j = 0; j < eventIndexes[i].length; j++) {
+                    counts[eventIndexes[i][j]]++;
+                }
+            }
+            eventAssertables = new Assertable[eventCount][];
+            for (int i = 0; i < eventCount; i++) {
+                if (counts[i] > 0) {
+                    eventAssertables[i] = new Assertable[counts[i]];
+                    counts[i] = 0;
+                }
+            }
+            for (int i = 0; i < eventIndexes.length; i++) {
+                for (int j = 0; j < eventIndexes[i].length; j++) {
+                    int eventIndex = eventIndexes[i][j];
+                    eventAssertables[eventIndex][counts[eventIndex]++] = assertables[i];
+                }
+            }
+        }
+
+        /**
+         * @return the Assertables for the SecurityEvent type with the given index, or null if there are none
+         */
+        Assertable[] getAssertables(int eventIndex) {
+            return eventIndex < eventAssertables.length ? eventAssertables[eventIndex] : null;
+        }
+    }
+
 }
@@ -94,7 +94,8 @@ import org.w3c.dom.NodeList;
 
 /**
  * PolicyEnforcerFactory builds a map of all the possible effective Policies
- * and caches them for reuse
+ * and caches them for reuse. The Policies are compiled once into a PolicyEnforcerPlan,
+ * which is shared by all the PolicyEnforcer instances that are created.
  */
 public class PolicyEnforcerFactory {
 
@@ -105,6 +106,7 @@ public class PolicyEnforcerFactory {
 
     private Definition wsdlDefinition;
     private List<OperationPolicy> operationPolicies;
+    private PolicyEnforcerPlan policyEnforcerPlan;
     private final Map<Element, Policy> elementPolicyCache;
 
     protected PolicyEnforcerFactory(List<AssertionBuilder<Element>> customAssertionBuilders) {
@@ -193,6 +195,7 @@ public class PolicyEnforcerFactory {
             reader.setFeature("javax.wsdl.verbose", false);
             wsdlDefinition = reader.readWSDL(wsdlUrl.toString());
             operationPolicies = findPoliciesByOperation(wsdlDefinition);
+            policyEnforcerPlan = new PolicyEnforcerPlan(operationPolicies);
         } catch (WSDLException e) {
             throw new WSSPolicyException(e.getMessage(), e);
         }
@@ -206,6 +209,7 @@ public class PolicyEnforcerFactory {
             reader.setFeature("javax.wsdl.verbose", false);
             wsdlDefinition = reader.readWSDL(document.getDocumentURI(), document);
             operationPolicies = findPoliciesByOperation(wsdlDefinition);
+            policyEnforcerPlan = new PolicyEnforcerPlan(operationPolicies);
         } catch (WSDLException e) {
             throw new WSSPolicyException(e.getMessage(), e);
         }
@@ -438,6 +442,13 @@ public class PolicyEnforcerFactory {
     public PolicyEnforcer newPolicyEnforcer(String soapAction, boolean initiator,
                                             String roleOrActor, int attachmentCount,
                                             boolean soap12) throws WSSPolicyException {
-        return new PolicyEnforcer(this.operationPolicies, soapAction, initiator, roleOrActor, attachmentCount, null, soap12);
+        return new PolicyEnforcer(this.policyEnforcerPlan, soapAction, initiator, roleOrActor, attachmentCount, null, soap12);
+    }
+
+    /**
+     * @return the compiled policies of all operations, which are shared by the PolicyEnforcer instances
+     */
+    public PolicyEnforcerPlan getPolicyEnforcerPlan() {
+        return policyEnforcerPlan;
     }
 }
@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.policy.stax.enforcer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.namespace.QName;
+
+import org.apache.neethi.Policy;
+import org.apache.wss4j.policy.stax.OperationPolicy;
+import org.apache.xml.security.stax.securityEvent.SecurityEventConstants;
+
+/**
+ * The compiled, immutable form of the OperationPolicies of a WSDL. A PolicyEnforcerPlan is
+ * built once (by the PolicyEnforcerFactory) and can then be shared by the PolicyEnforcer
+ * instances of all the messages.
+ */
+public final class PolicyEnforcerPlan {
+
+    // SecurityEvent types are numbered once, so that the Assertables of a PolicyEnforcer can be
+    // looked up with an array index instead of a Map per alternative
+    private static final Map<SecurityEventConstants.Event, Integer> EVENT_INDEXES = new ConcurrentHashMap<>();
+
+    private final List<OperationPolicy> operationPolicies;
+    private final Map<String, OperationPolicyPlan> soapActionPlans = new HashMap<>();
+    private final Map<QName, OperationPolicyPlan> operationNamePlans = new HashMap<>();
+    private final Map<String, OperationPolicyPlan> noNamespaceOperationPlans = new HashMap<>();
+    private final OperationPolicyPlan noPolicyPlan;
+
+    public PolicyEnforcerPlan(List<OperationPolicy> operationPolicies) {
+        this.operationPolicies = Collections.unmodifiableList(new ArrayList<>(operationPolicies));
+
+        for (OperationPolicy operationPolicy : operationPolicies) {
+            OperationPolicyPlan operationPolicyPlan = new OperationPolicyPlan(operationPolicy);
+            // the first operation with a given SOAPAction or name wins
+            if (operationPolicy.getOperationAction() != null) {
+                soapActionPlans.putIfAbsent(operationPolicy.getOperationAction(), operationPolicyPlan);
+            }
+            QName operationName = operationPolicy.getOperationName();
+            if (operationName != null) {
+                operationNamePlans.putIfAbsent(operationName, operationPolicyPlan);
+                // ...but the last operation without a namespace
+                if ("".equals(operationName.getNamespaceURI())) {
+                    noNamespaceOperationPlans.put(operationName.getLocalPart(), operationPolicyPlan);
+                }
+            }
+        }
+
+        //no policy to the operation given
+        OperationPolicy noPolicy = new OperationPolicy(new QName(null, "NoPolicyFoundForOperation"));
+        noPolicy.setPolicy(new Policy());
+        noPolicyPlan = new OperationPolicyPlan(noPolicy);
+    }
+
+    public List<OperationPolicy> getOperationPolicies() {
+        return operationPolicies;
+    }
+
+    /**
+     * @return the plan of the operation with the given SOAPAction, or null if there is none
+     */
+    public OperationPolicyPlan findPlanBySOAPAction(String soapAction) {
+        return soapActionPlans.get(soapAction);
+    }
+
+    /**
+     * @return the plan of the operation with the given name. If no operation has this name, the
+     * plan of an operation without a namespace and the same local name, or null if there is none
+     */
+    public OperationPolicyPlan findPlanBySOAPOperationName(QName soapOperationName) {
+        OperationPolicyPlan operationPolicyPlan = operationNamePlans.get(soapOperationName);
+        if (operationPolicyPlan == null) {
+            operationPolicyPlan = noNamespaceOperationPlans.get(soapOperationName.getLocalPart());
+        }
+        return operationPolicyPlan;
+    }
+
+    /**
+     * @return the (empty) plan for an operation without a policy
+     */
+    public OperationPolicyPlan getNoPolicyPlan() {
+        return noPolicyPlan;
+    }
+
+    /**
+     * @return the index of the given SecurityEvent type, which is assigned on first use
+     */
+    static int getEventIndex(SecurityEventConstants.Event event) {
+        Integer index = EVENT_INDEXES.get(event);
+        if (index == null) {
+            synchronized (EVENT_INDEXES) {
+                index = EVENT_INDEXES.get(event);
+                if (index == null) {
+                    index = EVENT_INDEXES.size();
+                    EVENT_INDEXES.put(event, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return the index of the given SecurityEvent type, or -1 if no Assertable has been registered for it yet
+     */
+    static int findEventIndex(SecurityEventConstants.Event event) {
+        Integer index = EVENT_INDEXES.get(event);
+        return index == null ? -1 : index;
+    }
+}
@@ -87,6 +87,16 @@ public class AbstractPolicyTestBase extends AbstractTestBase {
     protected PolicyEnforcer buildAndStartPolicyEngine(
             String policyString, boolean replacePolicyElement, List<AssertionBuilder<Element>> customAssertionBuilders)
             throws ParserConfigurationException, SAXException, IOException, WSSPolicyException {
+        PolicyEnforcerFactory policyEnforcerFactory =
+            buildPolicyEnforcerFactory(policyString, replacePolicyElement, customAssertionBuilders);
+        PolicyEnforcer policyEnforcer = policyEnforcerFactory.newPolicyEnforcer("", false, null, 0, false);
+
+        return policyEnforcer;
+    }
+
+    protected PolicyEnforcerFactory buildPolicyEnforcerFactory(
+            String policyString, boolean replacePolicyElement, List<AssertionBuilder<Element>> customAssertionBuilders)
+            throws ParserConfigurationException, SAXException, IOException, WSSPolicyException {
         DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
         documentBuilderFactory.setNamespaceAware(true);
         documentBuilderFactory.setValidating(false);
@@ -103,10 +113,7 @@ public class AbstractPolicyTestBase extends AbstractTestBase {
         } else {
             element.appendChild(policyNode);
         }
-        PolicyEnforcerFactory policyEnforcerFactory = PolicyEnforcerFactory.newInstance(document, customAssertionBuilders);
-        PolicyEnforcer policyEnforcer = policyEnforcerFactory.newPolicyEnforcer("", false, null, 0, false);
-
-        return policyEnforcer;
+        return PolicyEnforcerFactory.newInstance(document, customAssertionBuilders);
     }
 
     public X509SecurityTokenImpl getX509Token(WSSecurityTokenConstants.TokenType tokenType) throws Exception {
@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.policy.stax.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.apache.neethi.Assertion;
+import org.apache.wss4j.policy.stax.PolicyAsserter;
+import org.apache.wss4j.policy.stax.enforcer.PolicyEnforcer;
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.wss4j.stax.securityEvent.EncryptedPartSecurityEvent;
+import org.apache.wss4j.stax.securityEvent.OperationSecurityEvent;
+import org.apache.wss4j.stax.securityEvent.SignedPartSecurityEvent;
+import org.apache.wss4j.stax.securityEvent.TimestampSecurityEvent;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Some tests for the routing of SecurityEvents to the alternatives of the effective Policy
+ */
+public class PolicyEnforcerTest extends AbstractPolicyTestBase {
+
+    private static final String POLICY =
+            "<wsp:ExactlyOne xmlns:wsp=\"http://schemas.xmlsoap.org/ws/2004/09/policy\" " +
+                    "xmlns:sp=\"http://docs.oasis-open.org/ws-sx/ws-securitypolicy/200702\">\n" +
+                    "    <wsp:All>\n" +
+                    "        <sp:EncryptedParts>\n" +
+                    "            <sp:Body/>\n" +
+                    "        </sp:EncryptedParts>\n" +
+                    "    </wsp:All>\n" +
+                    "    <wsp:All>\n" +
+                    "        <sp:SignedParts>\n" +
+                    "            <sp:Body/>\n" +
+                    "        </sp:SignedParts>\n" +
+                    "    </wsp:All>\n" +
+                    "</wsp:ExactlyOne>";
+
+    @Test
+    public void testEventWithoutAssertable() throws Exception {
+        RecordingPolicyAsserter policyAsserter = new RecordingPolicyAsserter();
+        PolicyEnforcer policyEnforcer = buildPolicyEnforcer(policyAsserter);
+        policyEnforcer.registerSecurityEvent(createOperationSecurityEvent());
+        // The assertions are asserted when the alternatives are built
+        assertEquals(Arrays.asList("assert EncryptedParts", "assert SignedParts"), policyAsserter.getAssertions());
+        policyAsserter.getAssertions().clear();
+
+        // No alternative is interested in a Timestamp, so the event is not dispatched at all
+        policyEnforcer.registerSecurityEvent(new TimestampSecurityEvent());
+        assertEquals(0, policyAsserter.getAssertions().size());
+
+        policyEnforcer.registerSecurityEvent(createEncryptedPartSecurityEvent(true));
+        policyEnforcer.doFinal();
+        assertEquals(Arrays.asList("assert EncryptedParts"), policyAsserter.getAssertions());
+    }
+
+    @Test
+    public void testFailedAlternativeReceivesEvents() throws Exception {
+        RecordingPolicyAsserter policyAsserter = new RecordingPolicyAsserter();
+        PolicyEnforcer policyEnforcer = buildPolicyEnforcer(policyAsserter);
+        policyEnforcer.registerSecurityEvent(createOperationSecurityEvent());
+        policyAsserter.getAssertions().clear();
+
+        // The EncryptedParts alternative fails...
+        policyEnforcer.registerSecurityEvent(createEncryptedPartSecurityEvent(false));
+        // ...but it still gets the following events for logging purposes
+        policyEnforcer.registerSecurityEvent(createEncryptedPartSecurityEvent(true));
+        policyEnforcer.registerSecurityEvent(createSignedPartSecurityEvent());
+        policyEnforcer.doFinal();
+
+        assertEquals(
+            Arrays.asList("unassert EncryptedParts", "assert EncryptedParts", "assert SignedParts"),
+            policyAsserter.getAssertions()
+        );
+    }
+
+    @Test
+    public void testBufferedEventsInArrivalOrder() throws Exception {
+        RecordingPolicyAsserter policyAsserter = new RecordingPolicyAsserter();
+        PolicyEnforcer policyEnforcer = buildPolicyEnforcer(policyAsserter);
+
+        // More events than the initial size of the buffer arrive before the operation is known
+        for (int i = 0; i < 10; i++) {
+            policyEnforcer.registerSecurityEvent(createEncryptedPartSecurityEvent(false));
+            policyEnforcer.registerSecurityEvent(createEncryptedPartSecurityEvent(true));
+        }
+        policyEnforcer.registerSecurityEvent(createSignedPartSecurityEvent());
+        assertEquals(0, policyAsserter.getAssertions().size());
+
+        policyEnforcer.registerSecurityEvent(createOperationSecurityEvent());
+        policyEnforcer.doFinal();
+
+        List<String> expectedAssertions = new ArrayList<>();
+        expectedAssertions.add("assert EncryptedParts");
+        expectedAssertions.add("assert SignedParts");
+        for (int i = 0; i < 10; i++) {
+            expectedAssertions.add("unassert EncryptedParts");
+            expectedAssertions.add("assert EncryptedParts");
+        }
+        expectedAssertions.add("assert SignedParts");
+        assertEquals(expectedAssertions, policyAsserter.getAssertions());
+    }
+
+    private PolicyEnforcer buildPolicyEnforcer(PolicyAsserter policyAsserter) throws Exception {
+        return new PolicyEnforcer(
+            buildPolicyEnforcerFactory(POLICY, false, null).getPolicyEnforcerPlan(),
+            "", false, null, 0, policyAsserter, false
+        );
+    }
+
+    private static OperationSecurityEvent createOperationSecurityEvent() {
+        OperationSecurityEvent operationSecurityEvent = new OperationSecurityEvent();
+        operationSecurityEvent.setOperation(new QName("definitions"));
+        return operationSecurityEvent;
+    }
+
+    private static EncryptedPartSecurityEvent createEncryptedPartSecurityEvent(boolean encrypted) {
+        EncryptedPartSecurityEvent encryptedPartSecurityEvent =
+                new EncryptedPartSecurityEvent(null, encrypted, getProtectionOrder());
+        encryptedPartSecurityEvent.setElementPath(WSSConstants.SOAP_11_BODY_PATH);
+        return encryptedPartSecurityEvent;
+    }
+
+    private static SignedPartSecurityEvent createSignedPartSecurityEvent() {
+        SignedPartSecurityEvent signedPartSecurityEvent =
+                new SignedPartSecurityEvent(null, true, getProtectionOrder());
+        signedPartSecurityEvent.setElementPath(WSSConstants.SOAP_11_BODY_PATH);
+        return signedPartSecurityEvent;
+    }
+
+    private static List<XMLSecurityConstants.ContentType> getProtectionOrder() {
+        List<XMLSecurityConstants.ContentType> protectionOrder = new LinkedList<>();
+        protectionOrder.add(XMLSecurityConstants.ContentType.SIGNATURE);
+        protectionOrder.add(XMLSecurityConstants.ContentType.ENCRYPTION);
+        return protectionOrder;
+    }
+
+    /**
+     * Records the (un)assertions of the Policy assertions, in the order in which they occur
+     */
+    private static class RecordingPolicyAsserter implements PolicyAsserter {
+
+        private final List<String> assertions = new ArrayList<>();
+
+        @Override
+        public void assertPolicy(Assertion assertion) {
+            assertions.add("assert " + assertion.getName().getLocalPart());
+        }
+
+        @Override
+        public void unassertPolicy(Assertion assertion, String reason) {
+            assertions.add("unassert " + assertion.getName().getLocalPart());
+        }
+
+        @Override
+        public void assertPolicy(QName qName) {
+            assertions.add("assert " + qName.getLocalPart());
+        }
+
+        @Override
+        public void unassertPolicy(QName qName, String reason) {
+            assertions.add("unassert " + qName.getLocalPart());
+        }
+
+        List<String> getAssertions() {
+            return assertions;
+        }
+    }
+}
@@ -25,12 +25,14 @@ import javax.xml.namespace.QName;
 
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.policy.stax.enforcer.PolicyEnforcer;
+import org.apache.wss4j.policy.stax.enforcer.PolicyEnforcerFactory;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.securityEvent.OperationSecurityEvent;
 import org.apache.wss4j.stax.securityEvent.RequiredPartSecurityEvent;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.fail;
 
 public class RequiredPartsTest extends AbstractPolicyTestBase {
@@ -90,4 +92,48 @@ public class RequiredPartsTest extends AbstractPolicyTestBase {
             assertEquals(e.getMessage(), "Element {http://example.org}a must be present");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * The PolicyEnforcers of a PolicyEnforcerFactory share the compiled policy, but not their state
+     */
+    @Test
+    public void testSharedPolicyEnforcerPlan() throws Exception {
+        String policyString =
+                "<sp:RequiredParts xmlns:sp=\"http://docs.oasis-open.org/ws-sx/ws-securitypolicy/200702\" xmlns:sp3=\"http://docs.oasis-open.org/ws-sx/ws-securitypolicy/200802\">\n" +
+                        "<sp:Header Name=\"a\" Namespace=\"http://example.org\"/>\n" +
+                        "</sp:RequiredParts>";
+        PolicyEnforcerFactory policyEnforcerFactory = buildPolicyEnforcerFactory(policyString, false, null);
+        assertNotNull(policyEnforcerFactory.getPolicyEnforcerPlan());
+
+        for (int i = 0; i < 2; i++) {
+            PolicyEnforcer failingPolicyEnforcer = policyEnforcerFactory.newPolicyEnforcer("", false, null, 0, false);
+            PolicyEnforcer policyEnforcer = policyEnforcerFactory.newPolicyEnforcer("", false, null, 0, false);
+
+            List<QName> headerPath = new ArrayList<>();
+            headerPath.addAll(WSSConstants.SOAP_11_HEADER_PATH);
+            headerPath.add(new QName("http://example.org", "b"));
+            RequiredPartSecurityEvent requiredPartSecurityEvent = new RequiredPartSecurityEvent();
+            requiredPartSecurityEvent.setElementPath(headerPath);
+            failingPolicyEnforcer.registerSecurityEvent(requiredPartSecurityEvent);
+
+            headerPath = new ArrayList<>();
+            headerPath.addAll(WSSConstants.SOAP_11_HEADER_PATH);
+            headerPath.add(new QName("http://example.org", "a"));
+            requiredPartSecurityEvent = new RequiredPartSecurityEvent();
+            requiredPartSecurityEvent.setElementPath(headerPath);
+            policyEnforcer.registerSecurityEvent(requiredPartSecurityEvent);
+
+            OperationSecurityEvent operationSecurityEvent = new OperationSecurityEvent();
+            operationSecurityEvent.setOperation(new QName("definitions"));
+            try {
+                failingPolicyEnforcer.registerSecurityEvent(operationSecurityEvent);
+                fail("Exception expected");
+            } catch (WSSecurityException e) {
+                assertEquals(e.getMessage(), "Element {http://example.org}a must be present");
+            }
+
+            policyEnforcer.registerSecurityEvent(operationSecurityEvent);
+            policyEnforcer.doFinal();
+        }
+    }
+}
@@ -39,10 +39,13 @@ import javax.xml.namespace.QName;
 
 import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.cache.ReplayCache;
+import org.apache.wss4j.common.cache.SecretKeyCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.Merlin;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionVerificationCache;
+import org.apache.wss4j.common.util.CachedOutputStream;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
 import org.apache.wss4j.stax.validate.Validator;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
@@ -108,6 +111,8 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
     private ReplayCache timestampReplayCache;
     private ReplayCache nonceReplayCache;
     private ReplayCache samlOneTimeUseReplayCache;
+    private SamlAssertionVerificationCache samlAssertionVerificationCache;
+    private SecretKeyCache secretKeyCache;
     private boolean validateSamlSubjectConfirmation = true;
     private Collection<Pattern> subjectDNPatterns = new ArrayList<>();
     private Collection<Pattern> issuerDNPatterns = new ArrayList<>();
@@ -115,6 +120,8 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
     private boolean requireTimestampExpires;
 
     private CallbackHandler attachmentCallbackHandler;
+    private int attachmentCacheThreshold = CachedOutputStream.DEFAULT_THRESHOLD;
+    private int signatureDigestBufferSize = 8192;
     private Object msgContext;
     private boolean soap12;
 
@@ -163,6 +170,8 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         this.timestampReplayCache = wssSecurityProperties.timestampReplayCache;
         this.nonceReplayCache = wssSecurityProperties.nonceReplayCache;
         this.samlOneTimeUseReplayCache = wssSecurityProperties.samlOneTimeUseReplayCache;
+        this.samlAssertionVerificationCache = wssSecurityProperties.samlAssertionVerificationCache;
+        this.secretKeyCache = wssSecurityProperties.secretKeyCache;
         this.allowRSA15KeyTransportAlgorithm = wssSecurityProperties.allowRSA15KeyTransportAlgorithm;
         this.derivedKeyIterations = wssSecurityProperties.derivedKeyIterations;
         this.useDerivedKeyForMAC = wssSecurityProperties.useDerivedKeyForMAC;
@@ -173,6 +182,8 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         this.subjectDNPatterns = wssSecurityProperties.subjectDNPatterns;
         this.issuerDNPatterns = wssSecurityProperties.issuerDNPatterns;
         this.attachmentCallbackHandler = wssSecurityProperties.attachmentCallbackHandler;
+        this.attachmentCacheThreshold = wssSecurityProperties.attachmentCacheThreshold;
+        this.signatureDigestBufferSize = wssSecurityProperties.signatureDigestBufferSize;
         this.msgContext = wssSecurityProperties.msgContext;
         this.audienceRestrictions = wssSecurityProperties.audienceRestrictions;
         this.requireTimestampExpires = wssSecurityProperties.requireTimestampExpires;
@@ -762,6 +773,34 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         return samlOneTimeUseReplayCache;
     }
 
+    /**
+     * Set the cache of signed SAML Assertions that were verified before
+     */
+    public void setSamlAssertionVerificationCache(SamlAssertionVerificationCache newCache) {
+        samlAssertionVerificationCache = newCache;
+    }
+
+    /**
+     * Get the cache of signed SAML Assertions that were verified before
+     */
+    public SamlAssertionVerificationCache getSamlAssertionVerificationCache() {
+        return samlAssertionVerificationCache;
+    }
+
+    /**
+     * Set the cache of SecurityContextToken secrets and derived keys
+     */
+    public void setSecretKeyCache(SecretKeyCache newCache) {
+        secretKeyCache = newCache;
+    }
+
+    /**
+     * Get the cache of SecurityContextToken secrets and derived keys
+     */
+    public SecretKeyCache getSecretKeyCache() {
+        return secretKeyCache;
+    }
+
     public boolean isDisableBSPEnforcement() {
         return disableBSPEnforcement;
     }
@@ -936,6 +975,30 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         this.attachmentCallbackHandler = attachmentCallbackHandler;
     }
 
+    public int getAttachmentCacheThreshold() {
+        return attachmentCacheThreshold;
+    }
+
+    /**
+     * Set the number of bytes of an attachment that are held in memory when it is signed or when
+     * its signature is verified. Larger attachments are cached in a temporary file.
+     */
+    public void setAttachmentCacheThreshold(int attachmentCacheThreshold) {
+        this.attachmentCacheThreshold = attachmentCacheThreshold;
+    }
+
+    public int getSignatureDigestBufferSize() {
+        return signatureDigestBufferSize;
+    }
+
+    /**
+     * Set the size of the buffer between the canonicalization of a signed element and the digests
+     * of its References when a signature is verified. 0 writes the canonical form unbuffered to the digests.
+     */
+    public void setSignatureDigestBufferSize(int signatureDigestBufferSize) {
+        this.signatureDigestBufferSize = signatureDigestBufferSize;
+    }
+
     public Object getMsgContext() {
         return msgContext;
     }
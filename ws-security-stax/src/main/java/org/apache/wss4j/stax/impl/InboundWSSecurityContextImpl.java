@@ -18,12 +18,15 @@
  */
 package org.apache.wss4j.stax.impl;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.xml.namespace.QName;
 
@@ -36,6 +39,7 @@ import org.apache.wss4j.stax.securityEvent.WSSecurityEventConstants;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
 import org.apache.wss4j.stax.utils.WSSUtils;
 import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.impl.InboundSecurityContextImpl;
 import org.apache.xml.security.stax.securityEvent.AlgorithmSuiteSecurityEvent;
 import org.apache.xml.security.stax.securityEvent.ContentEncryptedElementSecurityEvent;
@@ -50,13 +54,18 @@ import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
 
 /**
  * Concrete security context implementation
+ *
+ * The SecurityEvents of the security header are buffered until the operation is known. Then the
+ * dependencies and the usages of the tokens are resolved with an index of the buffered SecurityEvents,
+ * which is built in a single pass. A context belongs to a single message and is only used by the
+ * thread which processes it, so registerSecurityEvent is not synchronized.
  */
 public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl implements WSInboundSecurityContext {
 
     private static final org.slf4j.Logger LOG =
             org.slf4j.LoggerFactory.getLogger(InboundWSSecurityContextImpl.class);
 
-    private final Deque<SecurityEvent> securityEventQueue = new ArrayDeque<>();
+    private final List<SecurityEvent> securityEventBuffer = new ArrayList<>();
     private boolean operationSecurityEventOccured = false;
     private boolean messageEncryptionTokenOccured = false;
     private boolean allowRSA15KeyTransportAlgorithm = false;
@@ -66,7 +75,7 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
     private List<BSPRule> ignoredBSPRules = Collections.emptyList();
 
     @Override
-    public synchronized void registerSecurityEvent(SecurityEvent securityEvent) throws XMLSecurityException {
+    public void registerSecurityEvent(SecurityEvent securityEvent) throws XMLSecurityException {
 
         if (WSSecurityEventConstants.AlgorithmSuite.equals(securityEvent.getSecurityEventType())) {
             //do not cache AlgorithmSuite securityEvents and forward them directly to allow
@@ -100,21 +109,18 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
         if (WSSecurityEventConstants.OPERATION.equals(securityEvent.getSecurityEventType())) {
             operationSecurityEventOccured = true;
 
-            identifySecurityTokenDependenciesAndUsage(securityEventQueue);
+            List<SecurityEvent> securityEvents = identifySecurityTokenDependenciesAndUsage(securityEventBuffer);
+            securityEventBuffer.clear();
 
-            Iterator<SecurityEvent> securityEventIterator = securityEventQueue.descendingIterator();
-            while (securityEventIterator.hasNext()) {
-                SecurityEvent prevSecurityEvent = securityEventIterator.next();
-                forwardSecurityEvent(prevSecurityEvent);
+            for (int i = 0; i < securityEvents.size(); i++) {
+                forwardSecurityEvent(securityEvents.get(i));
             }
             //forward operation security event
             forwardSecurityEvent(securityEvent);
-
-            securityEventQueue.clear();
             return;
         }
 
-        securityEventQueue.push(securityEvent);
+        securityEventBuffer.add(securityEvent);
     }
 
     @Override
@@ -139,16 +145,23 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
         }
     }
 
-    private void identifySecurityTokenDependenciesAndUsage(
-            Deque<SecurityEvent> securityEventDeque) throws XMLSecurityException {
+    /**
+     * Resolves the dependencies and the usages of the tokens of the given (buffered) SecurityEvents
+     * and returns the SecurityEvents to forward: the root tokens and then the buffered SecurityEvents
+     * in the order in which they occurred, without the TokenSecurityEvents of the non-root tokens.
+     */
+    private List<SecurityEvent> identifySecurityTokenDependenciesAndUsage(
+            List<SecurityEvent> securityEvents) throws XMLSecurityException {
 
         MessageTokens messageTokens = new MessageTokens();
         HttpsTokenSecurityEvent httpsTokenSecurityEvent = null;
+        SecurityEventIndex securityEventIndex = new SecurityEventIndex();
 
+        //the latest TokenSecurityEvent first, as before
         List<TokenSecurityEvent<? extends InboundSecurityToken>> tokenSecurityEvents = new ArrayList<>();
-        Iterator<SecurityEvent> securityEventIterator = securityEventDeque.iterator();
-        while (securityEventIterator.hasNext()) {
-            SecurityEvent securityEvent = securityEventIterator.next();
+        for (int i = securityEvents.size() - 1; i >= 0; i--) {
+            SecurityEvent securityEvent = securityEvents.get(i);
+            securityEventIndex.add(securityEvent);
             if (securityEvent instanceof TokenSecurityEvent) {
                 @SuppressWarnings("unchecked")
                 TokenSecurityEvent<? extends InboundSecurityToken> tokenSecurityEvent =
@@ -175,24 +188,27 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
         }
 
         //search the root tokens and create new TokenSecurityEvents if not already there...
+        Set<String> rootTokenIds = new HashSet<>();
+        List<SecurityEvent> rootTokenSecurityEvents = new ArrayList<>();
+        Map<SecurityEvent, Boolean> replacedTokenSecurityEvents = new IdentityHashMap<>();
         for (int i = 0; i < tokenSecurityEvents.size(); i++) {
             TokenSecurityEvent<? extends InboundSecurityToken> tokenSecurityEvent = tokenSecurityEvents.get(i);
             InboundSecurityToken securityToken = WSSUtils.getRootToken(tokenSecurityEvent.getSecurityToken());
 
-            if (!containsSecurityToken(messageTokens.supportingTokens, securityToken)) {
+            if (rootTokenIds.add(securityToken.getId())) {
                 TokenSecurityEvent<? extends InboundSecurityToken> newTokenSecurityEvent =
                         WSSUtils.createTokenSecurityEvent(securityToken, tokenSecurityEvent.getCorrelationID());
                 messageTokens.supportingTokens = addTokenSecurityEvent(newTokenSecurityEvent, messageTokens.supportingTokens);
-                securityEventDeque.offer(newTokenSecurityEvent);
+                rootTokenSecurityEvents.add(newTokenSecurityEvent);
             }
-            //remove old TokenSecurityEvent so that only root tokens are in the queue
-            securityEventDeque.remove(tokenSecurityEvent);
+            //remove old TokenSecurityEvent so that only root tokens are forwarded
+            replacedTokenSecurityEvents.put(tokenSecurityEvent, Boolean.TRUE);
         }
 
-        parseSupportingTokens(messageTokens, httpsTokenSecurityEvent, securityEventDeque);
+        parseSupportingTokens(messageTokens, httpsTokenSecurityEvent, securityEventIndex);
 
         if (messageTokens.messageSignatureTokens.isEmpty()) {
-            InboundSecurityToken messageSignatureToken = getSupportingTokenSigningToken(messageTokens, securityEventDeque);
+            InboundSecurityToken messageSignatureToken = getSupportingTokenSigningToken(messageTokens, securityEventIndex);
 
             TokenSecurityEvent<? extends InboundSecurityToken> tokenSecurityEvent =
                     getTokenSecurityEvent(messageSignatureToken, tokenSecurityEvents);
@@ -253,46 +269,59 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
                       WSSecurityTokenConstants.TOKENUSAGE_ENDORSING_ENCRYPTED_SUPPORTING_TOKENS);
         setTokenUsage(messageTokens.signedEndorsingEncryptedSupportingTokens,
                       WSSecurityTokenConstants.TOKENUSAGE_SIGNED_ENDORSING_ENCRYPTED_SUPPORTING_TOKENS);
+
+        List<SecurityEvent> forwardedSecurityEvents =
+            new ArrayList<>(rootTokenSecurityEvents.size() + securityEvents.size());
+        for (int i = rootTokenSecurityEvents.size() - 1; i >= 0; i--) {
+            forwardedSecurityEvents.add(rootTokenSecurityEvents.get(i));
+        }
+        for (int i = 0; i < securityEvents.size(); i++) {
+            SecurityEvent securityEvent = securityEvents.get(i);
+            if (!replacedTokenSecurityEvents.containsKey(securityEvent)) {
+                forwardedSecurityEvents.add(securityEvent);
+            }
+        }
+        return forwardedSecurityEvents;
     }
 
     private void parseSupportingTokens(MessageTokens messageTokens, HttpsTokenSecurityEvent httpsTokenSecurityEvent,
-                                       Deque<SecurityEvent> securityEventDeque) throws XMLSecurityException {
+                                       SecurityEventIndex securityEventIndex) throws XMLSecurityException {
         Iterator<TokenSecurityEvent<? extends InboundSecurityToken>> supportingTokensIterator = messageTokens.supportingTokens.iterator();
         while (supportingTokensIterator.hasNext()) {
             TokenSecurityEvent<? extends InboundSecurityToken> tokenSecurityEvent = supportingTokensIterator.next();
             List<InboundSecurityToken> signingSecurityTokens =
-                isSignedToken(tokenSecurityEvent, securityEventDeque, httpsTokenSecurityEvent);
+                isSignedToken(tokenSecurityEvent, securityEventIndex, httpsTokenSecurityEvent);
 
             List<QName> securityHeader =
                 soap12 ? WSSConstants.SOAP_12_WSSE_SECURITY_HEADER_PATH : WSSConstants.SOAP_11_WSSE_SECURITY_HEADER_PATH;
             List<QName> signatureElementPath = new ArrayList<>(4);
             signatureElementPath.addAll(securityHeader);
             signatureElementPath.add(WSSConstants.TAG_dsig_Signature);
-            boolean signsSignature = signsElement(tokenSecurityEvent, signatureElementPath, securityEventDeque);
-            boolean encryptsSignature = encryptsElement(tokenSecurityEvent, signatureElementPath, securityEventDeque);
+            boolean signsSignature = signsElement(tokenSecurityEvent, signatureElementPath, securityEventIndex);
+            boolean encryptsSignature = encryptsElement(tokenSecurityEvent, signatureElementPath, securityEventIndex);
 
             List<QName> signatureConfirmationElementPath = new ArrayList<>(4);
             signatureConfirmationElementPath.addAll(securityHeader);
             signatureConfirmationElementPath.add(WSSConstants.TAG_WSSE11_SIG_CONF);
             boolean signsSignatureConfirmation =
-                signsElement(tokenSecurityEvent, signatureConfirmationElementPath, securityEventDeque);
+                signsElement(tokenSecurityEvent, signatureConfirmationElementPath, securityEventIndex);
             boolean encryptsSignatureConfirmation =
-                encryptsElement(tokenSecurityEvent, signatureConfirmationElementPath, securityEventDeque);
+                encryptsElement(tokenSecurityEvent, signatureConfirmationElementPath, securityEventIndex);
 
             List<QName> timestampElementPath = new ArrayList<>(4);
             timestampElementPath.addAll(securityHeader);
             timestampElementPath.add(WSSConstants.TAG_WSU_TIMESTAMP);
-            boolean signsTimestamp = signsElement(tokenSecurityEvent, timestampElementPath, securityEventDeque);
+            boolean signsTimestamp = signsElement(tokenSecurityEvent, timestampElementPath, securityEventIndex);
 
             List<QName> usernameTokenElementPath = new ArrayList<>(4);
             usernameTokenElementPath.addAll(securityHeader);
             usernameTokenElementPath.add(WSSConstants.TAG_WSSE_USERNAME_TOKEN);
-            boolean encryptsUsernameToken = encryptsElement(tokenSecurityEvent, usernameTokenElementPath, securityEventDeque);
+            boolean encryptsUsernameToken = encryptsElement(tokenSecurityEvent, usernameTokenElementPath, securityEventIndex);
 
             boolean transportSecurityActive = Boolean.TRUE.equals(get(WSSConstants.TRANSPORT_SECURITY_ACTIVE));
 
             List<InboundSecurityToken> encryptingSecurityTokens =
-                isEncryptedToken(tokenSecurityEvent, securityEventDeque, httpsTokenSecurityEvent);
+                isEncryptedToken(tokenSecurityEvent, securityEventIndex, httpsTokenSecurityEvent);
 
             boolean signatureUsage =
                 tokenSecurityEvent.getSecurityToken().getTokenUsages().contains(WSSecurityTokenConstants.TokenUsage_Signature);
@@ -390,19 +419,6 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
         return tokenSecurityEventList;
     }
 
-    private boolean containsSecurityToken(List<TokenSecurityEvent<? extends InboundSecurityToken>> supportingTokens,
-                                          SecurityToken securityToken) {
-        if (securityToken != null) {
-            for (int i = 0; i < supportingTokens.size(); i++) {
-                TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent = supportingTokens.get(i);
-                if (tokenSecurityEvent.getSecurityToken().getId().equals(securityToken.getId())) {
-                    return true;
-                }
-            }
-        }
-        return false;
-    }
-
     private TokenSecurityEvent<? extends InboundSecurityToken> getTokenSecurityEvent(
             InboundSecurityToken securityToken,
             List<TokenSecurityEvent<? extends InboundSecurityToken>> tokenSecurityEvents) throws XMLSecurityException {
@@ -419,34 +435,34 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
 
     private InboundSecurityToken getSupportingTokenSigningToken(
             MessageTokens messageTokens,
-            Deque<SecurityEvent> securityEventDeque
+            SecurityEventIndex securityEventIndex
     ) throws XMLSecurityException {
 
         //todo we have to check if the signingTokens also cover the other supporting tokens!
         for (int i = 0; i < messageTokens.signedSupportingTokens.size(); i++) {
             TokenSecurityEvent<? extends InboundSecurityToken> tokenSecurityEvent = messageTokens.signedSupportingTokens.get(i);
-            List<? extends InboundSecurityToken> signingSecurityTokens = getSigningToken(tokenSecurityEvent, securityEventDeque);
+            List<? extends InboundSecurityToken> signingSecurityTokens = getSigningToken(tokenSecurityEvent, securityEventIndex);
             if (signingSecurityTokens.size() == 1) {
                 return signingSecurityTokens.get(0);
             }
         }
         for (int i = 0; i < messageTokens.signedEndorsingSupportingTokens.size(); i++) {
             TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent = messageTokens.signedEndorsingSupportingTokens.get(i);
-            List<InboundSecurityToken> signingSecurityTokens = getSigningToken(tokenSecurityEvent, securityEventDeque);
+            List<InboundSecurityToken> signingSecurityTokens = getSigningToken(tokenSecurityEvent, securityEventIndex);
             if (signingSecurityTokens.size() == 1) {
                 return signingSecurityTokens.get(0);
             }
         }
         for (int i = 0; i < messageTokens.signedEncryptedSupportingTokens.size(); i++) {
             TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent = messageTokens.signedEncryptedSupportingTokens.get(i);
-            List<InboundSecurityToken> signingSecurityTokens = getSigningToken(tokenSecurityEvent, securityEventDeque);
+            List<InboundSecurityToken> signingSecurityTokens = getSigningToken(tokenSecurityEvent, securityEventIndex);
             if (signingSecurityTokens.size() == 1) {
                 return signingSecurityTokens.get(0);
             }
         }
         for (int i = 0; i < messageTokens.signedEndorsingEncryptedSupportingTokens.size(); i++) {
             TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent = messageTokens.signedEndorsingEncryptedSupportingTokens.get(i);
-            List<InboundSecurityToken> signingSecurityTokens = getSigningToken(tokenSecurityEvent, securityEventDeque);
+            List<InboundSecurityToken> signingSecurityTokens = getSigningToken(tokenSecurityEvent, securityEventIndex);
             if (signingSecurityTokens.size() == 1) {
                 return signingSecurityTokens.get(0);
             }
@@ -455,21 +471,12 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
     }
 
     private List<InboundSecurityToken> getSigningToken(TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent,
-                                                       Deque<SecurityEvent> securityEventDeque) throws XMLSecurityException {
-        List<InboundSecurityToken> signingSecurityTokens = new ArrayList<>();
-
-        for (Iterator<SecurityEvent> iterator = securityEventDeque.iterator(); iterator.hasNext();) {
-            SecurityEvent securityEvent = iterator.next();
-            if (WSSecurityEventConstants.SignedElement.equals(securityEvent.getSecurityEventType())) {
-                SignedElementSecurityEvent signedElementSecurityEvent = (SignedElementSecurityEvent) securityEvent;
-                if (signedElementSecurityEvent.isSigned()
-                        && WSSUtils.pathMatches(
-                        signedElementSecurityEvent.getElementPath(),
-                        ((InboundSecurityToken)tokenSecurityEvent.getSecurityToken()).getElementPath(), false)
-                        ) {
-                    signingSecurityTokens.add((InboundSecurityToken)signedElementSecurityEvent.getSecurityToken());
-                }
-            }
+                                                       SecurityEventIndex securityEventIndex) throws XMLSecurityException {
+        List<SignedElementSecurityEvent> signedElementSecurityEvents =
+            securityEventIndex.getSignedElements(((InboundSecurityToken)tokenSecurityEvent.getSecurityToken()).getElementPath());
+        List<InboundSecurityToken> signingSecurityTokens = new ArrayList<>(signedElementSecurityEvents.size());
+        for (int i = 0; i < signedElementSecurityEvents.size(); i++) {
+            signingSecurityTokens.add((InboundSecurityToken)signedElementSecurityEvents.get(i).getSecurityToken());
         }
         return signingSecurityTokens;
     }
@@ -491,24 +498,21 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
     }
 
     private List<InboundSecurityToken> isSignedToken(TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent,
-                                              Deque<SecurityEvent> securityEventDeque,
+                                              SecurityEventIndex securityEventIndex,
                                               HttpsTokenSecurityEvent httpsTokenSecurityEvent) throws XMLSecurityException {
         List<InboundSecurityToken> securityTokenList = new ArrayList<>();
         if (httpsTokenSecurityEvent != null) {
             securityTokenList.add(httpsTokenSecurityEvent.getSecurityToken());
             return securityTokenList;
         }
-        for (Iterator<SecurityEvent> iterator = securityEventDeque.iterator(); iterator.hasNext();) {
-            SecurityEvent securityEvent = iterator.next();
-            if (WSSecurityEventConstants.SignedElement.equals(securityEvent.getSecurityEventType())) {
-                SignedElementSecurityEvent signedElementSecurityEvent = (SignedElementSecurityEvent) securityEvent;
-                if (signedElementSecurityEvent.isSigned()
-                        && tokenSecurityEvent.getSecurityToken() != null
-                        && signedElementSecurityEvent.getXmlSecEvent() != null
-                        && signedElementSecurityEvent.getXmlSecEvent()
-                            == ((InboundSecurityToken)tokenSecurityEvent.getSecurityToken()).getXMLSecEvent()
-                        && !securityTokenList.contains(signedElementSecurityEvent.getSecurityToken())) {
-                    securityTokenList.add((InboundSecurityToken)signedElementSecurityEvent.getSecurityToken());
+        if (tokenSecurityEvent.getSecurityToken() != null) {
+            List<SignedElementSecurityEvent> signedElementSecurityEvents = securityEventIndex.getSignedElements(
+                ((InboundSecurityToken)tokenSecurityEvent.getSecurityToken()).getXMLSecEvent());
+            for (int i = 0; i < signedElementSecurityEvents.size(); i++) {
+                InboundSecurityToken signingSecurityToken =
+                    (InboundSecurityToken)signedElementSecurityEvents.get(i).getSecurityToken();
+                if (!securityTokenList.contains(signingSecurityToken)) {
+                    securityTokenList.add(signingSecurityToken);
                 }
             }
         }
@@ -516,7 +520,7 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
     }
 
     private List<InboundSecurityToken> isEncryptedToken(TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent,
-                                                 Deque<SecurityEvent> securityEventDeque,
+                                                 SecurityEventIndex securityEventIndex,
                                                  HttpsTokenSecurityEvent httpsTokenSecurityEvent) throws XMLSecurityException {
 
         List<InboundSecurityToken> securityTokenList = new ArrayList<>();
@@ -524,17 +528,14 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
             securityTokenList.add(httpsTokenSecurityEvent.getSecurityToken());
             return securityTokenList;
         }
-        for (Iterator<SecurityEvent> iterator = securityEventDeque.iterator(); iterator.hasNext();) {
-            SecurityEvent securityEvent = iterator.next();
-            if (WSSecurityEventConstants.EncryptedElement.equals(securityEvent.getSecurityEventType())) {
-                EncryptedElementSecurityEvent encryptedElementSecurityEvent = (EncryptedElementSecurityEvent) securityEvent;
-                if (encryptedElementSecurityEvent.isEncrypted()
-                        && tokenSecurityEvent.getSecurityToken() != null
-                        && encryptedElementSecurityEvent.getXmlSecEvent() != null
-                        && encryptedElementSecurityEvent.getXmlSecEvent()
-                            == ((InboundSecurityToken)tokenSecurityEvent.getSecurityToken()).getXMLSecEvent()
-                        && !securityTokenList.contains(encryptedElementSecurityEvent.getSecurityToken())) {
-                    securityTokenList.add((InboundSecurityToken)encryptedElementSecurityEvent.getSecurityToken());
+        if (tokenSecurityEvent.getSecurityToken() != null) {
+            List<EncryptedElementSecurityEvent> encryptedElementSecurityEvents = securityEventIndex.getEncryptedElements(
+                ((InboundSecurityToken)tokenSecurityEvent.getSecurityToken()).getXMLSecEvent());
+            for (int i = 0; i < encryptedElementSecurityEvents.size(); i++) {
+                InboundSecurityToken encryptingSecurityToken =
+                    (InboundSecurityToken)encryptedElementSecurityEvents.get(i).getSecurityToken();
+                if (!securityTokenList.contains(encryptingSecurityToken)) {
+                    securityTokenList.add(encryptingSecurityToken);
                 }
             }
         }
@@ -542,18 +543,13 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
     }
 
     private boolean signsElement(TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent, List<QName> elementPath,
-                                 Deque<SecurityEvent> securityEventDeque) throws XMLSecurityException {
-        for (Iterator<SecurityEvent> iterator = securityEventDeque.iterator(); iterator.hasNext();) {
-            SecurityEvent securityEvent = iterator.next();
-            if (WSSecurityEventConstants.SignedElement.equals(securityEvent.getSecurityEventType())) {
-                SignedElementSecurityEvent signedElementSecurityEvent = (SignedElementSecurityEvent) securityEvent;
-                if (signedElementSecurityEvent.isSigned()
-                        && matchesTokenOrWrappedTokenId(tokenSecurityEvent.getSecurityToken(),
-                        signedElementSecurityEvent.getSecurityToken().getId(),
-                        SecurityTokenConstants.TokenUsage_Signature)
-                        && WSSUtils.pathMatches(elementPath, signedElementSecurityEvent.getElementPath(), false)) {
-                    return true;
-                }
+                                 SecurityEventIndex securityEventIndex) throws XMLSecurityException {
+        List<SignedElementSecurityEvent> signedElementSecurityEvents = securityEventIndex.getSignedElements(elementPath);
+        for (int i = 0; i < signedElementSecurityEvents.size(); i++) {
+            if (matchesTokenOrWrappedTokenId(tokenSecurityEvent.getSecurityToken(),
+                    signedElementSecurityEvents.get(i).getSecurityToken().getId(),
+                    SecurityTokenConstants.TokenUsage_Signature)) {
+                return true;
             }
         }
         return false;
@@ -576,27 +572,24 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
     }
 
     private boolean encryptsElement(TokenSecurityEvent<? extends SecurityToken> tokenSecurityEvent, List<QName> elementPath,
-                                    Deque<SecurityEvent> securityEventDeque) throws XMLSecurityException {
-        for (Iterator<SecurityEvent> iterator = securityEventDeque.iterator(); iterator.hasNext();) {
-            SecurityEvent securityEvent = iterator.next();
-            if (WSSecurityEventConstants.EncryptedElement.equals(securityEvent.getSecurityEventType())) {
-                EncryptedElementSecurityEvent encryptedElementSecurityEvent = (EncryptedElementSecurityEvent) securityEvent;
-                if (encryptedElementSecurityEvent.isEncrypted()
-                        && encryptedElementSecurityEvent.getSecurityToken().getId().equals(tokenSecurityEvent.getSecurityToken().getId())
-                        && WSSUtils.pathMatches(elementPath, encryptedElementSecurityEvent.getElementPath(), false)) {
-                    return true;
-                }
-            } else if (WSSecurityEventConstants.ContentEncrypted.equals(securityEvent.getSecurityEventType())) {
-                ContentEncryptedElementSecurityEvent contentEncryptedElementSecurityEvent =
-                    (ContentEncryptedElementSecurityEvent) securityEvent;
-                String tokenId = tokenSecurityEvent.getSecurityToken().getId();
-                if (contentEncryptedElementSecurityEvent.isEncrypted()
-                        && contentEncryptedElementSecurityEvent.getSecurityToken().getId().equals(tokenId)
-                        && contentEncryptedElementSecurityEvent.getXmlSecEvent()
-                            == ((InboundSecurityToken)tokenSecurityEvent.getSecurityToken()).getXMLSecEvent()
-                        && WSSUtils.pathMatches(elementPath, contentEncryptedElementSecurityEvent.getElementPath(), false)) {
-                    return true;
-                }
+                                    SecurityEventIndex securityEventIndex) throws XMLSecurityException {
+        String tokenId = tokenSecurityEvent.getSecurityToken().getId();
+        List<EncryptedElementSecurityEvent> encryptedElementSecurityEvents =
+            securityEventIndex.getEncryptedElements(elementPath);
+        for (int i = 0; i < encryptedElementSecurityEvents.size(); i++) {
+            if (encryptedElementSecurityEvents.get(i).getSecurityToken().getId().equals(tokenId)) {
+                return true;
+            }
+        }
+        List<ContentEncryptedElementSecurityEvent> contentEncryptedElementSecurityEvents =
+            securityEventIndex.getContentEncryptedElements(elementPath);
+        for (int i = 0; i < contentEncryptedElementSecurityEvents.size(); i++) {
+            ContentEncryptedElementSecurityEvent contentEncryptedElementSecurityEvent =
+                contentEncryptedElementSecurityEvents.get(i);
+            if (contentEncryptedElementSecurityEvent.getSecurityToken().getId().equals(tokenId)
+                    && contentEncryptedElementSecurityEvent.getXmlSecEvent()
+                        == ((InboundSecurityToken)tokenSecurityEvent.getSecurityToken()).getXMLSecEvent()) {
+                return true;
             }
         }
         return false;
@@ -646,6 +639,79 @@ public class InboundWSSecurityContextImpl extends InboundSecurityContextImpl imp
         this.soap12 = soap12;
     }
 
+    /**
+     * An index of the signed and encrypted elements of the buffered SecurityEvents, by element path and
+     * by the XMLSecEvent of the element, so that a token can be looked up without scanning all the
+     * SecurityEvents. Only the elements which are signed resp. encrypted are indexed.
+     */
+    private static class SecurityEventIndex {
+        private final Map<List<QName>, List<SignedElementSecurityEvent>> signedElementsByPath = new HashMap<>();
+        private final Map<XMLSecEvent, List<SignedElementSecurityEvent>> signedElementsByXMLSecEvent =
+            new IdentityHashMap<>();
+        private final Map<List<QName>, List<EncryptedElementSecurityEvent>> encryptedElementsByPath = new HashMap<>();
+        private final Map<XMLSecEvent, List<EncryptedElementSecurityEvent>> encryptedElementsByXMLSecEvent =
+            new IdentityHashMap<>();
+        private final Map<List<QName>, List<ContentEncryptedElementSecurityEvent>> contentEncryptedElementsByPath =
+            new HashMap<>();
+
+        void add(SecurityEvent securityEvent) {
+            if (WSSecurityEventConstants.SignedElement.equals(securityEvent.getSecurityEventType())) {
+                SignedElementSecurityEvent signedElementSecurityEvent = (SignedElementSecurityEvent) securityEvent;
+                if (signedElementSecurityEvent.isSigned()) {
+                    add(signedElementsByPath, signedElementSecurityEvent.getElementPath(), signedElementSecurityEvent);
+                    add(signedElementsByXMLSecEvent, signedElementSecurityEvent.getXmlSecEvent(),
+                        signedElementSecurityEvent);
+                }
+            } else if (WSSecurityEventConstants.EncryptedElement.equals(securityEvent.getSecurityEventType())) {
+                EncryptedElementSecurityEvent encryptedElementSecurityEvent = (EncryptedElementSecurityEvent) securityEvent;
+                if (encryptedElementSecurityEvent.isEncrypted()) {
+                    add(encryptedElementsByPath, encryptedElementSecurityEvent.getElementPath(),
+                        encryptedElementSecurityEvent);
+                    add(encryptedElementsByXMLSecEvent, encryptedElementSecurityEvent.getXmlSecEvent(),
+                        encryptedElementSecurityEvent);
+                }
+            } else if (WSSecurityEventConstants.ContentEncrypted.equals(securityEvent.getSecurityEventType())) {
+                ContentEncryptedElementSecurityEvent contentEncryptedElementSecurityEvent =
+                    (ContentEncryptedElementSecurityEvent) securityEvent;
+                if (contentEncryptedElementSecurityEvent.isEncrypted()) {
+                    add(contentEncryptedElementsByPath, contentEncryptedElementSecurityEvent.getElementPath(),
+                        contentEncryptedElementSecurityEvent);
+                }
+            }
+        }
+
+        List<SignedElementSecurityEvent> getSignedElements(List<QName> elementPath) {
+            return get(signedElementsByPath, elementPath);
+        }
+
+        List<SignedElementSecurityEvent> getSignedElements(XMLSecEvent xmlSecEvent) {
+            return get(signedElementsByXMLSecEvent, xmlSecEvent);
+        }
+
+        List<EncryptedElementSecurityEvent> getEncryptedElements(List<QName> elementPath) {
+            return get(encryptedElementsByPath, elementPath);
+        }
+
+        List<EncryptedElementSecurityEvent> getEncryptedElements(XMLSecEvent xmlSecEvent) {
+            return get(encryptedElementsByXMLSecEvent, xmlSecEvent);
+        }
+
+        List<ContentEncryptedElementSecurityEvent> getContentEncryptedElements(List<QName> elementPath) {
+            return get(contentEncryptedElementsByPath, elementPath);
+        }
+
+        private static <K, T extends SecurityEvent> void add(Map<K, List<T>> index, K key, T securityEvent) {
+            if (key != null) {
+                index.computeIfAbsent(key, k -> new ArrayList<>()).add(securityEvent);
+            }
+        }
+
+        private static <K, T extends SecurityEvent> List<T> get(Map<K, List<T>> index, K key) {
+            List<T> securityEvents = key != null ? index.get(key) : null;
+            return securityEvents != null ? securityEvents : Collections.<T>emptyList();
+        }
+    }
+
     private static class MessageTokens {
         List<TokenSecurityEvent<? extends InboundSecurityToken>> messageSignatureTokens = Collections.emptyList();
         List<TokenSecurityEvent<? extends InboundSecurityToken>> messageEncryptionTokens = Collections.emptyList();
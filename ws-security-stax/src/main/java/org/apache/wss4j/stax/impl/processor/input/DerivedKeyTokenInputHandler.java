@@ -27,7 +27,7 @@ import javax.xml.bind.JAXBElement;
 import javax.xml.namespace.QName;
 
 import org.apache.wss4j.binding.wssc.AbstractDerivedKeyTokenType;
-import org.apache.wss4j.common.derivedKey.DerivedKeyUtils;
+import org.apache.wss4j.common.cache.SecretKeyCache;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
@@ -130,7 +130,9 @@ public class DerivedKeyTokenInputHandler extends AbstractInputSecurityHeaderHand
                         if (derivedKeyAlgorithm == null) {
                             derivedKeyAlgorithm = WSSConstants.P_SHA_1;
                         }
-                        byte[] keyBytes = DerivedKeyUtils.deriveKey(
+                        // Reuse the key derived for an earlier message of the same session
+                        byte[] keyBytes = SecretKeyCache.deriveKey(
+                                ((WSSSecurityProperties) securityProperties).getSecretKeyCache(),
                                 derivedKeyAlgorithm,
                                 derivedKeyTokenType.getLabel(),
                                 derivedKeyTokenType.getLength().intValue(),
@@ -44,6 +44,8 @@ import org.apache.wss4j.binding.wss10.ObjectFactory;
 import org.apache.wss4j.binding.wss10.SecurityTokenReferenceType;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.saml.OpenSAMLUtil;
+import org.apache.wss4j.common.saml.SAMLKeyInfo;
+import org.apache.wss4j.common.saml.SamlAssertionVerificationCache;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
@@ -117,7 +119,10 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
         }
 
         //important: check the signature before we do other processing...
-        if (samlAssertionWrapper.isSigned()) {
+        //(unless the same assertion was verified before)
+        SamlAssertionVerificationCache verificationCache = wssSecurityProperties.getSamlAssertionVerificationCache();
+        if (samlAssertionWrapper.isSigned()
+            && (verificationCache == null || !verificationCache.isVerified(samlAssertionWrapper))) {
             Signature signature = samlAssertionWrapper.getSignature();
             if (signature == null) {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN,
@@ -137,10 +142,13 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
             samlTokenValidator.validate(sigSecurityToken, wssSecurityProperties);
 
             BasicCredential credential = null;
+            SAMLKeyInfo samlKeyInfo = null;
             if (sigSecurityToken.getX509Certificates() != null) {
                 credential = new BasicX509Credential(sigSecurityToken.getX509Certificates()[0]);
+                samlKeyInfo = new SAMLKeyInfo(sigSecurityToken.getX509Certificates());
             } else if (sigSecurityToken.getPublicKey() != null) {
                 credential = new BasicCredential(sigSecurityToken.getPublicKey());
+                samlKeyInfo = new SAMLKeyInfo(sigSecurityToken.getPublicKey());
             } else {
                 throw new WSSecurityException(
                         WSSecurityException.ErrorCode.FAILURE, "invalidSAMLsecurity",
@@ -153,6 +161,10 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
                         ex, "empty", new Object[] {"SAML signature validation failed"});
             }
+
+            if (verificationCache != null) {
+                verificationCache.putVerified(samlAssertionWrapper, samlKeyInfo);
+            }
         }
 
         final InboundSecurityToken subjectSecurityToken;
@@ -0,0 +1,201 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.stax.impl.processor.input;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.Transformer;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.util.DigestOutputStream;
+import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
+
+/**
+ * A transformer chain (typically the exclusive canonicalization) of a signed element, which is
+ * shared by all the References to this element with the same transforms. The element is transformed
+ * only once and the result is written to the digests of all the References.
+ *
+ * Every Reference gets its own Transformer from join(). Each of these Transformers sees the same
+ * XMLSecEvents, of which only the first is handed on to the chain. The chain is one XMLSecEvent behind,
+ * so that nothing is written to the digests before the start element of the signed element has been
+ * seen by all the References, which can join until then.
+ */
+final class SharedReferenceDigest {
+
+    private final XMLSecStartElement startElement;
+    private final String transformsKey;
+    private final DigestsOutputStream digestsOutputStream = new DigestsOutputStream();
+    private final OutputStream outputStream;
+    private Transformer transformer;
+    private XMLSecEvent lastXMLSecEvent;
+    private boolean started;
+    private boolean finished;
+
+    SharedReferenceDigest(XMLSecStartElement startElement, String transformsKey, int bufferSize) {
+        this.startElement = startElement;
+        this.transformsKey = transformsKey;
+        if (bufferSize > 0) {
+            this.outputStream = new UnsyncBufferedOutputStream(digestsOutputStream, bufferSize);
+        } else {
+            this.outputStream = digestsOutputStream;
+        }
+    }
+
+    /**
+     * @return the OutputStream to which the transformer chain must write
+     */
+    OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    void setTransformer(Transformer transformer) {
+        this.transformer = transformer;
+    }
+
+    /**
+     * @return whether a Reference to the given element with the given transforms can still join
+     */
+    boolean canJoin(XMLSecStartElement startElement, String transformsKey) {
+        return !started && !finished && this.startElement == startElement && this.transformsKey.equals(transformsKey);
+    }
+
+    /**
+     * @return whether no Reference can join anymore
+     */
+    boolean isClosed() {
+        return started || finished;
+    }
+
+    /**
+     * Add the digest of a Reference.
+     * @return the Transformer of the Reference
+     */
+    Transformer join(DigestOutputStream digestOutputStream) {
+        digestsOutputStream.add(digestOutputStream);
+        return new ReferenceTransformer();
+    }
+
+    private void transform(XMLSecEvent xmlSecEvent) throws XMLStreamException {
+        if (xmlSecEvent == lastXMLSecEvent) {
+            //already transformed for another Reference
+            return;
+        }
+        if (lastXMLSecEvent != null) {
+            started = true;
+            transformer.transform(lastXMLSecEvent);
+        }
+        lastXMLSecEvent = xmlSecEvent;
+    }
+
+    private void doFinal() throws XMLStreamException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (lastXMLSecEvent != null) {
+            transformer.transform(lastXMLSecEvent);
+        }
+        transformer.doFinal();
+    }
+
+    /**
+     * The Transformer of a single Reference. It is always the head of the transformer chain of the
+     * Reference (see WSSSignatureReferenceVerifyInputProcessor#buildTransformerChain), so it is never
+     * chained to another Transformer, and its OutputStream and its Transformer are fixed by the shared
+     * digest.
+     */
+    private class ReferenceTransformer implements Transformer {
+
+        /**
+         * Never called, the shared chain writes to getOutputStream() of the shared digest.
+         */
+        @Override
+        public void setOutputStream(OutputStream outputStream) throws XMLSecurityException {
+            throw new UnsupportedOperationException("The OutputStream of a shared Reference digest is fixed");
+        }
+
+        /**
+         * Never called, the shared chain is set with SharedReferenceDigest#setTransformer.
+         */
+        @Override
+        public void setTransformer(Transformer transformer) throws XMLSecurityException {
+            throw new UnsupportedOperationException("The Transformer of a shared Reference digest is fixed");
+        }
+
+        @Override
+        public void setProperties(Map<String, Object> properties) throws XMLSecurityException {
+            transformer.setProperties(properties);
+        }
+
+        @Override
+        public XMLSecurityConstants.TransformMethod getPreferredTransformMethod(
+                XMLSecurityConstants.TransformMethod forInput) {
+            return transformer.getPreferredTransformMethod(forInput);
+        }
+
+        @Override
+        public void transform(XMLSecEvent xmlSecEvent) throws XMLStreamException {
+            SharedReferenceDigest.this.transform(xmlSecEvent);
+        }
+
+        @Override
+        public void transform(InputStream inputStream) throws XMLStreamException {
+            transformer.transform(inputStream);
+        }
+
+        @Override
+        public void doFinal() throws XMLStreamException {
+            SharedReferenceDigest.this.doFinal();
+        }
+    }
+
+    /**
+     * Writes the transformed element to the digests of all the References
+     */
+    private static class DigestsOutputStream extends OutputStream {
+
+        private final List<DigestOutputStream> digestOutputStreams = new ArrayList<>(2);
+
+        void add(DigestOutputStream digestOutputStream) {
+            digestOutputStreams.add(digestOutputStream);
+        }
+
+        @Override
+        public void write(int b) {
+            for (int i = 0; i < digestOutputStreams.size(); i++) {
+                digestOutputStreams.get(i).write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = 0; i < digestOutputStreams.size(); i++) {
+                digestOutputStreams.get(i).write(b, off, len);
+            }
+        }
+    }
+}
@@ -18,12 +18,12 @@
  */
 package org.apache.wss4j.stax.impl.processor.input;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.time.Instant;
 import java.time.temporal.ChronoField;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -32,6 +32,7 @@ import java.util.Map;
 
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
+import javax.xml.bind.JAXBElement;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
 
@@ -43,6 +44,7 @@ import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.CachingInputStream;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -58,6 +60,7 @@ import org.apache.xml.security.binding.xmldsig.SignatureType;
 import org.apache.xml.security.binding.xmldsig.TransformType;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.DocumentContext;
+import org.apache.xml.security.stax.ext.InboundSecurityContext;
 import org.apache.xml.security.stax.ext.InputProcessorChain;
 import org.apache.xml.security.stax.ext.Transformer;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
@@ -75,6 +78,11 @@ import org.apache.xml.security.stax.securityToken.SecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
 import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
 
+/**
+ * Verifies the References of a Signature. The References to the same element with the same transforms
+ * share a single transformer chain (see SharedReferenceDigest), also across Signatures, so that e.g. a
+ * SOAP Body which is signed by two Signatures is canonicalized only once.
+ */
 public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignatureReferenceVerifyInputProcessor {
 
     private boolean replayChecked = false;
@@ -124,18 +132,17 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
 
             final Attachment attachment = attachments.get(0);
 
-            InputStream attachmentInputStream = attachment.getSourceStream();
-            if (!attachmentInputStream.markSupported()) {
-                attachmentInputStream = new BufferedInputStream(attachmentInputStream);
-            }
-            //todo workaround 2GB limit somehow?
-            attachmentInputStream.mark(Integer.MAX_VALUE); //we can process at maximum 2G with the standard jdk streams
+            //the attachment is read only once. What is read is cached (in a temporary file if it is
+            //large) so that it can be handed on in the result callback
+            CachingInputStream attachmentInputStream = new CachingInputStream(
+                attachment.getSourceStream(),
+                ((WSSSecurityProperties) getSecurityProperties()).getAttachmentCacheThreshold());
+            InputStream cachedInputStream;
 
             try {
                 DigestOutputStream digestOutputStream =
                         createMessageDigestOutputStream(referenceType, inputProcessorChain.getSecurityContext());
-                UnsyncBufferedOutputStream bufferedDigestOutputStream =
-                        new UnsyncBufferedOutputStream(digestOutputStream);
+                OutputStream bufferedDigestOutputStream = createBufferedDigestOutputStream(digestOutputStream);
 
                 if (referenceType.getTransforms() != null) {
                     Transformer transformer =
@@ -161,11 +168,13 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
                 }
                 compareDigest(digestOutputStream.getDigestValue(), referenceType);
 
-                //reset the inputStream to be able to reuse it
-                attachmentInputStream.reset();
+                cachedInputStream = attachmentInputStream.getCachedInputStream();
 
             } catch (IOException e) {
                 throw new XMLSecurityException(e);
+            } finally {
+                //delete the temporary file if the digest verification failed
+                attachmentInputStream.discard();
             }
 
             //create a new attachment and do the result callback
@@ -173,7 +182,7 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
             resultAttachment.setId(attachmentId);
             resultAttachment.setMimeType(attachment.getMimeType());
             resultAttachment.addHeaders(attachment.getHeaders());
-            resultAttachment.setSourceStream(attachmentInputStream);
+            resultAttachment.setSourceStream(cachedInputStream);
 
             AttachmentResultCallback attachmentResultCallback = new AttachmentResultCallback();
             attachmentResultCallback.setAttachmentId(attachmentId);
@@ -316,16 +325,10 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
             final String cacheKey =
                     timestampSecurityEvent.getCreated().get(ChronoField.MILLI_OF_SECOND)
                     + "" + Arrays.hashCode(getSignatureType().getSignatureValue().getValue());
-            if (replayCache.contains(cacheKey)) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.MESSAGE_EXPIRED);
-            }
-
-            // Store the Timestamp/SignatureValue combination in the cache
+            // Store the Timestamp/SignatureValue combination in the cache, unless it is there already
             Instant expires = timestampSecurityEvent.getExpires();
-            if (expires != null) {
-                replayCache.add(cacheKey, expires);
-            } else {
-                replayCache.add(cacheKey);
+            if (!replayCache.putIfAbsent(cacheKey, expires)) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.MESSAGE_EXPIRED);
             }
         }
     }
@@ -348,6 +351,37 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
                     new Object[] {transformTypeList.size(), maximumAllowedTransformsPerReference});
         }
 
+        SharedReferenceDigest sharedReferenceDigest = null;
+        String transformsKey = internalSignatureReferenceVerifier != null ? getTransformsKey(transformTypeList) : null;
+        if (transformsKey != null) {
+            XMLSecStartElement startElement = internalSignatureReferenceVerifier.getStartElement();
+            List<SharedReferenceDigest> sharedReferenceDigests =
+                getSharedReferenceDigests(inputProcessorChain.getSecurityContext());
+            for (Iterator<SharedReferenceDigest> iterator = sharedReferenceDigests.iterator(); iterator.hasNext();) {
+                SharedReferenceDigest actSharedReferenceDigest = iterator.next();
+                if (actSharedReferenceDigest.isClosed()) {
+                    iterator.remove();
+                } else if (actSharedReferenceDigest.canJoin(startElement, transformsKey)) {
+                    //the element is already transformed for another Reference:
+                    for (int i = transformTypeList.size() - 1; i >= 0; i--) {
+                        registerTransformAlgorithm(transformTypeList.get(i).getAlgorithm(),
+                                                   referenceType, inputProcessorChain);
+                    }
+                    internalSignatureReferenceVerifier.setBufferedDigestOutputStream(
+                        actSharedReferenceDigest.getOutputStream());
+                    return actSharedReferenceDigest.join(internalSignatureReferenceVerifier.getDigestOutputStream());
+                }
+            }
+            sharedReferenceDigest = new SharedReferenceDigest(startElement, transformsKey,
+                ((WSSSecurityProperties) getSecurityProperties()).getSignatureDigestBufferSize());
+            sharedReferenceDigests.add(sharedReferenceDigest);
+            outputStream = sharedReferenceDigest.getOutputStream();
+            internalSignatureReferenceVerifier.setBufferedDigestOutputStream(outputStream);
+        } else if (internalSignatureReferenceVerifier != null) {
+            outputStream = createBufferedDigestOutputStream(internalSignatureReferenceVerifier.getDigestOutputStream());
+            internalSignatureReferenceVerifier.setBufferedDigestOutputStream(outputStream);
+        }
+
         String algorithm = null;
         Transformer parentTransformer = null;
         for (int i = transformTypeList.size() - 1; i >= 0; i--) {
@@ -378,11 +412,7 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
                 }
             }
             algorithm = transformType.getAlgorithm();
-            AlgorithmSuiteSecurityEvent algorithmSuiteSecurityEvent = new AlgorithmSuiteSecurityEvent();
-            algorithmSuiteSecurityEvent.setAlgorithmURI(algorithm);
-            algorithmSuiteSecurityEvent.setAlgorithmUsage(WSSConstants.SigTransform);
-            algorithmSuiteSecurityEvent.setCorrelationID(referenceType.getId());
-            inputProcessorChain.getSecurityContext().registerSecurityEvent(algorithmSuiteSecurityEvent);
+            registerTransformAlgorithm(algorithm, referenceType, inputProcessorChain);
 
             InclusiveNamespaces inclusiveNamespacesType =
                     XMLSecurityUtils.getQNameType(transformType.getContent(),
@@ -434,9 +464,73 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
                 throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e);
             }
         }
+        if (sharedReferenceDigest != null) {
+            sharedReferenceDigest.setTransformer(parentTransformer);
+            return sharedReferenceDigest.join(internalSignatureReferenceVerifier.getDigestOutputStream());
+        }
         return parentTransformer;
     }
 
+    private void registerTransformAlgorithm(String algorithm, ReferenceType referenceType,
+                                            InputProcessorChain inputProcessorChain) throws XMLSecurityException {
+        AlgorithmSuiteSecurityEvent algorithmSuiteSecurityEvent = new AlgorithmSuiteSecurityEvent();
+        algorithmSuiteSecurityEvent.setAlgorithmURI(algorithm);
+        algorithmSuiteSecurityEvent.setAlgorithmUsage(WSSConstants.SigTransform);
+        algorithmSuiteSecurityEvent.setCorrelationID(referenceType.getId());
+        inputProcessorChain.getSecurityContext().registerSecurityEvent(algorithmSuiteSecurityEvent);
+    }
+
+    private OutputStream createBufferedDigestOutputStream(OutputStream digestOutputStream) {
+        int bufferSize = ((WSSSecurityProperties) getSecurityProperties()).getSignatureDigestBufferSize();
+        if (bufferSize > 0) {
+            return new UnsyncBufferedOutputStream(digestOutputStream, bufferSize);
+        }
+        return digestOutputStream;
+    }
+
+    private static List<SharedReferenceDigest> getSharedReferenceDigests(InboundSecurityContext securityContext) {
+        List<SharedReferenceDigest> sharedReferenceDigests = securityContext.get(WSSConstants.PROP_SHARED_REFERENCE_DIGESTS);
+        if (sharedReferenceDigests == null) {
+            sharedReferenceDigests = new ArrayList<>(2);
+            securityContext.put(WSSConstants.PROP_SHARED_REFERENCE_DIGESTS, sharedReferenceDigests);
+        }
+        return sharedReferenceDigests;
+    }
+
+    /**
+     * @return a key which is equal for equal transforms, or null if the References with these transforms
+     * can't share the transformer chain (the STR-Transform, the attachment transforms and transforms with
+     * other parameters than InclusiveNamespaces)
+     */
+    private static String getTransformsKey(List<TransformType> transformTypeList) {
+        StringBuilder transformsKey = new StringBuilder();
+        for (int i = 0; i < transformTypeList.size(); i++) {
+            TransformType transformType = transformTypeList.get(i);
+            String algorithm = transformType.getAlgorithm();
+            if (algorithm == null
+                || WSSConstants.SOAPMESSAGE_NS10_STR_TRANSFORM.equals(algorithm)
+                || WSSConstants.SWA_ATTACHMENT_CONTENT_SIG_TRANS.equals(algorithm)
+                || WSSConstants.SWA_ATTACHMENT_COMPLETE_SIG_TRANS.equals(algorithm)) {
+                return null;
+            }
+            transformsKey.append(algorithm);
+            List<Object> contents = transformType.getContent();
+            for (int j = 0; j < contents.size(); j++) {
+                Object content = contents.get(j);
+                if (content instanceof JAXBElement) {
+                    content = ((JAXBElement<?>) content).getValue();
+                }
+                if (content instanceof InclusiveNamespaces) {
+                    transformsKey.append(' ').append(((InclusiveNamespaces) content).getPrefixList());
+                } else if (!(content instanceof String && ((String) content).trim().isEmpty())) {
+                    return null;
+                }
+            }
+            transformsKey.append(';');
+        }
+        return transformsKey.toString();
+    }
+
     class InternalSignatureReferenceVerifier extends AbstractSignatureReferenceVerifyInputProcessor.InternalSignatureReferenceVerifier {
 
         InternalSignatureReferenceVerifier(WSSSecurityProperties securityProperties, InputProcessorChain inputProcessorChain,
@@ -18,7 +18,6 @@
  */
 package org.apache.wss4j.stax.impl.processor.output;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -37,6 +36,7 @@ import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.CachingInputStream;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.impl.transformer.AttachmentContentSignatureTransform;
@@ -196,11 +196,12 @@ public class WSSSignatureOutputProcessor extends AbstractSignatureOutputProcesso
                     }
 
                     DigestOutputStream digestOutputStream = createMessageDigestOutputStream(signaturePartDef.getDigestAlgo());
-                    InputStream inputStream = attachment.getSourceStream();
-                    if (!inputStream.markSupported()) {
-                        inputStream = new BufferedInputStream(inputStream);
-                    }
-                    inputStream.mark(Integer.MAX_VALUE); //we can process at maximum 2G with the standard jdk streams
+                    //the attachment is read only once. What is read is cached (in a temporary file if it is
+                    //large) so that it can be handed on in the result callback
+                    CachingInputStream inputStream = new CachingInputStream(
+                        attachment.getSourceStream(),
+                        ((WSSSecurityProperties) getSecurityProperties()).getAttachmentCacheThreshold());
+                    InputStream cachedInputStream;
 
                     try {
                         Transformer transformer = buildTransformerChain(digestOutputStream, signaturePartDef, null);
@@ -214,10 +215,12 @@ public class WSSSignatureOutputProcessor extends AbstractSignatureOutputProcesso
 
                         digestOutputStream.close();
 
-                        //reset the inputStream to be able to reuse it
-                        inputStream.reset();
+                        cachedInputStream = inputStream.getCachedInputStream();
                     } catch (IOException | XMLStreamException e) {
                         throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_SIGNATURE, e);
+                    } finally {
+                        //delete the temporary file if the digest calculation failed
+                        inputStream.discard();
                     }
 
                     String calculatedDigest = XMLUtils.encodeToString(digestOutputStream.getDigestValue());
@@ -230,7 +233,7 @@ public class WSSSignatureOutputProcessor extends AbstractSignatureOutputProcesso
                     resultAttachment.setId(attachment.getId());
                     resultAttachment.setMimeType(attachment.getMimeType());
                     resultAttachment.addHeaders(attachment.getHeaders());
-                    resultAttachment.setSourceStream(inputStream);
+                    resultAttachment.setSourceStream(cachedInputStream);
 
                     AttachmentResultCallback attachmentResultCallback = new AttachmentResultCallback();
                     attachmentResultCallback.setAttachmentId(resultAttachment.getId());
@@ -32,11 +32,13 @@ import javax.xml.namespace.QName;
 
 import org.apache.wss4j.common.ConfigurationConstants;
 import org.apache.wss4j.common.cache.ReplayCache;
+import org.apache.wss4j.common.cache.SecretKeyCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.crypto.JasyptPasswordEncryptor;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionVerificationCache;
 import org.apache.wss4j.common.util.Loader;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSConstants.UsernameTokenPasswordType;
@@ -58,6 +60,16 @@ public final class ConfigurationConverter {
         // complete
     }
 
+    /**
+     * Convert the given configuration into a WSSSecurityProperties instance. The configuration is
+     * parsed, and Crypto instances and CallbackHandlers are loaded, for every call, and so this
+     * should be done once per endpoint and not for every message. The returned properties can
+     * then be reused for every message (WSSec#getOutboundWSSec and WSSec#getInboundWSSec copy
+     * them), and the values that vary per message can be set on a copy of them, see
+     * {@link WSSSecurityProperties#WSSSecurityProperties(WSSSecurityProperties)}.
+     * @param config the configuration
+     * @return the WSSSecurityProperties instance of the configuration
+     */
     public static WSSSecurityProperties convert(Map<String, Object> config) {
         WSSSecurityProperties properties = new WSSSecurityProperties();
 
@@ -591,6 +603,18 @@ public final class ConfigurationConverter {
             properties.setSamlOneTimeUseReplayCache(samlOneTimeUseCache);
         }
 
+        SamlAssertionVerificationCache samlVerificationCache =
+            (SamlAssertionVerificationCache)config.get(ConfigurationConstants.SAML_VERIFICATION_CACHE_INSTANCE);
+        if (samlVerificationCache != null) {
+            properties.setSamlAssertionVerificationCache(samlVerificationCache);
+        }
+
+        SecretKeyCache secretKeyCache =
+            (SecretKeyCache)config.get(ConfigurationConstants.SECRET_KEY_CACHE_INSTANCE);
+        if (secretKeyCache != null) {
+            properties.setSecretKeyCache(secretKeyCache);
+        }
+
         String derivedSignatureKeyLength = getString(ConfigurationConstants.DERIVED_SIGNATURE_KEY_LENGTH, config);
         if (derivedSignatureKeyLength != null) {
             int sigLength = Integer.parseInt(derivedSignatureKeyLength);
@@ -603,6 +627,18 @@ public final class ConfigurationConverter {
             properties.setDerivedEncryptionKeyLength(encLength);
         }
 
+        String attachmentCacheThreshold = getString(ConfigurationConstants.ATTACHMENT_CACHE_THRESHOLD, config);
+        if (attachmentCacheThreshold != null) {
+            int threshold = Integer.parseInt(attachmentCacheThreshold);
+            properties.setAttachmentCacheThreshold(threshold);
+        }
+
+        String signatureDigestBufferSize = getString(ConfigurationConstants.SIGNATURE_DIGEST_BUFFER_SIZE, config);
+        if (signatureDigestBufferSize != null) {
+            int bufferSize = Integer.parseInt(signatureDigestBufferSize);
+            properties.setSignatureDigestBufferSize(bufferSize);
+        }
+
         String derivedTokenReference = getString(ConfigurationConstants.DERIVED_TOKEN_REFERENCE, config);
         WSSConstants.DerivedKeyTokenReference convertedDerivedTokenReference =
             convertDerivedReference(derivedTokenReference);
@@ -23,6 +23,8 @@ import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import javax.crypto.KeyGenerator;
@@ -77,13 +79,25 @@ import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
 /**
  * Outbound Streaming-WebService-Security
  * An instance of this class can be retrieved over the WSSec class
+ *
+ * The configured actions are mapped once to the list of OutputProcessors that make up the chain,
+ * so that processing a message does not walk the actions again. The OutputProcessors themselves
+ * are stateful and are instantiated for every message, and everything else (algorithms, key
+ * identifiers, parts, keys and certificates) is still resolved per message from the
+ * WSSSecurityProperties.
  */
 public class OutboundWSSec {
 
     private final WSSSecurityProperties securityProperties;
+    private final List<ConfiguredOutputProcessor> configuredOutputProcessors;
+    private final ConfiguredAction configuredAction;
 
     public OutboundWSSec(WSSSecurityProperties securityProperties) {
         this.securityProperties = securityProperties;
+
+        List<ConfiguredOutputProcessor> outputProcessors = new ArrayList<>();
+        this.configuredAction = configureActions(outputProcessors);
+        this.configuredOutputProcessors = Collections.unmodifiableList(outputProcessors);
     }
 
     /**
@@ -175,7 +189,11 @@ public class OutboundWSSec {
             final SecurityHeaderOutputProcessor securityHeaderOutputProcessor = new SecurityHeaderOutputProcessor();
             initializeOutputProcessor(outputProcessorChain, securityHeaderOutputProcessor, null);
 
-            ConfiguredAction configuredAction = configureActions(outputProcessorChain);
+            for (ConfiguredOutputProcessor configuredOutputProcessor : configuredOutputProcessors) {
+                initializeOutputProcessor(outputProcessorChain,
+                                          configuredOutputProcessor.newOutputProcessor(),
+                                          configuredOutputProcessor.action);
+            }
 
             // Set up appropriate keys
             if (configuredAction.signatureAction) {
@@ -565,7 +583,7 @@ public class OutboundWSSec {
             }
     }
 
-    private ConfiguredAction configureActions(OutputProcessorChainImpl outputProcessorChain) throws XMLSecurityException {
+    private ConfiguredAction configureActions(List<ConfiguredOutputProcessor> outputProcessors) {
         ConfiguredAction configuredAction = new ConfiguredAction();
 
         //todo some combinations are not possible atm: eg Action.SIGNATURE and Action.USERNAMETOKEN_SIGNED
@@ -587,69 +605,52 @@ public class OutboundWSSec {
 
         for (XMLSecurityConstants.Action action : securityProperties.getActions()) {
             if (WSSConstants.TIMESTAMP.equals(action)) {
-                final TimestampOutputProcessor timestampOutputProcessor = new TimestampOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, timestampOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(TimestampOutputProcessor::new, action));
 
             } else if (WSSConstants.SIGNATURE.equals(action)) {
                 configuredAction.signatureAction = true;
-                final BinarySecurityTokenOutputProcessor binarySecurityTokenOutputProcessor =
-                    new BinarySecurityTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, binarySecurityTokenOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(BinarySecurityTokenOutputProcessor::new, action));
 
-                final WSSSignatureOutputProcessor signatureOutputProcessor = new WSSSignatureOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, signatureOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(WSSSignatureOutputProcessor::new, action));
 
             } else if (WSSConstants.ENCRYPT.equals(action)) {
                 configuredAction.encryptionAction = true;
 
-                EncryptedKeyOutputProcessor encryptedKeyOutputProcessor = null;
-                if (securityProperties.isEncryptSymmetricEncryptionKey()) {
-                    final BinarySecurityTokenOutputProcessor binarySecurityTokenOutputProcessor =
-                        new BinarySecurityTokenOutputProcessor();
-                    initializeOutputProcessor(outputProcessorChain, binarySecurityTokenOutputProcessor, action);
+                boolean encryptedKey = securityProperties.isEncryptSymmetricEncryptionKey();
+                if (encryptedKey) {
+                    outputProcessors.add(new ConfiguredOutputProcessor(BinarySecurityTokenOutputProcessor::new, action));
 
-                    encryptedKeyOutputProcessor = new EncryptedKeyOutputProcessor();
-                    initializeOutputProcessor(outputProcessorChain, encryptedKeyOutputProcessor, action);
+                    outputProcessors.add(new ConfiguredOutputProcessor(EncryptedKeyOutputProcessor::new, action));
                 }
 
-                final EncryptOutputProcessor encryptOutputProcessor = new EncryptOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, encryptOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(EncryptOutputProcessor::new, action));
 
-                if (encryptedKeyOutputProcessor == null) {
-                    final ReferenceListOutputProcessor referenceListOutputProcessor = new ReferenceListOutputProcessor();
-                    referenceListOutputProcessor.addAfterProcessor(EncryptEndingOutputProcessor.class.getName());
-                    initializeOutputProcessor(outputProcessorChain, referenceListOutputProcessor, action);
+                if (!encryptedKey) {
+                    outputProcessors.add(
+                        new ConfiguredOutputProcessor(OutboundWSSec::newReferenceListOutputProcessor, action));
                 }
 
             } else if (WSSConstants.USERNAMETOKEN.equals(action)) {
-                final UsernameTokenOutputProcessor usernameTokenOutputProcessor = new UsernameTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, usernameTokenOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(UsernameTokenOutputProcessor::new, action));
 
             } else if (WSSConstants.USERNAMETOKEN_SIGNED.equals(action)) {
-                final UsernameTokenOutputProcessor usernameTokenOutputProcessor = new UsernameTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, usernameTokenOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(UsernameTokenOutputProcessor::new, action));
 
-                final WSSSignatureOutputProcessor signatureOutputProcessor = new WSSSignatureOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, signatureOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(WSSSignatureOutputProcessor::new, action));
 
             } else if (WSSConstants.SIGNATURE_CONFIRMATION.equals(action)) {
-                final SignatureConfirmationOutputProcessor signatureConfirmationOutputProcessor =
-                        new SignatureConfirmationOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, signatureConfirmationOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(SignatureConfirmationOutputProcessor::new, action));
 
             } else if (WSSConstants.SIGNATURE_WITH_DERIVED_KEY.equals(action)) {
                 if (securityProperties.getDerivedKeyTokenReference() == WSSConstants.DerivedKeyTokenReference.EncryptedKey) {
                     if (derivedSignatureButNotDerivedEncryption) {
-                        final EncryptedKeyOutputProcessor encryptedKeyOutputProcessor = new EncryptedKeyOutputProcessor();
-                        initializeOutputProcessor(outputProcessorChain, encryptedKeyOutputProcessor, action);
+                        outputProcessors.add(new ConfiguredOutputProcessor(EncryptedKeyOutputProcessor::new, action));
                     }
                     configuredAction.encryptionAction = true;
                     configuredAction.derivedEncryption = true;
                 } else if (securityProperties.getDerivedKeyTokenReference()
                     == WSSConstants.DerivedKeyTokenReference.SecurityContextToken) {
-                    final SecurityContextTokenOutputProcessor securityContextTokenOutputProcessor =
-                            new SecurityContextTokenOutputProcessor();
-                    initializeOutputProcessor(outputProcessorChain, securityContextTokenOutputProcessor, action);
+                    outputProcessors.add(new ConfiguredOutputProcessor(SecurityContextTokenOutputProcessor::new, action));
                     configuredAction.signatureAction = true;
                     configuredAction.derivedSignature = true;
                 } else {
@@ -657,88 +658,72 @@ public class OutboundWSSec {
                     configuredAction.derivedSignature = true;
                 }
 
-                final DerivedKeyTokenOutputProcessor derivedKeyTokenOutputProcessor = new DerivedKeyTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, derivedKeyTokenOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(DerivedKeyTokenOutputProcessor::new, action));
 
-                final WSSSignatureOutputProcessor signatureOutputProcessor = new WSSSignatureOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, signatureOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(WSSSignatureOutputProcessor::new, action));
 
             } else if (WSSConstants.ENCRYPT_WITH_DERIVED_KEY.equals(action)) {
                 configuredAction.encryptionAction = true;
                 configuredAction.derivedEncryption = true;
 
-                EncryptedKeyOutputProcessor encryptedKeyOutputProcessor = null;
+                boolean encryptedKey =
+                    securityProperties.getDerivedKeyTokenReference() == WSSConstants.DerivedKeyTokenReference.EncryptedKey;
 
-                if (securityProperties.getDerivedKeyTokenReference() == WSSConstants.DerivedKeyTokenReference.EncryptedKey) {
-                    encryptedKeyOutputProcessor = new EncryptedKeyOutputProcessor();
-                    initializeOutputProcessor(outputProcessorChain, encryptedKeyOutputProcessor, action);
+                if (encryptedKey) {
+                    outputProcessors.add(new ConfiguredOutputProcessor(EncryptedKeyOutputProcessor::new, action));
 
                 } else if (securityProperties.getDerivedKeyTokenReference()
                     == WSSConstants.DerivedKeyTokenReference.SecurityContextToken) {
-                    final SecurityContextTokenOutputProcessor securityContextTokenOutputProcessor =
-                            new SecurityContextTokenOutputProcessor();
-                    initializeOutputProcessor(outputProcessorChain, securityContextTokenOutputProcessor, action);
+                    outputProcessors.add(new ConfiguredOutputProcessor(SecurityContextTokenOutputProcessor::new, action));
                 }
-                final DerivedKeyTokenOutputProcessor derivedKeyTokenOutputProcessor = new DerivedKeyTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, derivedKeyTokenOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(DerivedKeyTokenOutputProcessor::new, action));
 
-                final EncryptOutputProcessor encryptOutputProcessor = new EncryptOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, encryptOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(EncryptOutputProcessor::new, action));
 
-                if (encryptedKeyOutputProcessor == null) {
-                    final ReferenceListOutputProcessor referenceListOutputProcessor = new ReferenceListOutputProcessor();
-                    referenceListOutputProcessor.addAfterProcessor(EncryptEndingOutputProcessor.class.getName());
-                    initializeOutputProcessor(outputProcessorChain, referenceListOutputProcessor, action);
+                if (!encryptedKey) {
+                    outputProcessors.add(
+                        new ConfiguredOutputProcessor(OutboundWSSec::newReferenceListOutputProcessor, action));
                 }
             } else if (WSSConstants.SAML_TOKEN_SIGNED.equals(action)) {
                 configuredAction.signatureAction = true;
                 configuredAction.signedSAML = true;
-                final BinarySecurityTokenOutputProcessor binarySecurityTokenOutputProcessor =
-                    new BinarySecurityTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, binarySecurityTokenOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(BinarySecurityTokenOutputProcessor::new, action));
 
-                final SAMLTokenOutputProcessor samlTokenOutputProcessor = new SAMLTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, samlTokenOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(SAMLTokenOutputProcessor::new, action));
 
-                final WSSSignatureOutputProcessor signatureOutputProcessor = new WSSSignatureOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, signatureOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(WSSSignatureOutputProcessor::new, action));
 
             } else if (WSSConstants.SAML_TOKEN_UNSIGNED.equals(action)) {
-                final SAMLTokenOutputProcessor samlTokenOutputProcessor = new SAMLTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, samlTokenOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(SAMLTokenOutputProcessor::new, action));
             } else if (WSSConstants.SIGNATURE_WITH_KERBEROS_TOKEN.equals(action)) {
                 configuredAction.kerberos = true;
                 configuredAction.signatureKerberos = true;
-                final BinarySecurityTokenOutputProcessor kerberosTokenOutputProcessor =
-                        new BinarySecurityTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, kerberosTokenOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(BinarySecurityTokenOutputProcessor::new, action));
 
-                final WSSSignatureOutputProcessor signatureOutputProcessor = new WSSSignatureOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, signatureOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(WSSSignatureOutputProcessor::new, action));
             } else if (WSSConstants.ENCRYPT_WITH_KERBEROS_TOKEN.equals(action)) {
                 configuredAction.kerberos = true;
                 configuredAction.encryptionKerberos = true;
-                final BinarySecurityTokenOutputProcessor kerberosTokenOutputProcessor =
-                        new BinarySecurityTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, kerberosTokenOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(BinarySecurityTokenOutputProcessor::new, action));
 
-                final EncryptOutputProcessor encryptOutputProcessor = new EncryptOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, encryptOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(EncryptOutputProcessor::new, action));
             } else if (WSSConstants.KERBEROS_TOKEN.equals(action)) {
                 configuredAction.kerberos = true;
-                final BinarySecurityTokenOutputProcessor kerberosTokenOutputProcessor =
-                    new BinarySecurityTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, kerberosTokenOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(BinarySecurityTokenOutputProcessor::new, action));
             } else if (WSSConstants.CUSTOM_TOKEN.equals(action)) {
-                final CustomTokenOutputProcessor unknownTokenOutputProcessor =
-                    new CustomTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, unknownTokenOutputProcessor, action);
+                outputProcessors.add(new ConfiguredOutputProcessor(CustomTokenOutputProcessor::new, action));
             }
         }
 
         return configuredAction;
     }
 
+    private static ReferenceListOutputProcessor newReferenceListOutputProcessor() throws XMLSecurityException {
+        final ReferenceListOutputProcessor referenceListOutputProcessor = new ReferenceListOutputProcessor();
+        referenceListOutputProcessor.addAfterProcessor(EncryptEndingOutputProcessor.class.getName());
+        return referenceListOutputProcessor;
+    }
+
     private static class ConfiguredAction {
         boolean signatureAction = false;
         boolean encryptionAction = false;
@@ -749,4 +734,26 @@ public class OutboundWSSec {
         boolean derivedSignature = false;
         boolean derivedEncryption = false;
     }
+
+    @FunctionalInterface
+    private interface OutputProcessorFactory {
+        OutputProcessor newOutputProcessor() throws XMLSecurityException;
+    }
+
+    /**
+     * An OutputProcessor of the compiled chain, which is instantiated for every message
+     */
+    private static final class ConfiguredOutputProcessor {
+        private final OutputProcessorFactory factory;
+        private final XMLSecurityConstants.Action action;
+
+        ConfiguredOutputProcessor(OutputProcessorFactory factory, XMLSecurityConstants.Action action) {
+            this.factory = factory;
+            this.action = action;
+        }
+
+        OutputProcessor newOutputProcessor() throws XMLSecurityException {
+            return factory.newOutputProcessor();
+        }
+    }
 }
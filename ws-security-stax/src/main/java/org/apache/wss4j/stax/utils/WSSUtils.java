@@ -40,6 +40,7 @@ import javax.xml.stream.events.Attribute;
 
 import org.apache.wss4j.common.crypto.Merlin;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.JCAEnginePool;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.securityEvent.DerivedKeyTokenSecurityEvent;
@@ -306,13 +307,16 @@ public class WSSUtils extends XMLSecurityUtils {
         abstractOutputProcessor.createStartElementAndOutputAsEvent(outputProcessorChain,
                                                                    WSSConstants.TAG_WSSE_KEY_IDENTIFIER,
                                                                    false, attributes);
+        MessageDigest sha = null;
         try {
-            MessageDigest sha = MessageDigest.getInstance("SHA-1");
+            sha = JCAEnginePool.getMessageDigest("SHA-1");
             byte[] data = sha.digest(x509Certificates[0].getEncoded());
             abstractOutputProcessor.createCharactersAndOutputAsEvent(outputProcessorChain,
                                                                      XMLUtils.encodeToString(data));
         } catch (CertificateEncodingException | NoSuchAlgorithmException e) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        } finally {
+            JCAEnginePool.release(sha);
         }
         abstractOutputProcessor.createEndElementAndOutputAsEvent(outputProcessorChain, WSSConstants.TAG_WSSE_KEY_IDENTIFIER);
     }
@@ -321,13 +325,16 @@ public class WSSUtils extends XMLSecurityUtils {
                                                                  OutputProcessorChain outputProcessorChain, Key key)
             throws XMLStreamException, XMLSecurityException {
 
+        MessageDigest sha = null;
         try {
-            MessageDigest sha = MessageDigest.getInstance("SHA-1");
+            sha = JCAEnginePool.getMessageDigest("SHA-1");
             byte[] data = sha.digest(key.getEncoded());
             createEncryptedKeySha1IdentifierStructure(abstractOutputProcessor, outputProcessorChain,
                                                       XMLUtils.encodeToString(data));
         } catch (NoSuchAlgorithmException e) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+        } finally {
+            JCAEnginePool.release(sha);
         }
     }
 
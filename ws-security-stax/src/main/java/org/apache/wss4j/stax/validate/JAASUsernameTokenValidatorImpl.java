@@ -28,6 +28,7 @@ import org.apache.wss4j.binding.wss10.PasswordString;
 import org.apache.wss4j.binding.wss10.UsernameTokenType;
 import org.apache.wss4j.binding.wsu10.AttributedDateTime;
 import org.apache.wss4j.common.NamePasswordCallbackHandler;
+import org.apache.wss4j.common.cache.AuthenticatedSubjectCache;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.securityToken.UsernameSecurityToken;
@@ -47,6 +48,7 @@ public class JAASUsernameTokenValidatorImpl implements UsernameTokenValidator {
             org.slf4j.LoggerFactory.getLogger(JAASUsernameTokenValidatorImpl.class);
 
     private String contextName;
+    private AuthenticatedSubjectCache subjectCache;
 
     public void setContextName(String name) {
         contextName = name;
@@ -56,6 +58,19 @@ public class JAASUsernameTokenValidatorImpl implements UsernameTokenValidator {
         return contextName;
     }
 
+    public AuthenticatedSubjectCache getSubjectCache() {
+        return subjectCache;
+    }
+
+    /**
+     * Set a cache of the Subjects of successful logins, so that a user is not authenticated against
+     * JAAS again for every UsernameToken with the same password. It is null (not used) by default.
+     * @param subjectCache the cache of the Subjects of successful logins
+     */
+    public void setSubjectCache(AuthenticatedSubjectCache subjectCache) {
+        this.subjectCache = subjectCache;
+    }
+
     @Override
     public <T extends UsernameSecurityToken & InboundSecurityToken> T validate(
             UsernameTokenType usernameTokenType, TokenContext tokenContext) throws WSSecurityException {
@@ -86,17 +101,25 @@ public class JAASUsernameTokenValidatorImpl implements UsernameTokenValidator {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
         }
 
-        Subject subject;
-        try {
-            CallbackHandler handler = getCallbackHandler(username, password);
-            LoginContext ctx = new LoginContext(getContextName(), handler);
-            ctx.login();
-            subject = ctx.getSubject();
-        } catch (LoginException ex) {
-            LOG.info("Authentication failed", ex);
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILED_AUTHENTICATION, ex
-            );
+        Subject subject = null;
+        if (subjectCache != null) {
+            subject = subjectCache.get(getContextName(), username, password);
+        }
+        if (subject == null) {
+            try {
+                CallbackHandler handler = getCallbackHandler(username, password);
+                LoginContext ctx = new LoginContext(getContextName(), handler);
+                ctx.login();
+                subject = ctx.getSubject();
+            } catch (LoginException ex) {
+                LOG.info("Authentication failed", ex);
+                throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.FAILED_AUTHENTICATION, ex
+                );
+            }
+            if (subjectCache != null) {
+                subjectCache.put(getContextName(), username, password, subject);
+            }
         }
 
         final EncodedString encodedNonce =
@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.stax.impl.processor.input;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.xml.security.stax.ext.Transformer;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecEventFactory;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer20010315_ExclOmitCommentsTransformer;
+import org.apache.xml.security.stax.impl.util.DigestOutputStream;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some tests for the transformer chain which is shared by the References to the same element
+ */
+public class SharedReferenceDigestTest {
+
+    private static final String TRANSFORMS_KEY = "http://www.w3.org/2001/10/xml-exc-c14n#";
+
+    private static final String ELEMENT =
+            "<env:Body xmlns:env=\"http://schemas.xmlsoap.org/soap/envelope/\" Id=\"Body\">"
+                    + "<ns:echo xmlns:ns=\"urn:echo\">Hello</ns:echo></env:Body>";
+
+    @Test
+    public void testSignatureJoinsLate() throws Exception {
+        List<XMLSecEvent> xmlSecEvents = readEvents();
+        XMLSecStartElement startElement = xmlSecEvents.get(0).asStartElement();
+
+        for (int bufferSize : new int[] {8192, 0}) {
+            SharedReferenceDigest sharedReferenceDigest =
+                new SharedReferenceDigest(startElement, TRANSFORMS_KEY, bufferSize);
+            sharedReferenceDigest.setTransformer(createCanonicalizer(sharedReferenceDigest.getOutputStream()));
+
+            DigestOutputStream firstDigest = createDigestOutputStream();
+            Transformer first = sharedReferenceDigest.join(firstDigest);
+            first.transform(xmlSecEvents.get(0));
+
+            // The start element is not transformed yet, so another Reference to it can still join...
+            assertTrue(sharedReferenceDigest.canJoin(startElement, TRANSFORMS_KEY));
+            assertFalse(sharedReferenceDigest.canJoin(startElement, "http://www.w3.org/2001/10/xml-exc-c14n#WithComments"));
+            DigestOutputStream secondDigest = createDigestOutputStream();
+            Transformer second = sharedReferenceDigest.join(secondDigest);
+            second.transform(xmlSecEvents.get(0));
+
+            first.transform(xmlSecEvents.get(1));
+            second.transform(xmlSecEvents.get(1));
+
+            // ...but not anymore once the chain started, so a late Reference needs a chain of its own
+            assertFalse(sharedReferenceDigest.canJoin(startElement, TRANSFORMS_KEY));
+            assertTrue(sharedReferenceDigest.isClosed());
+            DigestOutputStream lateDigest = createDigestOutputStream();
+            Transformer late = createCanonicalizer(lateDigest);
+            late.transform(xmlSecEvents.get(0));
+            late.transform(xmlSecEvents.get(1));
+
+            for (int i = 2; i < xmlSecEvents.size(); i++) {
+                first.transform(xmlSecEvents.get(i));
+                second.transform(xmlSecEvents.get(i));
+                late.transform(xmlSecEvents.get(i));
+            }
+            first.doFinal();
+            second.doFinal();
+            late.doFinal();
+            // flushes the buffer, as the InternalSignatureReferenceVerifiers do
+            sharedReferenceDigest.getOutputStream().close();
+
+            byte[] expectedDigest = MessageDigest.getInstance("SHA-256").digest(canonicalize(xmlSecEvents));
+            assertArrayEquals(expectedDigest, firstDigest.getDigestValue());
+            assertArrayEquals(expectedDigest, secondDigest.getDigestValue());
+            assertArrayEquals(expectedDigest, lateDigest.getDigestValue());
+        }
+    }
+
+    @Test
+    public void testFixedReferenceTransformer() throws Exception {
+        List<XMLSecEvent> xmlSecEvents = readEvents();
+        SharedReferenceDigest sharedReferenceDigest =
+            new SharedReferenceDigest(xmlSecEvents.get(0).asStartElement(), TRANSFORMS_KEY, 0);
+        sharedReferenceDigest.setTransformer(createCanonicalizer(sharedReferenceDigest.getOutputStream()));
+        Transformer transformer = sharedReferenceDigest.join(createDigestOutputStream());
+
+        assertThrows(UnsupportedOperationException.class, () -> transformer.setOutputStream(new ByteArrayOutputStream()));
+        assertThrows(UnsupportedOperationException.class, () -> transformer.setTransformer(transformer));
+    }
+
+    private static List<XMLSecEvent> readEvents() throws Exception {
+        XMLStreamReader xmlStreamReader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(ELEMENT));
+        List<XMLSecEvent> xmlSecEvents = new ArrayList<>();
+        XMLSecStartElement parentXMLSecStartElement = null;
+        while (xmlStreamReader.hasNext()) {
+            int eventType = xmlStreamReader.next();
+            if (eventType == XMLStreamConstants.END_DOCUMENT) {
+                break;
+            }
+            XMLSecEvent xmlSecEvent = XMLSecEventFactory.allocate(xmlStreamReader, parentXMLSecStartElement);
+            if (xmlSecEvent.isStartElement()) {
+                parentXMLSecStartElement = xmlSecEvent.asStartElement();
+            } else if (xmlSecEvent.isEndElement() && parentXMLSecStartElement != null) {
+                parentXMLSecStartElement = parentXMLSecStartElement.getParentXMLSecStartElement();
+            }
+            xmlSecEvents.add(xmlSecEvent);
+        }
+        return xmlSecEvents;
+    }
+
+    private static byte[] canonicalize(List<XMLSecEvent> xmlSecEvents) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Transformer canonicalizer = createCanonicalizer(outputStream);
+        for (XMLSecEvent xmlSecEvent : xmlSecEvents) {
+            canonicalizer.transform(xmlSecEvent);
+        }
+        canonicalizer.doFinal();
+        return outputStream.toByteArray();
+    }
+
+    private static Transformer createCanonicalizer(OutputStream outputStream) throws Exception {
+        Transformer canonicalizer = new Canonicalizer20010315_ExclOmitCommentsTransformer();
+        canonicalizer.setOutputStream(outputStream);
+        return canonicalizer;
+    }
+
+    private static DigestOutputStream createDigestOutputStream() throws Exception {
+        return new DigestOutputStream(MessageDigest.getInstance("SHA-256"));
+    }
+}
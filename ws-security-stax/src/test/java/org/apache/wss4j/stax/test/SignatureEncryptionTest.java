@@ -26,9 +26,14 @@ import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
+import javax.security.auth.callback.CallbackHandler;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
@@ -38,6 +43,7 @@ import javax.xml.transform.stream.StreamResult;
 import org.apache.wss4j.common.WSEncryptionPart;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.dom.WSConstants;
@@ -106,6 +112,70 @@ public class SignatureEncryptionTest extends AbstractTestBase {
         }
     }
 
+    @Test
+    public void testSignatureEncryptionOutboundReused() throws Exception {
+
+        final AtomicInteger passwordCallbacks = new AtomicInteger();
+        final OutboundWSSec wsSecOut;
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            List<WSSConstants.Action> actions = new ArrayList<>();
+            actions.add(WSSConstants.SIGNATURE);
+            actions.add(WSSConstants.ENCRYPT);
+            actions.add(WSSConstants.TIMESTAMP);
+            securityProperties.setActions(actions);
+            securityProperties.loadEncryptionKeystore(this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+            securityProperties.setEncryptionUser("receiver");
+            securityProperties.loadSignatureKeyStore(this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+            securityProperties.setSignatureUser("transmitter");
+            final CallbackHandler callbackHandler = new CallbackHandlerImpl();
+            securityProperties.setCallbackHandler(callbacks -> {
+                if (((WSPasswordCallback) callbacks[0]).getUsage() == WSPasswordCallback.SIGNATURE) {
+                    passwordCallbacks.incrementAndGet();
+                }
+                callbackHandler.handle(callbacks);
+            });
+
+            wsSecOut = WSSec.getOutboundWSSec(securityProperties);
+        }
+
+        // Secure a first message, and then the same OutboundWSSec is used by several threads
+        List<byte[]> securedMessages = new ArrayList<>();
+        securedMessages.add(secureMessage(wsSecOut));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executorService.submit(() -> secureMessage(wsSecOut)));
+            }
+            for (Future<byte[]> future : futures) {
+                securedMessages.add(future.get());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        // The signature key is loaded for every message, so that a changed password is picked up
+        assertEquals(securedMessages.size(), passwordCallbacks.get());
+
+        //done encryption; now test decryption:
+        String action = WSHandlerConstants.SIGNATURE + " " + WSHandlerConstants.ENCRYPT + " " + WSHandlerConstants.TIMESTAMP;
+        for (byte[] securedMessage : securedMessages) {
+            doInboundSecurityWithWSS4J(documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(securedMessage)), action);
+        }
+    }
+
+    private byte[] secureMessage(OutboundWSSec wsSecOut) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        XMLStreamWriter xmlStreamWriter = wsSecOut.processOutMessage(baos, StandardCharsets.UTF_8.name(), new ArrayList<SecurityEvent>());
+        XMLStreamReader xmlStreamReader =
+            xmlInputFactory.createXMLStreamReader(this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml"));
+        XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+        return baos.toByteArray();
+    }
+
     @Test
     public void testEncryptionSymmetricOutbound() throws Exception {
 
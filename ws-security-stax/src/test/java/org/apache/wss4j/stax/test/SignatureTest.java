@@ -46,11 +46,14 @@ import javax.xml.xpath.XPathExpression;
 
 import org.apache.wss4j.common.ConfigurationConstants;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.handler.WSHandlerConstants;
+import org.apache.wss4j.dom.message.WSSecEncrypt;
 import org.apache.wss4j.dom.message.WSSecHeader;
 import org.apache.wss4j.dom.message.WSSecSignature;
 import org.apache.wss4j.stax.ext.WSSConstants;
@@ -1206,6 +1209,142 @@ public class SignatureTest extends AbstractTestBase {
         }
     }
 
+    /**
+     * Two Signatures sign the SOAP Body with the same transforms but different digest algorithms,
+     * so that the canonical form of the Body is shared by both References.
+     */
+    @Test
+    public void testTwoSignaturesOfBodyInbound() throws Exception {
+
+        KeyGenerator keyGen = KeyGenerator.getInstance("AES");
+        keyGen.init(128);
+        SecretKey key = keyGen.generateKey();
+
+        for (boolean tamper : new boolean[] {false, true}) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            {
+                InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+
+                Document doc = documentBuilderFactory.newDocumentBuilder().parse(sourceDocument);
+                WSSecHeader secHeader = new WSSecHeader(doc);
+                secHeader.insertSecurityHeader();
+
+                WSSecSignature sign = new WSSecSignature(secHeader);
+                sign.setKeyIdentifierType(WSConstants.ENCRYPTED_KEY_SHA1_IDENTIFIER);
+                sign.setSecretKey(key.getEncoded());
+                sign.setSignatureAlgorithm(SignatureMethod.HMAC_SHA1);
+                sign.build(null);
+
+                sign = new WSSecSignature(secHeader);
+                sign.setKeyIdentifierType(WSConstants.ENCRYPTED_KEY_SHA1_IDENTIFIER);
+                sign.setSecretKey(key.getEncoded());
+                sign.setSignatureAlgorithm(SignatureMethod.HMAC_SHA1);
+                sign.setDigestAlgo(WSConstants.SHA256);
+                Document securedDocument = sign.build(null);
+
+                if (tamper) {
+                    Node body = securedDocument.getElementsByTagNameNS(WSConstants.URI_SOAP11_ENV, "Body").item(0);
+                    body.appendChild(securedDocument.createTextNode("tampered"));
+                }
+
+                javax.xml.transform.Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+                transformer.transform(new DOMSource(securedDocument), new StreamResult(baos));
+            }
+
+            //the canonical form is written buffered and unbuffered to the digests
+            for (int bufferSize : new int[] {8192, 0}) {
+                WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+                securityProperties.setCallbackHandler(new org.apache.wss4j.stax.test.CallbackHandlerImpl(key.getEncoded()));
+                securityProperties.setSignatureDigestBufferSize(bufferSize);
+                InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+
+                List<SecurityEvent> securityEvents = new ArrayList<>();
+                XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(
+                    xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())),
+                    null, securityEvents::add);
+                try {
+                    StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+                    assertTrue(!tamper, "Failure expected on a tampered Body");
+                } catch (XMLStreamException e) {
+                    assertTrue(tamper);
+                    assertTrue(e.getCause() instanceof XMLSecurityException);
+                    continue;
+                }
+
+                int signedParts = 0;
+                for (SecurityEvent securityEvent : securityEvents) {
+                    if (WSSecurityEventConstants.SIGNED_PART.equals(securityEvent.getSecurityEventType())) {
+                        signedParts++;
+                    }
+                }
+                assertEquals(2, signedParts);
+            }
+        }
+    }
+
+    /**
+     * The SOAP Body is encrypted and then signed by two Signatures. The References of both Signatures
+     * sit before the decryption processor and share the canonical form of the encrypted Body, which must
+     * still be decrypted afterwards.
+     */
+    @Test
+    public void testTwoSignaturesOfEncryptedBodyInbound() throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+
+            Document doc = documentBuilderFactory.newDocumentBuilder().parse(sourceDocument);
+            WSSecHeader secHeader = new WSSecHeader(doc);
+            secHeader.insertSecurityHeader();
+
+            Crypto crypto = CryptoFactory.getInstance("transmitter-crypto.properties");
+
+            WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+            encrypt.setUserInfo("receiver");
+            encrypt.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+            SecretKey symmetricKey = KeyUtils.getKeyGenerator(WSConstants.AES_128).generateKey();
+            encrypt.build(crypto, symmetricKey);
+
+            WSSecSignature sign = new WSSecSignature(secHeader);
+            sign.setUserInfo("transmitter", "default");
+            sign.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
+            sign.build(crypto);
+
+            sign = new WSSecSignature(secHeader);
+            sign.setUserInfo("transmitter", "default");
+            sign.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
+            sign.setDigestAlgo(WSConstants.SHA256);
+            Document securedDocument = sign.build(crypto);
+
+            javax.xml.transform.Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.transform(new DOMSource(securedDocument), new StreamResult(baos));
+        }
+
+        WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+        securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+        securityProperties.loadDecryptionKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+        securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+        InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+
+        List<SecurityEvent> securityEvents = new ArrayList<>();
+        XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(
+            xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())),
+            null, securityEvents::add);
+        Document document = StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+        assertEquals(0, document.getElementsByTagNameNS(WSConstants.ENC_NS, "EncryptedData").getLength());
+        Node body = document.getElementsByTagNameNS(WSConstants.URI_SOAP11_ENV, "Body").item(0);
+        assertEquals(1, ((Element) body).getElementsByTagNameNS("http://schemas.xmlsoap.org/wsdl/", "definitions").getLength());
+
+        int signedParts = 0;
+        for (SecurityEvent securityEvent : securityEvents) {
+            if (WSSecurityEventConstants.SIGNED_PART.equals(securityEvent.getSecurityEventType())) {
+                signedParts++;
+            }
+        }
+        assertEquals(2, signedParts);
+    }
+
     @Test
     public void testSignatureUsePKIPathOutbound() throws Exception {
 